@@ -0,0 +1,217 @@
+package com.smartmove.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartmove.cluster.Cluster;
+import com.smartmove.cluster.ClusterNode;
+import com.smartmove.cluster.Membership;
+import com.smartmove.cluster.Rebalancer;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.metrics.Counter;
+import com.smartmove.metrics.MetricsRegistry;
+import com.smartmove.telemetry.TelemetryData;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * HTTP side of a partitioned deployment: forwards requests to the node
+ * owning the vehicle, ships vehicles while rebalancing and spreads
+ * membership changes to the other nodes.
+ */
+class ClusterGateway implements Rebalancer.Transfer {
+
+    /** Set on node-to-node requests (value: sender id); such requests are never forwarded again. */
+    static final String FORWARDED_HEADER = "X-SmartMove-Forwarded";
+    /** Set on forwarded responses: the node that handled the request. */
+    static final String NODE_HEADER = "X-SmartMove-Node";
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    private static final Counter FORWARD_FAILURES = MetricsRegistry.global().counter(
+            "smartmove_gateway_forward_failures_total", "Telemetry samples the owning node did not accept");
+
+    // Where locate() last found a vehicle, so requests without a known owner
+    // (city partitioning) do not ask every node each time. Vehicles move on
+    // rebalancing, which follows a membership change, so entries are dropped
+    // then and expire after LOCATION_TTL_MS in case a move lags behind it.
+    private static final long LOCATION_TTL_MS = 30_000;
+
+    private static final class Location {
+        final String nodeId;
+        final long expiresAt;
+
+        Location(String nodeId, long expiresAt) {
+            this.nodeId = nodeId;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Cluster cluster;
+    private final ObjectMapper mapper;
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+    private final Map<String, Location> located = new ConcurrentHashMap<>();
+
+    ClusterGateway(Cluster cluster, ObjectMapper mapper) {
+        this.cluster = cluster;
+        this.mapper = mapper;
+        cluster.onChange(m -> located.clear());
+    }
+
+    Cluster cluster() {
+        return cluster;
+    }
+
+    /** Replays the request (whose body was already read) on {@code node} and relays its response. */
+    void forward(HttpExchange ex, ClusterNode node, byte[] body) throws IOException {
+        HttpRequest.Builder req = HttpRequest.newBuilder(URI.create(node.url + ex.getRequestURI()))
+                .timeout(TIMEOUT)
+                .header(FORWARDED_HEADER, cluster.selfId())
+                .method(ex.getRequestMethod(), body.length == 0
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofByteArray(body));
+        for (String h : new String[]{"Content-Type", "Idempotency-Key", "If-None-Match"}) {
+            String v = ex.getRequestHeaders().getFirst(h);
+            if (v != null) req.header(h, v);
+        }
+
+        HttpResponse<byte[]> res;
+        try {
+            res = http.send(req.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while forwarding to " + node.id, e);
+        } catch (IOException e) {
+            byte[] error = mapper.writeValueAsBytes(Map.of("error", "Owner node " + node.id + " is unreachable"));
+            ex.getResponseHeaders().set("Content-Type", "application/json");
+            ex.sendResponseHeaders(503, error.length);
+            ex.getResponseBody().write(error);
+            ex.close();
+            return;
+        }
+
+        for (String h : new String[]{"Idempotent-Replayed", "ETag", "Cache-Control"}) {
+            res.headers().firstValue(h).ifPresent(v -> ex.getResponseHeaders().set(h, v));
+        }
+        ex.getResponseHeaders().set(NODE_HEADER, node.id);
+        byte[] out = res.body();
+        String contentType = res.headers().firstValue("Content-Type").orElse("application/json");
+        if (out.length > 0) {
+            SmartMoveApiServer.send(ex, res.statusCode(), contentType, out);   // owners reply uncompressed
+            return;
+        }
+        ex.getResponseHeaders().set("Content-Type", contentType);
+        ex.sendResponseHeaders(res.statusCode(), -1);
+        ex.close();
+    }
+
+    /** As {@link #locate}, answered from where the vehicle was last found while that is recent. */
+    ClusterNode locateCached(String vehicleId) {
+        Location l = located.get(vehicleId);
+        if (l != null && l.expiresAt > System.currentTimeMillis()) {
+            ClusterNode n = cluster.membership().node(l.nodeId);
+            if (n != null) return n;
+        }
+        ClusterNode n = locate(vehicleId);
+        if (n == null) located.remove(vehicleId);
+        else located.put(vehicleId, new Location(n.id, System.currentTimeMillis() + LOCATION_TTL_MS));
+        return n;
+    }
+
+    /** Asks the other nodes which one stores the vehicle; null if none does. */
+    ClusterNode locate(String vehicleId) {
+        for (ClusterNode n : cluster.membership().nodes) {
+            if (cluster.isSelf(n.id)) continue;
+            try {
+                HttpResponse<Void> res = http.send(HttpRequest.newBuilder(
+                                URI.create(n.url + "/vehicle?id=" + URLEncoder.encode(vehicleId, StandardCharsets.UTF_8)))
+                        .timeout(TIMEOUT)
+                        .header(FORWARDED_HEADER, cluster.selfId())
+                        .GET().build(), HttpResponse.BodyHandlers.discarding());
+                if (res.statusCode() == 200) return n;
+            } catch (IOException e) {
+                // unreachable node: try the next one
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void send(ClusterNode target, Vehicle vehicle) {
+        HttpResponse<String> res = post(target, "/cluster/transfer", vehicle);
+        if (res.statusCode() != 200) {
+            throw new IllegalStateException(target.id + " refused transfer: " + res.statusCode() + " " + res.body());
+        }
+    }
+
+    /**
+     * Posts a telemetry sample to its owner's /telemetry without waiting for
+     * the answer (called from the binary gateway's selector thread). Telemetry
+     * is lossy anyway; a failed post is only counted.
+     */
+    void forwardTelemetry(ClusterNode node, TelemetryData t) {
+        byte[] body;
+        try {
+            body = mapper.writeValueAsBytes(t);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode telemetry for " + node.id, e);
+        }
+        http.sendAsync(HttpRequest.newBuilder(URI.create(node.url + "/telemetry"))
+                        .timeout(TIMEOUT)
+                        .header("Content-Type", "application/json")
+                        .header(FORWARDED_HEADER, cluster.selfId())
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                        .build(), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((res, e) -> {
+                    if (e != null || res.statusCode() != 200) FORWARD_FAILURES.inc();
+                });
+    }
+
+    /** Sends a membership to every other node; unreachable nodes are skipped. */
+    void broadcast(Membership m) {
+        for (ClusterNode n : m.nodes) {
+            if (cluster.isSelf(n.id)) continue;
+            try {
+                post(n, "/cluster/membership", m);
+            } catch (RuntimeException e) {
+                System.err.println("Cluster: could not tell " + n.id + " about epoch " + m.epoch + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** Current membership as seen by the node at {@code url}. */
+    Membership fetchMembership(String url) throws IOException, InterruptedException {
+        HttpResponse<byte[]> res = http.send(HttpRequest.newBuilder(URI.create(url + "/cluster"))
+                .timeout(TIMEOUT).GET().build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (res.statusCode() != 200) throw new IOException(url + "/cluster answered " + res.statusCode());
+        JsonNode body = mapper.readTree(res.body());
+        return mapper.treeToValue(body.get("membership"), Membership.class);
+    }
+
+    private HttpResponse<String> post(ClusterNode target, String path, Object body) {
+        try {
+            return http.send(HttpRequest.newBuilder(URI.create(target.url + path))
+                    .timeout(TIMEOUT)
+                    .header("Content-Type", "application/json")
+                    .header(FORWARDED_HEADER, cluster.selfId())
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while contacting " + target.id, e);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to reach " + target.id + " at " + target.url, e);
+        }
+    }
+}
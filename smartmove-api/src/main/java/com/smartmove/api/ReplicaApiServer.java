@@ -0,0 +1,203 @@
+package com.smartmove.api;
+
+import com.smartmove.audit.AuditLogEntry;
+import com.smartmove.audit.AuditLogService;
+import com.smartmove.domain.City;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.domain.VehicleState;
+import com.smartmove.metrics.MetricsRegistry;
+import com.smartmove.replication.ReplicaClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+
+import static com.smartmove.api.SmartMoveApiServer.cors;
+import static com.smartmove.api.SmartMoveApiServer.json;
+import static com.smartmove.api.SmartMoveApiServer.queryParams;
+import static com.smartmove.api.SmartMoveApiServer.send;
+import static com.smartmove.api.SmartMoveApiServer.streamJson;
+import static com.smartmove.api.SmartMoveApiServer.traced;
+
+/**
+ * Read-only API of a replica process (-Dsmartmove.replication.role=replica).
+ * Serves vehicles, vehicle listings and audit queries from what it has
+ * replicated, without a controller: writes are answered with 403.
+ *
+ * Every read carries X-SmartMove-Staleness-Ms; once the replica has been
+ * behind the primary for longer than the configured bound, reads are
+ * answered with 503 so clients fall back to another replica or the primary.
+ *
+ * The replicated audit log lives in -Dsmartmove.replica.dataDir (default
+ * data-replica). A replica refuses to start on the primary's data directory:
+ * it would append every entry it receives to the very log it follows.
+ */
+final class ReplicaApiServer {
+
+    static final String STALENESS_HEADER = "X-SmartMove-Staleness-Ms";
+    static final String DATA_DIR_PROPERTY = "smartmove.replica.dataDir";
+    static final String AUDIT_LOG = "audit-log.jsonl";
+
+    private static final int AUDIT_DEFAULT_LIMIT = 100;
+    private static final int AUDIT_MAX_LIMIT = 1000;
+
+    private ReplicaApiServer() {}
+
+    static void run(int port) throws IOException {
+        Path dataDir = Paths.get(System.getProperty(DATA_DIR_PROPERTY, "data-replica"));
+        AuditLogService audit = new AuditLogService(auditLog(dataDir, SmartMoveApiServer.DATA_DIR));
+        ReplicaClient replica = ReplicaClient.fromConfig(audit);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+
+        // Get vehicle
+        server.createContext("/vehicle", fresh(replica, traced(ex -> {
+            String id = queryParams(ex).get("id");
+            if (id == null || id.isBlank()) { json(ex, 400, Map.of("error","Missing id")); return; }
+
+            Optional<Vehicle> v = replica.findById(id);
+            if (v.isEmpty()) { json(ex, 404, Map.of("error","Not found")); return; }
+            json(ex, 200, v.get());
+        })));
+
+        // Listing: /vehicles?city=ROME&state=AVAILABLE
+        server.createContext("/vehicles", fresh(replica, traced(ex -> {
+            Map<String, String> params = queryParams(ex);
+            City city = params.containsKey("city") ? City.valueOf(params.get("city").toUpperCase()) : null;
+            VehicleState state = params.containsKey("state") ? VehicleState.valueOf(params.get("state").toUpperCase()) : null;
+
+            // fleet-wide: written vehicle by vehicle instead of as one buffered list
+            List<Vehicle> vehicles = replica.findAll(city);
+            streamJson(ex, 200, g -> {
+                g.writeStartArray();
+                for (Vehicle v : vehicles) {
+                    if (state == null || state == v.getState()) g.writeObject(v);
+                }
+                g.writeEndArray();
+            });
+        })));
+
+        // Audit query: /audit?since=<id>&limit=<n>&vehicleId=<id>
+        server.createContext("/audit", fresh(replica, traced(ex -> {
+            Map<String, String> params = queryParams(ex);
+            long since;
+            int limit;
+            try {
+                since = Long.parseLong(params.getOrDefault("since", "0"));
+                limit = Integer.parseInt(params.getOrDefault("limit", String.valueOf(AUDIT_DEFAULT_LIMIT)));
+            } catch (NumberFormatException e) {
+                json(ex, 400, Map.of("error","since/limit must be numbers")); return;
+            }
+            if (since < 0 || limit <= 0) { json(ex, 400, Map.of("error","since must be >= 0 and limit > 0")); return; }
+            limit = Math.min(limit, AUDIT_MAX_LIMIT);
+            String vehicleId = params.get("vehicleId");
+
+            // with a vehicle filter, keep scanning until the page is full or the log ends
+            List<AuditLogEntry> entries = new ArrayList<>();
+            long scanned = since;
+            while (entries.size() < limit) {
+                List<AuditLogEntry> chunk = audit.read(scanned, AUDIT_MAX_LIMIT);
+                if (chunk.isEmpty()) break;
+                for (AuditLogEntry e : chunk) {
+                    scanned = e.id;
+                    if (vehicleId == null || vehicleId.equals(e.vehicleId)) entries.add(e);
+                    if (entries.size() == limit) break;
+                }
+            }
+            streamJson(ex, 200, Map.of(
+                    "entries", entries,
+                    "nextId", scanned,
+                    "lastId", audit.lastId()));
+        })));
+
+        server.createContext("/health", ex -> {
+            cors(ex);
+            if ("OPTIONS".equals(ex.getRequestMethod())) { ex.sendResponseHeaders(204, -1); return; }
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("status", replica.isFresh() ? "ok" : "stale");
+            body.put("role", "replica");
+            body.put("connected", replica.isConnected());
+            body.put("stalenessMs", replica.stalenessMillis() == Long.MAX_VALUE ? null : replica.stalenessMillis());
+            body.put("changeOffset", replica.changeOffset());
+            body.put("auditId", replica.auditId());
+            body.put("lastError", replica.lastError());
+            json(ex, replica.isFresh() ? 200 : 503, body);
+        });
+
+        server.createContext("/metrics", ex -> {
+            if (!"GET".equals(ex.getRequestMethod())) { json(ex, 405, Map.of("error","Use GET")); return; }
+            StringBuilder text = new StringBuilder(8192);
+            MetricsRegistry.global().writePrometheus(text);
+            send(ex, 200, "text/plain; version=0.0.4; charset=utf-8", text.toString().getBytes(StandardCharsets.UTF_8));
+        });
+
+        // Everything else would be a write or a primary-only view
+        server.createContext("/", ex -> {
+            cors(ex);
+            if ("OPTIONS".equals(ex.getRequestMethod())) { ex.sendResponseHeaders(204, -1); return; }
+            if ("GET".equals(ex.getRequestMethod())) { json(ex, 404, Map.of("error","Not served by replicas")); return; }
+            readOnly(ex);
+        });
+
+        server.setExecutor(Executors.newCachedThreadPool());
+        replica.start();
+        server.start();
+        System.out.println("SmartMove replica running on http://localhost:" + port + " following "
+                + System.getProperty(ReplicaClient.PRIMARY_PROPERTY, "localhost:9090")
+                + " (max staleness " + replica.maxStalenessMillis() + " ms)");
+        Runtime.getRuntime().addShutdownHook(new Thread(replica::close));
+    }
+
+    /**
+     * The replica's audit log in {@code dataDir}.
+     * @throws IllegalStateException if that is the primary's log
+     */
+    static Path auditLog(Path dataDir, Path primaryDataDir) {
+        Path log = dataDir.resolve(AUDIT_LOG);
+        Path primaryLog = primaryDataDir.resolve(AUDIT_LOG);
+        boolean same = log.toAbsolutePath().normalize().equals(primaryLog.toAbsolutePath().normalize());
+        try {
+            same |= Files.exists(log) && Files.exists(primaryLog) && Files.isSameFile(log, primaryLog);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to check replica audit log: " + log, e);
+        }
+        if (same) {
+            throw new IllegalStateException("Replica data directory " + dataDir + " holds the primary's audit log; set -D"
+                    + DATA_DIR_PROPERTY + " to a directory of its own");
+        }
+        return log;
+    }
+
+    /** GET-only read that is refused while the replica is too far behind. */
+    private static HttpHandler fresh(ReplicaClient replica, HttpHandler handler) {
+        return ex -> {
+            cors(ex);
+            if ("OPTIONS".equals(ex.getRequestMethod())) { ex.sendResponseHeaders(204, -1); return; }
+            if (!"GET".equals(ex.getRequestMethod())) { readOnly(ex); return; }
+
+            long staleness = replica.stalenessMillis();
+            if (staleness != Long.MAX_VALUE) ex.getResponseHeaders().set(STALENESS_HEADER, String.valueOf(staleness));
+            if (!replica.isFresh()) {
+                json(ex, 503, Map.of("error", "Replica is behind the primary", "lastError", String.valueOf(replica.lastError())));
+                return;
+            }
+            handler.handle(ex);
+        };
+    }
+
+    private static void readOnly(HttpExchange ex) throws IOException {
+        json(ex, 403, Map.of("error","Read-only replica; send writes to the primary"));
+    }
+}
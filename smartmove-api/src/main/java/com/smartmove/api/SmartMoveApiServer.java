@@ -1,60 +1,197 @@
 package com.smartmove.api;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.smartmove.audit.AuditLogService;
+import com.smartmove.cdc.ChangeCapturingPaymentStorage;
+import com.smartmove.cdc.ChangeCapturingVehicleStorage;
+import com.smartmove.cdc.ChangeLog;
+import com.smartmove.cdc.ChangeRecord;
+import com.smartmove.cluster.Cluster;
+import com.smartmove.cluster.ClusterNode;
+import com.smartmove.cluster.Membership;
+import com.smartmove.cluster.Rebalancer;
+import com.smartmove.codec.StorageCodecs;
 import com.smartmove.controller.SmartMoveCentralController;
+import com.smartmove.feed.VehicleJsonCache;
+import com.smartmove.idempotency.IdempotencyCache;
+import com.smartmove.metrics.MetricsRegistry;
+import com.smartmove.payments.AggregatingPaymentStorage;
+import com.smartmove.payments.PaymentRollups;
+import com.smartmove.pricing.PricingEngine;
+import com.smartmove.pricing.TariffPricingEngine;
+import com.smartmove.replication.ReplicationServer;
+import com.smartmove.trace.Span;
+import com.smartmove.trace.Trace;
+import com.smartmove.trace.Tracer;
 import com.smartmove.domain.*;
 import com.smartmove.telemetry.TelemetryData;
-import com.smartmove.storage.JsonVehicleStorage;
+import com.smartmove.telemetry.TelemetryDecoder;
+import com.smartmove.storage.VehicleStorages;
 import com.smartmove.storage.VehicleStorage;
 import com.smartmove.zones.JsonZoneRepository;
 import com.smartmove.zones.ZoneRepository;
 import com.smartmove.zones.ZoneService;
+import com.smartmove.storage.JsonLogUserStorage;
 import com.smartmove.storage.JsonPaymentStorage;
 import com.smartmove.storage.PaymentStorage;
+import com.smartmove.tx.TransactionJournal;
 
 import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
 
 public class SmartMoveApiServer {
 
     private static final ObjectMapper mapper = new ObjectMapper();
 
+    // Telemetry is the hottest endpoint: no databind, no per-request response encoding
+    private static final ThreadLocal<TelemetryDecoder> TELEMETRY_DECODER = ThreadLocal.withInitial(TelemetryDecoder::new);
+    private static final byte[] QUEUED = "{\"queued\":true}".getBytes(StandardCharsets.UTF_8);
+
+    private static final int CHANGES_DEFAULT_LIMIT = 100;
+    private static final int CHANGES_MAX_LIMIT = 1000;
+
+    // How long a retry waits for the original request with the same Idempotency-Key
+    private static final long IDEMPOTENCY_WAIT_MS = 10_000;
+
+    private static final int BATCH_MAX_VEHICLES = 1000;
+
+    public static final String PORT_PROPERTY = "smartmove.port";
+    /** The primary's stores, relative to the working directory (replicas keep theirs elsewhere). */
+    static final Path DATA_DIR = Paths.get("data");
+
+    /** Responses at least this large are gzipped for clients that accept it; negative: never. */
+    public static final String GZIP_MIN_BYTES_PROPERTY = "smartmove.http.gzipMinBytes";
+    private static final int GZIP_MIN_BYTES = Integer.getInteger(GZIP_MIN_BYTES_PROPERTY, 1024);
+    private static final int GZIP_BUFFER_BYTES = 8192;
+    // Exchange attribute: the response is captured for replay (see idempotent), so send it uncompressed
+    private static final String IDENTITY_ENCODING = "smartmove.identityEncoding";
+
     public static void main(String[] args) throws Exception {
-        // Wire core engine
-        VehicleStorage vehicleStorage = new JsonVehicleStorage(Paths.get("data/vehicles.json"));
-        AuditLogService audit = new AuditLogService(Paths.get("data/audit-log.jsonl"));
-        ZoneRepository zoneRepo = new JsonZoneRepository(Paths.get("data/restricted-zones.json"));
-        PaymentStorage paymentStorage = new JsonPaymentStorage(Paths.get("data/payments.json"));
+        int port = Integer.getInteger(PORT_PROPERTY, 8080);
+        if ("replica".equalsIgnoreCase(System.getProperty(ReplicationServer.ROLE_PROPERTY, "").trim())) {
+            ReplicaApiServer.run(port);
+            return;
+        }
+
+        // Wire core engine; vehicle and audit loading dominate startup, so they are timed
+        long bootStart = System.nanoTime();
+        ChangeLog changeLog = new ChangeLog(DATA_DIR.resolve("changes.jsonl"));
+        long loadStart = System.nanoTime();
+        VehicleStorage vehicleStorage = new ChangeCapturingVehicleStorage(
+                VehicleStorages.fromConfig(DATA_DIR), changeLog);
+        long vehiclesMs = (System.nanoTime() - loadStart) / 1_000_000;
+        AuditLogService audit = new AuditLogService(DATA_DIR.resolve("audit-log.jsonl"));
+        ZoneRepository zoneRepo = new JsonZoneRepository(DATA_DIR.resolve("restricted-zones.json"));
+        PaymentRollups rollups = new PaymentRollups(DATA_DIR.resolve("payment-rollups.json"));
+        PaymentStorage paymentStorage = new AggregatingPaymentStorage(new ChangeCapturingPaymentStorage(
+                new JsonPaymentStorage(DATA_DIR.resolve("payments.json")), changeLog), rollups);
 
         ZoneService zones = new ZoneService(zoneRepo);
 
 
-        SmartMoveCentralController controller = new SmartMoveCentralController(vehicleStorage, audit, zones, paymentStorage);
+        PricingEngine pricing = TariffPricingEngine.load(DATA_DIR.resolve("tariffs.json"));
+        JsonLogUserStorage users = new JsonLogUserStorage(DATA_DIR.resolve("users.jsonl"));
+
+        // Vehicle, payment and audit writes commit as one journal record (null: -Dsmartmove.journal=false)
+        TransactionJournal journal = TransactionJournal.fromConfig(DATA_DIR.resolve("journal.jsonl"),
+                vehicleStorage, paymentStorage, audit);
+        if (journal != null && journal.replayedCount() > 0) {
+            System.out.println("Journal: replayed " + journal.replayedCount() + " uncheckpointed commit(s)");
+        }
+
+        SmartMoveCentralController controller = new SmartMoveCentralController(
+                vehicleStorage, audit, zones, paymentStorage, pricing, users, journal);
+
+        // Responses to recent POSTs by Idempotency-Key, so client retries are not re-executed
+        IdempotencyCache idempotency = IdempotencyCache.fromConfig();
 
-        HttpServer server = HttpServer.create(new InetSocketAddress(8080), 0);
+        // Partitioned deployment (see Cluster); null when running as a single node
+        Cluster cluster = Cluster.fromConfig("http://localhost:" + port);
+        ClusterGateway gateway = cluster == null ? null : new ClusterGateway(cluster, mapper);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
 
         // Register vehicle
-        server.createContext("/vehicles", ex -> {
+        server.createContext("/vehicles", idempotent(idempotency, routed(gateway, controller, true, traced(ex -> {
             cors(ex);
             if ("OPTIONS".equals(ex.getRequestMethod())) { ex.sendResponseHeaders(204, -1); return; }
             if (!"POST".equals(ex.getRequestMethod())) { json(ex, 405, Map.of("error","Use POST")); return; }
 
             VehicleCreateRequest req = readJson(ex, VehicleCreateRequest.class);
-            Vehicle v = new Vehicle(req.type, req.city);
+            Vehicle v = req.id == null ? new Vehicle(req.type, req.city) : new Vehicle(req.id, req.type, req.city);
             controller.registerVehicle(v);
             json(ex, 200, Map.of("id", v.getId()));
-        });
+        }))));
+
+        // Bulk state change for operations staff; one result per vehicle
+        server.createContext("/vehicles/batch", idempotent(idempotency, traced(ex -> {
+            cors(ex);
+            if ("OPTIONS".equals(ex.getRequestMethod())) { ex.sendResponseHeaders(204, -1); return; }
+            if (!"POST".equals(ex.getRequestMethod())) { json(ex, 405, Map.of("error","Use POST")); return; }
+
+            BatchStateRequest req = readJson(ex, BatchStateRequest.class);
+            if (req.vehicleIds == null || req.vehicleIds.isEmpty() || req.state == null) {
+                json(ex, 400, Map.of("error","vehicleIds and state are required")); return;
+            }
+            if (req.vehicleIds.size() > BATCH_MAX_VEHICLES) {
+                json(ex, 400, Map.of("error","At most " + BATCH_MAX_VEHICLES + " vehicles per batch")); return;
+            }
+            List<SmartMoveCentralController.TransitionResult> results =
+                    controller.changeStates(req.vehicleIds, req.state, req.reason == null ? "batch" : req.reason);
+            json(ex, 200, Map.of(
+                    "succeeded", results.stream().filter(SmartMoveCentralController.TransitionResult::isOk).count(),
+                    "results", results));
+        })));
+
+        // Users: POST to register, GET ?id=... or ?email=... to look up
+        server.createContext("/users", idempotent(idempotency, traced(ex -> {
+            cors(ex);
+            if ("OPTIONS".equals(ex.getRequestMethod())) { ex.sendResponseHeaders(204, -1); return; }
+            if (gateway != null) { usersNotClustered(ex); return; }
+            if ("POST".equals(ex.getRequestMethod())) {
+                UserCreateRequest req = readJson(ex, UserCreateRequest.class);
+                User u = new User(req.name, req.email, req.city);
+                users.save(u);
+                json(ex, 201, u);
+                return;
+            }
+            if (!"GET".equals(ex.getRequestMethod())) { json(ex, 405, Map.of("error","Use GET or POST")); return; }
+
+            Map<String, String> params = queryParams(ex);
+            Optional<User> found;
+            if (params.containsKey("id")) found = users.findById(params.get("id"));
+            else if (params.containsKey("email")) found = users.findByEmail(params.get("email"));
+            else { json(ex, 400, Map.of("error","Use ?id=... or ?email=...")); return; }
+            if (found.isEmpty()) { json(ex, 404, Map.of("error","Not found")); return; }
+
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("user", found.get());
+            body.put("activeRentals", controller.activeRentals(found.get().getId()));
+            json(ex, 200, body);
+        })));
 
-        // Get vehicle
-        server.createContext("/vehicle", ex -> {
+        // Get vehicle; the feed version is its ETag, and the JSON is serialized once per version
+        VehicleJsonCache vehicleJson = new VehicleJsonCache(controller.changeFeed(), controller::getVehicle, mapper);
+        server.createContext("/vehicle", routed(gateway, controller, false, traced(ex -> {
             cors(ex);
             if ("OPTIONS".equals(ex.getRequestMethod())) { ex.sendResponseHeaders(204, -1); return; }
             if (!"GET".equals(ex.getRequestMethod())) { json(ex, 405, Map.of("error","Use GET")); return; }
@@ -63,107 +200,537 @@ public class SmartMoveApiServer {
             String id = (query != null && query.startsWith("id=")) ? query.substring(3) : null;
             if (id == null || id.isBlank()) { json(ex, 400, Map.of("error","Missing id")); return; }
 
-            var opt = controller.getVehicle(id);
-            if (opt.isEmpty()) { json(ex, 404, Map.of("error","Not found")); return; }
-            json(ex, 200, opt.get());
-        });
+            // unchanged since the client's copy: 304 without loading or serializing anything
+            ex.getResponseHeaders().set("Cache-Control", "no-cache");
+            String etag = vehicleJson.notModified(id, ex.getRequestHeaders().getFirst("If-None-Match"));
+            if (etag != null) {
+                ex.getResponseHeaders().set("ETag", etag);
+                ex.sendResponseHeaders(304, -1);
+                ex.close();
+                return;
+            }
+            VehicleJsonCache.Entry cached = vehicleJson.get(id);
+            if (cached == null) { json(ex, 404, Map.of("error","Not found")); return; }
+            ex.getResponseHeaders().set("ETag", cached.etag);
+            rawJson(ex, 200, cached.json);
+        })));
 
         // Reserve
-        server.createContext("/reserve", ex -> {
+        server.createContext("/reserve", idempotent(idempotency, routed(gateway, controller, false, traced(ex -> {
             cors(ex);
             if ("OPTIONS".equals(ex.getRequestMethod())) { ex.sendResponseHeaders(204, -1); return; }
             if (!"POST".equals(ex.getRequestMethod())) { json(ex, 405, Map.of("error","Use POST")); return; }
 
             ActionRequest req = readJson(ex, ActionRequest.class);
-            controller.reserveVehicle(req.vehicleId, req.city);
+            if (gateway != null && req.userId != null) { usersNotClustered(ex); return; }
+            controller.reserveVehicle(req.vehicleId, req.city, req.userId);
             json(ex, 200, Map.of("ok", true));
-        });
+        }))));
 
         // Start rental
-        server.createContext("/start", ex -> {
+        server.createContext("/start", idempotent(idempotency, routed(gateway, controller, false, traced(ex -> {
             cors(ex);
             if ("OPTIONS".equals(ex.getRequestMethod())) { ex.sendResponseHeaders(204, -1); return; }
             if (!"POST".equals(ex.getRequestMethod())) { json(ex, 405, Map.of("error","Use POST")); return; }
 
             ActionRequest req = readJson(ex, ActionRequest.class);
-            controller.startRental(req.vehicleId, req.city);
+            if (gateway != null && req.userId != null) { usersNotClustered(ex); return; }
+            controller.startRental(req.vehicleId, req.city, req.userId);
             json(ex, 200, Map.of("ok", true));
-        });
+        }))));
 
         // End rental
-        server.createContext("/end", ex -> {
+        server.createContext("/end", idempotent(idempotency, routed(gateway, controller, false, traced(ex -> {
             cors(ex);
             if ("OPTIONS".equals(ex.getRequestMethod())) { ex.sendResponseHeaders(204, -1); return; }
             if (!"POST".equals(ex.getRequestMethod())) { json(ex, 405, Map.of("error","Use POST")); return; }
 
             EndRequest req = readJson(ex, EndRequest.class);
-            controller.endRental(req.vehicleId);
+            controller.endRental(req.vehicleId, req.userId);
             json(ex, 200, Map.of("ok", true));
-        });
+        }))));
 
         // Telemetry
-        server.createContext("/telemetry", ex -> {
+        server.createContext("/telemetry", idempotent(idempotency, routed(gateway, controller, false, traced(ex -> {
             cors(ex);
             if ("OPTIONS".equals(ex.getRequestMethod())) { ex.sendResponseHeaders(204, -1); return; }
             if (!"POST".equals(ex.getRequestMethod())) { json(ex, 405, Map.of("error","Use POST")); return; }
 
-            TelemetryRequest req = readJson(ex, TelemetryRequest.class);
-            TelemetryData t = new TelemetryData(req.vehicleId, req.latitude, req.longitude, req.batteryPercent, req.temperatureC);
-            t.setHelmetPresent(req.helmetPresent);
-            t.setMovementDetected(req.movementDetected);
-            t.setFault(req.fault);
-
-            controller.sendTelemetry(t);
-            json(ex, 200, Map.of("queued", true));
-        });
+            // decoded straight into a pooled holder; the telemetry worker returns it
+            TelemetryData t = controller.telemetryPool().acquire();
+            try (InputStream body = ex.getRequestBody()) {
+                TELEMETRY_DECODER.get().decode(body, t);
+                controller.sendTelemetry(t);
+            } catch (IOException | RuntimeException e) {
+                controller.telemetryPool().release(t);
+                throw e;
+            }
+            rawJson(ex, 200, QUEUED);
+        }))));
         
+        // Push stream of vehicle changes: /events?ids=a,b or /events?city=ROME
+        server.createContext("/events", new VehicleEventStream(controller, vehicleStorage::findAll, mapper,
+                VehicleEventStream.HEARTBEAT_SECONDS));
+
+        // Change-data-capture pull API: /changes?since=<offset>&limit=<n>
+        server.createContext("/changes", traced(ex -> {
+            cors(ex);
+            if ("OPTIONS".equals(ex.getRequestMethod())) { ex.sendResponseHeaders(204, -1); return; }
+            if (!"GET".equals(ex.getRequestMethod())) { json(ex, 405, Map.of("error","Use GET")); return; }
+
+            Map<String, String> params = queryParams(ex);
+            long since;
+            int limit;
+            try {
+                since = Long.parseLong(params.getOrDefault("since", "0"));
+                limit = Integer.parseInt(params.getOrDefault("limit", String.valueOf(CHANGES_DEFAULT_LIMIT)));
+            } catch (NumberFormatException e) {
+                json(ex, 400, Map.of("error","since/limit must be numbers")); return;
+            }
+            if (since < 0 || limit <= 0) { json(ex, 400, Map.of("error","since must be >= 0 and limit > 0")); return; }
+
+            List<ChangeRecord> records = changeLog.read(since, Math.min(limit, CHANGES_MAX_LIMIT));
+            long next = records.isEmpty() ? since : records.get(records.size() - 1).offset;
+            streamJson(ex, 200, Map.of(
+                    "records", records,
+                    "nextOffset", next,
+                    "lastOffset", changeLog.lastOffset()));
+        }));
+
+        // Revenue totals: /payments/summary?city=LONDON&type=MOPED&period=today
+        server.createContext("/payments/summary", traced(ex -> {
+            cors(ex);
+            if ("OPTIONS".equals(ex.getRequestMethod())) { ex.sendResponseHeaders(204, -1); return; }
+            if (!"GET".equals(ex.getRequestMethod())) { json(ex, 405, Map.of("error","Use GET")); return; }
+
+            Map<String, String> params = queryParams(ex);
+            City city = params.containsKey("city") ? City.valueOf(params.get("city").toUpperCase()) : null;
+            VehicleType type = params.containsKey("type") ? VehicleType.valueOf(params.get("type").toUpperCase()) : null;
+            String period = PaymentRollups.period(params.get("period"));
+
+            PaymentRollups.Totals t = rollups.totals(city, type, period);
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("city", city == null ? PaymentRollups.ANY : city.name());
+            body.put("vehicleType", type == null ? PaymentRollups.ANY : type.name());
+            body.put("period", period);
+            body.put("count", t.count);
+            body.put("baseFare", t.baseFareCents / 100.0);
+            body.put("congestionCharge", t.congestionCents / 100.0);
+            body.put("total", t.totalCents / 100.0);
+            json(ex, 200, body);
+        }));
+
+        // Cluster membership and node-to-node vehicle hand-over
+        server.createContext("/cluster", traced(ex -> {
+            cors(ex);
+            if ("OPTIONS".equals(ex.getRequestMethod())) { ex.sendResponseHeaders(204, -1); return; }
+            if (cluster == null) { json(ex, 404, Map.of("error","Not running as a cluster")); return; }
+            String path = ex.getRequestURI().getPath();
+
+            if (path.equals("/cluster") && "GET".equals(ex.getRequestMethod())) {
+                Map<String, Object> body = new LinkedHashMap<>();
+                body.put("self", cluster.selfId());
+                body.put("membership", cluster.membership());
+                body.put("vehicles", vehicleStorage.findAll().size());
+                json(ex, 200, body);
+            } else if (path.equals("/cluster/membership") && "POST".equals(ex.getRequestMethod())) {
+                boolean applied = cluster.update(readJson(ex, Membership.class));
+                json(ex, 200, Map.of("applied", applied, "epoch", cluster.membership().epoch));
+            } else if (path.equals("/cluster/transfer") && "POST".equals(ex.getRequestMethod())) {
+                Vehicle v = readJson(ex, Vehicle.class);
+                if (!cluster.isSelf(cluster.ownerOf(v.getId(), v.getCity()))) {
+                    // our membership is behind the sender's; it retries
+                    json(ex, 409, Map.of("error","Not the owner of " + v.getId() + " at epoch " + cluster.membership().epoch));
+                    return;
+                }
+                controller.acceptTransfer(v, ex.getRequestHeaders().getFirst(ClusterGateway.FORWARDED_HEADER));
+                json(ex, 200, Map.of("ok", true));
+            } else {
+                json(ex, 404, Map.of("error","Unknown cluster endpoint"));
+            }
+        }));
+
         server.createContext("/health", ex -> {
             cors(ex);
             if ("OPTIONS".equals(ex.getRequestMethod())) { ex.sendResponseHeaders(204, -1); return; }
-            json(ex, 200, Map.of("status", "ok"));
+            json(ex, 200, Map.of(
+                    "status", "ok",
+                    "telemetryQueueDepth", controller.telemetryQueueDepth(),
+                    "eventSubscribers", controller.changeFeed().subscriberCount()));
         });
 
+        server.createContext("/metrics", ex -> {
+            if (!"GET".equals(ex.getRequestMethod())) { json(ex, 405, Map.of("error","Use GET")); return; }
+            StringBuilder text = new StringBuilder(8192);
+            MetricsRegistry.global().writePrometheus(text);
+            send(ex, 200, "text/plain; version=0.0.4; charset=utf-8", text.toString().getBytes(StandardCharsets.UTF_8));
+        });
 
+        server.createContext("/debug/slow-requests", ex -> {
+            cors(ex);
+            if ("OPTIONS".equals(ex.getRequestMethod())) { ex.sendResponseHeaders(204, -1); return; }
+            if ("DELETE".equals(ex.getRequestMethod())) { Tracer.clearSlowRequests(); ex.sendResponseHeaders(204, -1); return; }
+            if (!"GET".equals(ex.getRequestMethod())) { json(ex, 405, Map.of("error","Use GET")); return; }
+            json(ex, 200, Map.of(
+                    "enabled", Tracer.isEnabled(),
+                    "thresholdMs", Tracer.slowThresholdMs(),
+                    "requests", Tracer.slowRequests()));
+        });
 
-        server.setExecutor(null);
+        // Event streams hold their exchange open, so handlers need their own threads
+        server.setExecutor(Executors.newCachedThreadPool());
         server.start();
-        System.out.println("SmartMove API running on http://localhost:8080");
-        Runtime.getRuntime().addShutdownHook(new Thread(controller::shutdown));
+        System.out.println("SmartMove API running on http://localhost:" + port);
+        Rebalancer rebalancer = cluster == null ? null : new Rebalancer(cluster, vehicleStorage, controller, gateway);
+        if (cluster != null) {
+            String seed = System.getProperty(Cluster.JOIN_PROPERTY);
+            if (seed != null && !seed.isBlank()) {
+                Membership joined = gateway.fetchMembership(seed).with(cluster.self());
+                cluster.update(joined);
+                gateway.broadcast(joined);
+            }
+            rebalancer.start();
+            System.out.println("Cluster node " + cluster.selfId() + " (" + cluster.membership().partitioning
+                    + " partitioning, " + cluster.membership().nodes.size() + " nodes, epoch "
+                    + cluster.membership().epoch + ")");
+        }
+        // Binary UDP/TCP telemetry for devices (see TelemetryFrameCodec); null unless a port is set
+        TelemetryGateway telemetryGateway = TelemetryGateway.fromConfig(controller, gateway);
+        if (telemetryGateway != null) {
+            telemetryGateway.start();
+            System.out.println("Telemetry gateway: udp " + telemetryGateway.udpPort() + ", tcp " + telemetryGateway.tcpPort());
+        }
+        // Streams changes and audit entries to read-only replicas (see ReplicaApiServer)
+        ReplicationServer replication = ReplicationServer.fromConfig(changeLog, audit, vehicleStorage);
+        if (replication != null) {
+            replication.start();
+            System.out.println("Replication: primary, replicas connect to port " + replication.port());
+        }
+        long startupMs = (System.nanoTime() - bootStart) / 1_000_000;
+        MetricsRegistry.global().gauge("smartmove_startup_millis", "Time from launch until serving requests", () -> startupMs);
+        System.out.println("Started in " + startupMs + " ms (vehicles " + vehiclesMs + " ms, audit log "
+                + audit.loadMillis() + " ms)");
+        System.out.println("Storage codec: " + StorageCodecs.fromConfig().name());
+        System.out.println(Tracer.isEnabled()
+                ? "Slow-request tracing: >= " + Tracer.slowThresholdMs() + " ms"
+                : "Slow-request tracing: off");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (replication != null) replication.close();
+            if (telemetryGateway != null) telemetryGateway.close();
+            if (rebalancer != null) rebalancer.shutdown();
+            controller.shutdown();
+            if (journal != null) journal.close();
+            rollups.flush();
+            changeLog.close();
+            users.close();
+            audit.checkpoint();
+        }));
     }
 
     // --- DTOs ---
-    public static class VehicleCreateRequest { public VehicleType type; public City city; }
-    public static class ActionRequest { public String vehicleId; public City city; }
-    public static class EndRequest { public String vehicleId; }
-    public static class TelemetryRequest {
-        public String vehicleId;
-        public double latitude;
-        public double longitude;
-        public int batteryPercent;
-        public double temperatureC;
-        public boolean helmetPresent;
-        public boolean movementDetected;
-        public boolean fault;
-    }
-
+    public static class VehicleCreateRequest { public String id; public VehicleType type; public City city; }
+    public static class UserCreateRequest { public String name; public String email; public String city; }
+    public static class ActionRequest { public String vehicleId; public City city; public String userId; }
+    public static class BatchStateRequest { public List<String> vehicleIds; public VehicleState state; public String reason; }
+    public static class EndRequest { public String vehicleId; public String userId; }
     // --- Helpers ---
-    private static <T> T readJson(HttpExchange ex, Class<T> clazz) throws IOException {
+    static <T> T readJson(HttpExchange ex, Class<T> clazz) throws IOException {
         try (InputStream is = ex.getRequestBody()) {
             return mapper.readValue(is, clazz);
         }
     }
 
-    private static void json(HttpExchange ex, int status, Object body) throws IOException {
-        byte[] bytes = mapper.writeValueAsBytes(body);
-        ex.getResponseHeaders().set("Content-Type", "application/json");
-        ex.sendResponseHeaders(status, bytes.length);
-        ex.getResponseBody().write(bytes);
-        ex.close();
+    static void json(HttpExchange ex, int status, Object body) throws IOException {
+        try (Span span = Tracer.span("http.writeJson")) {
+            rawJson(ex, status, mapper.writeValueAsBytes(body));
+        }
+    }
+
+    /** Sends an already encoded JSON body, e.g. a constant response. */
+    static void rawJson(HttpExchange ex, int status, byte[] body) throws IOException {
+        send(ex, status, "application/json", body);
+    }
+
+    /**
+     * Sends a complete body: gzipped (and chunked) if it is at least
+     * -Dsmartmove.http.gzipMinBytes and the client accepts gzip, as is otherwise.
+     */
+    static void send(HttpExchange ex, int status, String contentType, byte[] body) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", contentType);
+        if (GZIP_MIN_BYTES < 0 || body.length < GZIP_MIN_BYTES) {
+            ex.sendResponseHeaders(status, body.length);
+            ex.getResponseBody().write(body);
+            ex.close();
+            return;
+        }
+        ex.getResponseHeaders().add("Vary", "Accept-Encoding");
+        if (!acceptsGzip(ex)) {
+            ex.sendResponseHeaders(status, body.length);
+            ex.getResponseBody().write(body);
+            ex.close();
+            return;
+        }
+        try (Span span = Tracer.span("http.gzip"); OutputStream out = openGzip(ex, status)) {
+            out.write(body);
+        }
+    }
+
+    /** Writes a JSON body to the generator it is given. */
+    @FunctionalInterface
+    interface JsonBody {
+        void write(JsonGenerator g) throws IOException;
+    }
+
+    /** Streams {@code body} as JSON; see {@link #streamJson(HttpExchange, int, JsonBody)}. */
+    static void streamJson(HttpExchange ex, int status, Object body) throws IOException {
+        streamJson(ex, status, g -> g.writeObject(body));
+    }
+
+    /**
+     * For large results: Jackson's generator writes straight to the response,
+     * chunked and gzipped if the client accepts gzip, so neither the JSON nor
+     * its compressed form is ever held in memory whole. The status is sent
+     * first, so a failure part way through cuts the response short.
+     */
+    static void streamJson(HttpExchange ex, int status, JsonBody body) throws IOException {
+        try (Span span = Tracer.span("http.streamJson")) {
+            ex.getResponseHeaders().set("Content-Type", "application/json");
+            ex.getResponseHeaders().add("Vary", "Accept-Encoding");
+            OutputStream out;
+            if (GZIP_MIN_BYTES >= 0 && acceptsGzip(ex)) {
+                out = openGzip(ex, status);
+            } else {
+                ex.sendResponseHeaders(status, 0);
+                out = ex.getResponseBody();
+            }
+            // closing the generator closes the stream, which completes the exchange
+            try (JsonGenerator g = mapper.getFactory().createGenerator(out)) {
+                body.write(g);
+            }
+        }
+    }
+
+    private static OutputStream openGzip(HttpExchange ex, int status) throws IOException {
+        ex.getResponseHeaders().set("Content-Encoding", "gzip");
+        ex.sendResponseHeaders(status, 0);
+        return new GZIPOutputStream(ex.getResponseBody(), GZIP_BUFFER_BYTES);
+    }
+
+    /** Whether Accept-Encoding allows gzip (or any encoding) with a non-zero q. */
+    static boolean acceptsGzip(HttpExchange ex) {
+        if (ex.getAttribute(IDENTITY_ENCODING) != null) return false;
+        List<String> headers = ex.getRequestHeaders().get("Accept-Encoding");
+        if (headers == null) return false;
+        for (String header : headers) {
+            for (String coding : header.split(",")) {
+                String[] parts = coding.split(";");
+                String name = parts[0].trim();
+                if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) continue;
+                boolean refused = false;
+                for (int i = 1; i < parts.length; i++) {
+                    String param = parts[i].trim();
+                    if (param.startsWith("q=")) {
+                        try {
+                            refused = Double.parseDouble(param.substring(2)) <= 0;
+                        } catch (NumberFormatException e) {
+                            refused = true;
+                        }
+                    }
+                }
+                if (!refused) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wraps a handler in a request trace; slow ones show up at /debug/slow-requests.
+     * Rule violations from the controller are answered with 400/409 instead of
+     * dropping the connection.
+     */
+    static HttpHandler traced(HttpHandler handler) {
+        return ex -> {
+            Trace trace = Tracer.begin(ex.getRequestMethod() + " " + ex.getRequestURI().getPath());
+            try {
+                handler.handle(ex);
+                Tracer.finish(trace, ex.getResponseCode());
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                int status = e instanceof IllegalStateException ? 409 : 400;
+                Tracer.finish(trace, status, e);
+                if (ex.getResponseCode() != -1) throw e;
+                json(ex, status, Map.of("error", String.valueOf(e.getMessage())));
+            } catch (IOException | RuntimeException e) {
+                Tracer.finish(trace, 500, e);
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * In a partitioned deployment, sends requests for a vehicle owned by
+     * another node there (by vehicleId/id in the body, or ?id=). Requests
+     * already forwarded by a node are always handled here. With
+     * {@code assignsId} (registration), a new vehicle gets its id before
+     * routing so the hash owner can be computed, and its body city is where
+     * it will live. For an existing vehicle a body city is where the rental
+     * is going, not the partition holding it, so under city partitioning
+     * the owner is whichever node stores the vehicle.
+     */
+    private static HttpHandler routed(ClusterGateway gateway, SmartMoveCentralController controller,
+                                      boolean assignsId, HttpHandler handler) {
+        if (gateway == null) return handler;
+        Cluster cluster = gateway.cluster();
+        return ex -> {
+            if ("OPTIONS".equals(ex.getRequestMethod())
+                    || ex.getRequestHeaders().containsKey(ClusterGateway.FORWARDED_HEADER)) {
+                handler.handle(ex);
+                return;
+            }
+            byte[] body;
+            try (InputStream is = ex.getRequestBody()) {
+                body = is.readAllBytes();
+            }
+
+            String vehicleId = null;
+            City city = null;
+            if ("GET".equals(ex.getRequestMethod())) {
+                vehicleId = queryParams(ex).get("id");
+            } else if (body.length > 0) {
+                try {
+                    JsonNode n = mapper.readTree(body);
+                    if (n instanceof ObjectNode obj) {
+                        if (assignsId && !obj.hasNonNull("id")) {
+                            obj.put("id", UUID.randomUUID().toString());
+                            body = mapper.writeValueAsBytes(obj);
+                        }
+                        vehicleId = obj.hasNonNull("vehicleId") ? obj.get("vehicleId").asText()
+                                : obj.hasNonNull("id") ? obj.get("id").asText() : null;
+                        if (obj.hasNonNull("city")) city = City.valueOf(obj.get("city").asText().toUpperCase());
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    // malformed: let the local handler reject it
+                }
+            }
+
+            String owner = vehicleId == null
+                    ? cluster.selfId()
+                    : cluster.ownerOf(vehicleId, assignsId ? city : null);
+            if (owner == null) {
+                // city partitioning: whoever stores it
+                ClusterNode found = controller.getVehicle(vehicleId).isPresent() ? null : gateway.locateCached(vehicleId);
+                owner = found == null ? cluster.selfId() : found.id;
+            }
+
+            if (cluster.isSelf(owner)) {
+                ex.setStreams(new ByteArrayInputStream(body), null);
+                handler.handle(ex);
+            } else {
+                cors(ex);
+                gateway.forward(ex, cluster.membership().node(owner), body);
+            }
+        };
+    }
+
+    /**
+     * Users and the per-user rental count are kept by the node that registered
+     * the user, which is not the node owning a vehicle, so a cluster only
+     * serves anonymous rentals (see Cluster).
+     */
+    private static void usersNotClustered(HttpExchange ex) throws IOException {
+        json(ex, 501, Map.of("error", "User accounts are not supported in a cluster; rent without a userId"));
+    }
+
+    /**
+     * POSTs carrying an Idempotency-Key are executed once: a retry gets the
+     * stored status and body back (marked Idempotent-Replayed) without reaching
+     * the handler. 5xx results are not stored, so those can be retried.
+     */
+    private static HttpHandler idempotent(IdempotencyCache cache, HttpHandler handler) {
+        return ex -> {
+            String key = ex.getRequestHeaders().getFirst("Idempotency-Key");
+            if (key == null || key.isBlank() || !"POST".equals(ex.getRequestMethod())) {
+                handler.handle(ex);
+                return;
+            }
+            byte[] request;
+            try (InputStream is = ex.getRequestBody()) {
+                request = is.readAllBytes();
+            }
+            String scope = ex.getRequestURI().getPath();
+
+            IdempotencyCache.Outcome outcome = cache.begin(scope, key, IdempotencyCache.requestHash(request));
+            IdempotencyCache.Response replay = outcome.response;
+            if (outcome.kind == IdempotencyCache.Kind.IN_PROGRESS) {
+                replay = cache.await(scope, key, IDEMPOTENCY_WAIT_MS);
+                if (replay == null) {
+                    cors(ex);
+                    json(ex, 409, Map.of("error", "A request with this Idempotency-Key is still in progress"));
+                    return;
+                }
+            }
+            if (outcome.kind == IdempotencyCache.Kind.MISMATCH) {
+                cors(ex);
+                json(ex, 422, Map.of("error", "Idempotency-Key was already used for a different request"));
+                return;
+            }
+            if (replay != null) {
+                cors(ex);
+                ex.getResponseHeaders().set("Content-Type", "application/json");
+                ex.getResponseHeaders().set("Idempotent-Replayed", "true");
+                ex.sendResponseHeaders(replay.status, replay.body.length == 0 ? -1 : replay.body.length);
+                if (replay.body.length > 0) ex.getResponseBody().write(replay.body);
+                ex.close();
+                return;
+            }
+
+            // First time: run it, keeping a copy of what is sent (uncompressed, as replays are)
+            ex.setAttribute(IDENTITY_ENCODING, Boolean.TRUE);
+            ByteArrayOutputStream captured = new ByteArrayOutputStream(64);
+            OutputStream out = ex.getResponseBody();
+            ex.setStreams(new ByteArrayInputStream(request), new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    captured.write(b);
+                    out.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    captured.write(b, off, len);
+                    out.write(b, off, len);
+                }
+            });
+            boolean stored = false;
+            try {
+                handler.handle(ex);
+                int status = ex.getResponseCode();
+                if (status > 0 && status < 500) {
+                    cache.complete(scope, key, status, captured.toByteArray());
+                    stored = true;
+                }
+            } finally {
+                if (!stored) cache.abandon(scope, key);
+            }
+        };
+    }
+
+    static Map<String, String> queryParams(HttpExchange ex) {
+        Map<String, String> params = new HashMap<>();
+        String query = ex.getRequestURI().getRawQuery();
+        if (query == null || query.isBlank()) return params;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                       URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return params;
     }
 
-    private static void cors(HttpExchange ex) {
+    static void cors(HttpExchange ex) {
         ex.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
-        ex.getResponseHeaders().set("Access-Control-Allow-Methods", "GET,POST,OPTIONS");
-        ex.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type");
+        ex.getResponseHeaders().set("Access-Control-Allow-Methods", "GET,POST,DELETE,OPTIONS");
+        ex.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type,Idempotency-Key,If-None-Match");
+        ex.getResponseHeaders().set("Access-Control-Expose-Headers", "ETag");
     }
 }
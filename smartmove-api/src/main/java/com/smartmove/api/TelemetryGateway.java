@@ -0,0 +1,310 @@
+package com.smartmove.api;
+
+import com.smartmove.cluster.Cluster;
+import com.smartmove.controller.SmartMoveCentralController;
+import com.smartmove.metrics.Counter;
+import com.smartmove.metrics.MetricsRegistry;
+import com.smartmove.telemetry.TelemetryData;
+import com.smartmove.telemetry.TelemetryFrameCodec;
+import com.smartmove.telemetry.TelemetryPool;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Binary telemetry ingestion for devices: TelemetryFrameCodec frames over
+ * UDP (one or more frames per datagram) and over TCP (each frame preceded
+ * by its length as a u16), next to the HTTP+JSON /telemetry endpoint.
+ *
+ * One selector thread serves both. Frames are decoded in place from direct
+ * buffers into pooled holders and handed to the controller's telemetry
+ * lanes, so the path from socket to queue does not copy or allocate beyond
+ * what NIO itself does (DatagramChannel.receive returns a sender address).
+ * A malformed datagram is dropped; a malformed stream is closed.
+ *
+ * In a partitioned deployment samples for vehicles owned elsewhere are
+ * posted to the owner as JSON without waiting. Under city partitioning a
+ * sample carries no city, so one for a vehicle this node does not store is
+ * dropped and counted: devices should send to the node for their city.
+ *
+ * Enabled with -Dsmartmove.gateway.udpPort and/or -Dsmartmove.gateway.tcpPort,
+ * bound to all interfaces unless -Dsmartmove.gateway.bind says otherwise.
+ */
+final class TelemetryGateway implements AutoCloseable {
+
+    public static final String UDP_PORT_PROPERTY = "smartmove.gateway.udpPort";
+    public static final String TCP_PORT_PROPERTY = "smartmove.gateway.tcpPort";
+    public static final String BIND_PROPERTY = "smartmove.gateway.bind";
+
+    static final int TCP_BUFFER_BYTES = 64 * 1024;
+    static final int UDP_RECEIVE_BUFFER_BYTES = 4 * 1024 * 1024;
+    // Datagrams drained per wake-up, so a UDP flood cannot starve TCP connections
+    static final int UDP_BATCH = 1024;
+    private static final int FRAME_LENGTH_BYTES = 2;
+
+    private final SmartMoveCentralController controller;
+    private final TelemetryPool pool;
+    private final ClusterGateway cluster;   // null: single node
+    private final Selector selector;
+    private final DatagramChannel udp;      // null: disabled
+    private final ServerSocketChannel tcp;  // null: disabled
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // Selector thread only
+    private final TelemetryFrameCodec codec = new TelemetryFrameCodec();
+    private final ByteBuffer datagram = ByteBuffer.allocateDirect(65_536);
+    private TelemetryData next;   // holder the next frame is decoded into
+    private final Consumer<SelectionKey> onReady = this::ready;
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final Counter udpFrames = frames("udp");
+    private final Counter tcpFrames = frames("tcp");
+    private final Counter udpRejected = rejected("udp");
+    private final Counter tcpRejected = rejected("tcp");
+    private final Counter forwarded = MetricsRegistry.global().counter(
+            "smartmove_gateway_forwarded_total", "Binary telemetry frames posted on to the owning node");
+    private final Counter unrouted = MetricsRegistry.global().counter(
+            "smartmove_gateway_unrouted_total", "Binary telemetry frames dropped: owner unknown without a city");
+    private final Counter failures = MetricsRegistry.global().counter(
+            "smartmove_gateway_failures_total", "Datagrams or streams dropped because handing a frame on threw");
+
+    /**
+     * Opens the listeners; a port of -1 disables that transport, 0 picks a free one.
+     * @param cluster null for a single node
+     */
+    TelemetryGateway(InetSocketAddress bind, int udpPort, int tcpPort,
+                     SmartMoveCentralController controller, ClusterGateway cluster) {
+        this.controller = controller;
+        this.pool = controller.telemetryPool();
+        this.cluster = cluster;
+        try {
+            this.selector = Selector.open();
+            if (udpPort >= 0) {
+                udp = DatagramChannel.open();
+                udp.setOption(StandardSocketOptions.SO_RCVBUF, UDP_RECEIVE_BUFFER_BYTES);
+                udp.bind(new InetSocketAddress(bind.getAddress(), udpPort));
+                udp.configureBlocking(false);
+                udp.register(selector, SelectionKey.OP_READ);
+            } else {
+                udp = null;
+            }
+            if (tcpPort >= 0) {
+                tcp = ServerSocketChannel.open();
+                tcp.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                tcp.bind(new InetSocketAddress(bind.getAddress(), tcpPort));
+                tcp.configureBlocking(false);
+                tcp.register(selector, SelectionKey.OP_ACCEPT);
+            } else {
+                tcp = null;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open telemetry gateway on " + bind.getAddress(), e);
+        }
+        this.thread = new Thread(this::run, "telemetry-gateway");
+        thread.setDaemon(true);
+        MetricsRegistry.global().gauge("smartmove_gateway_connections",
+                "Open TCP telemetry connections", connections::get);
+    }
+
+    /** Gateway from system properties, or null if neither port is configured. */
+    static TelemetryGateway fromConfig(SmartMoveCentralController controller, ClusterGateway cluster) {
+        int udpPort = Integer.getInteger(UDP_PORT_PROPERTY, -1);
+        int tcpPort = Integer.getInteger(TCP_PORT_PROPERTY, -1);
+        if (udpPort < 0 && tcpPort < 0) return null;
+        String bind = System.getProperty(BIND_PROPERTY);
+        InetSocketAddress address = bind == null || bind.isBlank()
+                ? new InetSocketAddress(0)
+                : new InetSocketAddress(bind.trim(), 0);
+        return new TelemetryGateway(address, udpPort, tcpPort, controller, cluster);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /** Bound UDP port, or -1 if disabled. */
+    public int udpPort() {
+        return udp == null ? -1 : udp.socket().getLocalPort();
+    }
+
+    /** Bound TCP port, or -1 if disabled. */
+    public int tcpPort() {
+        return tcp == null ? -1 : tcp.socket().getLocalPort();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            for (SelectionKey key : selector.keys()) key.channel().close();
+            selector.close();
+        } catch (IOException | ClosedSelectorException ignored) {
+        }
+    }
+
+    // ---- Selector loop ----
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select(onReady);
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                if (running) System.err.println("Telemetry gateway: select failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void ready(SelectionKey key) {
+        try {
+            if (!key.isValid()) return;
+            if (key.isAcceptable()) accept();
+            else if (key.channel() == udp) receive();
+            else read(key);
+        } catch (IOException e) {
+            if (key.channel() instanceof SocketChannel) disconnect(key);   // device went away
+            else if (running) System.err.println("Telemetry gateway: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // e.g. a store or peer failing under routing: drop this datagram batch or
+            // stream, but never the selector thread, which would stop all ingestion
+            failures.inc();
+            pool.release(next);
+            next = null;
+            if (key.channel() instanceof SocketChannel && key.isValid()) disconnect(key);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch;
+        while ((ch = tcp.accept()) != null) {
+            ch.configureBlocking(false);
+            ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            ch.register(selector, SelectionKey.OP_READ, ByteBuffer.allocateDirect(TCP_BUFFER_BYTES));
+            connections.incrementAndGet();
+        }
+    }
+
+    private void disconnect(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+        }
+        connections.decrementAndGet();
+    }
+
+    // ---- UDP: each datagram holds whole frames, back to back ----
+
+    private void receive() throws IOException {
+        for (int i = 0; i < UDP_BATCH && udp.receive(datagram.clear()) != null; i++) {
+            datagram.flip();
+            try {
+                while (datagram.hasRemaining()) {
+                    if (!decode(datagram)) throw new IllegalArgumentException("Truncated telemetry frame");
+                    deliver(udpFrames);
+                }
+            } catch (IllegalArgumentException e) {
+                udpRejected.inc();   // frames before the bad one were delivered
+            }
+        }
+    }
+
+    // ---- TCP: u16 length, then the frame ----
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel ch = (SocketChannel) key.channel();
+        ByteBuffer buf = (ByteBuffer) key.attachment();
+        if (ch.read(buf) < 0) {
+            disconnect(key);
+            return;
+        }
+        buf.flip();
+        try {
+            while (buf.remaining() >= FRAME_LENGTH_BYTES) {
+                int start = buf.position();
+                int length = buf.getShort(start) & 0xFFFF;
+                if (length < TelemetryFrameCodec.HEADER_BYTES || length > TelemetryFrameCodec.MAX_FRAME_BYTES) {
+                    throw new IllegalArgumentException("Bad telemetry frame length " + length);
+                }
+                int end = start + FRAME_LENGTH_BYTES + length;
+                if (buf.limit() < end) break;   // rest of the frame not here yet
+
+                int limit = buf.limit();
+                buf.position(start + FRAME_LENGTH_BYTES).limit(end);
+                boolean whole = decode(buf) && buf.position() == end;
+                buf.limit(limit);
+                if (!whole) throw new IllegalArgumentException("Telemetry frame length does not match its content");
+                deliver(tcpFrames);
+            }
+            buf.compact();
+        } catch (IllegalArgumentException e) {
+            tcpRejected.inc();
+            disconnect(key);
+        }
+    }
+
+    // ---- Into the telemetry pipeline ----
+
+    private boolean decode(ByteBuffer in) {
+        if (next == null) next = pool.acquire();
+        return codec.decode(in, next);
+    }
+
+    private void deliver(Counter frames) {
+        TelemetryData t = next;
+        next = null;
+        frames.inc();
+        boolean queued = false;
+        try {
+            if (cluster == null || routeLocally(t)) {
+                controller.sendTelemetry(t);
+                queued = true;
+            }
+        } finally {
+            if (!queued) pool.release(t);
+        }
+    }
+
+    /** True if this node handles the sample; otherwise it was posted on (or dropped) here. */
+    private boolean routeLocally(TelemetryData t) {
+        Cluster c = cluster.cluster();
+        String owner = c.ownerOf(t.getVehicleId(), null);
+        if (owner == null) {
+            if (controller.getVehicle(t.getVehicleId()).isPresent()) return true;
+            unrouted.inc();
+            return false;
+        }
+        if (c.isSelf(owner)) return true;
+        cluster.forwardTelemetry(c.membership().node(owner), t.copy());
+        forwarded.inc();
+        return false;
+    }
+
+    private static Counter frames(String transport) {
+        return MetricsRegistry.global().counter(
+                "smartmove_gateway_frames_total", "Binary telemetry frames decoded", "transport", transport);
+    }
+
+    private static Counter rejected(String transport) {
+        return MetricsRegistry.global().counter(
+                "smartmove_gateway_rejected_total", "Malformed binary telemetry datagrams or streams", "transport", transport);
+    }
+}
@@ -0,0 +1,148 @@
+package com.smartmove.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartmove.controller.SmartMoveCentralController;
+import com.smartmove.domain.City;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.feed.VehicleChangeEvent;
+import com.smartmove.feed.VehicleChangeFeed;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static com.smartmove.api.SmartMoveApiServer.cors;
+import static com.smartmove.api.SmartMoveApiServer.json;
+import static com.smartmove.api.SmartMoveApiServer.queryParams;
+
+/**
+ * Push stream of vehicle changes as Server-Sent Events:
+ * GET /events?ids=a,b or /events?city=ROME.
+ *
+ * The stream opens with the current state of every matching vehicle, then
+ * carries each change, with a comment line as heartbeat. The subscription
+ * is taken before the current state is read, so no change can fall between
+ * the two; a change already covered by the opening state is not repeated.
+ * Each vehicle's version is read before the vehicle itself, so an event is
+ * never labelled with a version newer than its payload.
+ */
+final class VehicleEventStream implements HttpHandler {
+
+    // Heartbeat keeps proxies from closing idle streams; the queue bounds a slow client
+    static final long HEARTBEAT_SECONDS = 15;
+    static final int QUEUE_CAPACITY = 256;
+
+    private final SmartMoveCentralController controller;
+    private final Supplier<List<Vehicle>> fleet;
+    private final ObjectMapper mapper;
+    private final long heartbeatSeconds;
+
+    /** @param fleet every vehicle stored here, for a city's opening state */
+    VehicleEventStream(SmartMoveCentralController controller, Supplier<List<Vehicle>> fleet,
+                       ObjectMapper mapper, long heartbeatSeconds) {
+        this.controller = controller;
+        this.fleet = fleet;
+        this.mapper = mapper;
+        this.heartbeatSeconds = heartbeatSeconds;
+    }
+
+    @Override
+    public void handle(HttpExchange ex) throws IOException {
+        cors(ex);
+        if ("OPTIONS".equals(ex.getRequestMethod())) { ex.sendResponseHeaders(204, -1); return; }
+        if (!"GET".equals(ex.getRequestMethod())) { json(ex, 405, Map.of("error","Use GET")); return; }
+
+        Map<String, String> params = queryParams(ex);
+        Predicate<Vehicle> filter;
+        Supplier<Set<String>> initialIds;
+        if (params.containsKey("city")) {
+            City city;
+            try { city = City.valueOf(params.get("city").trim().toUpperCase()); }
+            catch (IllegalArgumentException e) { json(ex, 400, Map.of("error","Unknown city")); return; }
+            filter = VehicleChangeFeed.forCity(city);
+            initialIds = () -> {
+                Set<String> ids = new LinkedHashSet<>();
+                for (Vehicle v : fleet.get()) if (v.getCity() == city) ids.add(v.getId());
+                return ids;
+            };
+        } else if (params.containsKey("ids")) {
+            Set<String> ids = new LinkedHashSet<>(Arrays.asList(params.get("ids").split(",")));
+            ids.remove("");
+            if (ids.isEmpty()) { json(ex, 400, Map.of("error","Missing ids")); return; }
+            filter = VehicleChangeFeed.forVehicles(ids);
+            initialIds = () -> ids;
+        } else {
+            json(ex, 400, Map.of("error","Use ?ids=... or ?city=...")); return;
+        }
+
+        stream(ex, filter, initialIds);
+    }
+
+    private void stream(HttpExchange ex, Predicate<Vehicle> filter, Supplier<Set<String>> initialIds) throws IOException {
+        VehicleChangeFeed feed = controller.changeFeed();
+        BlockingQueue<VehicleChangeEvent> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        VehicleChangeFeed.Subscription sub = feed.subscribe(filter, e -> {
+            // Slow client: drop the oldest pending change rather than block the writer
+            while (!queue.offer(e)) queue.poll();
+        });
+
+        ex.getResponseHeaders().set("Content-Type", "text/event-stream");
+        ex.getResponseHeaders().set("Cache-Control", "no-cache");
+        ex.sendResponseHeaders(200, 0);
+
+        try (sub; OutputStream out = ex.getResponseBody()) {
+            // newest version sent per vehicle; queued changes up to it are already shown
+            Map<String, Long> sent = new HashMap<>();
+            for (String id : initialIds.get()) {
+                long version = feed.version(id);
+                Optional<Vehicle> v = controller.getVehicle(id);
+                if (v.isEmpty() || !filter.test(v.get())) continue;
+                writeEvent(out, version, v.get());
+                sent.put(id, version);
+            }
+            out.flush();
+
+            while (!Thread.currentThread().isInterrupted()) {
+                VehicleChangeEvent e = queue.poll(heartbeatSeconds, TimeUnit.SECONDS);
+                if (e == null) {
+                    out.write(": ping\n\n".getBytes(StandardCharsets.UTF_8));
+                } else {
+                    Long shown = sent.get(e.getVehicleId());
+                    if (shown != null) {
+                        if (e.getVersion() <= shown) continue;
+                        sent.remove(e.getVehicleId());   // later changes are all newer
+                    }
+                    writeEvent(out, e.getVersion(), e.getVehicle());
+                }
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ignored) {
+            // client went away
+        } finally {
+            ex.close();
+        }
+    }
+
+    private void writeEvent(OutputStream out, long version, Vehicle v) throws IOException {
+        String frame = "id: " + v.getId() + ":" + version + "\n"
+                + "event: vehicle\n"
+                + "data: " + mapper.writeValueAsString(v) + "\n\n";
+        out.write(frame.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,77 @@
+package com.smartmove.api;
+
+import com.smartmove.audit.AuditEvent;
+import com.smartmove.audit.AuditLogEntry;
+import com.smartmove.audit.AuditLogService;
+import com.smartmove.cdc.ChangeCapturingVehicleStorage;
+import com.smartmove.cdc.ChangeLog;
+import com.smartmove.replication.ReplicaClient;
+import com.smartmove.replication.ReplicationServer;
+import com.smartmove.storage.JsonVehicleStorage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicaApiServerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void replicaRefusesThePrimarysDataDirectory() throws Exception {
+        Path primary = tempDir.resolve("data");
+        Files.createDirectories(primary);
+        Files.createSymbolicLink(tempDir.resolve("link"), primary);
+
+        assertThrows(IllegalStateException.class, () -> ReplicaApiServer.auditLog(primary, primary));
+        assertThrows(IllegalStateException.class,
+                () -> ReplicaApiServer.auditLog(tempDir.resolve("other/../data"), primary));
+        new AuditLogService(primary.resolve(ReplicaApiServer.AUDIT_LOG)).append(AuditLogEntry.of(AuditEvent.TELEMETRY, "v1"));
+        assertThrows(IllegalStateException.class, () -> ReplicaApiServer.auditLog(tempDir.resolve("link"), primary));
+
+        assertEquals(tempDir.resolve("data-replica/" + ReplicaApiServer.AUDIT_LOG),
+                ReplicaApiServer.auditLog(tempDir.resolve("data-replica"), primary));
+    }
+
+    @Test
+    void primaryAndReplicaSideBySideKeepSeparateAuditLogs() throws Exception {
+        Path primaryDir = tempDir.resolve("data");
+        AuditLogService primaryAudit = new AuditLogService(primaryDir.resolve(ReplicaApiServer.AUDIT_LOG));
+        ChangeLog changeLog = new ChangeLog(primaryDir.resolve("changes.jsonl"));
+        ReplicationServer server = new ReplicationServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                changeLog, primaryAudit, new ChangeCapturingVehicleStorage(
+                        new JsonVehicleStorage(primaryDir.resolve("vehicles.json")), changeLog));
+        server.start();
+        AuditLogService replicaAudit = new AuditLogService(
+                ReplicaApiServer.auditLog(tempDir.resolve("data-replica"), primaryDir));
+        ReplicaClient replica = new ReplicaClient(
+                InetSocketAddress.createUnresolved("localhost", server.port()), replicaAudit, 2000);
+        try {
+            replica.start();
+            for (int i = 0; i < 20; i++) primaryAudit.append(AuditLogEntry.of(AuditEvent.TELEMETRY, "v" + i));
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (replica.auditId() != 20) {
+                assertTrue(System.currentTimeMillis() < deadline, "replica did not catch up");
+                Thread.sleep(10);
+            }
+        } finally {
+            replica.close();
+            server.close();
+            changeLog.close();
+        }
+
+        // the primary's log holds each entry once, and still opens (its chain verifies)
+        List<AuditLogEntry> entries = new AuditLogService(primaryDir.resolve(ReplicaApiServer.AUDIT_LOG)).read(0, 100);
+        assertEquals(20, entries.size());
+        for (int i = 0; i < entries.size(); i++) assertEquals(i + 1, entries.get(i).id);
+        assertEquals(20, new AuditLogService(tempDir.resolve("data-replica/" + ReplicaApiServer.AUDIT_LOG)).lastId());
+    }
+}
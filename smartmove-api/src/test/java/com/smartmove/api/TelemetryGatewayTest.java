@@ -0,0 +1,156 @@
+package com.smartmove.api;
+
+import com.smartmove.controller.SmartMoveCentralController;
+import com.smartmove.telemetry.TelemetryData;
+import com.smartmove.telemetry.TelemetryFrameCodec;
+import com.smartmove.telemetry.TelemetryPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class TelemetryGatewayTest {
+
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+
+    private final SmartMoveCentralController controller = mock(SmartMoveCentralController.class);
+    private final TelemetryPool pool = new TelemetryPool(16);
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    private TelemetryGateway gateway;
+
+    @BeforeEach
+    void setUp() {
+        when(controller.telemetryPool()).thenReturn(pool);
+        // stands in for the telemetry worker: note the sample, hand the holder back
+        doAnswer(inv -> {
+            TelemetryData t = inv.getArgument(0);
+            if (t.getVehicleId().equals("boom")) throw new IllegalStateException("store unavailable");
+            received.add(t.getVehicleId());
+            pool.release(t);
+            return null;
+        }).when(controller).sendTelemetry(any());
+        gateway = new TelemetryGateway(new InetSocketAddress(LOOPBACK, 0), 0, 0, controller, null);
+        gateway.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        gateway.close();
+    }
+
+    @Test
+    void tcpFramesSplitAcrossReadsAreReassembled_andABadLengthClosesTheStream() throws Exception {
+        byte[] stream = tcpFrames("a", "b", "c");
+        try (Socket s = connect()) {
+            OutputStream out = s.getOutputStream();
+            out.write(stream, 0, 1);    // half a length prefix
+            out.flush();
+            Thread.sleep(50);
+            out.write(stream, 1, 10);   // rest of the prefix, part of the first frame
+            out.flush();
+            Thread.sleep(50);
+            for (int i = 11; i < stream.length; i++) {
+                out.write(stream[i]);
+                out.flush();
+            }
+            assertEquals("a", next());
+            assertEquals("b", next());
+            assertEquals("c", next());
+
+            out.write(new byte[]{(byte) 0xFF, (byte) 0xFF});
+            out.flush();
+            assertEquals(-1, s.getInputStream().read());
+        }
+        try (Socket s = connect()) {
+            s.getOutputStream().write(tcpFrames("d"));
+            assertEquals("d", next());
+        }
+    }
+
+    @Test
+    void udpDatagramCarriesSeveralFrames() throws Exception {
+        try (DatagramSocket s = new DatagramSocket()) {
+            send(s, udpFrames("x", "y", "z"));
+            assertEquals("x", next());
+            assertEquals("y", next());
+            assertEquals("z", next());
+
+            byte[] truncated = udpFrames("p", "q");
+            send(s, Arrays.copyOf(truncated, truncated.length - 1));
+            assertEquals("p", next());
+            send(s, udpFrames("r"));
+            assertEquals("r", next());
+        }
+    }
+
+    @Test
+    void failureHandingAFrameOnDropsOnlyThatInput_andReleasesTheHolder() throws Exception {
+        try (DatagramSocket s = new DatagramSocket()) {
+            send(s, udpFrames("boom", "lost"));
+            send(s, udpFrames("after"));
+            assertEquals("after", next());
+        }
+        try (Socket s = connect()) {
+            s.getOutputStream().write(tcpFrames("boom", "lost"));
+            assertEquals(-1, s.getInputStream().read());
+        }
+        try (Socket s = connect()) {
+            s.getOutputStream().write(tcpFrames("still"));
+            assertEquals("still", next());
+        }
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+        // one holder in circulation at a time, and every one came back
+        assertEquals(1, pool.available());
+    }
+
+    private String next() throws InterruptedException {
+        String id = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(id, "no frame arrived");
+        return id;
+    }
+
+    private Socket connect() throws IOException {
+        Socket s = new Socket(LOOPBACK, gateway.tcpPort());
+        s.setSoTimeout(5000);
+        return s;
+    }
+
+    private void send(DatagramSocket s, byte[] data) throws IOException {
+        s.send(new DatagramPacket(data, data.length, LOOPBACK, gateway.udpPort()));
+    }
+
+    private static byte[] udpFrames(String... ids) {
+        ByteBuffer buf = ByteBuffer.allocate(ids.length * TelemetryFrameCodec.MAX_FRAME_BYTES);
+        for (String id : ids) TelemetryFrameCodec.encode(sample(id), buf);
+        return Arrays.copyOf(buf.array(), buf.position());
+    }
+
+    private static byte[] tcpFrames(String... ids) {
+        ByteBuffer buf = ByteBuffer.allocate(ids.length * (2 + TelemetryFrameCodec.MAX_FRAME_BYTES));
+        for (String id : ids) {
+            buf.putShort((short) TelemetryFrameCodec.frameBytes(sample(id)));
+            TelemetryFrameCodec.encode(sample(id), buf);
+        }
+        return Arrays.copyOf(buf.array(), buf.position());
+    }
+
+    private static TelemetryData sample(String id) {
+        return new TelemetryData(id, 45.46, 9.19, 80, 20.0);
+    }
+}
@@ -0,0 +1,168 @@
+package com.smartmove.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartmove.audit.AuditLogService;
+import com.smartmove.controller.SmartMoveCentralController;
+import com.smartmove.domain.City;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.domain.VehicleType;
+import com.smartmove.storage.JsonVehicleStorage;
+import com.smartmove.storage.PaymentStorage;
+import com.smartmove.zones.ZoneService;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class VehicleEventStreamTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @TempDir
+    Path tempDir;
+
+    private JsonVehicleStorage storage;
+    private SmartMoveCentralController controller;
+    private HttpServer server;
+
+    @BeforeEach
+    void setUp() {
+        storage = new JsonVehicleStorage(tempDir.resolve("vehicles.json"));
+        controller = new SmartMoveCentralController(storage, mock(AuditLogService.class),
+                mock(ZoneService.class), mock(PaymentStorage.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) server.stop(0);
+        controller.shutdown();
+    }
+
+    @Test
+    void idsStreamOpensWithTheCurrentState_thenCarriesEachChange() throws Exception {
+        controller.registerVehicle(new Vehicle("a", VehicleType.E_SCOOTER, City.ROME));
+        controller.registerVehicle(new Vehicle("b", VehicleType.MOPED, City.MILAN));
+        controller.registerVehicle(new Vehicle("other", VehicleType.MOPED, City.MILAN));
+        start(storage::findAll);
+
+        try (BufferedReader events = open("/events?ids=a,b,missing")) {
+            assertEvent(next(events), "a", 1, "AVAILABLE");
+            assertEvent(next(events), "b", 1, "AVAILABLE");
+
+            controller.reserveVehicle("other", City.MILAN);
+            controller.reserveVehicle("b", City.MILAN);
+            assertEvent(next(events), "b", 2, "RESERVED");
+        }
+    }
+
+    @Test
+    void cityStreamOpensWithTheCitysVehicles_andTheCityIsCaseInsensitive() throws Exception {
+        controller.registerVehicle(new Vehicle("r1", VehicleType.E_SCOOTER, City.ROME));
+        controller.registerVehicle(new Vehicle("m1", VehicleType.MOPED, City.MILAN));
+        start(storage::findAll);
+
+        try (BufferedReader events = open("/events?city=rome")) {
+            assertEvent(next(events), "r1", 1, "AVAILABLE");
+
+            controller.reserveVehicle("m1", City.MILAN);
+            controller.reserveVehicle("r1", City.ROME);
+            assertEvent(next(events), "r1", 2, "RESERVED");
+        }
+    }
+
+    @Test
+    void changeWhileTheOpeningStateIsReadIsNeitherLostNorRepeated() throws Exception {
+        controller.registerVehicle(new Vehicle("r1", VehicleType.E_SCOOTER, City.ROME));
+        // the write lands after subscribing, before the vehicle is read
+        start(() -> {
+            controller.reserveVehicle("r1", City.ROME);
+            return storage.findAll();
+        });
+
+        try (BufferedReader events = open("/events?city=ROME")) {
+            assertEvent(next(events), "r1", 2, "RESERVED");
+
+            controller.startRental("r1", City.ROME);
+            assertEvent(next(events), "r1", 3, "IN_USE");
+        }
+    }
+
+    @Test
+    void unknownCityOrNoFilterIsRejected() throws Exception {
+        start(storage::findAll);
+        assertEquals(400, status("/events?city=atlantis"));
+        assertEquals(400, status("/events"));
+    }
+
+    private void start(Supplier<List<Vehicle>> fleet) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/events", new VehicleEventStream(controller, fleet, mapper, 1));
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    private HttpURLConnection connect(String path) throws IOException {
+        HttpURLConnection c = (HttpURLConnection) new URL(
+                "http://localhost:" + server.getAddress().getPort() + path).openConnection();
+        c.setReadTimeout(5000);
+        return c;
+    }
+
+    private BufferedReader open(String path) throws IOException {
+        HttpURLConnection c = connect(path);
+        assertEquals(200, c.getResponseCode());
+        assertEquals("text/event-stream", c.getHeaderField("Content-Type"));
+        return new BufferedReader(new InputStreamReader(c.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private int status(String path) throws IOException {
+        HttpURLConnection c = connect(path);
+        try {
+            return c.getResponseCode();
+        } finally {
+            c.disconnect();
+        }
+    }
+
+    /** The next event as {id line, data line}, skipping heartbeats. */
+    private static String[] next(BufferedReader in) throws IOException {
+        String id = null;
+        String data = null;
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (id != null) return new String[]{id, data};
+            } else if (line.startsWith("id: ")) {
+                id = line.substring(4);
+            } else if (line.startsWith("data: ")) {
+                data = line.substring(6);
+            }
+        }
+        throw new IOException("Stream ended");
+    }
+
+    private static void assertEvent(String[] event, String vehicleId, long version, String state) throws IOException {
+        assertEquals(vehicleId + ":" + version, event[0]);
+        JsonNode v = mapper.readTree(event[1]);
+        assertEquals(vehicleId, v.get("id").asText());
+        assertEquals(state, v.get("state").asText());
+    }
+}
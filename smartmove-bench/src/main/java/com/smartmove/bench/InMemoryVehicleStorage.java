@@ -0,0 +1,36 @@
+package com.smartmove.bench;
+
+import com.smartmove.domain.Vehicle;
+import com.smartmove.storage.VehicleStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Map-backed store, so benchmarks measure the controller rather than file I/O. */
+class InMemoryVehicleStorage implements VehicleStorage {
+
+    private final Map<String, Vehicle> vehicles = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<Vehicle> findById(String id) {
+        return Optional.ofNullable(vehicles.get(id));
+    }
+
+    @Override
+    public List<Vehicle> findAll() {
+        return new ArrayList<>(vehicles.values());
+    }
+
+    @Override
+    public void save(Vehicle vehicle) {
+        vehicles.put(vehicle.getId(), vehicle);
+    }
+
+    @Override
+    public void deleteById(String id) {
+        vehicles.remove(id);
+    }
+}
@@ -0,0 +1,81 @@
+package com.smartmove.bench;
+
+import com.smartmove.audit.AuditLogService;
+import com.smartmove.codec.StorageCodecs;
+import com.smartmove.controller.SmartMoveCentralController;
+import com.smartmove.domain.City;
+import com.smartmove.domain.Payment;
+import com.smartmove.domain.Trip;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.domain.VehicleState;
+import com.smartmove.domain.VehicleType;
+import com.smartmove.storage.PaymentStorage;
+import com.smartmove.telemetry.TelemetryData;
+import com.smartmove.zones.ZoneService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The telemetry worker's per-sample path: {@code handleTelemetry} on a vehicle
+ * in an active rental, with an in-memory vehicle store and a real audit log.
+ * Run with {@code -prof gc} and compare gc.alloc.rate.norm (bytes/op).
+ *
+ * Last measured at ~629 B/op. About 220 of that is the copy each sample is
+ * staged on (vehicle, telemetry and trip); staging in place measured ~400
+ * B/op but let readers see uncommitted changes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TelemetryHandlingBenchmark {
+
+    private Path dir;
+    private SmartMoveCentralController controller;
+    private final TelemetryData[] samples = new TelemetryData[8];
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("smartmove-bench");
+        InMemoryVehicleStorage vehicles = new InMemoryVehicleStorage();
+        Vehicle v = new Vehicle("v-000042", VehicleType.E_SCOOTER, City.MILAN);
+        v.setState(VehicleState.IN_USE);
+        v.setRentalActive(true);
+        v.setTrip(Trip.start(System.currentTimeMillis(), null));
+        vehicles.save(v);
+
+        AuditLogService audit = new AuditLogService(dir.resolve("audit-log.jsonl"), StorageCodecs.JSON);
+        PaymentStorage payments = new PaymentStorage() {
+            @Override public void save(Payment payment) {}
+            @Override public List<Payment> findAll() { return List.of(); }
+        };
+        controller = new SmartMoveCentralController(vehicles, audit, new ZoneService(city -> List.of()), payments);
+
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = new TelemetryData("v-000042", 45.46 + i * 0.001, 9.19, 80 - i, 24.0 + i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        controller.shutdown();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void handleTelemetry() {
+        controller.handleTelemetry(samples[next++ & 7]);
+    }
+}
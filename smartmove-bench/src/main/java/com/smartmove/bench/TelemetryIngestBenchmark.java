@@ -0,0 +1,68 @@
+package com.smartmove.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartmove.telemetry.TelemetryData;
+import com.smartmove.telemetry.TelemetryDecoder;
+import com.smartmove.telemetry.TelemetryFrameCodec;
+import com.smartmove.telemetry.TelemetryPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding one telemetry sample: a POST /telemetry body with Jackson databind
+ * (what the API used to do) and with the streaming decoder into pooled
+ * holders, and a binary gateway frame from a direct buffer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TelemetryIngestBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final TelemetryDecoder decoder = new TelemetryDecoder();
+    private final TelemetryPool pool = new TelemetryPool(16);
+    private final TelemetryFrameCodec frameCodec = new TelemetryFrameCodec();
+    private final ByteBuffer frame = ByteBuffer.allocateDirect(TelemetryFrameCodec.MAX_FRAME_BYTES);
+
+    @Setup
+    public void encodeFrame() {
+        TelemetryFrameCodec.encode(new TelemetryData("v-000042", 41.9028, 12.4964, 87, 24.5), frame);
+        frame.flip();
+    }
+
+    private final byte[] body = ("{\"vehicleId\":\"v-000042\",\"latitude\":41.9028,\"longitude\":12.4964,"
+            + "\"batteryPercent\":87,\"temperatureC\":24.5,\"helmetPresent\":false,"
+            + "\"movementDetected\":false,\"fault\":false}").getBytes(StandardCharsets.UTF_8);
+
+    @Benchmark
+    public TelemetryData databind() throws IOException {
+        return MAPPER.readValue(body, TelemetryData.class);
+    }
+
+    /** Acquire, decode, release: the holder's round trip through the API and the worker. */
+    @Benchmark
+    public int streaming() throws IOException {
+        TelemetryData t = pool.acquire();
+        decoder.decode(body, 0, body.length, t);
+        int battery = t.getBatteryPercent();
+        pool.release(t);
+        return battery;
+    }
+
+    @Benchmark
+    public int binaryFrame() {
+        TelemetryData t = pool.acquire();
+        frameCodec.decode(frame.rewind(), t);
+        int battery = t.getBatteryPercent();
+        pool.release(t);
+        return battery;
+    }
+}
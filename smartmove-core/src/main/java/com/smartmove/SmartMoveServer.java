@@ -1,14 +1,24 @@
 package com.smartmove;
 
 import com.smartmove.audit.AuditLogService;
+import com.smartmove.cdc.ChangeCapturingPaymentStorage;
+import com.smartmove.cdc.ChangeCapturingVehicleStorage;
+import com.smartmove.cdc.ChangeLog;
+import com.smartmove.codec.StorageCodecs;
 import com.smartmove.controller.SmartMoveCentralController;
-import com.smartmove.storage.JsonVehicleStorage;
+import com.smartmove.payments.AggregatingPaymentStorage;
+import com.smartmove.payments.PaymentRollups;
+import com.smartmove.pricing.PricingEngine;
+import com.smartmove.pricing.TariffPricingEngine;
+import com.smartmove.storage.VehicleStorages;
 import com.smartmove.storage.VehicleStorage;
 import com.smartmove.zones.JsonZoneRepository;
 import com.smartmove.zones.ZoneRepository;
 import com.smartmove.zones.ZoneService;
+import com.smartmove.storage.JsonLogUserStorage;
 import com.smartmove.storage.JsonPaymentStorage;
 import com.smartmove.storage.PaymentStorage;
+import com.smartmove.storage.UserStorage;
 
 
 import java.nio.file.Paths;
@@ -16,8 +26,12 @@ import java.nio.file.Paths;
 public class SmartMoveServer {
 
     public static void main(String[] args) {
+        // Change-data-capture buffer for downstream consumers
+        ChangeLog changeLog = new ChangeLog(Paths.get("data/changes.jsonl"));
+
         // Storage (JSON files)
-        VehicleStorage vehicleStorage = new JsonVehicleStorage(Paths.get("data/vehicles.json"));
+        VehicleStorage vehicleStorage = new ChangeCapturingVehicleStorage(
+                VehicleStorages.fromConfig(Paths.get("data")), changeLog);
 
         // Audit log (file append) - make sure your AuditLogService supports this path constructor
         AuditLogService auditLogService = new AuditLogService(Paths.get("data/audit-log.jsonl"));
@@ -27,20 +41,35 @@ public class SmartMoveServer {
         ZoneService zoneService = new ZoneService(zoneRepo);
 
         // Payment zones (JSON files)
-        PaymentStorage payments = new JsonPaymentStorage(Paths.get("data/payments.json"));
+        PaymentStorage payments = new AggregatingPaymentStorage(new ChangeCapturingPaymentStorage(
+                new JsonPaymentStorage(Paths.get("data/payments.json")), changeLog),
+                new PaymentRollups(Paths.get("data/payment-rollups.json")));
+
+        // Tariffs (JSON config, precompiled)
+        PricingEngine pricing = TariffPricingEngine.load(Paths.get("data/tariffs.json"));
+
+        // Users (append-only JSON lines, indexed in memory)
+        UserStorage users = new JsonLogUserStorage(Paths.get("data/users.jsonl"));
 
         // Controller
         SmartMoveCentralController controller =
-                new SmartMoveCentralController(vehicleStorage, auditLogService, zoneService, payments);
+                new SmartMoveCentralController(vehicleStorage, auditLogService, zoneService, payments, pricing, users);
 
         // Keep app alive (optional)
-        Runtime.getRuntime().addShutdownHook(new Thread(controller::shutdown));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            controller.shutdown();
+            payments.flush();
+        }));
 
         System.out.println("SmartMove core engine started.");
-        System.out.println("Vehicles persisted at: data/vehicles.json");
+        System.out.println("Vehicles persisted in: data/ ("
+                + System.getProperty(VehicleStorages.CONFIG_PROPERTY, "json") + " store)");
         System.out.println("Zones loaded from: data/restricted-zones.json");
+        System.out.println("Tariffs loaded from: data/tariffs.json");
         System.out.println("Audit log at: data/audit-log.jsonl");
+        System.out.println("Change stream at: data/changes.jsonl");
+        System.out.println("Storage codec: " + StorageCodecs.fromConfig().name());
 
-        // If you have no HTTP server, you can run a simple simulation here.
+        // Load and soak testing: see the smartmove-sim module (com.smartmove.sim.FleetSimulator).
     }
 }
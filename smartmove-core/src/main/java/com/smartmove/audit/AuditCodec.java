@@ -0,0 +1,159 @@
+package com.smartmove.audit;
+
+/**
+ * Canonical binary form of an AuditLogEntry, used as the hash-chain input.
+ *
+ * Layout (big-endian):
+ *   version:byte | id:long | timestamp:long | event:byte | presence:short
+ *   | present fields in declaration order | previousChecksum
+ *
+ * Strings are a u16 length followed by UTF-8 bytes (lengths of 0xFFFF and
+ * up are 0xFFFF then an int, so no length wraps), enums a byte ordinal,
+ * numbers their raw int/long bits. The codec reuses one growable buffer,
+ * so an instance is not thread-safe: keep one per writer.
+ *
+ * This form is only hashed, never stored: it has no field names, so a log
+ * kept in it could not be read without this exact codec version, and its
+ * bytes are pinned by every checksum already written. Storage uses the
+ * configured StorageCodec instead (JSON lines by default, which keep the log
+ * greppable and let replicas and tools read it), over the same typed fields.
+ */
+public final class AuditCodec {
+
+    static final byte VERSION = 1;
+
+    // A u16 length at or above this is followed by the real length as an int
+    static final int LONG_STRING = 0xFFFF;
+
+    // Presence bits
+    static final int VEHICLE_ID = 1;
+    static final int CITY = 1 << 1;
+    static final int VEHICLE_TYPE = 1 << 2;
+    static final int FROM_STATE = 1 << 3;
+    static final int TO_STATE = 1 << 4;
+    static final int REASON = 1 << 5;
+    static final int BATTERY = 1 << 6;
+    static final int TEMPERATURE = 1 << 7;
+    static final int PAYMENT_ID = 1 << 8;
+    static final int BASE_FARE = 1 << 9;
+    static final int CONGESTION = 1 << 10;
+    static final int TOTAL = 1 << 11;
+
+    private byte[] buf = new byte[256];
+    private int len;
+
+    /**
+     * Encodes the entry into the internal buffer.
+     * @return number of bytes written, see {@link #buffer()}
+     */
+    public int encode(AuditLogEntry e) {
+        len = 0;
+        putByte(VERSION);
+        putLong(e.id);
+        putLong(e.timestamp);
+        putByte((byte) e.event.ordinal());
+        putShort(presence(e));
+
+        if (e.vehicleId != null) putString(e.vehicleId);
+        if (e.city != null) putByte((byte) e.city.ordinal());
+        if (e.vehicleType != null) putByte((byte) e.vehicleType.ordinal());
+        if (e.fromState != null) putByte((byte) e.fromState.ordinal());
+        if (e.toState != null) putByte((byte) e.toState.ordinal());
+        if (e.reason != null) putString(e.reason);
+        if (e.batteryPercent != null) putInt(e.batteryPercent);
+        if (e.temperatureC != null) putLong(Double.doubleToLongBits(e.temperatureC));
+        if (e.paymentId != null) putString(e.paymentId);
+        if (e.baseFare != null) putLong(Double.doubleToLongBits(e.baseFare));
+        if (e.congestionCharge != null) putLong(Double.doubleToLongBits(e.congestionCharge));
+        if (e.total != null) putLong(Double.doubleToLongBits(e.total));
+
+        putString(e.previousChecksum);
+        return len;
+    }
+
+    public byte[] buffer() {
+        return buf;
+    }
+
+    public int length() {
+        return len;
+    }
+
+    private static int presence(AuditLogEntry e) {
+        int p = 0;
+        if (e.vehicleId != null) p |= VEHICLE_ID;
+        if (e.city != null) p |= CITY;
+        if (e.vehicleType != null) p |= VEHICLE_TYPE;
+        if (e.fromState != null) p |= FROM_STATE;
+        if (e.toState != null) p |= TO_STATE;
+        if (e.reason != null) p |= REASON;
+        if (e.batteryPercent != null) p |= BATTERY;
+        if (e.temperatureC != null) p |= TEMPERATURE;
+        if (e.paymentId != null) p |= PAYMENT_ID;
+        if (e.baseFare != null) p |= BASE_FARE;
+        if (e.congestionCharge != null) p |= CONGESTION;
+        if (e.total != null) p |= TOTAL;
+        return p;
+    }
+
+    // ---- Primitive writers ----
+
+    private void ensure(int extra) {
+        if (len + extra > buf.length) {
+            byte[] bigger = new byte[Math.max(buf.length * 2, len + extra)];
+            System.arraycopy(buf, 0, bigger, 0, len);
+            buf = bigger;
+        }
+    }
+
+    private void putByte(byte b) {
+        ensure(1);
+        buf[len++] = b;
+    }
+
+    private void putShort(int v) {
+        ensure(2);
+        buf[len++] = (byte) (v >>> 8);
+        buf[len++] = (byte) v;
+    }
+
+    private void putInt(int v) {
+        ensure(4);
+        for (int shift = 24; shift >= 0; shift -= 8) buf[len++] = (byte) (v >>> shift);
+    }
+
+    private void putLong(long v) {
+        ensure(8);
+        for (int shift = 56; shift >= 0; shift -= 8) buf[len++] = (byte) (v >>> shift);
+    }
+
+    // UTF-8 without an intermediate byte[] (surrogate pairs are encoded per char)
+    private void putString(String s) {
+        int n = s.length();
+        int utf8 = 0;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            utf8 += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        if (utf8 < LONG_STRING) {
+            putShort(utf8);
+        } else {
+            putShort(LONG_STRING);
+            putInt(utf8);
+        }
+        ensure(utf8);
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buf[len++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[len++] = (byte) (0xC0 | (c >> 6));
+                buf[len++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                buf[len++] = (byte) (0xE0 | (c >> 12));
+                buf[len++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[len++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+}
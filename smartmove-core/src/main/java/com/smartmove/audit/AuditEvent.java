@@ -0,0 +1,21 @@
+package com.smartmove.audit;
+
+/**
+ * Audit event types.
+ * The ordinal is part of the canonical (hashed) encoding:
+ * only ever append new constants at the end.
+ */
+public enum AuditEvent {
+    VEHICLE_REGISTERED,
+    STATE_CHANGE,
+    RENTAL_STARTED,
+    RENTAL_ENDED,
+    PAYMENT,
+    TELEMETRY,
+    THEFT_ALARM,
+    FAULT_DETECTED,
+    OVERHEAT_LOCK,
+    EMERGENCY_TERMINATION,
+    VEHICLE_TRANSFERRED_OUT,
+    VEHICLE_TRANSFERRED_IN
+}
@@ -0,0 +1,214 @@
+package com.smartmove.audit;
+
+/**
+ * Writes an AuditLogEntry as one JSON object straight into a reused byte
+ * buffer, without a Jackson generator or intermediate Strings. The output
+ * has the fields and order Jackson produces for the entry (non-null fields
+ * in declaration order), so either can read what the other wrote.
+ *
+ * Doubles in [1e-3, 1e7) with up to 15 significant digits are written
+ * with the fewest fraction digits that parse back to the same value;
+ * anything else falls back to Double.toString. Not thread-safe: keep one
+ * per writer, like AuditCodec.
+ */
+final class AuditJsonWriter {
+
+    private static final long[] POW10 = new long[16];
+    private static final double[] POW10D = new double[16];
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+
+    static {
+        long p = 1;
+        for (int i = 0; i < POW10.length; i++) {
+            POW10[i] = p;
+            POW10D[i] = p;
+            p *= 10;
+        }
+    }
+
+    private byte[] buf = new byte[512];
+    private int len;
+
+    /**
+     * Encodes the entry into the internal buffer.
+     * @return number of bytes written, see {@link #buffer()}
+     */
+    int write(AuditLogEntry e) {
+        len = 0;
+        putByte('{');
+        putName("id", true);
+        putLong(e.id);
+        putName("timestamp", false);
+        putLong(e.timestamp);
+        if (e.event != null) putField("event", e.event.name());
+        if (e.vehicleId != null) putField("vehicleId", e.vehicleId);
+        if (e.city != null) putField("city", e.city.name());
+        if (e.vehicleType != null) putField("vehicleType", e.vehicleType.name());
+        if (e.fromState != null) putField("fromState", e.fromState.name());
+        if (e.toState != null) putField("toState", e.toState.name());
+        if (e.reason != null) putField("reason", e.reason);
+        if (e.batteryPercent != null) {
+            putName("batteryPercent", false);
+            putLong(e.batteryPercent);
+        }
+        if (e.temperatureC != null) putField("temperatureC", e.temperatureC);
+        if (e.paymentId != null) putField("paymentId", e.paymentId);
+        if (e.baseFare != null) putField("baseFare", e.baseFare);
+        if (e.congestionCharge != null) putField("congestionCharge", e.congestionCharge);
+        if (e.total != null) putField("total", e.total);
+        if (e.details != null) putField("details", e.details);
+        if (e.previousChecksum != null) putField("previousChecksum", e.previousChecksum);
+        if (e.checksum != null) putField("checksum", e.checksum);
+        putByte('}');
+        return len;
+    }
+
+    byte[] buffer() {
+        return buf;
+    }
+
+    // ---- Fields ----
+
+    private void putName(String name, boolean first) {
+        if (!first) putByte(',');
+        putByte('"');
+        putAscii(name);
+        putByte('"');
+        putByte(':');
+    }
+
+    private void putField(String name, String value) {
+        putName(name, false);
+        putString(value);
+    }
+
+    private void putField(String name, double value) {
+        putName(name, false);
+        putDouble(value);
+    }
+
+    // ---- Values ----
+
+    private void putLong(long v) {
+        if (v == Long.MIN_VALUE) {
+            putAscii(Long.toString(v));
+            return;
+        }
+        if (v < 0) {
+            putByte('-');
+            v = -v;
+        }
+        ensure(20);
+        int digits = 1;
+        for (long t = v; t >= 10; t /= 10) digits++;
+        for (int i = len + digits - 1; i >= len; i--) {
+            buf[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        len += digits;
+    }
+
+    private void putDouble(double d) {
+        double a = Math.abs(d);
+        if (a == 0 || Double.isNaN(d) || Double.isInfinite(d) || a < 1e-3 || a >= 1e7) {
+            putAscii(Double.toString(d));
+            return;
+        }
+        for (int k = 1; k < POW10.length; k++) {
+            double scaled = a * POW10D[k];
+            if (scaled >= 0x1p53) break;
+            long m = Math.round(scaled);
+            if (m / POW10D[k] != a) continue;
+            if (d < 0) putByte('-');
+            putLong(m / POW10[k]);
+            putByte('.');
+            long fraction = m % POW10[k];
+            ensure(k);
+            for (int i = len + k - 1; i >= len; i--) {
+                buf[i] = (byte) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            len += k;
+            // trailing zeros only survive for whole numbers ("10.0")
+            while (buf[len - 1] == '0' && buf[len - 2] != '.') len--;
+            return;
+        }
+        putAscii(Double.toString(d));
+    }
+
+    // JSON string, UTF-8 encoded; control characters and surrogates escaped as Jackson does
+    private void putString(String s) {
+        int n = s.length();
+        ensure(n + 2);
+        buf[len++] = '"';
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                putByte(c);
+            } else if (c == '"' || c == '\\') {
+                putByte('\\');
+                putByte(c);
+            } else if (c < 0x20) {
+                putEscape(c);
+            } else if (c < 0x800) {
+                putByte(0xC0 | (c >> 6));
+                putByte(0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Jackson escapes each half of a pair rather than encoding the code point
+                putUnicodeEscape(c);
+            } else {
+                putByte(0xE0 | (c >> 12));
+                putByte(0x80 | ((c >> 6) & 0x3F));
+                putByte(0x80 | (c & 0x3F));
+            }
+        }
+        putByte('"');
+    }
+
+    private void putEscape(char c) {
+        char shortForm = switch (c) {
+            case '\b' -> 'b';
+            case '\t' -> 't';
+            case '\n' -> 'n';
+            case '\f' -> 'f';
+            case '\r' -> 'r';
+            default -> 0;
+        };
+        if (shortForm == 0) {
+            putUnicodeEscape(c);
+            return;
+        }
+        putByte('\\');
+        putByte(shortForm);
+    }
+
+    private void putUnicodeEscape(char c) {
+        putByte('\\');
+        putByte('u');
+        putByte(HEX[c >> 12]);
+        putByte(HEX[(c >> 8) & 0xF]);
+        putByte(HEX[(c >> 4) & 0xF]);
+        putByte(HEX[c & 0xF]);
+    }
+
+    // ---- Bytes ----
+
+    private void putAscii(String s) {
+        int n = s.length();
+        ensure(n);
+        for (int i = 0; i < n; i++) buf[len++] = (byte) s.charAt(i);
+    }
+
+    private void putByte(int b) {
+        ensure(1);
+        buf[len++] = (byte) b;
+    }
+
+    private void ensure(int extra) {
+        if (len + extra > buf.length) {
+            byte[] bigger = new byte[Math.max(buf.length * 2, len + extra)];
+            System.arraycopy(buf, 0, bigger, 0, len);
+            buf = bigger;
+        }
+    }
+}
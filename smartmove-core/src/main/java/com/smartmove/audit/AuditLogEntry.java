@@ -1,28 +1,113 @@
 package com.smartmove.audit;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.smartmove.domain.City;
+import com.smartmove.domain.VehicleState;
+import com.smartmove.domain.VehicleType;
+
+/**
+ * One audit record with typed, queryable fields.
+ * Only the fields relevant to the event are set; the rest stay null
+ * and are omitted from the stored line.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class AuditLogEntry {
 
     public long id;
     public long timestamp;
-    public String event;
+    public AuditEvent event;
+
+    // -------------------------
+    // Subject
+    // -------------------------
+    public String vehicleId;
+    public City city;
+    public VehicleType vehicleType;
+
+    // -------------------------
+    // State changes
+    // -------------------------
+    public VehicleState fromState;
+    public VehicleState toState;
+    public String reason;
+
+    // -------------------------
+    // Numeric attributes
+    // -------------------------
+    public Integer batteryPercent;
+    public Double temperatureC;
+    public String paymentId;
+    public Double baseFare;
+    public Double congestionCharge;
+    public Double total;
+
+    // Free-text details of entries written before typed fields existed
     public String details;
+
     public String previousChecksum;
     public String checksum;
 
     public AuditLogEntry() {}
 
-    public AuditLogEntry(long id,
-                         long timestamp,
-                         String event,
-                         String details,
-                         String previousChecksum,
-                         String checksum) {
-
-        this.id = id;
-        this.timestamp = timestamp;
-        this.event = event;
-        this.details = details;
-        this.previousChecksum = previousChecksum;
-        this.checksum = checksum;
+    public static AuditLogEntry of(AuditEvent event, String vehicleId) {
+        AuditLogEntry e = new AuditLogEntry();
+        e.event = event;
+        e.vehicleId = vehicleId;
+        return e;
+    }
+
+    // -------------------------
+    // Fluent builders
+    // -------------------------
+
+    public AuditLogEntry city(City city) {
+        this.city = city;
+        return this;
+    }
+
+    public AuditLogEntry vehicleType(VehicleType vehicleType) {
+        this.vehicleType = vehicleType;
+        return this;
+    }
+
+    public AuditLogEntry transition(VehicleState from, VehicleState to) {
+        this.fromState = from;
+        this.toState = to;
+        return this;
+    }
+
+    public AuditLogEntry reason(String reason) {
+        this.reason = reason;
+        return this;
+    }
+
+    public AuditLogEntry telemetry(int batteryPercent, double temperatureC) {
+        this.batteryPercent = batteryPercent;
+        this.temperatureC = temperatureC;
+        return this;
+    }
+
+    public AuditLogEntry battery(int batteryPercent) {
+        this.batteryPercent = batteryPercent;
+        return this;
+    }
+
+    public AuditLogEntry temperature(double temperatureC) {
+        this.temperatureC = temperatureC;
+        return this;
+    }
+
+    public AuditLogEntry payment(String paymentId, double baseFare, double congestionCharge, double total) {
+        this.paymentId = paymentId;
+        this.baseFare = baseFare;
+        this.congestionCharge = congestionCharge;
+        this.total = total;
+        return this;
+    }
+
+    @JsonIgnore
+    public boolean isLegacy() {
+        return details != null;
     }
 }
@@ -1,101 +1,424 @@
 package com.smartmove.audit;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.smartmove.codec.StorageCodec;
+import com.smartmove.codec.StorageCodecs;
+import com.smartmove.metrics.LatencyHistogram;
+import com.smartmove.metrics.MetricsRegistry;
+import com.smartmove.trace.Span;
+import com.smartmove.trace.Tracer;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
-import java.util.HexFormat;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 
+/**
+ * Append-only, hash-chained audit log.
+ *
+ * Records are stored with the configured StorageCodec: one JSON object per
+ * line for text codecs, or a 4-byte length prefix per record for binary
+ * codecs. A log in the other format is converted on startup; checksums are
+ * computed over the canonical AuditCodec bytes, independent of the storage
+ * format, so the chain survives conversion. (The canonical form is not
+ * stored itself; see AuditCodec.)
+ *
+ * A sparse id -> file position index lets {@link #read} serve a tail of the
+ * log (e.g. to a replica) without rescanning the whole file.
+ *
+ * A torn trailing record (crash mid-append: a JSON line without its newline,
+ * or a binary frame shorter than its length prefix) is truncated away on
+ * startup, as the user and change logs do; it was never acknowledged.
+ *
+ * Every {@link #CHECKPOINT_INTERVAL} entries (and on {@link #checkpoint()})
+ * the last verified id, checksum, position and index are saved next to the
+ * log. Startup then re-checks the checkpointed entry and verifies only what
+ * follows it; -Dsmartmove.audit.fullVerify=true verifies the whole chain.
+ */
 public class AuditLogService {
 
+    public static final String FULL_VERIFY_PROPERTY = "smartmove.audit.fullVerify";
+
+    // One index entry per this many records
+    private static final int INDEX_INTERVAL = 256;
+    static final int CHECKPOINT_INTERVAL = INDEX_INTERVAL * 64;
+
+    /** On-disk checkpoint: everything up to and including lastId was verified. */
+    static class Checkpoint {
+        public String codec;
+        public long lastId;
+        public String lastChecksum;
+        public long lastRecordAt;
+        public long size;
+        public TreeMap<Long, Long> index = new TreeMap<>();
+    }
+
     private final Path logFile;
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final Path checkpointFile;
+    private final StorageCodec codec;
+
+    // Reused on every append (append is synchronized)
+    private final AuditCodec canonical = new AuditCodec();
+    private final MessageDigest digest;
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(512);
+    private final ByteArrayOutputStream frameBuffer = new ByteArrayOutputStream(512);
+    // JSON lines are written by hand and hashes go to reused arrays, so an append stays cheap
+    private final AuditJsonWriter jsonWriter = new AuditJsonWriter();
+    private final byte[] hash = new byte[32];
+    private final byte[] hex = new byte[64];
+
+    private FileChannel channel;
+    private OutputStream out;
 
     private long nextId = 1;
     private String lastChecksum = "GENESIS";
 
+    private final TreeMap<Long, Long> sparseIndex = new TreeMap<>();
+    private long size = 0;
+    private long lastRecordAt = 0;
+    private long loadMillis;
+
+    private final LatencyHistogram appendLatency = MetricsRegistry.global().histogram(
+            "smartmove_audit_append_seconds", "Audit append latency, including wait for the log monitor");
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final LatencyHistogram LOAD_LATENCY = MetricsRegistry.global().histogram(
+            "smartmove_storage_load_seconds", "Time to load a store on startup", "store", "audit");
+
     public AuditLogService(Path logFile) {
+        this(logFile, StorageCodecs.fromConfig());
+    }
+
+    public AuditLogService(Path logFile, StorageCodec codec) {
         this.logFile = logFile;
+        this.checkpointFile = logFile.resolveSibling(logFile.getFileName() + ".checkpoint");
+        this.codec = codec;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
         initialize();
     }
 
     private void initialize() {
+        long start = System.nanoTime();
         try {
             if (!Files.exists(logFile)) {
                 Files.createDirectories(logFile.getParent());
-                Files.writeString(logFile, "");
-                return;
-            }
+                Files.write(logFile, new byte[0]);
+            } else if (!resumeFromCheckpoint()) {
+                byte[] data = Files.readAllBytes(logFile);
+                StorageCodec onDisk = detectFormat(data);
+                data = dropTornTail(data, onDisk, 0);
+                List<AuditLogEntry> entries = readEntries(data, onDisk);
 
-            List<String> lines = Files.readAllLines(logFile);
-
-            for (String line : lines) {
-                if (line.isBlank()) continue;
+                for (AuditLogEntry entry : entries) {
+                    nextId = Math.max(nextId, entry.id + 1);
+                    lastChecksum = entry.checksum;
+                }
 
-                AuditLogEntry entry =
-                        mapper.readValue(line, AuditLogEntry.class);
+                // Optional: verify integrity at startup
+                verifyIntegrity(entries, "GENESIS", 1);
 
-                nextId = Math.max(nextId, entry.id + 1);
-                lastChecksum = entry.checksum;
+                if (onDisk != codec && !entries.isEmpty()) {
+                    rewrite(entries);
+                    data = Files.readAllBytes(logFile);
+                }
+                // ids run 1..n (verified above), so frame k holds id k + 1
+                List<int[]> frames = frames(data, codec);
+                for (int k = 0; k < frames.size(); k++) {
+                    if (k % INDEX_INTERVAL == 0) sparseIndex.put(k + 1L, (long) frames.get(k)[0]);
+                }
+                if (!frames.isEmpty()) lastRecordAt = frames.get(frames.size() - 1)[0];
             }
 
-            // Optional: verify integrity at startup
-            verifyIntegrity();
+            channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            size = channel.size();
+            out = Channels.newOutputStream(channel);
+            if (nextId > 1) writeCheckpoint();
 
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize audit log", e);
+        } finally {
+            loadMillis = (System.nanoTime() - start) / 1_000_000;
+            LOAD_LATENCY.recordSince(start);
         }
     }
 
-    public synchronized void append(String event, String details) {
+    /**
+     * Loads from the checkpoint if it still matches the log: the entry it
+     * names is re-read and re-hashed, and only the entries after it are
+     * decoded and verified. Returns false to fall back to a full scan.
+     */
+    private boolean resumeFromCheckpoint() throws IOException {
+        if (Boolean.getBoolean(FULL_VERIFY_PROPERTY) || !Files.exists(checkpointFile)) return false;
+        Checkpoint cp;
         try {
-            long id = nextId++;
-            long timestamp = System.currentTimeMillis();
+            cp = StorageCodecs.JSON.decode(Files.readAllBytes(checkpointFile), new TypeReference<Checkpoint>() {});
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+        if (!codec.name().equals(cp.codec) || cp.lastChecksum == null) return false;
 
-            String checksum = sha256(
-                    id + "|" + timestamp + "|" + event + "|" + details + "|" + lastChecksum
-            );
+        byte[] tail;
+        try (FileChannel ch = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            long fileSize = ch.size();
+            if (fileSize < cp.size || cp.lastRecordAt >= cp.size) return false;
+            ByteBuffer buf = ByteBuffer.allocate((int) (fileSize - cp.lastRecordAt));
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, cp.lastRecordAt + buf.position()) < 0) return false;
+            }
+            tail = buf.array();
+        }
+        tail = dropTornTail(tail, codec, cp.lastRecordAt);
 
-            AuditLogEntry entry = new AuditLogEntry(
-                    id,
-                    timestamp,
-                    event,
-                    details,
-                    lastChecksum,
-                    checksum
-            );
+        List<int[]> frames;
+        List<AuditLogEntry> entries;
+        try {
+            frames = frames(tail, codec);
+            entries = readEntries(tail, codec);
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+        if (frames.isEmpty() || frames.get(0)[0] != 0) return false;
+        AuditLogEntry anchor = entries.get(0);
+        if (anchor.id != cp.lastId || !cp.lastChecksum.equals(anchor.checksum)
+                || !checksumOf(anchor).equals(anchor.checksum)) {
+            return false;
+        }
 
-            String jsonLine = mapper.writeValueAsString(entry) + "\n";
+        verifyIntegrity(entries.subList(1, entries.size()), anchor.checksum, anchor.id + 1);
 
-            Files.writeString(
-                    logFile,
-                    jsonLine,
-                    StandardOpenOption.CREATE,
-                    StandardOpenOption.APPEND
-            );
+        sparseIndex.putAll(cp.index);
+        for (int k = 1; k < frames.size(); k++) {
+            long id = anchor.id + k;
+            if ((id - 1) % INDEX_INTERVAL == 0) sparseIndex.put(id, cp.lastRecordAt + frames.get(k)[0]);
+        }
+        AuditLogEntry last = entries.get(entries.size() - 1);
+        nextId = last.id + 1;
+        lastChecksum = last.checksum;
+        lastRecordAt = cp.lastRecordAt + frames.get(frames.size() - 1)[0];
+        return true;
+    }
 
-            lastChecksum = checksum;
+    /** Saves a checkpoint now, so the next startup verifies nothing already written. */
+    public synchronized void checkpoint() {
+        if (nextId > 1) writeCheckpoint();
+    }
+
+    private void writeCheckpoint() {
+        Checkpoint cp = new Checkpoint();
+        cp.codec = codec.name();
+        cp.lastId = nextId - 1;
+        cp.lastChecksum = lastChecksum;
+        cp.lastRecordAt = lastRecordAt;
+        cp.size = size;
+        cp.index.putAll(sparseIndex);
+        try {
+            Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+            Files.write(tmp, StorageCodecs.JSON.encode(cp), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // only costs a longer startup
+            System.err.println("AuditLogService: could not write checkpoint " + checkpointFile + ": " + e.getMessage());
+        }
+    }
+
+    /** Milliseconds the constructor spent loading and verifying the log. */
+    public long loadMillis() {
+        return loadMillis;
+    }
+
+    /**
+     * Stamps id, timestamp and hash-chain fields onto the entry and appends it.
+     * The checksum covers the entry's canonical byte form (see AuditCodec).
+     */
+    public void append(AuditLogEntry entry) {
+        long start = System.nanoTime();
+        try (Span span = Tracer.span("audit.append")) {
+            appendLocked(entry);
+        } finally {
+            appendLatency.recordSince(start);
+        }
+    }
+
+    private synchronized void appendLocked(AuditLogEntry entry) {
+        try {
+            entry.id = nextId;
+            entry.timestamp = System.currentTimeMillis();
+            entry.previousChecksum = lastChecksum;
+            entry.checksum = checksumOf(entry);
+
+            write(entry);
 
         } catch (IOException e) {
             throw new RuntimeException("Audit log write failed", e);
         }
     }
 
-    private void verifyIntegrity() {
+    /**
+     * Stamps and appends several entries with one write and one fsync; if the
+     * write fails none of them are kept (the log is truncated back).
+     */
+    public void appendAll(List<AuditLogEntry> entries) {
+        long start = System.nanoTime();
+        try (Span span = Tracer.span("audit.appendAll")) {
+            appendAllLocked(entries, null);
+        } finally {
+            appendLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * Stamps the entries and hands them to {@code commit} (e.g. a journal
+     * write) before appending them, all under the log's lock, so stamping
+     * order and commit order agree. If commit throws nothing is appended.
+     * The append is not fsynced: the committer has made the entries durable
+     * and {@link #sync()} flushes them later.
+     */
+    public void appendCommitted(List<AuditLogEntry> entries, Consumer<List<AuditLogEntry>> commit) {
+        long start = System.nanoTime();
+        try (Span span = Tracer.span("audit.appendCommitted")) {
+            appendAllLocked(entries, commit);
+        } finally {
+            appendLatency.recordSince(start);
+        }
+    }
+
+    public synchronized void sync() {
         try {
-            String previous = "GENESIS";
-            long expectedId = 1;
+            channel.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException("Audit log sync failed", e);
+        }
+    }
 
-            List<String> lines = Files.readAllLines(logFile);
+    private synchronized void appendAllLocked(List<AuditLogEntry> entries, Consumer<List<AuditLogEntry>> commit) {
+        if (entries.isEmpty()) return;
+        long id = nextId;
+        String previous = lastChecksum;
+        long now = System.currentTimeMillis();
+        long[] starts = new long[entries.size()];
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(entries.size() * 256);
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                AuditLogEntry entry = entries.get(i);
+                entry.id = id++;
+                entry.timestamp = now;
+                entry.previousChecksum = previous;
+                entry.checksum = checksumOf(entry);
+                previous = entry.checksum;
+                starts[i] = size + batch.size();
+                writeRecord(batch, entry);
+            }
+            if (commit != null) commit.accept(entries);
+            batch.writeTo(out);
+            if (commit == null) channel.force(false);
+        } catch (IOException e) {
+            try { channel.truncate(size); } catch (IOException ignored) {}
+            throw new RuntimeException("Audit log write failed", e);
+        }
 
-            for (String line : lines) {
-                if (line.isBlank()) continue;
+        long firstId = nextId;
+        for (int i = 0; i < entries.size(); i++) {
+            long entryId = firstId + i;
+            if ((entryId - 1) % INDEX_INTERVAL == 0) sparseIndex.put(entryId, starts[i]);
+        }
+        lastRecordAt = starts[starts.length - 1];
+        size += batch.size();
+        nextId = id;
+        lastChecksum = previous;
+        if ((nextId - 1) / CHECKPOINT_INTERVAL > (firstId - 1) / CHECKPOINT_INTERVAL) writeCheckpoint();
+    }
 
-                AuditLogEntry entry =
-                        mapper.readValue(line, AuditLogEntry.class);
+    /**
+     * Appends an entry stamped elsewhere (by a primary's log), as is.
+     * It must extend this log's chain: next id, matching previous checksum
+     * and a checksum that verifies; otherwise nothing is written.
+     */
+    public synchronized void replicate(AuditLogEntry entry) {
+        if (entry.id != nextId) {
+            throw new IllegalStateException("Audit entry " + entry.id + " out of sequence, expected " + nextId);
+        }
+        if (!lastChecksum.equals(entry.previousChecksum)) {
+            throw new IllegalStateException("Audit entry " + entry.id + " does not extend the local chain");
+        }
+        if (!checksumOf(entry).equals(entry.checksum)) {
+            throw new IllegalStateException("Audit entry " + entry.id + " has an invalid checksum");
+        }
+        try {
+            write(entry);
+        } catch (IOException e) {
+            throw new RuntimeException("Audit log write failed", e);
+        }
+    }
+
+    private void write(AuditLogEntry entry) throws IOException {
+        frameBuffer.reset();
+        writeRecord(frameBuffer, entry);
+        frameBuffer.writeTo(out);
+
+        if ((entry.id - 1) % INDEX_INTERVAL == 0) sparseIndex.put(entry.id, size);
+        lastRecordAt = size;
+        size += frameBuffer.size();
+        nextId++;
+        lastChecksum = entry.checksum;
+        if (entry.id % CHECKPOINT_INTERVAL == 0) writeCheckpoint();
+    }
+
+    /**
+     * Returns up to {@code limit} entries with id > {@code afterId}, in order.
+     */
+    public List<AuditLogEntry> read(long afterId, int limit) {
+        long start;
+        long end;
+        synchronized (this) {
+            if (afterId >= nextId - 1 || limit <= 0) return List.of();
+            Map.Entry<Long, Long> floor = sparseIndex.floorEntry(afterId + 1);
+            Map.Entry<Long, Long> past = sparseIndex.higherEntry(afterId + limit);
+            start = floor == null ? 0 : floor.getValue();
+            end = past == null ? size : past.getValue();
+        }
+
+        try (FileChannel ch = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate((int) (end - start));
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, start + buf.position()) < 0) break;
+            }
+            List<AuditLogEntry> out = new ArrayList<>(Math.min(limit, 1024));
+            for (AuditLogEntry entry : readEntries(buf.array(), codec)) {
+                if (entry.id > afterId && out.size() < limit) out.add(entry);
+            }
+            return out;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read audit log", e);
+        }
+    }
+
+    public synchronized long lastId() {
+        return nextId - 1;
+    }
 
+    private void verifyIntegrity(List<AuditLogEntry> entries, String previous, long expectedId) {
+        try {
+            for (AuditLogEntry entry : entries) {
                 if (entry.id != expectedId) {
                     throw new IllegalStateException("Audit ID sequence broken");
                 }
@@ -104,15 +427,7 @@ public class AuditLogService {
                     throw new IllegalStateException("Audit chain broken");
                 }
 
-                String recalculated = sha256(
-                        entry.id + "|" +
-                        entry.timestamp + "|" +
-                        entry.event + "|" +
-                        entry.details + "|" +
-                        entry.previousChecksum
-                );
-
-                if (!recalculated.equals(entry.checksum)) {
+                if (!checksumOf(entry).equals(entry.checksum)) {
                     throw new IllegalStateException("Audit checksum invalid");
                 }
 
@@ -125,13 +440,153 @@ public class AuditLogService {
         }
     }
 
-    private String sha256(String input) {
+    // ---- Record framing ----
+
+    private void writeRecord(ByteArrayOutputStream target, AuditLogEntry entry) throws IOException {
+        if (codec.isText()) {
+            int n = jsonWriter.write(entry);
+            target.write(jsonWriter.buffer(), 0, n);
+            target.write('\n');
+            return;
+        }
+        recordBuffer.reset();
+        codec.encode(recordBuffer, entry);
+        int n = recordBuffer.size();
+        target.write(n >>> 24);
+        target.write(n >>> 16);
+        target.write(n >>> 8);
+        target.write(n);
+        recordBuffer.writeTo(target);
+    }
+
+    private static StorageCodec detectFormat(byte[] data) {
+        for (byte b : data) {
+            if (Character.isWhitespace(b)) continue;
+            // text logs are JSON lines; binary logs start with a length prefix
+            return b == '{' ? StorageCodecs.JSON : StorageCodecs.detect(data, 4);
+        }
+        return StorageCodecs.JSON;
+    }
+
+    private static List<AuditLogEntry> readEntries(byte[] data, StorageCodec format) throws IOException {
+        List<AuditLogEntry> entries = new ArrayList<>();
+        for (int[] frame : frames(data, format)) {
+            entries.add(format.decode(data, frame[1], frame[2], AuditLogEntry.class));
+        }
+        return entries;
+    }
+
+    /** Records as [frame start, payload start, payload length]; binary frames start with the length prefix. */
+    private static List<int[]> frames(byte[] data, StorageCodec format) {
+        List<int[]> frames = new ArrayList<>();
+        int pos = 0;
+
+        if (format.isText()) {
+            while (pos < data.length) {
+                int end = pos;
+                while (end < data.length && data[end] != '\n') end++;
+                if (end > pos && !isBlankLine(data, pos, end)) {
+                    frames.add(new int[]{pos, pos, end - pos});
+                }
+                pos = end + 1;
+            }
+            return frames;
+        }
+
+        while (pos + 4 <= data.length) {
+            int n = ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16)
+                    | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+            if (n <= 0 || pos + 4 + n > data.length) {
+                throw new IllegalStateException("Truncated audit record at byte " + pos);
+            }
+            frames.add(new int[]{pos, pos + 4, n});
+            pos += 4 + n;
+        }
+        return frames;
+    }
+
+    /**
+     * Truncates the file after the last complete record in {@code data}
+     * (the file's bytes from {@code offset} on) and returns those records.
+     */
+    private byte[] dropTornTail(byte[] data, StorageCodec format, long offset) throws IOException {
+        int complete = completeLength(data, format);
+        if (complete == data.length) return data;
+        try (FileChannel ch = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+            ch.truncate(offset + complete);
+            ch.force(true);
+        }
+        System.err.println("AuditLogService: dropped " + (data.length - complete)
+                + " byte(s) of a torn trailing record in " + logFile);
+        return Arrays.copyOf(data, complete);
+    }
+
+    /** Bytes up to the end of the last complete record; a bad length prefix is left for frames() to reject. */
+    private static int completeLength(byte[] data, StorageCodec format) {
+        if (format.isText()) {
+            int end = data.length;
+            while (end > 0 && data[end - 1] != '\n') end--;
+            return isBlankLine(data, end, data.length) ? data.length : end;
+        }
+        int pos = 0;
+        while (pos + 4 <= data.length) {
+            int n = ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16)
+                    | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+            if (n <= 0) return data.length;
+            if (pos + 4 + n > data.length) break;
+            pos += 4 + n;
+        }
+        return pos;
+    }
+
+    private static boolean isBlankLine(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!Character.isWhitespace(data[i])) return false;
+        }
+        return true;
+    }
+
+    private void rewrite(List<AuditLogEntry> entries) throws IOException {
+        Path tmp = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+        ByteArrayOutputStream all = new ByteArrayOutputStream(entries.size() * 128);
+        for (AuditLogEntry entry : entries) {
+            writeRecord(all, entry);
+        }
+        Files.write(tmp, all.toByteArray(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] hash = md.digest(input.getBytes());
-            return HexFormat.of().formatHex(hash);
-        } catch (Exception e) {
+            Files.move(tmp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmp, logFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // ---- Checksums ----
+
+    private String checksumOf(AuditLogEntry entry) {
+        if (entry.isLegacy()) {
+            // entries written before typed fields hashed the concatenated string form
+            return sha256((entry.id + "|" +
+                    entry.timestamp + "|" +
+                    entry.event + "|" +
+                    entry.details + "|" +
+                    entry.previousChecksum).getBytes(), -1);
+        }
+        int n = canonical.encode(entry);
+        return sha256(canonical.buffer(), n);
+    }
+
+    private String sha256(byte[] input, int length) {
+        digest.reset();
+        digest.update(input, 0, length < 0 ? input.length : length);
+        try {
+            digest.digest(hash, 0, hash.length);
+        } catch (DigestException e) {
             throw new RuntimeException(e);
         }
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX_DIGITS[hash[i] & 0xF];
+        }
+        return new String(hex, StandardCharsets.ISO_8859_1);
     }
 }
@@ -0,0 +1,43 @@
+package com.smartmove.cdc;
+
+import com.smartmove.domain.Payment;
+import com.smartmove.storage.PaymentStorage;
+
+import java.util.List;
+
+/**
+ * PaymentStorage decorator that records every saved payment in a ChangeLog.
+ */
+public class ChangeCapturingPaymentStorage implements PaymentStorage {
+
+    private final PaymentStorage delegate;
+    private final ChangeLog changeLog;
+
+    public ChangeCapturingPaymentStorage(PaymentStorage delegate, ChangeLog changeLog) {
+        this.delegate = delegate;
+        this.changeLog = changeLog;
+    }
+
+    @Override
+    public void save(Payment payment) {
+        delegate.save(payment);
+        changeLog.append(ChangeRecord.Entity.PAYMENT, ChangeRecord.Op.UPSERT, payment.getId(), payment);
+    }
+
+    @Override
+    public List<Payment> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public void deferWrites() {
+        delegate.deferWrites();
+        changeLog.deferSync();
+    }
+
+    @Override
+    public void flush() {
+        delegate.flush();
+        changeLog.sync();
+    }
+}
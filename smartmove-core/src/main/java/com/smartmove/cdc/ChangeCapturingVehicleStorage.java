@@ -0,0 +1,73 @@
+package com.smartmove.cdc;
+
+import com.smartmove.domain.Vehicle;
+import com.smartmove.storage.VehicleStorage;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * VehicleStorage decorator that records every successful write in a ChangeLog.
+ * The change is only captured after the delegate accepted the write, and
+ * only if it changes the vehicle as last recorded (see ChangeLog): journal
+ * replays and rollbacks of uncaptured changes are not recorded again.
+ */
+public class ChangeCapturingVehicleStorage implements VehicleStorage {
+
+    private final VehicleStorage delegate;
+    private final ChangeLog changeLog;
+
+    public ChangeCapturingVehicleStorage(VehicleStorage delegate, ChangeLog changeLog) {
+        this.delegate = delegate;
+        this.changeLog = changeLog;
+    }
+
+    @Override
+    public Optional<Vehicle> findById(String id) {
+        return delegate.findById(id);
+    }
+
+    @Override
+    public List<Vehicle> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<Vehicle> findWithUser() {
+        return delegate.findWithUser();
+    }
+
+    @Override
+    public void save(Vehicle vehicle) {
+        delegate.save(vehicle);
+        changeLog.append(ChangeRecord.Entity.VEHICLE, ChangeRecord.Op.UPSERT, vehicle.getId(), vehicle);
+    }
+
+    @Override
+    public void saveAll(List<Vehicle> vehicles) {
+        delegate.saveAll(vehicles);
+        Map<String, Vehicle> byId = new LinkedHashMap<>();
+        for (Vehicle v : vehicles) byId.put(v.getId(), v);
+        changeLog.appendAll(ChangeRecord.Entity.VEHICLE, ChangeRecord.Op.UPSERT, byId);
+    }
+
+    @Override
+    public void deleteById(String id) {
+        delegate.deleteById(id);
+        changeLog.append(ChangeRecord.Entity.VEHICLE, ChangeRecord.Op.DELETE, id, null);
+    }
+
+    @Override
+    public void deferWrites() {
+        delegate.deferWrites();
+        changeLog.deferSync();
+    }
+
+    @Override
+    public void flush() {
+        delegate.flush();
+        changeLog.sync();
+    }
+}
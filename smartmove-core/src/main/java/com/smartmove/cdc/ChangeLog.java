@@ -0,0 +1,358 @@
+package com.smartmove.cdc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartmove.storage.DurableFiles;
+import com.smartmove.trace.Span;
+import com.smartmove.trace.Tracer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Durable, append-only change-data-capture buffer (JSON lines).
+ * - Every storage write becomes one ChangeRecord with the next offset
+ * - Each append is fsynced before the offset is handed out, unless
+ *   {@link #deferSync()} was called because a TransactionJournal already
+ *   makes the change durable (and replays it after a crash)
+ * - A write that leaves a key as its last record has it is not a change and
+ *   is not recorded: a journal replay of writes already captured, or a
+ *   rollback restoring what was never captured as changed, adds nothing
+ * - Once the file passes {@code compactBytes} it is compacted: only the
+ *   latest record per key is kept, with its offset, so a consumer resuming
+ *   from any offset still ends up with every key's current value
+ * - A sparse offset -> file position index lets consumers resume
+ *   from any offset without rescanning the whole file
+ */
+public class ChangeLog implements AutoCloseable {
+
+    public static final String COMPACT_BYTES_PROPERTY = "smartmove.changelog.compactBytes";
+
+    static final long DEFAULT_COMPACT_BYTES = 64L * 1024 * 1024;
+
+    // One index entry per this many records
+    private static final int INDEX_INTERVAL = 256;
+    // fingerprint of a deleted key
+    private static final long TOMBSTONE = 0;
+
+    private final Path logFile;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final long compactBytes;
+    private FileChannel channel;
+
+    private final TreeMap<Long, Long> sparseIndex = new TreeMap<>();
+    // per entity: key -> fingerprint of its latest record
+    private final Map<ChangeRecord.Entity, Map<String, Long>> latest = new EnumMap<>(ChangeRecord.Entity.class);
+    private long lastOffset = 0;
+    private long size = 0;
+    private long records = 0;
+    private long compactAt;
+    private volatile boolean syncEachAppend = true;
+
+    public ChangeLog(Path logFile) {
+        this(logFile, Long.getLong(COMPACT_BYTES_PROPERTY, DEFAULT_COMPACT_BYTES));
+    }
+
+    public ChangeLog(Path logFile, long compactBytes) {
+        this.logFile = logFile;
+        this.compactBytes = compactBytes;
+        for (ChangeRecord.Entity e : ChangeRecord.Entity.values()) latest.put(e, new HashMap<>());
+        try {
+            Path parent = logFile.getParent();
+            if (parent != null) Files.createDirectories(parent);
+            this.channel = FileChannel.open(logFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            recover();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open change log: " + logFile, e);
+        }
+        compactAt = compactBytes;
+        maybeCompact();
+    }
+
+    /**
+     * Scans the log once to rebuild the sparse index, the last offset and
+     * each key's latest fingerprint. A torn trailing line (crash mid-append)
+     * is truncated away.
+     */
+    private void recover() throws IOException {
+        long position = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(logFile))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                if (line.size() > 0) {
+                    ChangeRecord r = mapper.readValue(line.toByteArray(), ChangeRecord.class);
+                    if (records++ % INDEX_INTERVAL == 0) sparseIndex.put(r.offset, position);
+                    latest.get(r.entity).put(r.key, fingerprint(r.op, r.data));
+                    lastOffset = r.offset;
+                }
+                position += line.size() + 1;
+                line.reset();
+            }
+        }
+        if (channel.size() != position) {
+            channel.truncate(position);
+        }
+        size = position;
+    }
+
+    /**
+     * Appends one change and returns its offset once it is on disk (the last
+     * offset, unchanged, if the key already has this value).
+     */
+    public long append(ChangeRecord.Entity entity, ChangeRecord.Op op, String key, Object value) {
+        try (Span span = Tracer.span("changeLog.append")) {
+            return appendAllLocked(entity, op, Collections.singletonMap(key, value));
+        }
+    }
+
+    /**
+     * Appends one change per key (same entity and op) with a single write and
+     * fsync, returning the last offset. All or none of them are kept; keys
+     * that already have their value are skipped.
+     */
+    public long appendAll(ChangeRecord.Entity entity, ChangeRecord.Op op, Map<String, ?> valuesByKey) {
+        try (Span span = Tracer.span("changeLog.appendAll")) {
+            return appendAllLocked(entity, op, valuesByKey);
+        }
+    }
+
+    private synchronized long appendAllLocked(ChangeRecord.Entity entity, ChangeRecord.Op op, Map<String, ?> valuesByKey) {
+        if (valuesByKey.isEmpty()) return lastOffset;
+        Map<String, Long> latestByKey = latest.get(entity);
+        long offset = lastOffset;
+        try {
+            long now = System.currentTimeMillis();
+            ByteArrayOutputStream lines = new ByteArrayOutputStream(512 * valuesByKey.size());
+            List<Long> starts = new ArrayList<>(valuesByKey.size());
+            Map<String, Long> written = new HashMap<>();
+            for (Map.Entry<String, ?> e : valuesByKey.entrySet()) {
+                Object value = e.getValue();
+                JsonNode data = value == null ? null : mapper.valueToTree(value);
+                long fingerprint = fingerprint(op, data);
+                Long last = latestByKey.get(e.getKey());
+                if (last != null && last == fingerprint) continue;
+
+                offset++;
+                ChangeRecord r = new ChangeRecord(
+                        offset,
+                        now,
+                        entity,
+                        op,
+                        e.getKey(),
+                        data
+                );
+                starts.add(size + lines.size());
+                lines.write(mapper.writeValueAsBytes(r));
+                lines.write('\n');
+                written.put(e.getKey(), fingerprint);
+            }
+            if (written.isEmpty()) return lastOffset;
+
+            ByteBuffer buf = ByteBuffer.wrap(lines.toByteArray());
+            long position = size;
+            while (buf.hasRemaining()) {
+                position += channel.write(buf, position);
+            }
+            if (syncEachAppend) channel.force(false);
+
+            for (int i = 0; i < starts.size(); i++) {
+                if (records++ % INDEX_INTERVAL == 0) sparseIndex.put(lastOffset + 1 + i, starts.get(i));
+            }
+            latestByKey.putAll(written);
+            size = position;
+            lastOffset = offset;
+            notifyAll();
+            maybeCompact();
+            return offset;
+
+        } catch (IOException e) {
+            // drop whatever part of the lines made it to disk
+            try { channel.truncate(size); } catch (IOException ignored) {}
+            throw new RuntimeException("Change log write failed", e);
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} records with offset > {@code since}, in order.
+     */
+    public List<ChangeRecord> read(long since, int limit) {
+        long start;
+        long end;
+        FileChannel ch;
+        synchronized (this) {
+            if (since >= lastOffset || limit <= 0) return List.of();
+            Map.Entry<Long, Long> floor = sparseIndex.floorEntry(since + 1);
+            start = floor == null ? 0 : floor.getValue();
+            end = size;
+            // opened under the lock, so a compaction replacing the file can't shift the positions
+            try {
+                ch = FileChannel.open(logFile, StandardOpenOption.READ);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read change log", e);
+            }
+        }
+
+        List<ChangeRecord> out = new ArrayList<>(Math.min(limit, 1024));
+        try (ch) {
+            ch.position(start);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(ch));
+            ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+            long remaining = end - start;
+
+            while (remaining > 0 && out.size() < limit) {
+                int b = in.read();
+                if (b == -1) break;
+                remaining--;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                if (line.size() > 0) {
+                    ChangeRecord r = mapper.readValue(line.toByteArray(), ChangeRecord.class);
+                    if (r.offset > since) out.add(r);
+                }
+                line.reset();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read change log", e);
+        }
+        return out;
+    }
+
+    /**
+     * Blocks until a record beyond {@code offset} exists or the timeout passes;
+     * returns whether one does.
+     */
+    public synchronized boolean awaitBeyond(long offset, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        long left = timeoutMs;
+        while (lastOffset <= offset && left > 0) {
+            wait(left);
+            left = deadline - System.currentTimeMillis();
+        }
+        return lastOffset > offset;
+    }
+
+    // ---- Compaction ----
+
+    private void maybeCompact() {
+        if (size < compactAt) return;
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            // the appends stand; the log is simply kept until a compaction succeeds
+            System.err.println("ChangeLog: compaction failed: " + e.getMessage());
+        }
+        // a large live set is not rewritten again until the log has doubled
+        compactAt = Math.max(compactBytes, 2 * size);
+    }
+
+    /**
+     * Rewrites the log with only the latest record per key, keeping offsets.
+     * The new file replaces the old one durably before appends move to it.
+     */
+    private void compact() throws IOException {
+        try (Span span = Tracer.span("changeLog.compact")) {
+            Map<ChangeRecord.Entity, Map<String, Long>> latestOffset = new EnumMap<>(ChangeRecord.Entity.class);
+            for (ChangeRecord.Entity e : ChangeRecord.Entity.values()) latestOffset.put(e, new HashMap<>());
+            forEachLine((line, r) -> latestOffset.get(r.entity).put(r.key, r.offset));
+
+            ByteArrayOutputStream kept = new ByteArrayOutputStream();
+            TreeMap<Long, Long> index = new TreeMap<>();
+            long[] count = {0};
+            forEachLine((line, r) -> {
+                if (latestOffset.get(r.entity).get(r.key) != r.offset) return;
+                if (count[0]++ % INDEX_INTERVAL == 0) index.put(r.offset, (long) kept.size());
+                kept.write(line, 0, line.length);
+                kept.write('\n');
+            });
+
+            long before = size;
+            DurableFiles.replace(logFile, kept.toByteArray());
+            FileChannel old = channel;
+            channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try { old.close(); } catch (IOException ignored) {}
+            sparseIndex.clear();
+            sparseIndex.putAll(index);
+            records = count[0];
+            size = kept.size();
+            System.err.println("ChangeLog: compacted " + logFile + " from " + before + " to " + size + " bytes");
+        }
+    }
+
+    private interface LineVisitor {
+        void accept(byte[] line, ChangeRecord r) throws IOException;
+    }
+
+    private void forEachLine(LineVisitor visitor) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(logFile))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+            long remaining = size;
+            while (remaining-- > 0) {
+                int b = in.read();
+                if (b == -1) break;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                if (line.size() > 0) {
+                    byte[] bytes = line.toByteArray();
+                    visitor.accept(bytes, mapper.readValue(bytes, ChangeRecord.class));
+                }
+                line.reset();
+            }
+        }
+    }
+
+    /** 64-bit FNV-1a of the record's data as written; deletes share one value. */
+    private long fingerprint(ChangeRecord.Op op, JsonNode data) throws IOException {
+        if (op == ChangeRecord.Op.DELETE) return TOMBSTONE;
+        long h = 0xcbf29ce484222325L;
+        for (byte b : mapper.writeValueAsBytes(data)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h == TOMBSTONE ? 1 : h;
+    }
+
+    /** Stops fsyncing each append; {@link #sync()} then makes them durable. */
+    public void deferSync() {
+        syncEachAppend = false;
+    }
+
+    public synchronized void sync() {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to sync change log: " + logFile, e);
+        }
+    }
+
+    public synchronized long lastOffset() {
+        return lastOffset;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.smartmove.cdc;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * One structured change captured from a storage write.
+ * Offsets are assigned by the ChangeLog and strictly increase.
+ */
+public class ChangeRecord {
+
+    public enum Entity { VEHICLE, PAYMENT }
+
+    public enum Op { UPSERT, DELETE }
+
+    public long offset;
+    public long timestamp;
+    public Entity entity;
+    public Op op;
+    public String key;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public JsonNode data;   // full record after the write, null for DELETE
+
+    public ChangeRecord() {}
+
+    public ChangeRecord(long offset,
+                        long timestamp,
+                        Entity entity,
+                        Op op,
+                        String key,
+                        JsonNode data) {
+
+        this.offset = offset;
+        this.timestamp = timestamp;
+        this.entity = entity;
+        this.op = op;
+        this.key = key;
+        this.data = data;
+    }
+}
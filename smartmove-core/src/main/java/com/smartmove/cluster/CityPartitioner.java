@@ -0,0 +1,34 @@
+package com.smartmove.cluster;
+
+import com.smartmove.domain.City;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Each city lives on one node: as listed in a node's {@code cities},
+ * otherwise assigned round-robin over the nodes sorted by id.
+ */
+public class CityPartitioner implements Partitioner {
+
+    private final String[] ownerByCity = new String[City.values().length];
+
+    public CityPartitioner(List<ClusterNode> nodes) {
+        if (nodes.isEmpty()) throw new IllegalArgumentException("cluster has no nodes");
+        List<ClusterNode> sorted = new ArrayList<>(nodes);
+        sorted.sort(Comparator.comparing(n -> n.id));
+        for (ClusterNode n : sorted) {
+            for (City c : n.cities) ownerByCity[c.ordinal()] = n.id;
+        }
+        int next = 0;
+        for (City c : City.values()) {
+            if (ownerByCity[c.ordinal()] == null) ownerByCity[c.ordinal()] = sorted.get(next++ % sorted.size()).id;
+        }
+    }
+
+    @Override
+    public String ownerOf(String vehicleId, City city) {
+        return city == null ? null : ownerByCity[city.ordinal()];
+    }
+}
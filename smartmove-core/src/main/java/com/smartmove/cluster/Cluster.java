@@ -0,0 +1,113 @@
+package com.smartmove.cluster;
+
+import com.smartmove.domain.City;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * This node's view of a partitioned deployment: who is in it and who owns
+ * which vehicle. Each node has its own storage, audit log and change log;
+ * requests for vehicles it does not own are forwarded by the API.
+ *
+ * Configured with system properties, e.g. for three processes on localhost:
+ * <pre>
+ *   -Dsmartmove.port=8081 -Dsmartmove.cluster.self=n1
+ *       -Dsmartmove.cluster.nodes=n1=http://localhost:8081,n2=http://localhost:8082
+ *   -Dsmartmove.port=8082 -Dsmartmove.cluster.self=n2  (same nodes list)
+ *   -Dsmartmove.port=8083 -Dsmartmove.cluster.self=n3
+ *       -Dsmartmove.cluster.join=http://localhost:8081   (joins later; vehicles are rebalanced)
+ * </pre>
+ * Partitioning is by vehicle id hash unless -Dsmartmove.cluster.partitioning=city.
+ *
+ * User accounts are not partitioned: a user and the per-user rental limit
+ * live on one node only, so the API refuses /users and user-scoped
+ * reservations and rental starts in a cluster (anonymous rentals work).
+ */
+public class Cluster {
+
+    public static final String SELF_PROPERTY = "smartmove.cluster.self";
+    public static final String NODES_PROPERTY = "smartmove.cluster.nodes";
+    public static final String PARTITIONING_PROPERTY = "smartmove.cluster.partitioning";
+    public static final String JOIN_PROPERTY = "smartmove.cluster.join";
+    public static final String URL_PROPERTY = "smartmove.cluster.url";
+
+    private final String selfId;
+    private final List<Consumer<Membership>> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile Membership membership;
+    private volatile Partitioner partitioner;
+
+    public Cluster(String selfId, Membership initial) {
+        if (initial.node(selfId) == null) throw new IllegalArgumentException("node " + selfId + " is not a member");
+        this.selfId = selfId;
+        this.membership = initial;
+        this.partitioner = Partitioner.of(initial);
+    }
+
+    /**
+     * Cluster from system properties, or null when running as a single node.
+     * {@code defaultUrl} is this node's address if not given explicitly.
+     */
+    public static Cluster fromConfig(String defaultUrl) {
+        String self = System.getProperty(SELF_PROPERTY);
+        if (self == null || self.isBlank()) return null;
+
+        Membership m = new Membership();
+        m.epoch = 1;
+        m.partitioning = Membership.Partitioning.valueOf(
+                System.getProperty(PARTITIONING_PROPERTY, "hash").trim().toUpperCase());
+        String nodes = System.getProperty(NODES_PROPERTY, "");
+        for (String entry : nodes.split(",")) {
+            if (entry.isBlank()) continue;
+            int eq = entry.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Expected id=url in " + NODES_PROPERTY + ": " + entry);
+            m.nodes.add(new ClusterNode(entry.substring(0, eq).trim(), entry.substring(eq + 1).trim()));
+        }
+        if (m.node(self) == null) {
+            m.nodes.add(new ClusterNode(self, System.getProperty(URL_PROPERTY, defaultUrl)));
+        }
+        return new Cluster(self, m);
+    }
+
+    public String selfId() {
+        return selfId;
+    }
+
+    public ClusterNode self() {
+        return membership.node(selfId);
+    }
+
+    public Membership membership() {
+        return membership;
+    }
+
+    /** Owning node id; null if it cannot be told without a city. */
+    public String ownerOf(String vehicleId, City city) {
+        return partitioner.ownerOf(vehicleId, city);
+    }
+
+    public boolean isSelf(String nodeId) {
+        return selfId.equals(nodeId);
+    }
+
+    /**
+     * Adopts a newer membership (higher epoch) and notifies listeners.
+     * Returns false if it was not newer.
+     */
+    public boolean update(Membership next) {
+        synchronized (this) {
+            if (next.epoch <= membership.epoch) return false;
+            if (next.node(selfId) == null) throw new IllegalArgumentException("membership does not include " + selfId);
+            this.partitioner = Partitioner.of(next);
+            this.membership = next;
+        }
+        for (Consumer<Membership> l : listeners) l.accept(next);
+        return true;
+    }
+
+    public void onChange(Consumer<Membership> listener) {
+        listeners.add(listener);
+    }
+}
@@ -0,0 +1,20 @@
+package com.smartmove.cluster;
+
+import com.smartmove.domain.City;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** One API process in a partitioned deployment. */
+public class ClusterNode {
+    public String id;
+    public String url;                          // base URL, e.g. http://localhost:8081
+    public List<City> cities = new ArrayList<>(); // explicit city ownership (city partitioning only)
+
+    public ClusterNode() {}
+
+    public ClusterNode(String id, String url) {
+        this.id = id;
+        this.url = url;
+    }
+}
@@ -0,0 +1,44 @@
+package com.smartmove.cluster;
+
+import com.smartmove.domain.City;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Hash ring over vehicle ids with virtual nodes: when a node joins, only
+ * about 1/n of the vehicles change owner, all of them moving to the new node.
+ */
+public class ConsistentHashPartitioner implements Partitioner {
+
+    static final int VIRTUAL_NODES = 128;
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+
+    public ConsistentHashPartitioner(List<ClusterNode> nodes) {
+        if (nodes.isEmpty()) throw new IllegalArgumentException("cluster has no nodes");
+        for (ClusterNode n : nodes) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) ring.put(hash(n.id + "#" + v), n.id);
+        }
+    }
+
+    @Override
+    public String ownerOf(String vehicleId, City city) {
+        Map.Entry<Long, String> e = ring.ceilingEntry(hash(vehicleId));
+        return (e != null ? e : ring.firstEntry()).getValue();
+    }
+
+    /** 64-bit FNV-1a with a final avalanche, so nearby ids spread over the ring. */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
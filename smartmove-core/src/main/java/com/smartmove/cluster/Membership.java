@@ -0,0 +1,35 @@
+package com.smartmove.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The node list every member routes by. Changes carry a higher epoch;
+ * a node ignores memberships older than the one it has.
+ */
+public class Membership {
+    public long epoch;
+    public Partitioning partitioning = Partitioning.HASH;
+    public List<ClusterNode> nodes = new ArrayList<>();
+
+    public enum Partitioning { HASH, CITY }
+
+    public ClusterNode node(String id) {
+        for (ClusterNode n : nodes) {
+            if (n.id.equals(id)) return n;
+        }
+        return null;
+    }
+
+    /** A copy with the node added (or its URL updated) and the epoch bumped. */
+    public Membership with(ClusterNode node) {
+        Membership m = new Membership();
+        m.epoch = epoch + 1;
+        m.partitioning = partitioning;
+        for (ClusterNode n : nodes) {
+            if (!n.id.equals(node.id)) m.nodes.add(n);
+        }
+        m.nodes.add(node);
+        return m;
+    }
+}
@@ -0,0 +1,21 @@
+package com.smartmove.cluster;
+
+import com.smartmove.domain.City;
+
+/**
+ * Decides which node owns a vehicle.
+ */
+public interface Partitioner {
+
+    /**
+     * Owning node id, or null if it cannot be told from what is known
+     * (city partitioning without a city).
+     */
+    String ownerOf(String vehicleId, City city);
+
+    static Partitioner of(Membership m) {
+        return m.partitioning == Membership.Partitioning.CITY
+                ? new CityPartitioner(m.nodes)
+                : new ConsistentHashPartitioner(m.nodes);
+    }
+}
@@ -0,0 +1,95 @@
+package com.smartmove.cluster;
+
+import com.smartmove.controller.SmartMoveCentralController;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.metrics.Counter;
+import com.smartmove.metrics.MetricsRegistry;
+import com.smartmove.storage.VehicleStorage;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves vehicles this node no longer owns to their owners after a
+ * membership change. Each vehicle is sent under its lock and deleted
+ * locally only once the owner has accepted it; failures are retried.
+ */
+public class Rebalancer {
+
+    /** Ships one vehicle to another node; throws if it was not accepted. */
+    public interface Transfer {
+        void send(ClusterNode target, Vehicle vehicle);
+    }
+
+    private static final long RETRY_SECONDS = 5;
+
+    public static final class Result {
+        public final int moved;
+        public final int failed;
+
+        Result(int moved, int failed) {
+            this.moved = moved;
+            this.failed = failed;
+        }
+    }
+
+    private final Cluster cluster;
+    private final VehicleStorage storage;
+    private final SmartMoveCentralController controller;
+    private final Transfer transfer;
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "cluster-rebalancer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Counter transferred = MetricsRegistry.global().counter(
+            "smartmove_cluster_vehicles_transferred_total", "Vehicles handed to another node");
+
+    public Rebalancer(Cluster cluster, VehicleStorage storage, SmartMoveCentralController controller, Transfer transfer) {
+        this.cluster = cluster;
+        this.storage = storage;
+        this.controller = controller;
+        this.transfer = transfer;
+    }
+
+    /** Rebalances on every membership change, and once now. */
+    public void start() {
+        cluster.onChange(m -> worker.execute(this::runAndRetry));
+        worker.execute(this::runAndRetry);
+    }
+
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    /** One pass over the local vehicles. */
+    public Result rebalance() {
+        int moved = 0;
+        int failed = 0;
+        for (Vehicle v : storage.findAll()) {
+            String owner = cluster.ownerOf(v.getId(), v.getCity());
+            if (owner == null || cluster.isSelf(owner)) continue;
+            ClusterNode target = cluster.membership().node(owner);
+            try {
+                if (controller.transferOut(v.getId(), owner, copy -> transfer.send(target, copy))) {
+                    moved++;
+                    transferred.inc();
+                }
+            } catch (RuntimeException e) {
+                failed++;
+                System.err.println("Rebalancer: could not move " + v.getId() + " to " + owner + ": " + e.getMessage());
+            }
+        }
+        return new Result(moved, failed);
+    }
+
+    private void runAndRetry() {
+        Result result = rebalance();
+        if (result.moved > 0 || result.failed > 0) {
+            System.out.println("Rebalancer: moved " + result.moved + " vehicle(s), " + result.failed + " pending");
+        }
+        if (result.failed > 0) worker.schedule(this::runAndRetry, RETRY_SECONDS, TimeUnit.SECONDS);
+    }
+}
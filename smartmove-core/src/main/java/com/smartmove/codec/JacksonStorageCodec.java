@@ -0,0 +1,61 @@
+package com.smartmove.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * StorageCodec backed by a Jackson ObjectMapper for one data format.
+ */
+class JacksonStorageCodec implements StorageCodec {
+
+    private final String name;
+    private final boolean text;
+    private final ObjectMapper mapper;
+
+    JacksonStorageCodec(String name, boolean text, ObjectMapper mapper) {
+        this.name = name;
+        this.text = text;
+        // callers own the target stream (e.g. an open append channel)
+        this.mapper = mapper.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public boolean isText() {
+        return text;
+    }
+
+    @Override
+    public byte[] encode(Object value) throws IOException {
+        return mapper.writeValueAsBytes(value);
+    }
+
+    @Override
+    public void encode(OutputStream out, Object value) throws IOException {
+        mapper.writeValue(out, value);
+    }
+
+    @Override
+    public <T> T decode(byte[] data, TypeReference<T> type) throws IOException {
+        return mapper.readValue(data, type);
+    }
+
+    @Override
+    public <T> T decode(byte[] data, int offset, int length, Class<T> type) throws IOException {
+        return mapper.readValue(data, offset, length, type);
+    }
+
+    @Override
+    public JsonParser parser(byte[] data) throws IOException {
+        return mapper.getFactory().createParser(data);
+    }
+}
@@ -0,0 +1,31 @@
+package com.smartmove.codec;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Serialization format used by the file-backed stores and the audit log.
+ * Implementations must be thread-safe.
+ */
+public interface StorageCodec {
+
+    /** Config name, e.g. "json" or "smile". */
+    String name();
+
+    /** True for line-oriented text formats; binary formats are length-framed when appended. */
+    boolean isText();
+
+    byte[] encode(Object value) throws IOException;
+
+    void encode(OutputStream out, Object value) throws IOException;
+
+    <T> T decode(byte[] data, TypeReference<T> type) throws IOException;
+
+    <T> T decode(byte[] data, int offset, int length, Class<T> type) throws IOException;
+
+    /** Streaming parser over a whole document, for loaders that index records instead of binding them. */
+    JsonParser parser(byte[] data) throws IOException;
+}
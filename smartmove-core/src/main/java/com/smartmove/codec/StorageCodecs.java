@@ -0,0 +1,70 @@
+package com.smartmove.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+
+/**
+ * Available storage codecs and config-based selection.
+ *
+ * The write format is chosen with -Dsmartmove.codec=json|smile (default json).
+ * Reads always sniff the actual format, so existing JSON files stay readable
+ * and are converted on the next write.
+ */
+public final class StorageCodecs {
+
+    public static final String CONFIG_PROPERTY = "smartmove.codec";
+
+    // Smile documents start with ":)\n"
+    private static final byte[] SMILE_HEADER = {':', ')', '\n'};
+
+    /** Compact (not pretty-printed) JSON. */
+    public static final StorageCodec JSON =
+            new JacksonStorageCodec("json", true, new ObjectMapper());
+
+    /** Jackson Smile: binary JSON with back-referenced names and raw numbers. */
+    public static final StorageCodec SMILE =
+            new JacksonStorageCodec("smile", false, new SmileMapper());
+
+    private StorageCodecs() {}
+
+    public static StorageCodec fromConfig() {
+        return byName(System.getProperty(CONFIG_PROPERTY, JSON.name()));
+    }
+
+    public static StorageCodec byName(String name) {
+        return switch (name.trim().toLowerCase()) {
+            case "json" -> JSON;
+            case "smile" -> SMILE;
+            default -> throw new IllegalArgumentException("Unknown storage codec: " + name);
+        };
+    }
+
+    /**
+     * Codec that wrote the given file content (JSON for empty content).
+     */
+    public static StorageCodec detect(byte[] data) {
+        return detect(data, 0);
+    }
+
+    /**
+     * Codec of a document starting at {@code offset}, e.g. after a length prefix.
+     */
+    public static StorageCodec detect(byte[] data, int offset) {
+        return isSmile(data, offset) ? SMILE : JSON;
+    }
+
+    /** True if the content is empty or whitespace only. */
+    public static boolean isBlank(byte[] data) {
+        for (byte b : data) {
+            if (!Character.isWhitespace(b)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isSmile(byte[] data, int offset) {
+        return data.length >= offset + SMILE_HEADER.length
+                && data[offset] == SMILE_HEADER[0]
+                && data[offset + 1] == SMILE_HEADER[1]
+                && data[offset + 2] == SMILE_HEADER[2];
+    }
+}
@@ -1,43 +1,139 @@
 package com.smartmove.controller;
 
+import com.smartmove.audit.AuditEvent;
+import com.smartmove.audit.AuditLogEntry;
 import com.smartmove.audit.AuditLogService;
 import com.smartmove.domain.City;
+import com.smartmove.feed.VehicleChangeFeed;
+import com.smartmove.metrics.Counter;
+import com.smartmove.metrics.LatencyHistogram;
+import com.smartmove.metrics.MetricsRegistry;
+import com.smartmove.pricing.PricingEngine;
+import com.smartmove.pricing.TariffPricingEngine;
+import com.smartmove.trace.Span;
+import com.smartmove.trace.Tracer;
 import com.smartmove.telemetry.TelemetryData;
+import com.smartmove.telemetry.TelemetryPool;
+import com.smartmove.domain.Trip;
 import com.smartmove.domain.Vehicle;
+import com.smartmove.domain.VehicleIds;
 import com.smartmove.domain.VehicleState;
 import com.smartmove.domain.VehicleType;
 import com.smartmove.storage.VehicleStorage;
 import com.smartmove.zones.ZoneService;
 import com.smartmove.domain.Payment;
 import com.smartmove.storage.PaymentStorage;
+import com.smartmove.storage.UserStorage;
+import com.smartmove.tx.TransactionJournal;
+import com.smartmove.tx.UnitOfWork;
 
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 public class SmartMoveCentralController {
 
+    /** Max vehicles one user may hold (reserved or in use) at a time. */
+    public static final String MAX_ACTIVE_PER_USER_PROPERTY = "smartmove.rentals.perUser";
+
     private final VehicleStorage storage;
     private final AuditLogService auditLog;
     private final ZoneService zoneService;
 
     private final PaymentStorage paymentStorage;
-
-    // Manual concurrency management: per-vehicle locks
-    private final Map<String, ReentrantLock> vehicleLocks = new ConcurrentHashMap<>();
-
-    // Telemetry background processing
+    private final PricingEngine pricing;
+    private final UserStorage users;   // null: user ids are not checked against a store
+    private final TransactionJournal journal;   // null: writes go straight to the stores
+
+    // Manual concurrency management: per-vehicle locks, indexed by VehicleIds handle in
+    // pages of LOCK_PAGE_SIZE that are created on demand and never copied or removed
+    private final VehicleIds vehicleIds = VehicleIds.global();
+    private volatile AtomicReferenceArray<VehicleLock>[] lockPages = newLockPages(16);
+    private final Object lockPagesGrowth = new Object();
+
+    // userId -> vehicles it holds, for O(1) per-user limits (rebuilt from storage on startup)
+    private final Map<String, Set<String>> activeByUser = new ConcurrentHashMap<>();
+    private final int maxActivePerUser = Integer.getInteger(MAX_ACTIVE_PER_USER_PROPERTY, 1);
+
+    // Telemetry background processing: samples that will lock, terminate or alarm
+    // (see isUrgent) go to their own lane, which the worker always drains first
+    private final BlockingQueue<TelemetryData> urgentTelemetry = new LinkedBlockingQueue<>();
     private final BlockingQueue<TelemetryData> telemetryQueue = new LinkedBlockingQueue<>();
+    private final Semaphore telemetryQueued = new Semaphore(0);   // one permit per queued sample
     private final ExecutorService telemetryWorker = Executors.newSingleThreadExecutor();
-    
+    private final TelemetryPool telemetryPool = new TelemetryPool(TELEMETRY_POOL_SIZE);
+    private static final int TELEMETRY_POOL_SIZE = 4096;
+    private static final int LOCK_PAGE_BITS = 10;
+    private static final int LOCK_PAGE_SIZE = 1 << LOCK_PAGE_BITS;
+
+    // Telemetry intervention thresholds
+    private static final double OVERHEAT_C = 60;
+    private static final int LOW_BATTERY_PERCENT = 5;
+
+    // Push notifications for dashboards (per-vehicle versions + subscribers)
+    private final VehicleChangeFeed changeFeed = new VehicleChangeFeed();
+
+    // Instrumentation (exported at /metrics)
+    private final LatencyHistogram lockWait = MetricsRegistry.global().histogram(
+            "smartmove_vehicle_lock_wait_seconds", "Time spent waiting for a per-vehicle lock");
+    private final LatencyHistogram registerLatency = opLatency("registerVehicle");
+    private final LatencyHistogram changeStateLatency = opLatency("changeState");
+    private final LatencyHistogram startRentalLatency = opLatency("startRental");
+    private final LatencyHistogram endRentalLatency = opLatency("endRental");
+    private final LatencyHistogram telemetryLatency = opLatency("handleTelemetry");
+    private final LatencyHistogram batchLatency = opLatency("changeStates");
+    private final LatencyHistogram urgentTelemetryWait = telemetryWait("urgent");
+    private final LatencyHistogram routineTelemetryWait = telemetryWait("routine");
+    private final Counter telemetryFailures = MetricsRegistry.global().counter(
+            "smartmove_telemetry_failures_total", "Telemetry samples whose processing threw");
 
     public SmartMoveCentralController(VehicleStorage storage, AuditLogService auditLog, ZoneService zoneService, PaymentStorage paymentStorage) {
+        this(storage, auditLog, zoneService, paymentStorage, TariffPricingEngine.defaults());
+    }
+
+    public SmartMoveCentralController(VehicleStorage storage, AuditLogService auditLog, ZoneService zoneService,
+                                      PaymentStorage paymentStorage, PricingEngine pricing) {
+        this(storage, auditLog, zoneService, paymentStorage, pricing, null);
+    }
+
+    public SmartMoveCentralController(VehicleStorage storage, AuditLogService auditLog, ZoneService zoneService,
+                                      PaymentStorage paymentStorage, PricingEngine pricing, UserStorage users) {
+        this(storage, auditLog, zoneService, paymentStorage, pricing, users, null);
+    }
+
+    /** With a journal, each operation's vehicle, payment and audit writes commit as one record. */
+    public SmartMoveCentralController(VehicleStorage storage, AuditLogService auditLog, ZoneService zoneService,
+                                      PaymentStorage paymentStorage, PricingEngine pricing, UserStorage users,
+                                      TransactionJournal journal) {
         this.storage = storage;
         this.auditLog = auditLog;
         this.zoneService = zoneService;
         this.paymentStorage = paymentStorage;
+        this.pricing = pricing;
+        this.users = users;
+        this.journal = journal;
+        for (Vehicle v : storage.findWithUser()) {
+            if (holdsVehicle(v.getState())) {
+                activeByUser.computeIfAbsent(v.getUserId(), u -> ConcurrentHashMap.newKeySet()).add(v.getId());
+            }
+        }
+        MetricsRegistry.global().gauge("smartmove_telemetry_queue_depth",
+                "Telemetry samples waiting for the worker", this::telemetryQueueDepth);
+        MetricsRegistry.global().gauge("smartmove_telemetry_lane_depth",
+                "Telemetry samples waiting for the worker, by lane", urgentTelemetry::size, "lane", "urgent");
+        MetricsRegistry.global().gauge("smartmove_telemetry_lane_depth",
+                "Telemetry samples waiting for the worker, by lane", telemetryQueue::size, "lane", "routine");
         telemetryWorker.submit(this::telemetryLoop);
     }
 
@@ -45,29 +141,57 @@ public class SmartMoveCentralController {
         telemetryWorker.shutdownNow();
     }
 
+    public VehicleChangeFeed changeFeed() {
+        return changeFeed;
+    }
+
+    /** Holders for {@link #sendTelemetry}; the worker returns them here once processed. */
+    public TelemetryPool telemetryPool() {
+        return telemetryPool;
+    }
+
+    /** Telemetry samples accepted but not yet processed. */
+    public int telemetryQueueDepth() {
+        return urgentTelemetry.size() + telemetryQueue.size();
+    }
+
+    /** Vehicles the user currently holds (reserved or in use). */
+    public int activeRentals(String userId) {
+        Set<String> held = activeByUser.get(userId);
+        return held == null ? 0 : held.size();
+    }
+
     public void registerVehicle(Vehicle v) {
         if (v == null || v.getId() == null || v.getId().isBlank()) {
             throw new IllegalArgumentException("Vehicle/id cannot be null");
         }
-        ReentrantLock lock = lockFor(v.getId());
-        lock.lock();
+        long start = System.nanoTime();
+        Span span = Tracer.span("controller.registerVehicle");
+        ReentrantLock lock = lockVehicle(v.getId());
         try {
             // Ensure initial state
             if (v.getState() == null) v.setState(VehicleState.AVAILABLE);
 
             // Persist + audit (simple commit order; rollback by restoring snapshot)
-            Vehicle snapshot = safeCopy(v);
+            Vehicle snapshot = v.copy();
 
             try {
-                storage.save(v);
-                auditLog.append("VEHICLE_REGISTERED", "vehicleId=" + v.getId() + ", type=" + v.getType());
+                begin().save(v)
+                        .audit(AuditLogEntry.of(AuditEvent.VEHICLE_REGISTERED, v.getId())
+                                .vehicleType(v.getType())
+                                .city(v.getCity()))
+                        .commit();
+                published(v);
             } catch (Exception ex) {
                 // rollback storage to snapshot
                 try { storage.save(snapshot); } catch (Exception ignored) {}
+                changeFeed.touch(v.getId());
                 throw new RuntimeException("Failed to register vehicle; rolled back", ex);
             }
         } finally {
             lock.unlock();
+            span.close();
+            registerLatency.recordSince(start);
         }
     }
 
@@ -76,19 +200,35 @@ public class SmartMoveCentralController {
     }
 
     public void reserveVehicle(String vehicleId, City city) {
-        changeState(vehicleId, VehicleState.RESERVED, city, "reserve");
+        reserveVehicle(vehicleId, city, null);
+    }
+
+    /** Reserves for a user (null = anonymous), subject to the per-user limit. */
+    public void reserveVehicle(String vehicleId, City city, String userId) {
+        changeState(vehicleId, VehicleState.RESERVED, city, "reserve", userId);
     }
 
     public void startRental(String vehicleId, City city) {
-        ReentrantLock lock = lockFor(vehicleId);
-        lock.lock();
+        startRental(vehicleId, city, null);
+    }
+
+    /** Starts a rental; a reserved vehicle can only be started with the id of the user holding it. */
+    public void startRental(String vehicleId, City city, String userId) {
+        long start = System.nanoTime();
+        Span span = Tracer.span("controller.startRental");
+        ReentrantLock lock = lockVehicle(vehicleId);
         try {
-            Vehicle v = storage.findById(vehicleId).orElseThrow(() -> new IllegalArgumentException("Vehicle not found"));
-            Vehicle snapshot = safeCopy(v);
+            Vehicle snapshot = storage.findById(vehicleId).orElseThrow(() -> new IllegalArgumentException("Vehicle not found"));
+            Vehicle v = snapshot.copy();
 
             // State machine validation
             validateTransition(v.getState(), VehicleState.IN_USE);
 
+            if (v.getUserId() != null && !v.getUserId().equals(userId)) {
+                throw new IllegalStateException(userId == null
+                        ? "Vehicle is reserved by a user; userId required" : "Vehicle is reserved by another user");
+            }
+
             // City-specific rule: Milan helmet check for Mopeds
             if (city == City.MILAN && v.getType() == VehicleType.MOPED) {
                 boolean helmetPresent = v.getTelemetry() != null && v.getTelemetry().isHelmetPresent();
@@ -97,54 +237,249 @@ public class SmartMoveCentralController {
                 }
             }
 
+            boolean claimed = false;
+            if (v.getUserId() == null && userId != null) {
+                requireUser(userId);
+                claim(userId, vehicleId);
+                claimed = true;
+                v.setUserId(userId);
+            }
+
             v.setCity(city);
             v.setState(VehicleState.IN_USE);
             v.setRentalActive(true);
+            v.setTrip(Trip.start(System.currentTimeMillis(), v.getTelemetry()));
 
             try {
-                storage.save(v);
-                auditLog.append("RENTAL_STARTED", "vehicleId=" + vehicleId + ", city=" + city);
+                begin().save(v)
+                        .audit(AuditLogEntry.of(AuditEvent.RENTAL_STARTED, vehicleId).city(city))
+                        .commit();
+                published(v);
             } catch (Exception ex) {
                 try { storage.save(snapshot); } catch (Exception ignored) {}
+                changeFeed.touch(vehicleId);
+                if (claimed) release(userId, vehicleId);
                 throw new RuntimeException("Failed to start rental; rolled back", ex);
             }
         } finally {
             lock.unlock();
+            span.close();
+            startRentalLatency.recordSince(start);
         }
     }
 
     public void endRental(String vehicleId) {
-        ReentrantLock lock = lockFor(vehicleId);
-        lock.lock();
+        endRental(vehicleId, null);
+    }
+
+    /** Ends a rental; a rental held by a user can only be ended with that user's id. */
+    public void endRental(String vehicleId, String userId) {
+        long start = System.nanoTime();
+        Span span = Tracer.span("controller.endRental");
+        ReentrantLock lock = lockVehicle(vehicleId);
         try {
-            Vehicle v = storage.findById(vehicleId).orElseThrow(() -> new IllegalArgumentException("Vehicle not found"));
-            Vehicle snapshot = safeCopy(v);
+            Vehicle snapshot = storage.findById(vehicleId).orElseThrow(() -> new IllegalArgumentException("Vehicle not found"));
+            Vehicle v = snapshot.copy();
 
             if (v.getState() != VehicleState.IN_USE) {
                 throw new IllegalStateException("Vehicle must be IN_USE to end rental");
             }
+            String renter = v.getUserId();
+            if (renter != null && !renter.equals(userId)) {
+                throw new IllegalStateException(userId == null
+                        ? "Rental is held by a user; userId required" : "Rental belongs to another user");
+            }
 
-            // City-specific rule: London congestion charge (hook)
-            double baseFare = 10.0; // simple fixed fare for lab
-            double congestion = (v.getCity() == City.LONDON) ? 5.0 : 0.0;
+            // Tariffs (incl. London congestion charge) come from the pricing engine
+            long endedAt = System.currentTimeMillis();
+            Trip trip = v.getTrip() != null ? v.getTrip() : Trip.start(endedAt, v.getTelemetry());
+            long baseFare = pricing.baseFareCents(v.getCity(), v.getType(),
+                    trip.getStartedAt(), trip.elapsedMillis(endedAt), trip.getMeters());
+            long congestion = pricing.congestionCents(v.getCity(), v.getType(), trip.getStartedAt());
 
             Payment p = new Payment(vehicleId, v.getCity(), baseFare, congestion);
-            paymentStorage.save(p);
-            auditLog.append("PAYMENT",
-                    "paymentId=" + p.getId() + ", vehicleId=" + vehicleId + ", city=" + v.getCity()
-                            + ", base=" + baseFare + ", congestion=" + congestion + ", total=" + p.getTotal());
-
+            p.setVehicleType(v.getType());
+            p.setUserId(renter);
+            p.recordTrip(trip, endedAt);
 
             v.setRentalActive(false);
             v.setState(VehicleState.AVAILABLE);
+            v.setTrip(null);
+            v.setUserId(null);
 
+            // vehicle, payment and both audit entries commit together (one journal record)
             try {
-                storage.save(v);
-                auditLog.append("RENTAL_ENDED", "vehicleId=" + vehicleId + ", city=" + v.getCity());
+                begin().save(v)
+                        .pay(p)
+                        .audit(AuditLogEntry.of(AuditEvent.PAYMENT, vehicleId)
+                                .city(v.getCity())
+                                .payment(p.getId(), baseFare / 100.0, congestion / 100.0, p.getTotalCents() / 100.0))
+                        .audit(AuditLogEntry.of(AuditEvent.RENTAL_ENDED, vehicleId).city(v.getCity()))
+                        .commit();
+                published(v);
             } catch (Exception ex) {
                 try { storage.save(snapshot); } catch (Exception ignored) {}
+                changeFeed.touch(vehicleId);
                 throw new RuntimeException("Failed to end rental; rolled back", ex);
             }
+            if (renter != null) release(renter, vehicleId);
+        } finally {
+            lock.unlock();
+            span.close();
+            endRentalLatency.recordSince(start);
+        }
+    }
+
+    // ---- Batch transitions ----
+
+    /** Outcome for one vehicle of a batch transition; {@code error} is null on success. */
+    public static final class TransitionResult {
+        public final String vehicleId;
+        public final VehicleState from;
+        public final VehicleState to;
+        public final String error;
+
+        TransitionResult(String vehicleId, VehicleState from, VehicleState to, String error) {
+            this.vehicleId = vehicleId;
+            this.from = from;
+            this.to = to;
+            this.error = error;
+        }
+
+        public boolean isOk() {
+            return error == null;
+        }
+    }
+
+    /**
+     * Moves many vehicles to {@code to} at once (e.g. a district to MAINTENANCE).
+     * Locks are taken in id order, so concurrent batches cannot deadlock. Each
+     * vehicle is validated on its own; those that pass are committed as one
+     * unit of work (one storage write and one audit append), or not at all.
+     * Vehicles with an active rental are only moved to MAINTENANCE or
+     * EMERGENCY_LOCK, which terminates the rental without a payment (as a
+     * fault or overheat lock from telemetry does); billing a rental goes
+     * through endRental.
+     *
+     * @return one result per requested id, in request order
+     */
+    public List<TransitionResult> changeStates(List<String> vehicleIds, VehicleState to, String reason) {
+        if (vehicleIds == null || to == null) throw new IllegalArgumentException("vehicleIds and state are required");
+        for (String id : vehicleIds) {
+            if (id == null || id.isBlank()) throw new IllegalArgumentException("vehicleIds cannot contain null/blank ids");
+        }
+        long start = System.nanoTime();
+        Span span = Tracer.span("controller.changeStates");
+        List<ReentrantLock> locks = new ArrayList<>();
+        try {
+            for (String id : new TreeSet<>(vehicleIds)) locks.add(lockVehicle(id));
+
+            Map<String, TransitionResult> results = new HashMap<>();
+            List<Vehicle> updated = new ArrayList<>();
+            List<Vehicle> snapshots = new ArrayList<>();
+            UnitOfWork work = begin();
+            for (String id : new LinkedHashSet<>(vehicleIds)) {
+                Vehicle v = storage.findById(id).orElse(null);
+                if (v == null) {
+                    results.put(id, new TransitionResult(id, null, to, "Vehicle not found"));
+                    continue;
+                }
+                try {
+                    validateTransition(v.getState(), to);
+                    if (v.isRentalActive() && to != VehicleState.MAINTENANCE && to != VehicleState.EMERGENCY_LOCK) {
+                        throw new IllegalStateException("Rental in progress; end it first");
+                    }
+                } catch (IllegalStateException e) {
+                    results.put(id, new TransitionResult(id, v.getState(), to, e.getMessage()));
+                    continue;
+                }
+                Vehicle next = v.copy();
+                next.setState(to);
+                if (!holdsVehicle(to)) {
+                    // as on a telemetry lock: the rental is terminated unbilled and the holder released
+                    next.setRentalActive(false);
+                    next.setTrip(null);
+                    next.setUserId(null);
+                }
+                updated.add(next);
+                snapshots.add(v);   // the stored instance; only next is changed
+                work.save(next).audit(AuditLogEntry.of(AuditEvent.STATE_CHANGE, id)
+                        .city(v.getCity())
+                        .transition(v.getState(), to)
+                        .reason(reason));
+                results.put(id, new TransitionResult(id, v.getState(), to, null));
+            }
+
+            if (!updated.isEmpty()) {
+                try {
+                    work.commit();
+                } catch (Exception ex) {
+                    try { storage.saveAll(snapshots); } catch (Exception ignored) {}
+                    for (Vehicle before : snapshots) changeFeed.touch(before.getId());
+                    throw new RuntimeException("Batch state change failed; rolled back", ex);
+                }
+                for (int i = 0; i < updated.size(); i++) {
+                    Vehicle before = snapshots.get(i);
+                    if (before.getUserId() != null && updated.get(i).getUserId() == null) {
+                        release(before.getUserId(), before.getId());
+                    }
+                    published(updated.get(i));
+                }
+            }
+
+            List<TransitionResult> out = new ArrayList<>(vehicleIds.size());
+            for (String id : vehicleIds) out.add(results.get(id));
+            return out;
+        } finally {
+            for (int i = locks.size() - 1; i >= 0; i--) locks.get(i).unlock();
+            span.close();
+            batchLatency.recordSince(start);
+        }
+    }
+
+    // ---- Partitioned deployment ----
+
+    /**
+     * Hands a vehicle to another node: under the vehicle lock, {@code send}
+     * delivers a copy (and throws if it was not accepted), then the vehicle
+     * is removed here. Returns false if the vehicle is not stored here.
+     */
+    public boolean transferOut(String vehicleId, String targetNode, Consumer<Vehicle> send) {
+        ReentrantLock lock = lockVehicle(vehicleId);
+        try {
+            Vehicle v = storage.findById(vehicleId).orElse(null);
+            if (v == null) return false;
+
+            send.accept(v.copy());
+            begin().delete(vehicleId)
+                    .audit(AuditLogEntry.of(AuditEvent.VEHICLE_TRANSFERRED_OUT, vehicleId)
+                            .city(v.getCity())
+                            .reason("to:" + targetNode))
+                    .commit();
+            changeFeed.touch(vehicleId);
+            if (v.getUserId() != null) release(v.getUserId(), vehicleId);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Takes over a vehicle sent by another node, keeping its state, trip and holder. */
+    public void acceptTransfer(Vehicle v, String fromNode) {
+        if (v == null || v.getId() == null || v.getId().isBlank()) {
+            throw new IllegalArgumentException("Vehicle/id cannot be null");
+        }
+        ReentrantLock lock = lockVehicle(v.getId());
+        try {
+            begin().save(v)
+                    .audit(AuditLogEntry.of(AuditEvent.VEHICLE_TRANSFERRED_IN, v.getId())
+                            .city(v.getCity())
+                            .reason("from:" + fromNode))
+                    .commit();
+            if (v.getUserId() != null && holdsVehicle(v.getState())) {
+                activeByUser.computeIfAbsent(v.getUserId(), u -> ConcurrentHashMap.newKeySet()).add(v.getId());
+            }
+            published(v);
         } finally {
             lock.unlock();
         }
@@ -154,7 +489,26 @@ public class SmartMoveCentralController {
         if (t == null || t.getVehicleId() == null || t.getVehicleId().isBlank()) {
             throw new IllegalArgumentException("Telemetry/vehicleId cannot be null");
         }
-        telemetryQueue.offer(t);
+        t.setQueuedAtNanos(System.nanoTime());
+        (isUrgent(t) ? urgentTelemetry : telemetryQueue).offer(t);
+        telemetryQueued.release();
+    }
+
+    /**
+     * Whether handleTelemetry may act on the sample (overheat, fault, low
+     * battery, movement while not rented). Judged on the ingest thread from
+     * the sample and the rental state cached on the vehicle's lock, never the
+     * store: the cache may be stale, which only affects the lane.
+     */
+    private boolean isUrgent(TelemetryData t) {
+        if (t.isFault() || t.getTemperatureC() > OVERHEAT_C || t.getBatteryPercent() < LOW_BATTERY_PERCENT) {
+            return true;
+        }
+        if (!t.isMovementDetected()) return false;
+        int handle = t.getVehicleHandle();
+        if (handle < 0) handle = vehicleIds.find(t.getVehicleId());
+        Boolean alarms = handle < 0 ? null : lockFor(handle).alarmsOnMovement;
+        return alarms == null || alarms;   // not seen yet: let the worker look
     }
 
     // ---- Telemetry worker ----
@@ -162,12 +516,25 @@ public class SmartMoveCentralController {
     private void telemetryLoop() {
         while (!Thread.currentThread().isInterrupted()) {
             try {
-                TelemetryData t = telemetryQueue.take();
-                handleTelemetry(t);
+                telemetryQueued.acquire();
+                TelemetryData t = urgentTelemetry.poll();
+                LatencyHistogram waited = urgentTelemetryWait;
+                if (t == null) {
+                    t = telemetryQueue.poll();
+                    waited = routineTelemetryWait;
+                }
+                if (t == null) continue;
+                waited.recordSince(t.getQueuedAtNanos());
+                try {
+                    handleTelemetry(t);
+                } finally {
+                    telemetryPool.release(t);
+                }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             } catch (Exception ex) {
                 // keep processing other telemetry
+                telemetryFailures.inc();
             }
         }
     }
@@ -178,52 +545,70 @@ public class SmartMoveCentralController {
      */
     public void handleTelemetry(TelemetryData t) {
         String vehicleId = t.getVehicleId();
-        ReentrantLock lock = lockFor(vehicleId);
-
-        lock.lock();
+        int handle = t.getVehicleHandle();
+        if (handle < 0) handle = vehicleIds.handle(vehicleId);   // not resolved at ingestion
+        long start = System.nanoTime();
+        Span span = Tracer.span("controller.handleTelemetry");
+        VehicleLock lock = lockVehicle(handle);
         try {
-            Vehicle v = storage.findById(vehicleId).orElse(null);
-            if (v == null) return;
-
-            Vehicle snapshot = safeCopy(v);
+            Vehicle snapshot = storage.findById(vehicleId).orElse(null);
+            if (snapshot == null) {
+                lock.alarmsOnMovement = false;   // nothing to act on
+                return;
+            }
 
-            // update telemetry
-            v.setTelemetry(t);
+            // staged on a copy the commit swaps in: the stored instance is the one
+            // readers (and the store's flush) hold, so it never shows an uncommitted
+            // change; recycling replaced instances as scratch would break that
+            Vehicle v = snapshot.copy();
+            UnitOfWork work = begin();
+
+            // update telemetry (and the running trip, if any); copied, as t may be a pooled holder
+            if (v.getTelemetry() == null) v.setTelemetry(t.copy());
+            else v.getTelemetry().copyFrom(t);
+            if (v.isRentalActive() && v.getTrip() != null) {
+                v.getTrip().accumulate(t);
+            }
 
             // Theft alarm: moved without active rental => emergency lock
             if (t.isMovementDetected() && !v.isRentalActive()) {
                 v.setState(VehicleState.EMERGENCY_LOCK);
                 v.setRentalActive(false);
-                auditLog.append("THEFT_ALARM",
-                        "vehicleId=" + vehicleId + ", movementDetected=true, rentalActive=false");
+                work.audit(AuditLogEntry.of(AuditEvent.THEFT_ALARM, vehicleId)
+                        .city(v.getCity())
+                        .reason("MOVEMENT_WITHOUT_RENTAL"));
             }
 
             // Telemetry fault => Maintenance (only if not already emergency locked)
             if (t.isFault() && v.getState() != VehicleState.EMERGENCY_LOCK) {
                 v.setState(VehicleState.MAINTENANCE);
                 v.setRentalActive(false);
-                auditLog.append("FAULT_DETECTED",
-                        "vehicleId=" + vehicleId + ", state->MAINTENANCE");
+                work.audit(AuditLogEntry.of(AuditEvent.FAULT_DETECTED, vehicleId)
+                        .city(v.getCity())
+                        .transition(snapshot.getState(), VehicleState.MAINTENANCE));
             }
 
             // Required interventions:
             // 1) Overheat > 60°C => emergency lock
             // Overheat > 60°C => emergency lock + terminate rental
-            if (t.getTemperatureC() > 60) {
+            if (t.getTemperatureC() > OVERHEAT_C) {
                 v.setRentalActive(false);
                 v.setState(VehicleState.EMERGENCY_LOCK);
-                auditLog.append("OVERHEAT_LOCK",
-                        "vehicleId=" + vehicleId + ", temp=" + t.getTemperatureC());
+                work.audit(AuditLogEntry.of(AuditEvent.OVERHEAT_LOCK, vehicleId)
+                        .city(v.getCity())
+                        .temperature(t.getTemperatureC()));
             }
 
 
             // 2) Battery < 5% during trip => maintenance (or emergency terminate)
             // Battery < 5% during trip => emergency terminate rental + maintenance
-            if (t.getBatteryPercent() < 5 && v.getState() == VehicleState.IN_USE) {
+            if (t.getBatteryPercent() < LOW_BATTERY_PERCENT && v.getState() == VehicleState.IN_USE) {
                 v.setRentalActive(false);
                 v.setState(VehicleState.MAINTENANCE);
-                auditLog.append("EMERGENCY_TERMINATION",
-                        "vehicleId=" + vehicleId + ", reason=LOW_BATTERY, batt=" + t.getBatteryPercent());
+                work.audit(AuditLogEntry.of(AuditEvent.EMERGENCY_TERMINATION, vehicleId)
+                        .city(v.getCity())
+                        .reason("LOW_BATTERY")
+                        .battery(t.getBatteryPercent()));
             }
 
 
@@ -238,46 +623,78 @@ public class SmartMoveCentralController {
                 if (restricted) {
                     v.setState(VehicleState.EMERGENCY_LOCK);
                     // optional: audit reason
-                    // auditLog.append("ZONE_VIOLATION", "vehicleId=" + vehicleId);
+                    // auditLog.append(AuditLogEntry.of(AuditEvent.ZONE_VIOLATION, vehicleId));
                 }
             }
 
+            // a rental terminated above is not billed; drop its trip
+            if (!v.isRentalActive()) {
+                v.setTrip(null);
+            }
+            // ... and a locked vehicle no longer counts against its user
+            String released = null;
+            if (v.getUserId() != null && !holdsVehicle(v.getState())) {
+                released = v.getUserId();
+                v.setUserId(null);
+            }
+
             try {
-                storage.save(v);
-                auditLog.append("TELEMETRY", "vehicleId=" + vehicleId + ", batt=" + t.getBatteryPercent() + ", temp=" + t.getTemperatureC());
+                work.save(v)
+                        .audit(AuditLogEntry.of(AuditEvent.TELEMETRY, vehicleId)
+                                .telemetry(t.getBatteryPercent(), t.getTemperatureC()))
+                        .commit();
+                published(v);
             } catch (Exception ex) {
                 try { storage.save(snapshot); } catch (Exception ignored) {}
+                changeFeed.touch(vehicleId);
                 throw new RuntimeException("Telemetry write failed; rolled back", ex);
             }
+            if (released != null) release(released, vehicleId);
         } finally {
             lock.unlock();
+            span.close();
+            telemetryLatency.recordSince(start);
         }
     }
 
     // ---- State change helper ----
 
-    private void changeState(String vehicleId, VehicleState to, City city, String reason) {
-        ReentrantLock lock = lockFor(vehicleId);
-        lock.lock();
+    private void changeState(String vehicleId, VehicleState to, City city, String reason, String userId) {
+        long start = System.nanoTime();
+        Span span = Tracer.span("controller.changeState");
+        ReentrantLock lock = lockVehicle(vehicleId);
         try {
-            Vehicle v = storage.findById(vehicleId).orElseThrow(() -> new IllegalArgumentException("Vehicle not found"));
-            Vehicle snapshot = safeCopy(v);
+            Vehicle snapshot = storage.findById(vehicleId).orElseThrow(() -> new IllegalArgumentException("Vehicle not found"));
+            Vehicle v = snapshot.copy();
 
             validateTransition(v.getState(), to);
 
+            if (userId != null) {
+                requireUser(userId);
+                claim(userId, vehicleId);
+                v.setUserId(userId);
+            }
             v.setCity(city);
             v.setState(to);
 
             try {
-                storage.save(v);
-                auditLog.append("STATE_CHANGE",
-                        "vehicleId=" + vehicleId + ", " + snapshot.getState() + "->" + to + ", reason=" + reason);
+                begin().save(v)
+                        .audit(AuditLogEntry.of(AuditEvent.STATE_CHANGE, vehicleId)
+                                .city(city)
+                                .transition(snapshot.getState(), to)
+                                .reason(reason))
+                        .commit();
+                published(v);
             } catch (Exception ex) {
                 try { storage.save(snapshot); } catch (Exception ignored) {}
+                changeFeed.touch(vehicleId);
+                if (userId != null) release(userId, vehicleId);
                 throw new RuntimeException("State change failed; rolled back", ex);
             }
         } finally {
             lock.unlock();
+            span.close();
+            changeStateLatency.recordSince(start);
         }
     }
 
@@ -320,13 +737,113 @@ public class SmartMoveCentralController {
         }
     }
 
-    private ReentrantLock lockFor(String vehicleId) {
-        return vehicleLocks.computeIfAbsent(vehicleId, id -> new ReentrantLock());
+    // ---- Per-user limits ----
+
+    private void requireUser(String userId) {
+        if (users != null && users.findById(userId).isEmpty()) {
+            throw new IllegalArgumentException("User not found");
+        }
+    }
+
+    /** Records that the user holds the vehicle, unless that would exceed the limit. */
+    private void claim(String userId, String vehicleId) {
+        activeByUser.compute(userId, (u, held) -> {
+            Set<String> set = held != null ? held : ConcurrentHashMap.newKeySet();
+            if (!set.contains(vehicleId) && set.size() >= maxActivePerUser) {
+                throw new IllegalStateException("User already has " + set.size() + " active rental(s)");
+            }
+            set.add(vehicleId);
+            return set;
+        });
+    }
+
+    private void release(String userId, String vehicleId) {
+        activeByUser.computeIfPresent(userId, (u, held) -> {
+            held.remove(vehicleId);
+            return held.isEmpty() ? null : held;
+        });
+    }
+
+    /** Notifies subscribers of a committed vehicle and refreshes its cached rental state. */
+    private void published(Vehicle v) {
+        changeFeed.publish(v);
+        lockFor(vehicleIds.handle(v.getId())).alarmsOnMovement = !v.isRentalActive();
+    }
+
+    private static boolean holdsVehicle(VehicleState state) {
+        return state == VehicleState.RESERVED || state == VehicleState.IN_USE;
+    }
+
+    /**
+     * A vehicle's lock, which also caches what isUrgent needs to know about
+     * the vehicle; it is set on every publish, so a rollback (which does not
+     * publish) leaves it as it was.
+     */
+    private static final class VehicleLock extends ReentrantLock {
+        // whether movement raises the theft alarm (not rented); null until the vehicle is seen
+        volatile Boolean alarmsOnMovement;
+    }
+
+    private VehicleLock lockFor(int handle) {
+        AtomicReferenceArray<VehicleLock> page = lockPage(handle >>> LOCK_PAGE_BITS);
+        int slot = handle & (LOCK_PAGE_SIZE - 1);
+        VehicleLock lock = page.get(slot);
+        if (lock == null) {
+            VehicleLock created = new VehicleLock();
+            lock = page.compareAndExchange(slot, null, created);
+            if (lock == null) lock = created;
+        }
+        return lock;
+    }
+
+    private AtomicReferenceArray<VehicleLock> lockPage(int index) {
+        AtomicReferenceArray<VehicleLock>[] pages = lockPages;
+        if (index < pages.length && pages[index] != null) return pages[index];
+        synchronized (lockPagesGrowth) {
+            pages = lockPages;
+            if (index >= pages.length) pages = Arrays.copyOf(pages, Math.max(index + 1, pages.length * 2));
+            if (pages[index] == null) pages[index] = new AtomicReferenceArray<>(LOCK_PAGE_SIZE);
+            lockPages = pages;
+            return pages[index];
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static AtomicReferenceArray<VehicleLock>[] newLockPages(int size) {
+        return (AtomicReferenceArray<VehicleLock>[]) new AtomicReferenceArray[size];
+    }
+
+    private VehicleLock lockVehicle(String vehicleId) {
+        return lockVehicle(vehicleIds.handle(vehicleId));
+    }
+
+    /**
+     * Acquires the vehicle's lock, recording how long we had to wait for it.
+     * A plain lock(), not a tryLock() first: tryLock takes a free lock even
+     * while other threads are queued for it.
+     */
+    private VehicleLock lockVehicle(int handle) {
+        VehicleLock lock = lockFor(handle);
+        long start = System.nanoTime();
+        try (Span span = Tracer.span("controller.lockWait")) {
+            lock.lock();
+        }
+        lockWait.recordSince(start);
+        return lock;
+    }
+
+    private static LatencyHistogram opLatency(String op) {
+        return MetricsRegistry.global().histogram(
+                "smartmove_controller_op_seconds", "Controller operation latency, including lock wait", "op", op);
+    }
+
+    private static LatencyHistogram telemetryWait(String lane) {
+        return MetricsRegistry.global().histogram(
+                "smartmove_telemetry_queue_wait_seconds", "Time a telemetry sample waits for the worker", "lane", lane);
     }
 
-    private Vehicle safeCopy(Vehicle v) {
-        // If your Vehicle already has copy(), call it.
-        // Otherwise implement copy() in Vehicle and replace this.
-        return v.copy();
+    /** Staged writes for one operation; committed through the journal when there is one. */
+    private UnitOfWork begin() {
+        return new UnitOfWork(journal, storage, paymentStorage, auditLog);
     }
 }
@@ -1,34 +1,81 @@
 package com.smartmove.domain;
 
+import com.fasterxml.jackson.annotation.JsonSetter;
+
 import java.time.Instant;
 import java.util.UUID;
 
+/**
+ * A charge for one rental. Amounts are fixed-point cents. The decimal
+ * baseFare/congestionCharge/total properties they replaced are still
+ * written, derived from the cents, for clients and CDC consumers that read
+ * them, and still accepted from files written before cents.
+ */
 public class Payment {
     private String id;
     private String vehicleId;
     private City city;
-    private double baseFare;
-    private double congestionCharge;
-    private double total;
+    private VehicleType vehicleType;   // null for payments recorded before it was tracked
+    private String userId;             // null for anonymous rentals
+    private long baseFareCents;
+    private long congestionChargeCents;
+    private long totalCents;
     private String timestamp;
 
+    // Trip summary (0 for payments recorded before trips were tracked)
+    private long durationSeconds;
+    private long distanceMeters;
+    private double maxTemperatureC;
+    private int minBatteryPercent;
+
     public Payment() {}
 
-    public Payment(String vehicleId, City city, double baseFare, double congestionCharge) {
+    public Payment(String vehicleId, City city, long baseFareCents, long congestionChargeCents) {
         this.id = UUID.randomUUID().toString();
         this.vehicleId = vehicleId;
         this.city = city;
-        this.baseFare = baseFare;
-        this.congestionCharge = congestionCharge;
-        this.total = baseFare + congestionCharge;
+        this.baseFareCents = baseFareCents;
+        this.congestionChargeCents = congestionChargeCents;
+        this.totalCents = baseFareCents + congestionChargeCents;
         this.timestamp = Instant.now().toString();
     }
 
     public String getId() { return id; }
     public String getVehicleId() { return vehicleId; }
     public City getCity() { return city; }
-    public double getBaseFare() { return baseFare; }
-    public double getCongestionCharge() { return congestionCharge; }
-    public double getTotal() { return total; }
+    public VehicleType getVehicleType() { return vehicleType; }
+    public String getUserId() { return userId; }
+    public long getBaseFareCents() { return baseFareCents; }
+    public long getCongestionChargeCents() { return congestionChargeCents; }
+    public long getTotalCents() { return totalCents; }
     public String getTimestamp() { return timestamp; }
+    public long getDurationSeconds() { return durationSeconds; }
+    public long getDistanceMeters() { return distanceMeters; }
+    public double getMaxTemperatureC() { return maxTemperatureC; }
+    public int getMinBatteryPercent() { return minBatteryPercent; }
+
+    public void setVehicleType(VehicleType vehicleType) { this.vehicleType = vehicleType; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    /** Copies the finished trip's totals onto this payment. */
+    public void recordTrip(Trip trip, long endedAt) {
+        this.durationSeconds = trip.elapsedMillis(endedAt) / 1000;
+        this.distanceMeters = Math.round(trip.getMeters());
+        this.maxTemperatureC = trip.getMaxTemperatureC();
+        this.minBatteryPercent = trip.getMinBatteryPercent();
+    }
+
+    // Legacy decimal amounts
+    public double getBaseFare() { return baseFareCents / 100.0; }
+    public double getCongestionCharge() { return congestionChargeCents / 100.0; }
+    public double getTotal() { return totalCents / 100.0; }
+
+    @JsonSetter("baseFare")
+    private void setLegacyBaseFare(double amount) { this.baseFareCents = Math.round(amount * 100); }
+
+    @JsonSetter("congestionCharge")
+    private void setLegacyCongestionCharge(double amount) { this.congestionChargeCents = Math.round(amount * 100); }
+
+    @JsonSetter("total")
+    private void setLegacyTotal(double amount) { this.totalCents = Math.round(amount * 100); }
 }
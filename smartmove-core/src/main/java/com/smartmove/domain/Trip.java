@@ -0,0 +1,101 @@
+package com.smartmove.domain;
+
+import com.smartmove.telemetry.Geo;
+import com.smartmove.telemetry.TelemetryData;
+
+/**
+ * Running totals for the current rental, updated from each telemetry sample.
+ * Primitive fields only, so a sample costs no allocation; the trip is saved
+ * with the vehicle and finalized into the Payment when the rental ends.
+ */
+public class Trip {
+
+    private long startedAt;            // epoch millis
+    private double meters;
+    private double maxTemperatureC;    // extremes are only meaningful once samples > 0
+    private int minBatteryPercent;
+    private int samples;
+
+    // last GPS fix, for the next distance step
+    private boolean gpsFix;
+    private double lastLatitude;
+    private double lastLongitude;
+
+    // Required for JSON deserialization
+    public Trip() {}
+
+    /** Starts a trip, taking the vehicle's last known position as its origin. */
+    public static Trip start(long startedAt, TelemetryData lastKnown) {
+        Trip trip = new Trip();
+        trip.startedAt = startedAt;
+        if (lastKnown != null && isFix(lastKnown.getLatitude(), lastKnown.getLongitude())) {
+            trip.gpsFix = true;
+            trip.lastLatitude = lastKnown.getLatitude();
+            trip.lastLongitude = lastKnown.getLongitude();
+        }
+        return trip;
+    }
+
+    /** Folds one telemetry sample into the totals. */
+    public void accumulate(TelemetryData t) {
+        boolean first = samples++ == 0;
+        if (first || t.getTemperatureC() > maxTemperatureC) maxTemperatureC = t.getTemperatureC();
+        if (first || t.getBatteryPercent() < minBatteryPercent) minBatteryPercent = t.getBatteryPercent();
+
+        double lat = t.getLatitude();
+        double lon = t.getLongitude();
+        if (!isFix(lat, lon)) return;   // no GPS fix in this sample
+        if (gpsFix) meters += Geo.distanceMeters(lastLatitude, lastLongitude, lat, lon);
+        gpsFix = true;
+        lastLatitude = lat;
+        lastLongitude = lon;
+    }
+
+    public long elapsedMillis(long now) {
+        return Math.max(0, now - startedAt);
+    }
+
+    // 0,0 is what trackers send before their first fix
+    private static boolean isFix(double lat, double lon) {
+        return lat != 0 || lon != 0;
+    }
+
+    // -------------------------
+    // Getters / Setters
+    // -------------------------
+
+    public long getStartedAt() { return startedAt; }
+    public double getMeters() { return meters; }
+    public double getMaxTemperatureC() { return maxTemperatureC; }
+    public int getMinBatteryPercent() { return minBatteryPercent; }
+    public int getSamples() { return samples; }
+    public boolean isGpsFix() { return gpsFix; }
+    public double getLastLatitude() { return lastLatitude; }
+    public double getLastLongitude() { return lastLongitude; }
+
+    public void setStartedAt(long startedAt) { this.startedAt = startedAt; }
+    public void setMeters(double meters) { this.meters = meters; }
+    public void setMaxTemperatureC(double maxTemperatureC) { this.maxTemperatureC = maxTemperatureC; }
+    public void setMinBatteryPercent(int minBatteryPercent) { this.minBatteryPercent = minBatteryPercent; }
+    public void setSamples(int samples) { this.samples = samples; }
+    public void setGpsFix(boolean gpsFix) { this.gpsFix = gpsFix; }
+    public void setLastLatitude(double lastLatitude) { this.lastLatitude = lastLatitude; }
+    public void setLastLongitude(double lastLongitude) { this.lastLongitude = lastLongitude; }
+
+    public Trip copy() {
+        return new Trip().copyFrom(this);
+    }
+
+    /** Overwrites every field with {@code other}'s, so a holder can be reused. */
+    public Trip copyFrom(Trip other) {
+        startedAt = other.startedAt;
+        meters = other.meters;
+        maxTemperatureC = other.maxTemperatureC;
+        minBatteryPercent = other.minBatteryPercent;
+        samples = other.samples;
+        gpsFix = other.gpsFix;
+        lastLatitude = other.lastLatitude;
+        lastLongitude = other.lastLongitude;
+        return this;
+    }
+}
@@ -16,6 +16,12 @@ public class Vehicle {
     // Used for theft detection (no active rental but moving)
     private boolean rentalActive;
 
+    // Current trip (null when no rental is running)
+    private Trip trip;
+
+    // User holding the reservation/rental (null when free or anonymous)
+    private String userId;
+
     // Required for JSON deserialization
     public Vehicle() {}
 
@@ -63,6 +69,14 @@ public class Vehicle {
         return rentalActive;
     }
 
+    public Trip getTrip() {
+        return trip;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
     // -------------------------
     // Setters
     // -------------------------
@@ -91,6 +105,14 @@ public class Vehicle {
         this.rentalActive = rentalActive;
     }
 
+    public void setTrip(Trip trip) {
+        this.trip = trip;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
     // -------------------------
     // Utility Methods
     // -------------------------
@@ -106,10 +128,14 @@ public class Vehicle {
         copy.state = this.state;
         copy.city = this.city;
         copy.rentalActive = this.rentalActive;
+        copy.userId = this.userId;
 
         if (this.telemetry != null) {
             copy.telemetry = this.telemetry.copy();
         }
+        if (this.trip != null) {
+            copy.trip = this.trip.copy();
+        }
 
         return copy;
     }
@@ -0,0 +1,82 @@
+package com.smartmove.domain;
+
+import com.smartmove.metrics.MetricsRegistry;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dense int handles for vehicle ids: the first id registered gets 0, the
+ * next 1, and so on, so per-vehicle state can live in arrays indexed by
+ * handle instead of maps hashing 36-character UUIDs. Each id is also kept
+ * as one canonical String, which callers may use in place of their copy.
+ *
+ * Handles are never reused or dropped (a vehicle transferred away keeps its
+ * handle). The controller registers each id it locks, as its lock map used
+ * to keep an entry for each; decoders reading ids off the network only use
+ * {@link #find}, leaving resolution of unknown ids to the controller.
+ */
+public final class VehicleIds {
+
+    private static final VehicleIds GLOBAL = new VehicleIds();
+
+    static {
+        MetricsRegistry.global().gauge("smartmove_vehicle_ids", "Vehicle ids with a handle", GLOBAL::size);
+    }
+
+    private final Map<String, Integer> handles = new ConcurrentHashMap<>();
+    private volatile String[] ids = new String[1024];   // handle -> id; only grows
+    private int count;   // guarded by this
+
+    /** Process-wide registry shared by the controller and the telemetry decoders. */
+    public static VehicleIds global() {
+        return GLOBAL;
+    }
+
+    /** The id's handle, registering it if it has none yet. */
+    public int handle(String vehicleId) {
+        if (vehicleId == null) throw new IllegalArgumentException("vehicleId cannot be null");
+        Integer h = handles.get(vehicleId);
+        return h != null ? h : register(vehicleId);
+    }
+
+    /** The id's handle, or -1 if it was never registered. */
+    public int find(String vehicleId) {
+        Integer h = vehicleId == null ? null : handles.get(vehicleId);
+        return h == null ? -1 : h;
+    }
+
+    /**
+     * The id for a handle returned by this registry.
+     * @throws IllegalArgumentException for any other value
+     */
+    public String id(int handle) {
+        String[] table = ids;
+        String id = handle >= 0 && handle < table.length ? table[handle] : null;
+        if (id == null) throw new IllegalArgumentException("Unknown vehicle handle " + handle);
+        return id;
+    }
+
+    /** The registered instance equal to {@code vehicleId}, or {@code vehicleId} itself if unregistered. */
+    public String canonical(String vehicleId) {
+        int h = find(vehicleId);
+        return h < 0 ? vehicleId : ids[h];
+    }
+
+    /** Number of registered ids; handles are {@code 0 .. size() - 1}. */
+    public int size() {
+        return handles.size();
+    }
+
+    private synchronized int register(String vehicleId) {
+        Integer h = handles.get(vehicleId);
+        if (h != null) return h;
+        String[] table = ids;
+        if (count == table.length) table = Arrays.copyOf(table, count * 2);
+        table[count] = vehicleId;
+        ids = table;   // publish the id before the handle can be seen
+        handles.put(vehicleId, count);
+        return count++;
+    }
+}
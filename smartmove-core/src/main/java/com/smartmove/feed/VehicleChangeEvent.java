@@ -0,0 +1,39 @@
+package com.smartmove.feed;
+
+import com.smartmove.domain.Vehicle;
+
+/**
+ * Immutable notification that a vehicle was written.
+ * The vehicle is a private copy taken at publish time, so subscribers
+ * may read it from any thread.
+ */
+public class VehicleChangeEvent {
+
+    private final String vehicleId;
+    private final long version;
+    private final long timestamp;
+    private final Vehicle vehicle;
+
+    public VehicleChangeEvent(String vehicleId, long version, long timestamp, Vehicle vehicle) {
+        this.vehicleId = vehicleId;
+        this.version = version;
+        this.timestamp = timestamp;
+        this.vehicle = vehicle;
+    }
+
+    public String getVehicleId() {
+        return vehicleId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Vehicle getVehicle() {
+        return vehicle;
+    }
+}
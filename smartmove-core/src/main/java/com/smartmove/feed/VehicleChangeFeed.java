@@ -0,0 +1,98 @@
+package com.smartmove.feed;
+
+import com.smartmove.domain.City;
+import com.smartmove.domain.Vehicle;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * In-process change feed for vehicle state.
+ * - Keeps a monotonically increasing version counter per vehicle
+ * - Fans out every published change to matching subscribers
+ *
+ * Listeners are invoked on the writer's thread (while the controller still
+ * holds the vehicle lock), so they must only hand the event off, never block.
+ */
+public class VehicleChangeFeed {
+
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Subscription> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Bumps the vehicle's version and notifies subscribers.
+     * @return the new version
+     */
+    public long publish(Vehicle v) {
+        long version = versions.computeIfAbsent(v.getId(), id -> new AtomicLong()).incrementAndGet();
+        if (subscribers.isEmpty()) return version;
+
+        VehicleChangeEvent event = new VehicleChangeEvent(v.getId(), version, System.currentTimeMillis(), v.copy());
+        for (Subscription s : subscribers) {
+            if (!s.filter.test(event.getVehicle())) continue;
+            try {
+                s.listener.accept(event);
+            } catch (Exception ignored) {
+                // a misbehaving subscriber must never fail the write path
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Bumps the vehicle's version without notifying subscribers, for writes
+     * they need not see (a rolled-back change, a vehicle handed to another
+     * node) but after which anything derived from the old version is stale.
+     */
+    public void touch(String vehicleId) {
+        versions.computeIfAbsent(vehicleId, id -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * Current version of a vehicle, 0 if it was never published.
+     */
+    public long version(String vehicleId) {
+        AtomicLong v = versions.get(vehicleId);
+        return v == null ? 0 : v.get();
+    }
+
+    public Subscription subscribe(Predicate<Vehicle> filter, Consumer<VehicleChangeEvent> listener) {
+        Subscription s = new Subscription(filter, listener);
+        subscribers.add(s);
+        return s;
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    // ---- Filters ----
+
+    public static Predicate<Vehicle> forVehicles(Set<String> vehicleIds) {
+        return v -> vehicleIds.contains(v.getId());
+    }
+
+    public static Predicate<Vehicle> forCity(City city) {
+        return v -> v.getCity() == city;
+    }
+
+    public class Subscription implements AutoCloseable {
+        private final Predicate<Vehicle> filter;
+        private final Consumer<VehicleChangeEvent> listener;
+
+        private Subscription(Predicate<Vehicle> filter, Consumer<VehicleChangeEvent> listener) {
+            this.filter = filter;
+            this.listener = listener;
+        }
+
+        @Override
+        public void close() {
+            subscribers.remove(this);
+        }
+    }
+}
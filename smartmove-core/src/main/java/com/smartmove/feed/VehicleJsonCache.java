@@ -0,0 +1,139 @@
+package com.smartmove.feed;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.metrics.Counter;
+import com.smartmove.metrics.MetricsRegistry;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * Serialized vehicle JSON keyed by the change feed's version, for reads
+ * that repeat far more often than the vehicle changes (dashboards polling).
+ *
+ * The version doubles as the ETag, so a conditional read of an unchanged
+ * vehicle is answered from the version counter alone, and an unconditional
+ * one from the cached bytes; only the first read after a change loads and
+ * serializes the vehicle. Nothing is invalidated explicitly: every write
+ * bumps the version (publish, or touch for writes subscribers do not see),
+ * which makes older entries unusable.
+ *
+ * The version is read before the vehicle, so cached bytes are never older
+ * than their version; a read racing a write may briefly label the new state
+ * with the old version, which only costs that client one more full read.
+ * ETags carry a random per-instance prefix, as versions restart at 0 when
+ * the process does.
+ */
+public final class VehicleJsonCache {
+
+    /** A vehicle's JSON at one version. */
+    public static final class Entry {
+        public final long version;
+        public final String etag;
+        public final byte[] json;
+
+        Entry(long version, String etag, byte[] json) {
+            this.version = version;
+            this.etag = etag;
+            this.json = json;
+        }
+    }
+
+    private final VehicleChangeFeed feed;
+    private final Function<String, Optional<Vehicle>> loader;
+    private final ObjectMapper mapper;
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong() >>> 16);
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Counter notModified = reads("not_modified");
+    private final Counter hits = reads("cached");
+    private final Counter misses = reads("serialized");
+
+    /** @param loader looks the vehicle up, e.g. {@code controller::getVehicle} */
+    public VehicleJsonCache(VehicleChangeFeed feed, Function<String, Optional<Vehicle>> loader, ObjectMapper mapper) {
+        this.feed = feed;
+        this.loader = loader;
+        this.mapper = mapper;
+    }
+
+    /**
+     * The vehicle's current ETag if an If-None-Match header lists it, so the
+     * client's copy is up to date (answer 304); null otherwise. Does not load
+     * the vehicle, except for {@code *}, which matches any vehicle that exists.
+     */
+    public String notModified(String vehicleId, String ifNoneMatch) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) return null;
+        String etag;
+        if (ifNoneMatch.trim().equals("*")) {
+            Entry e = get(vehicleId);
+            etag = e == null ? null : e.etag;
+        } else {
+            long version = feed.version(vehicleId);
+            Entry e = entries.get(vehicleId);
+            etag = e != null && e.version == version ? e.etag : etag(version);
+            if (!listed(ifNoneMatch, etag)) etag = null;
+        }
+        if (etag != null) notModified.inc();
+        return etag;
+    }
+
+    /** The vehicle's current JSON, or null if there is no such vehicle. */
+    public Entry get(String vehicleId) {
+        long version = feed.version(vehicleId);
+        Entry e = entries.get(vehicleId);
+        if (e != null && e.version == version) {
+            hits.inc();
+            return e;
+        }
+        Optional<Vehicle> v = loader.apply(vehicleId);
+        if (v.isEmpty()) {
+            entries.remove(vehicleId);
+            return null;
+        }
+        try {
+            e = new Entry(version, etag(version), mapper.writeValueAsBytes(v.get()));
+        } catch (JsonProcessingException ex) {
+            throw new RuntimeException("Failed to serialize vehicle " + vehicleId, ex);
+        }
+        misses.inc();
+        // a slower reader must not replace a newer entry
+        entries.merge(vehicleId, e, (old, fresh) -> old.version > fresh.version ? old : fresh);
+        return e;
+    }
+
+    /** Number of vehicles with cached JSON (current or stale). */
+    public int size() {
+        return entries.size();
+    }
+
+    private String etag(long version) {
+        return "\"" + epoch + "-" + version + "\"";
+    }
+
+    /** Whether a comma-separated list of entity tags, weak or strong, contains {@code etag}. */
+    private static boolean listed(String header, String etag) {
+        int from = 0;
+        while (from < header.length()) {
+            int comma = header.indexOf(',', from);
+            int end = comma < 0 ? header.length() : comma;
+            int start = from;
+            while (start < end && header.charAt(start) == ' ') start++;
+            int to = end;
+            while (to > start && header.charAt(to - 1) == ' ') to--;
+            if (header.startsWith("W/", start)) start += 2;
+            if (to - start == etag.length() && header.regionMatches(start, etag, 0, etag.length())) return true;
+            from = end + 1;
+        }
+        return false;
+    }
+
+    private static Counter reads(String result) {
+        return MetricsRegistry.global().counter(
+                "smartmove_vehicle_reads_total", "Vehicle reads by how the JSON was obtained", "result", result);
+    }
+}
@@ -0,0 +1,303 @@
+package com.smartmove.idempotency;
+
+import com.smartmove.metrics.Counter;
+import com.smartmove.metrics.MetricsRegistry;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Recent responses by idempotency key, so a retried request is answered
+ * from here instead of being executed twice.
+ *
+ * Completed entries live in a ring of primitive arrays (insertion order =
+ * age) with an open-addressing index over it, about 34 bytes per key:
+ * keys are kept as 64-bit hashes, and identical response bodies (nearly all
+ * of them are {"ok":true}) share one array. The oldest entry is evicted when
+ * the ring is full or its TTL has passed.
+ *
+ * Requests still executing are tracked separately; a retry that arrives
+ * meanwhile waits for the first one's response.
+ */
+public class IdempotencyCache {
+
+    public static final String CAPACITY_PROPERTY = "smartmove.idempotency.maxKeys";
+    public static final String TTL_PROPERTY = "smartmove.idempotency.ttlSeconds";
+
+    private static final int MAX_INTERNED_BODIES = 4096;
+
+    /** A stored response. */
+    public static final class Response {
+        public final int status;
+        public final byte[] body;
+
+        public Response(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    public enum Kind {
+        /** New key: run the request, then {@link #complete} or {@link #abandon} it. */
+        EXECUTE,
+        /** Seen before: send {@link Outcome#response} instead. */
+        REPLAY,
+        /** Key reused for a different request. */
+        MISMATCH,
+        /** The first request with this key is still running. */
+        IN_PROGRESS
+    }
+
+    public static final class Outcome {
+        public final Kind kind;
+        public final Response response;   // set for REPLAY
+
+        private Outcome(Kind kind, Response response) {
+            this.kind = kind;
+            this.response = response;
+        }
+    }
+
+    private static final Outcome EXECUTE = new Outcome(Kind.EXECUTE, null);
+    private static final Outcome MISMATCH = new Outcome(Kind.MISMATCH, null);
+    private static final Outcome IN_PROGRESS = new Outcome(Kind.IN_PROGRESS, null);
+
+    private final int capacity;
+    private final long ttlMillis;
+
+    // Ring of completed entries, oldest at head
+    private final long[] keyHashes;
+    private final int[] requestHashes;
+    private final long[] storedAt;
+    private final short[] statuses;
+    private final byte[][] bodies;
+    private int head;
+    private int size;
+
+    // Open-addressing index: ring position + 1, 0 = empty
+    private final int[] index;
+    private final int indexMask;
+
+    private final Map<ByteBuffer, byte[]> internedBodies = new HashMap<>();
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+
+    private final Counter replays = MetricsRegistry.global().counter(
+            "smartmove_idempotent_replays_total", "Requests answered from the idempotency cache");
+
+    private static final class Pending {
+        final int requestHash;
+        final CompletableFuture<Response> result = new CompletableFuture<>();
+
+        Pending(int requestHash) {
+            this.requestHash = requestHash;
+        }
+    }
+
+    public IdempotencyCache(int capacity, long ttlMillis) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be > 0");
+        this.capacity = capacity;
+        this.ttlMillis = ttlMillis;
+        this.keyHashes = new long[capacity];
+        this.requestHashes = new int[capacity];
+        this.storedAt = new long[capacity];
+        this.statuses = new short[capacity];
+        this.bodies = new byte[capacity][];
+        int slots = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) * 2;   // load factor <= 0.5
+        this.index = new int[slots];
+        this.indexMask = slots - 1;
+    }
+
+    /** 1M keys for 24h unless overridden with -D properties. */
+    public static IdempotencyCache fromConfig() {
+        return new IdempotencyCache(
+                Integer.getInteger(CAPACITY_PROPERTY, 1_000_000),
+                TimeUnit.SECONDS.toMillis(Long.getLong(TTL_PROPERTY, 86_400)));
+    }
+
+    /**
+     * Looks a key up (scoped, e.g. by method and path) and, if it is new,
+     * claims it for the caller. {@code requestHash} fingerprints the request
+     * body so a key reused for a different request is detected.
+     */
+    public Outcome begin(String scope, String key, int requestHash) {
+        long h = hash(scope, key);
+        synchronized (this) {
+            evictExpired(System.currentTimeMillis());
+            int pos = find(h);
+            if (pos >= 0) {
+                if (requestHashes[pos] != requestHash) return MISMATCH;
+                replays.inc();
+                return new Outcome(Kind.REPLAY, new Response(statuses[pos], bodies[pos]));
+            }
+        }
+        Pending mine = new Pending(requestHash);
+        Pending running = pending.putIfAbsent(h, mine);
+        if (running == null) {
+            // it may have completed between the lookup and the claim
+            Response done = lookup(h, requestHash);
+            if (done == null) return EXECUTE;
+            pending.remove(h, mine);
+            replays.inc();
+            return new Outcome(Kind.REPLAY, done);
+        }
+        return running.requestHash == requestHash ? IN_PROGRESS : MISMATCH;
+    }
+
+    /**
+     * Waits up to {@code timeoutMillis} for an in-progress key; null if it is
+     * still running or was abandoned.
+     */
+    public Response await(String scope, String key, long timeoutMillis) {
+        long h = hash(scope, key);
+        Pending running = pending.get(h);
+        if (running == null) return lookup(h, null);
+        try {
+            Response r = running.result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (r != null) replays.inc();
+            return r;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    /** Stores the response of a claimed key and releases anyone waiting for it. */
+    public void complete(String scope, String key, int status, byte[] body) {
+        long h = hash(scope, key);
+        Pending p = pending.get(h);
+        int requestHash = p == null ? 0 : p.requestHash;
+        Response r;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            evictExpired(now);
+            if (size == capacity) removeHead();
+            int pos = (head + size) % capacity;
+            keyHashes[pos] = h;
+            requestHashes[pos] = requestHash;
+            storedAt[pos] = now;
+            statuses[pos] = (short) status;
+            bodies[pos] = intern(body);
+            size++;
+            insertIndex(h, pos);
+            r = new Response(status, bodies[pos]);
+        }
+        if (p != null) {
+            pending.remove(h, p);
+            p.result.complete(r);
+        }
+    }
+
+    /** Releases a claimed key without storing anything, so it can be retried. */
+    public void abandon(String scope, String key) {
+        long h = hash(scope, key);
+        Pending p = pending.remove(h);
+        if (p != null) p.result.complete(null);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // ---- Ring + index ----
+
+    private synchronized Response lookup(long h, Integer requestHash) {
+        int pos = find(h);
+        if (pos < 0 || (requestHash != null && requestHashes[pos] != requestHash)) return null;
+        return new Response(statuses[pos], bodies[pos]);
+    }
+
+    private void evictExpired(long now) {
+        while (size > 0 && now - storedAt[head] >= ttlMillis) removeHead();
+    }
+
+    private void removeHead() {
+        removeIndex(keyHashes[head], head);
+        bodies[head] = null;
+        head = (head + 1) % capacity;
+        size--;
+    }
+
+    private int find(long h) {
+        for (int i = slot(h); ; i = (i + 1) & indexMask) {
+            int e = index[i];
+            if (e == 0) return -1;
+            if (keyHashes[e - 1] == h) return e - 1;
+        }
+    }
+
+    private void insertIndex(long h, int pos) {
+        int i = slot(h);
+        while (index[i] != 0 && keyHashes[index[i] - 1] != h) i = (i + 1) & indexMask;
+        index[i] = pos + 1;
+    }
+
+    /** Linear-probing delete with backward shift, so lookups need no tombstones. */
+    private void removeIndex(long h, int pos) {
+        int i = slot(h);
+        while (index[i] != pos + 1) {
+            if (index[i] == 0) return;
+            i = (i + 1) & indexMask;
+        }
+        int hole = i;
+        for (int j = (hole + 1) & indexMask; index[j] != 0; j = (j + 1) & indexMask) {
+            int home = slot(keyHashes[index[j] - 1]);
+            // move j into the hole unless its home lies cyclically in (hole, j]
+            boolean stays = hole <= j ? (hole < home && home <= j) : (hole < home || home <= j);
+            if (!stays) {
+                index[hole] = index[j];
+                hole = j;
+            }
+        }
+        index[hole] = 0;
+    }
+
+    private int slot(long h) {
+        return (int) (h ^ (h >>> 32)) & indexMask;
+    }
+
+    private byte[] intern(byte[] body) {
+        if (body == null) return new byte[0];
+        byte[] shared = internedBodies.get(ByteBuffer.wrap(body));
+        if (shared != null) return shared;
+        byte[] copy = Arrays.copyOf(body, body.length);
+        if (internedBodies.size() < MAX_INTERNED_BODIES) internedBodies.put(ByteBuffer.wrap(copy), copy);
+        return copy;
+    }
+
+    // ---- Hashing ----
+
+    /** 64-bit FNV-1a over scope and key, with a final avalanche. */
+    static long hash(String scope, String key) {
+        long h = 0xcbf29ce484222325L;
+        h = fnv(h, scope);
+        h = (h ^ 0xFF) * 0x100000001b3L;
+        h = fnv(h, key);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long fnv(long h, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            h = (h ^ (c & 0xFF)) * 0x100000001b3L;
+            h = (h ^ (c >>> 8)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /** Fingerprint of a request body for mismatch detection. */
+    public static int requestHash(byte[] body) {
+        return Arrays.hashCode(body);
+    }
+}
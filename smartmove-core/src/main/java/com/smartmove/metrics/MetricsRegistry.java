@@ -0,0 +1,115 @@
+package com.smartmove.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Named metrics with Prometheus text exposition.
+ *
+ * Metrics are looked up once (at construction of the instrumented class)
+ * and then updated directly, so the hot path never touches the registry.
+ * Labels are passed as key/value pairs: {@code histogram("x", "help", "op", "start")}.
+ */
+public final class MetricsRegistry {
+
+    private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private enum Type { COUNTER, GAUGE, SUMMARY }
+
+    private static final class Family {
+        final Type type;
+        final String help;
+        final Map<String, Object> series = new ConcurrentSkipListMap<>();
+
+        Family(Type type, String help) {
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /** Process-wide registry used by the core engine and exposed at /metrics. */
+    public static MetricsRegistry global() {
+        return GLOBAL;
+    }
+
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, Type.COUNTER)
+                .series.computeIfAbsent(labelString(labels), k -> new Counter());
+    }
+
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) family(name, help, Type.SUMMARY)
+                .series.computeIfAbsent(labelString(labels), k -> new LatencyHistogram());
+    }
+
+    /** Registers (or replaces) a gauge sampled at scrape time. */
+    public void gauge(String name, String help, LongSupplier value, String... labels) {
+        family(name, help, Type.GAUGE).series.put(labelString(labels), value);
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family f = families.computeIfAbsent(name, n -> new Family(type, help));
+        if (f.type != type) {
+            throw new IllegalArgumentException("Metric " + name + " already registered as " + f.type);
+        }
+        return f;
+    }
+
+    private static String labelString(String[] labels) {
+        if (labels.length % 2 != 0) throw new IllegalArgumentException("labels must be key/value pairs");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(labels[i]).append("=\"").append(labels[i + 1].replace("\"", "\\\"")).append('"');
+        }
+        return sb.toString();
+    }
+
+    // ---- Exposition ----
+
+    /**
+     * Writes all metrics in Prometheus text format (version 0.0.4).
+     * Latencies are exported in seconds as summaries.
+     */
+    public void writePrometheus(StringBuilder out) {
+        for (Map.Entry<String, Family> e : families.entrySet()) {
+            String name = e.getKey();
+            Family f = e.getValue();
+            out.append("# HELP ").append(name).append(' ').append(f.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(f.type.name().toLowerCase(Locale.ROOT)).append('\n');
+
+            for (Map.Entry<String, Object> s : f.series.entrySet()) {
+                String labels = s.getKey();
+                switch (f.type) {
+                    case COUNTER -> sample(out, name, labels, ((Counter) s.getValue()).get());
+                    case GAUGE -> sample(out, name, labels, ((LongSupplier) s.getValue()).getAsLong());
+                    case SUMMARY -> {
+                        LatencyHistogram h = (LatencyHistogram) s.getValue();
+                        for (double q : QUANTILES) {
+                            String ql = (labels.isEmpty() ? "" : labels + ",") + "quantile=\"" + q + "\"";
+                            sample(out, name, ql, seconds(h.percentile(q)));
+                        }
+                        sample(out, name + "_sum", labels, seconds(h.sumNanos()));
+                        sample(out, name + "_count", labels, h.count());
+                    }
+                }
+            }
+        }
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, Object value) {
+        out.append(name);
+        if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+}
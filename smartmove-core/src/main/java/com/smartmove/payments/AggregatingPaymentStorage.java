@@ -0,0 +1,49 @@
+package com.smartmove.payments;
+
+import com.smartmove.domain.Payment;
+import com.smartmove.storage.PaymentStorage;
+
+import java.util.List;
+
+/**
+ * PaymentStorage decorator that keeps {@link PaymentRollups} up to date.
+ * On construction the rollups are reconciled with the stored payments once.
+ */
+public class AggregatingPaymentStorage implements PaymentStorage {
+
+    private final PaymentStorage delegate;
+    private final PaymentRollups rollups;
+
+    public AggregatingPaymentStorage(PaymentStorage delegate, PaymentRollups rollups) {
+        this.delegate = delegate;
+        this.rollups = rollups;
+        rollups.reconcile(delegate.findAll());
+    }
+
+    @Override
+    public void save(Payment payment) {
+        delegate.save(payment);
+        rollups.apply(payment);
+    }
+
+    @Override
+    public List<Payment> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public void deferWrites() {
+        delegate.deferWrites();
+        rollups.deferWrites();
+    }
+
+    @Override
+    public void flush() {
+        delegate.flush();
+        rollups.flush();
+    }
+
+    public PaymentRollups rollups() {
+        return rollups;
+    }
+}
@@ -0,0 +1,240 @@
+package com.smartmove.payments;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.smartmove.codec.StorageCodec;
+import com.smartmove.codec.StorageCodecs;
+import com.smartmove.domain.City;
+import com.smartmove.domain.Payment;
+import com.smartmove.domain.VehicleType;
+import com.smartmove.storage.DurableFiles;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incrementally maintained revenue totals.
+ *
+ * Every payment is folded into the buckets (city or any) x (vehicle type or any)
+ * x (all time, UTC day, UTC hour), so any summary is a single map lookup.
+ * Amounts are kept in cents. Hour buckets older than {@link #HOUR_RETENTION_DAYS}
+ * are dropped; day and all-time buckets are kept.
+ *
+ * The buckets are persisted as a small snapshot together with the number of
+ * payments folded in, which lets {@link #reconcile} catch up (or rebuild) on
+ * startup from the stored payments. Since the snapshot grows with the day
+ * and hour buckets, it is not rewritten per payment: only every
+ * -Dsmartmove.rollups.persistEvery payments (default 1000) and on
+ * {@link #flush()}; a snapshot that lags the payments is caught up by
+ * reconcile. After {@link #deferWrites()} it is only written on flush.
+ */
+public class PaymentRollups {
+
+    public static final String PERSIST_EVERY_PROPERTY = "smartmove.rollups.persistEvery";
+    public static final String ANY = "*";
+    public static final String ALL_TIME = "all";
+    static final int HOUR_RETENTION_DAYS = 14;
+
+    /** Totals of one bucket; amounts in cents. */
+    public static class Totals {
+        public long count;
+        public long baseFareCents;
+        public long congestionCents;
+        public long totalCents;
+
+        Totals() {}
+
+        Totals(long[] packed) {
+            this.count = packed[0];
+            this.baseFareCents = packed[1];
+            this.congestionCents = packed[2];
+            this.totalCents = packed[3];
+        }
+
+        long[] pack() {
+            return new long[]{count, baseFareCents, congestionCents, totalCents};
+        }
+
+        Totals copy() {
+            return new Totals(pack());
+        }
+    }
+
+    /** On-disk form: buckets as [count, base, congestion, total] arrays. */
+    static class Snapshot {
+        public long applied;
+        public Map<String, long[]> buckets = new HashMap<>();
+    }
+
+    private final Path file;
+    private final StorageCodec codec;
+    private final Map<String, Totals> buckets = new HashMap<>();
+    private final int persistEvery = Math.max(1, Integer.getInteger(PERSIST_EVERY_PROPERTY, 1000));
+    private long applied;
+    private boolean deferred;
+    private int unpersisted;   // payments folded in since the snapshot was written
+
+    public PaymentRollups(Path file) {
+        this(file, StorageCodecs.fromConfig());
+    }
+
+    public PaymentRollups(Path file, StorageCodec codec) {
+        this.file = file;
+        this.codec = codec;
+        load();
+    }
+
+    private void load() {
+        try {
+            if (!Files.exists(file)) return;
+            byte[] data = Files.readAllBytes(file);
+            if (StorageCodecs.isBlank(data)) return;
+            Snapshot s = StorageCodecs.detect(data).decode(data, new TypeReference<Snapshot>() {});
+            s.buckets.forEach((k, v) -> buckets.put(k, new Totals(v)));
+            applied = s.applied;
+        } catch (IOException | RuntimeException e) {
+            // a damaged snapshot is only a cache: start empty and let reconcile rebuild it
+            System.err.println("PaymentRollups: ignoring unreadable snapshot " + file + ": " + e.getMessage());
+            buckets.clear();
+            applied = 0;
+        }
+    }
+
+    /**
+     * Brings the rollups in line with the stored payments (in save order):
+     * folds in any the snapshot missed, or rebuilds if the store was replaced.
+     */
+    public synchronized void reconcile(List<Payment> stored) {
+        if (applied == stored.size()) return;
+        if (applied > stored.size()) {
+            buckets.clear();
+            applied = 0;
+        }
+        for (int i = (int) applied; i < stored.size(); i++) fold(stored.get(i));
+        persist();
+    }
+
+    /** Folds one newly stored payment in; persists the snapshot every {@code persistEvery} payments. */
+    public synchronized void apply(Payment p) {
+        fold(p);
+        unpersisted++;
+        if (!deferred && unpersisted >= persistEvery) persist();
+    }
+
+    public synchronized void deferWrites() {
+        deferred = true;
+    }
+
+    /** Writes the snapshot if payments were folded in since the last write. */
+    public synchronized void flush() {
+        if (unpersisted > 0) persist();
+    }
+
+    /**
+     * Totals for a city (null = any), vehicle type (null = any) and period:
+     * {@link #ALL_TIME}, a UTC day {@code 2026-10-19} or hour {@code 2026-10-19T13}.
+     */
+    public synchronized Totals totals(City city, VehicleType type, String period) {
+        Totals t = buckets.get(key(city == null ? ANY : city.name(), type == null ? ANY : type.name(), period));
+        return t == null ? new Totals() : t.copy();
+    }
+
+    public synchronized long paymentCount() {
+        return applied;
+    }
+
+    /** Validates a period string, returning it in canonical form. */
+    public static String period(String value) {
+        if (value == null || value.isBlank() || value.equalsIgnoreCase(ALL_TIME)) return ALL_TIME;
+        String v = value.trim();
+        try {
+            if (v.equalsIgnoreCase("today")) return LocalDate.now(ZoneOffset.UTC).toString();
+            if (v.length() == 10) return LocalDate.parse(v).toString();
+            if (v.length() == 13 && v.charAt(10) == 'T') {
+                int hour = Integer.parseInt(v.substring(11));
+                if (hour >= 0 && hour < 24) return LocalDate.parse(v.substring(0, 10)) + v.substring(10);
+            }
+        } catch (DateTimeParseException | NumberFormatException ignored) {
+            // fall through
+        }
+        throw new IllegalArgumentException("period must be all, today, YYYY-MM-DD or YYYY-MM-DDTHH (UTC)");
+    }
+
+    // ---- Folding ----
+
+    private void fold(Payment p) {
+        String city = p.getCity() == null ? "UNKNOWN" : p.getCity().name();
+        String type = p.getVehicleType() == null ? "UNKNOWN" : p.getVehicleType().name();
+        long base = p.getBaseFareCents();
+        long congestion = p.getCongestionChargeCents();
+        long total = p.getTotalCents();
+
+        String[] periods = {ALL_TIME, null, null};
+        Instant at = parseInstant(p.getTimestamp());
+        if (at != null) {
+            String hour = at.truncatedTo(ChronoUnit.HOURS).toString();   // 2026-10-19T13:00:00Z
+            periods[1] = hour.substring(0, 10);
+            periods[2] = hour.substring(0, 13);
+            if (!buckets.containsKey(key(ANY, ANY, periods[2]))) pruneHoursBefore(at);
+        }
+
+        for (String c : new String[]{city, ANY}) {
+            for (String t : new String[]{type, ANY}) {
+                for (String period : periods) {
+                    if (period == null) continue;
+                    Totals b = buckets.computeIfAbsent(key(c, t, period), k -> new Totals());
+                    b.count++;
+                    b.baseFareCents += base;
+                    b.congestionCents += congestion;
+                    b.totalCents += total;
+                }
+            }
+        }
+        applied++;
+    }
+
+    private void pruneHoursBefore(Instant now) {
+        String cutoff = now.minus(HOUR_RETENTION_DAYS, ChronoUnit.DAYS).toString().substring(0, 13);
+        Iterator<String> it = buckets.keySet().iterator();
+        while (it.hasNext()) {
+            String k = it.next();
+            String period = k.substring(k.lastIndexOf('|') + 1);
+            if (period.length() == 13 && period.compareTo(cutoff) < 0) it.remove();
+        }
+    }
+
+    private void persist() {
+        Snapshot s = new Snapshot();
+        s.applied = applied;
+        buckets.forEach((k, v) -> s.buckets.put(k, v.pack()));
+        try {
+            Path parent = file.getParent();
+            if (parent != null) Files.createDirectories(parent);
+            DurableFiles.replace(file, codec.encode(s));
+            unpersisted = 0;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to persist payment rollups: " + file, e);
+        }
+    }
+
+    private static String key(String city, String type, String period) {
+        return city + "|" + type + "|" + period;
+    }
+
+    private static Instant parseInstant(String timestamp) {
+        if (timestamp == null) return null;
+        try {
+            return Instant.parse(timestamp);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.smartmove.pricing;
+
+import com.smartmove.domain.City;
+import com.smartmove.domain.VehicleType;
+
+/**
+ * Prices a finished trip. Called under the vehicle lock on every endRental,
+ * so implementations should not allocate or block. Amounts are cents.
+ */
+public interface PricingEngine {
+
+    long baseFareCents(City city, VehicleType type, long startedAtMs, long durationMs, double meters);
+
+    long congestionCents(City city, VehicleType type, long startedAtMs);
+}
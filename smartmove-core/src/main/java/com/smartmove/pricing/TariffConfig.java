@@ -0,0 +1,56 @@
+package com.smartmove.pricing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tariff file as written by operators (data/tariffs.json). Amounts are cents.
+ *
+ * A tariff applies to a city and vehicle type, either of which may be "*";
+ * the most specific match wins. Time bands scale the base fare by a percentage
+ * for trips starting in [fromHour, toHour) local time.
+ */
+public class TariffConfig {
+
+    public static final String ANY = "*";
+
+    public List<Tariff> tariffs = new ArrayList<>();
+    public List<TimeBand> timeBands = new ArrayList<>();
+
+    public static class Tariff {
+        public String city = ANY;
+        public String vehicleType = ANY;
+        public long unlockCents;
+        public long perMinuteCents;
+        public long perKmCents;
+        public long minimumCents;
+        public long congestionCents;
+        // congestion charge applies to trips starting in [from, to) local time
+        public int congestionFromHour = 0;
+        public int congestionToHour = 24;
+
+        public Tariff() {}
+
+        Tariff(String city, String vehicleType, long unlockCents, long congestionCents) {
+            this.city = city;
+            this.vehicleType = vehicleType;
+            this.unlockCents = unlockCents;
+            this.congestionCents = congestionCents;
+        }
+    }
+
+    public static class TimeBand {
+        public String city = ANY;
+        public int fromHour;
+        public int toHour = 24;
+        public int percent = 100;
+    }
+
+    /** The lab's original fixed fares: 10.00 everywhere, plus 5.00 congestion in London. */
+    public static TariffConfig defaults() {
+        TariffConfig c = new TariffConfig();
+        c.tariffs.add(new Tariff(ANY, ANY, 1000, 0));
+        c.tariffs.add(new Tariff("LONDON", ANY, 1000, 500));
+        return c;
+    }
+}
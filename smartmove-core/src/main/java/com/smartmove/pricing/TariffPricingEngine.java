@@ -0,0 +1,231 @@
+package com.smartmove.pricing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.smartmove.domain.City;
+import com.smartmove.domain.VehicleType;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * PricingEngine backed by a {@link TariffConfig}, compiled once into flat
+ * arrays indexed by city and vehicle type ordinals.
+ *
+ * A price is a few array reads and long arithmetic: the local hour comes from
+ * a per-city cached UTC offset that is only recomputed at DST transitions.
+ *
+ * base = unlock + perMinute * ceil(minutes) + perKm * km, scaled by the
+ * time band's percent, then raised to the minimum fare.
+ */
+public class TariffPricingEngine implements PricingEngine {
+
+    private static final City[] CITIES = City.values();
+    private static final int TYPES = VehicleType.values().length;
+    private static final int ALL_HOURS = (1 << 24) - 1;
+
+    // [city * TYPES + type]
+    private final long[] unlockCents;
+    private final long[] perMinuteCents;
+    private final long[] perKmCents;
+    private final long[] minimumCents;
+    private final long[] congestionCents;
+    private final int[] congestionHours;    // bit h set = charged for trips starting in hour h
+
+    // [city * 24 + hour]
+    private final int[] hourPercent;
+
+    private final ZoneRules[] zones;
+    private final OffsetWindow[] offsets;   // benign race: a stale read only recomputes
+
+    /** UTC offset valid for [fromMs, toMs). */
+    private static final class OffsetWindow {
+        final long fromMs;
+        final long toMs;
+        final int offsetSeconds;
+
+        OffsetWindow(long fromMs, long toMs, int offsetSeconds) {
+            this.fromMs = fromMs;
+            this.toMs = toMs;
+            this.offsetSeconds = offsetSeconds;
+        }
+    }
+
+    private TariffPricingEngine(int slots) {
+        unlockCents = new long[slots];
+        perMinuteCents = new long[slots];
+        perKmCents = new long[slots];
+        minimumCents = new long[slots];
+        congestionCents = new long[slots];
+        congestionHours = new int[slots];
+        hourPercent = new int[CITIES.length * 24];
+        zones = new ZoneRules[CITIES.length];
+        offsets = new OffsetWindow[CITIES.length];
+        for (City c : CITIES) zones[c.ordinal()] = zoneOf(c).getRules();
+    }
+
+    /** The original fixed fares. */
+    public static TariffPricingEngine defaults() {
+        return compile(TariffConfig.defaults());
+    }
+
+    /** Loads tariffs from a JSON file, writing the defaults there first if it does not exist. */
+    public static TariffPricingEngine load(Path file) {
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        try {
+            if (!Files.exists(file)) {
+                if (file.getParent() != null) Files.createDirectories(file.getParent());
+                Files.write(file, mapper.writeValueAsBytes(TariffConfig.defaults()));
+            }
+            return compile(mapper.readValue(file.toFile(), TariffConfig.class));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid tariffs in " + file + ": " + e.getMessage(), e);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load tariffs from " + file, e);
+        }
+    }
+
+    public static TariffPricingEngine compile(TariffConfig config) {
+        TariffPricingEngine engine = new TariffPricingEngine(CITIES.length * TYPES);
+        Arrays.fill(engine.hourPercent, 100);
+
+        // least specific first, so more specific rows overwrite them (ties: file order)
+        List<TariffConfig.Tariff> tariffs = new ArrayList<>(config.tariffs);
+        tariffs.sort(Comparator.comparingInt(t -> specificity(t.city) + specificity(t.vehicleType)));
+        for (TariffConfig.Tariff t : tariffs) {
+            int mask = hourMask(t.congestionFromHour, t.congestionToHour, "congestion");
+            for (City city : matchCities(t.city)) {
+                for (VehicleType type : matchTypes(t.vehicleType)) {
+                    int i = city.ordinal() * TYPES + type.ordinal();
+                    engine.unlockCents[i] = nonNegative(t.unlockCents, "unlockCents");
+                    engine.perMinuteCents[i] = nonNegative(t.perMinuteCents, "perMinuteCents");
+                    engine.perKmCents[i] = nonNegative(t.perKmCents, "perKmCents");
+                    engine.minimumCents[i] = nonNegative(t.minimumCents, "minimumCents");
+                    engine.congestionCents[i] = nonNegative(t.congestionCents, "congestionCents");
+                    engine.congestionHours[i] = mask;
+                }
+            }
+        }
+
+        List<TariffConfig.TimeBand> bands = new ArrayList<>(config.timeBands);
+        bands.sort(Comparator.comparingInt(b -> specificity(b.city)));
+        for (TariffConfig.TimeBand b : bands) {
+            int mask = hourMask(b.fromHour, b.toHour, "time band");
+            nonNegative(b.percent, "percent");
+            for (City city : matchCities(b.city)) {
+                for (int h = 0; h < 24; h++) {
+                    if ((mask & (1 << h)) != 0) engine.hourPercent[city.ordinal() * 24 + h] = b.percent;
+                }
+            }
+        }
+        return engine;
+    }
+
+    // ---- Pricing ----
+
+    @Override
+    public long baseFareCents(City city, VehicleType type, long startedAtMs, long durationMs, double meters) {
+        int i = city.ordinal() * TYPES + type.ordinal();
+        long minutes = Math.max(1, (Math.max(0, durationMs) + 59_999) / 60_000);
+        long fare = unlockCents[i]
+                + perMinuteCents[i] * minutes
+                + (perKmCents[i] * Math.round(Math.max(0, meters)) + 500) / 1000;
+        int percent = hourPercent[city.ordinal() * 24 + localHour(city, startedAtMs)];
+        if (percent != 100) fare = (fare * percent + 50) / 100;
+        return Math.max(fare, minimumCents[i]);
+    }
+
+    @Override
+    public long congestionCents(City city, VehicleType type, long startedAtMs) {
+        int i = city.ordinal() * TYPES + type.ordinal();
+        long charge = congestionCents[i];
+        if (charge == 0) return 0;
+        int hours = congestionHours[i];
+        if (hours != ALL_HOURS && (hours & (1 << localHour(city, startedAtMs))) == 0) return 0;
+        return charge;
+    }
+
+    int localHour(City city, long epochMs) {
+        int c = city.ordinal();
+        OffsetWindow w = offsets[c];
+        if (w == null || epochMs < w.fromMs || epochMs >= w.toMs) {
+            w = offsetWindow(zones[c], epochMs);
+            offsets[c] = w;
+        }
+        long localSeconds = Math.floorDiv(epochMs, 1000) + w.offsetSeconds;
+        return (int) (Math.floorMod(localSeconds, 86_400L) / 3600);
+    }
+
+    /**
+     * The whole period between transitions containing {@code epochMs}, so
+     * trips priced out of start order (ended in a different order than they
+     * started) still hit the cached window.
+     */
+    private static OffsetWindow offsetWindow(ZoneRules rules, long epochMs) {
+        Instant at = Instant.ofEpochMilli(epochMs);
+        ZoneOffsetTransition previous = rules.previousTransition(at.plusMillis(1));   // at or before epochMs
+        ZoneOffsetTransition next = rules.nextTransition(at);
+        long fromMs = previous == null ? Long.MIN_VALUE : previous.getInstant().toEpochMilli();
+        long toMs = next == null ? Long.MAX_VALUE : next.getInstant().toEpochMilli();
+        return new OffsetWindow(fromMs, toMs, rules.getOffset(at).getTotalSeconds());
+    }
+
+    // ---- Compilation helpers ----
+
+    static ZoneId zoneOf(City city) {
+        return switch (city) {
+            case LONDON -> ZoneId.of("Europe/London");
+            case MILAN, ROME -> ZoneId.of("Europe/Rome");
+        };
+    }
+
+    private static int specificity(String value) {
+        return value == null || TariffConfig.ANY.equals(value) ? 0 : 1;
+    }
+
+    private static City[] matchCities(String value) {
+        if (specificity(value) == 0) return CITIES;
+        try {
+            return new City[]{City.valueOf(value.trim().toUpperCase())};
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown city " + value);
+        }
+    }
+
+    private static VehicleType[] matchTypes(String value) {
+        if (specificity(value) == 0) return VehicleType.values();
+        try {
+            return new VehicleType[]{VehicleType.valueOf(value.trim().toUpperCase())};
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown vehicle type " + value);
+        }
+    }
+
+    /** Bits for hours [from, to); from > to wraps past midnight. */
+    private static int hourMask(int from, int to, String what) {
+        if (from < 0 || from > 23 || to < 0 || to > 24) {
+            throw new IllegalArgumentException(what + " hours must be within 0..24");
+        }
+        int mask = 0;
+        if (from < to) {
+            for (int h = from; h < to; h++) mask |= 1 << h;
+        } else {
+            for (int h = from; h < 24; h++) mask |= 1 << h;
+            for (int h = 0; h < to; h++) mask |= 1 << h;
+        }
+        return mask;
+    }
+
+    private static long nonNegative(long value, String field) {
+        if (value < 0) throw new IllegalArgumentException(field + " must not be negative");
+        return value;
+    }
+}
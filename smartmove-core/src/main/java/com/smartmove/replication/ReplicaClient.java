@@ -0,0 +1,226 @@
+package com.smartmove.replication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartmove.audit.AuditLogEntry;
+import com.smartmove.audit.AuditLogService;
+import com.smartmove.cdc.ChangeRecord;
+import com.smartmove.domain.City;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.metrics.Counter;
+import com.smartmove.metrics.MetricsRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Replica side of replication: follows a primary's change log and audit log
+ * and serves reads from the result.
+ *
+ * Vehicles are kept in memory (a restarted replica takes a fresh snapshot);
+ * audit entries are appended to the replica's own log only after their id,
+ * previous checksum and checksum verify against the local chain, so a
+ * replica never serves an audit trail the primary did not write. A chain
+ * mismatch stops replication until the local log is repaired; reads then
+ * report the replica as stale.
+ *
+ * Staleness is the time since the replica last held everything the primary
+ * had written when a batch was cut; {@link #isFresh} bounds it by
+ * -Dsmartmove.replication.maxStalenessMs (default 5000).
+ */
+public class ReplicaClient implements AutoCloseable {
+
+    public static final String PRIMARY_PROPERTY = "smartmove.replication.primary";
+    public static final String MAX_STALENESS_PROPERTY = "smartmove.replication.maxStalenessMs";
+
+    private static final long RECONNECT_MS = 1000;
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final InetSocketAddress primary;
+    private final AuditLogService audit;
+    private final long maxStalenessMs;
+    private final Map<String, Vehicle> vehicles = new ConcurrentHashMap<>();
+
+    private final Counter applied = MetricsRegistry.global().counter(
+            "smartmove_replication_records_applied_total", "Change and audit records applied from the primary");
+
+    private volatile long changeOffset;
+    private volatile long caughtUpAt;        // 0 = never
+    private volatile boolean connected;
+    private volatile String lastError;
+    private volatile boolean running = true;
+    private volatile Socket socket;
+    private Thread worker;
+    private Map<String, Vehicle> pendingSnapshot;   // snapshot parts received so far; follower thread only
+
+    public ReplicaClient(InetSocketAddress primary, AuditLogService audit, long maxStalenessMs) {
+        this.primary = primary;
+        this.audit = audit;
+        this.maxStalenessMs = maxStalenessMs;
+        MetricsRegistry.global().gauge("smartmove_replication_staleness_ms",
+                "Milliseconds since this replica was last caught up with the primary",
+                () -> Math.min(stalenessMillis(), Integer.MAX_VALUE));
+    }
+
+    /** Client from system properties ({@code host:port}), or null unless this process is a replica. */
+    public static ReplicaClient fromConfig(AuditLogService audit) {
+        if (!"replica".equalsIgnoreCase(System.getProperty(ReplicationServer.ROLE_PROPERTY, "").trim())) return null;
+        String target = System.getProperty(PRIMARY_PROPERTY, "localhost:9090").trim();
+        int colon = target.lastIndexOf(':');
+        if (colon <= 0) throw new IllegalArgumentException("Expected host:port in " + PRIMARY_PROPERTY + ": " + target);
+        InetSocketAddress address = InetSocketAddress.createUnresolved(
+                target.substring(0, colon), Integer.parseInt(target.substring(colon + 1)));
+        return new ReplicaClient(address, audit, Long.getLong(MAX_STALENESS_PROPERTY, 5000));
+    }
+
+    public void start() {
+        worker = new Thread(this::run, "replica-follower");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // ---- Reads ----
+
+    public Optional<Vehicle> findById(String id) {
+        return Optional.ofNullable(vehicles.get(id));
+    }
+
+    /** Vehicles, optionally only those in {@code city} (null = all). */
+    public List<Vehicle> findAll(City city) {
+        List<Vehicle> out = new ArrayList<>();
+        for (Vehicle v : vehicles.values()) {
+            if (city == null || city == v.getCity()) out.add(v);
+        }
+        return out;
+    }
+
+    public long changeOffset() {
+        return changeOffset;
+    }
+
+    public long auditId() {
+        return audit.lastId();
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public String lastError() {
+        return lastError;
+    }
+
+    public long stalenessMillis() {
+        long at = caughtUpAt;
+        return at == 0 ? Long.MAX_VALUE : Math.max(0, System.currentTimeMillis() - at);
+    }
+
+    public long maxStalenessMillis() {
+        return maxStalenessMs;
+    }
+
+    public boolean isFresh() {
+        return stalenessMillis() <= maxStalenessMs;
+    }
+
+    // ---- Following ----
+
+    private void run() {
+        while (running) {
+            try (Socket s = new Socket()) {
+                socket = s;
+                InetSocketAddress resolved = new InetSocketAddress(primary.getHostString(), primary.getPort());
+                s.connect(resolved, CONNECT_TIMEOUT_MS);
+                s.setTcpNoDelay(true);
+                // a silent primary counts as gone after a few missed heartbeats
+                s.setSoTimeout((int) (ReplicationServer.HEARTBEAT_MS * 10));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+
+                pendingSnapshot = null;
+                ReplicationProtocol.write(out, new ReplicationProtocol.Hello(changeOffset, audit.lastId()));
+                connected = true;
+                while (running) {
+                    apply(ReplicationProtocol.read(in, ReplicationProtocol.Batch.class));
+                }
+            } catch (IOException e) {
+                if (running) lastError = "Primary " + primary + ": " + e.getMessage();
+            } catch (IllegalStateException e) {
+                // refused by the primary, or the audit chain does not verify: do not retry blindly
+                lastError = e.getMessage();
+                System.err.println("Replication stopped: " + e.getMessage());
+                running = false;
+            } finally {
+                connected = false;
+            }
+            if (running) sleep(RECONNECT_MS);
+        }
+    }
+
+    void apply(ReplicationProtocol.Batch batch) throws IOException {
+        if (batch.error != null) throw new IllegalStateException(batch.error);
+
+        if (batch.snapshot != null) {
+            // collected across parts; reads keep the old vehicles until the last one
+            if (batch.snapshotPart == null || batch.snapshotPart == 0) {
+                pendingSnapshot = new HashMap<>();
+            } else if (pendingSnapshot == null) {
+                throw new IOException("Snapshot part " + batch.snapshotPart + " without its start");
+            }
+            for (Vehicle v : batch.snapshot) pendingSnapshot.put(v.getId(), v);
+            if (batch.snapshotLast == null || batch.snapshotLast) {
+                vehicles.keySet().retainAll(pendingSnapshot.keySet());
+                vehicles.putAll(pendingSnapshot);
+                changeOffset = batch.snapshotOffset;
+                pendingSnapshot = null;
+            }
+        }
+        if (pendingSnapshot != null) return;
+        for (ChangeRecord r : batch.changes) {
+            if (r.offset <= changeOffset) continue;
+            if (r.entity == ChangeRecord.Entity.VEHICLE) {
+                if (r.op == ChangeRecord.Op.DELETE) vehicles.remove(r.key);
+                else vehicles.put(r.key, mapper.treeToValue(r.data, Vehicle.class));
+            }
+            changeOffset = r.offset;
+        }
+        for (AuditLogEntry entry : batch.audit) {
+            if (entry.id <= audit.lastId()) continue;
+            audit.replicate(entry);
+        }
+        applied.add(batch.changes.size() + batch.audit.size());
+
+        if (changeOffset >= batch.changeHead && audit.lastId() >= batch.auditHead) {
+            caughtUpAt = batch.sentAt;
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        Socket s = socket;
+        if (s != null) {
+            try { s.close(); } catch (IOException ignored) {}
+        }
+        if (worker != null) worker.interrupt();
+    }
+}
@@ -0,0 +1,82 @@
+package com.smartmove.replication;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartmove.audit.AuditLogEntry;
+import com.smartmove.cdc.ChangeRecord;
+import com.smartmove.domain.Vehicle;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire format between a primary and its replicas: length-prefixed JSON
+ * frames over one TCP connection. The replica opens with a {@link Hello}
+ * saying where it is; the primary then only sends {@link Batch}es.
+ */
+final class ReplicationProtocol {
+
+    static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private ReplicationProtocol() {}
+
+    /** Replica -> primary: last applied change offset (0 = needs a snapshot) and audit id. */
+    static class Hello {
+        public long changeOffset;
+        public long auditId;
+
+        Hello() {}
+
+        Hello(long changeOffset, long auditId) {
+            this.changeOffset = changeOffset;
+            this.auditId = auditId;
+        }
+    }
+
+    /**
+     * Primary -> replica. The heads are the primary's positions when the
+     * batch was cut; a replica that has applied up to both is caught up.
+     * An empty batch is a heartbeat.
+     *
+     * A snapshot spans several batches so no frame grows with the fleet:
+     * parts 0..n each carry a chunk of vehicles and the same snapshotOffset,
+     * and the part marked snapshotLast completes it.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    static class Batch {
+        public long changeHead;
+        public long auditHead;
+        public long sentAt;
+        public Long snapshotOffset;          // set when snapshot replaces the replica's vehicles
+        public List<Vehicle> snapshot;       // this part's chunk
+        public Integer snapshotPart;         // 0 starts a new snapshot
+        public Boolean snapshotLast;
+        public List<ChangeRecord> changes = new ArrayList<>();
+        public List<AuditLogEntry> audit = new ArrayList<>();
+        public String error;                 // the primary refuses to serve this replica
+
+        boolean isEmpty() {
+            return snapshot == null && changes.isEmpty() && audit.isEmpty();
+        }
+    }
+
+    static void write(DataOutputStream out, Object frame) throws IOException {
+        byte[] json = mapper.writeValueAsBytes(frame);
+        out.writeInt(json.length);
+        out.write(json);
+        out.flush();
+    }
+
+    static <T> T read(DataInputStream in, Class<T> type) throws IOException {
+        int n = in.readInt();
+        if (n <= 0 || n > MAX_FRAME_BYTES) throw new IOException("Bad replication frame length " + n);
+        byte[] json = new byte[n];
+        in.readFully(json);
+        return mapper.readValue(json, type);
+    }
+}
@@ -0,0 +1,193 @@
+package com.smartmove.replication;
+
+import com.smartmove.audit.AuditLogService;
+import com.smartmove.cdc.ChangeLog;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.metrics.MetricsRegistry;
+import com.smartmove.storage.VehicleStorage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Primary side of replication: streams the change log and the audit log to
+ * replicas over TCP, one thread per replica.
+ *
+ * A replica that has no vehicles yet (or is ahead of this change log) gets a
+ * snapshot of the vehicle store first, cut at the change offset read before
+ * the store and sent in chunks of {@link #SNAPSHOT_CHUNK} vehicles; replaying
+ * from there is safe because vehicle upserts and deletes are idempotent. Audit entries are sent from the replica's last id, since
+ * the replica keeps its own copy of the chain.
+ *
+ * Enabled with -Dsmartmove.replication.role=primary; replicas connect to
+ * -Dsmartmove.replication.port (default 9090), bound to loopback unless
+ * -Dsmartmove.replication.bind says otherwise.
+ */
+public class ReplicationServer implements AutoCloseable {
+
+    public static final String ROLE_PROPERTY = "smartmove.replication.role";
+    public static final String PORT_PROPERTY = "smartmove.replication.port";
+    public static final String BIND_PROPERTY = "smartmove.replication.bind";
+
+    static final int BATCH_LIMIT = 1000;
+    static final int SNAPSHOT_CHUNK = 1000;
+    // How long a caught-up stream waits for new changes, and how often it heartbeats
+    static final long POLL_MS = 50;
+    static final long HEARTBEAT_MS = 500;
+
+    private final ChangeLog changeLog;
+    private final AuditLogService audit;
+    private final VehicleStorage storage;
+    private final ServerSocket serverSocket;
+    private final Set<Socket> replicas = ConcurrentHashMap.newKeySet();
+    private volatile boolean running = true;
+
+    public ReplicationServer(InetSocketAddress address, ChangeLog changeLog, AuditLogService audit, VehicleStorage storage) {
+        this.changeLog = changeLog;
+        this.audit = audit;
+        this.storage = storage;
+        try {
+            this.serverSocket = new ServerSocket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(address);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to listen for replicas on " + address, e);
+        }
+        MetricsRegistry.global().gauge("smartmove_replication_replicas",
+                "Replicas currently streaming from this primary", replicas::size);
+    }
+
+    /** Server from system properties, or null unless this process is the primary. */
+    public static ReplicationServer fromConfig(ChangeLog changeLog, AuditLogService audit, VehicleStorage storage) {
+        if (!"primary".equalsIgnoreCase(System.getProperty(ROLE_PROPERTY, "").trim())) return null;
+        int port = Integer.getInteger(PORT_PROPERTY, 9090);
+        String bind = System.getProperty(BIND_PROPERTY);
+        InetSocketAddress address = bind == null || bind.isBlank()
+                ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+                : new InetSocketAddress(bind.trim(), port);
+        return new ReplicationServer(address, changeLog, audit, storage);
+    }
+
+    public void start() {
+        Thread acceptor = new Thread(this::acceptLoop, "replication-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int replicaCount() {
+        return replicas.size();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread t = new Thread(() -> serve(socket), "replication-" + socket.getRemoteSocketAddress());
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                if (running) System.err.println("Replication accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        replicas.add(socket);
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            stream(ReplicationProtocol.read(in, ReplicationProtocol.Hello.class), out);
+        } catch (SocketException e) {
+            // replica went away
+        } catch (IOException e) {
+            if (running) System.err.println("Replication stream to " + socket.getRemoteSocketAddress() + " ended: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            replicas.remove(socket);
+        }
+    }
+
+    private void stream(ReplicationProtocol.Hello hello, DataOutputStream out) throws IOException, InterruptedException {
+        long changesSent = hello.changeOffset;
+        long auditSent = hello.auditId;
+
+        if (auditSent > audit.lastId()) {
+            ReplicationProtocol.Batch refusal = new ReplicationProtocol.Batch();
+            refusal.error = "Replica audit log is ahead of the primary (" + auditSent + " > " + audit.lastId() + ")";
+            ReplicationProtocol.write(out, refusal);
+            return;
+        }
+
+        if (changesSent == 0 || changesSent > changeLog.lastOffset()) changesSent = sendSnapshot(out);
+        long lastSentAt = 0;
+        while (running) {
+            ReplicationProtocol.Batch batch = new ReplicationProtocol.Batch();
+            batch.changeHead = changeLog.lastOffset();
+            batch.auditHead = audit.lastId();
+            batch.changes = changeLog.read(changesSent, BATCH_LIMIT);
+            batch.audit = audit.read(auditSent, BATCH_LIMIT);
+
+            long now = System.currentTimeMillis();
+            if (batch.isEmpty() && now - lastSentAt < HEARTBEAT_MS) {
+                changeLog.awaitBeyond(changesSent, POLL_MS);
+                continue;
+            }
+            batch.sentAt = now;
+            ReplicationProtocol.write(out, batch);
+            lastSentAt = now;
+            if (!batch.changes.isEmpty()) changesSent = batch.changes.get(batch.changes.size() - 1).offset;
+            if (!batch.audit.isEmpty()) auditSent = batch.audit.get(batch.audit.size() - 1).id;
+        }
+    }
+
+    /** Sends the vehicle store in chunks; returns the change offset it was cut at. */
+    private long sendSnapshot(DataOutputStream out) throws IOException {
+        long offset = changeLog.lastOffset();
+        List<Vehicle> vehicles = storage.findAll();
+        int part = 0;
+        int from = 0;
+        do {
+            int to = Math.min(from + SNAPSHOT_CHUNK, vehicles.size());
+            ReplicationProtocol.Batch batch = new ReplicationProtocol.Batch();
+            batch.changeHead = changeLog.lastOffset();
+            batch.auditHead = audit.lastId();
+            batch.snapshotOffset = offset;
+            batch.snapshot = vehicles.subList(from, to);
+            batch.snapshotPart = part++;
+            batch.snapshotLast = to == vehicles.size();
+            batch.sentAt = System.currentTimeMillis();
+            ReplicationProtocol.write(out, batch);
+            from = to;
+        } while (from < vehicles.size());
+        return offset;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+        }
+        for (Socket s : replicas) {
+            try { s.close(); } catch (IOException ignored) {}
+        }
+    }
+}
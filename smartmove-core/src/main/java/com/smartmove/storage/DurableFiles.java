@@ -0,0 +1,50 @@
+package com.smartmove.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Whole-file replacement that survives a crash: the new content goes to a
+ * temp file, which is forced before it is renamed over the target, and the
+ * directory is forced after the rename. A rename alone can reach the disk
+ * before the data it points to, leaving an empty or partial file behind.
+ */
+public final class DurableFiles {
+
+    private DurableFiles() {}
+
+    /** Replaces {@code target} with {@code content}; once this returns, both are on disk. */
+    public static void replace(Path target, byte[] content) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.wrap(content);
+            while (buf.hasRemaining()) ch.write(buf);
+            ch.force(true);
+        }
+
+        // ATOMIC_MOVE is best-effort; if filesystem doesn't support it, it may throw
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        forceDirectory(target.toAbsolutePath().getParent());
+    }
+
+    /** Forces a directory's entries (a rename or create in it) to disk, where the platform allows. */
+    public static void forceDirectory(Path dir) {
+        if (dir == null) return;
+        try (FileChannel d = FileChannel.open(dir, StandardOpenOption.READ)) {
+            d.force(true);
+        } catch (IOException ignored) {
+            // not every platform can open a directory for sync
+        }
+    }
+}
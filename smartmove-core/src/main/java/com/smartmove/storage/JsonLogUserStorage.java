@@ -0,0 +1,167 @@
+package com.smartmove.storage;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartmove.domain.User;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * UserStorage on an append-only JSON lines file.
+ * - Every save appends the full user record; the last record for an id wins
+ * - The file is replayed once on startup into in-memory indexes by id and
+ *   by (lower-cased) email, so lookups never touch the disk
+ * - On startup a trailing line without its '\n' is kept (and terminated) if
+ *   it parses, as the record reached the disk; a torn one (crash mid-append)
+ *   is truncated away
+ */
+public class JsonLogUserStorage implements UserStorage, AutoCloseable {
+
+    private final Path logFile;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final FileChannel channel;
+
+    private final Map<String, User> byId = new ConcurrentHashMap<>();
+    private final Map<String, String> idByEmail = new ConcurrentHashMap<>();
+
+    public JsonLogUserStorage(Path logFile) {
+        this.logFile = logFile;
+        try {
+            Path parent = logFile.getParent();
+            if (parent != null) Files.createDirectories(parent);
+            this.channel = FileChannel.open(logFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            recover();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open user storage: " + logFile, e);
+        }
+    }
+
+    private void recover() throws IOException {
+        long position = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(logFile))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                if (line.size() > 0) index(mapper.readValue(line.toByteArray(), User.class));
+                position += line.size() + 1;
+                line.reset();
+            }
+            if (line.size() > 0 && completeLastLine(line.toByteArray(), position)) {
+                position += line.size() + 1;
+            }
+        }
+        if (channel.size() != position) {
+            channel.truncate(position);
+        }
+        channel.position(position);
+    }
+
+    /**
+     * Keeps an unterminated last record that parses, adding its '\n';
+     * returns false for a fragment, which the caller truncates.
+     */
+    private boolean completeLastLine(byte[] line, long start) throws IOException {
+        User u;
+        try {
+            u = mapper.readValue(line, User.class);
+        } catch (JsonProcessingException e) {
+            return false;
+        }
+        channel.write(ByteBuffer.wrap(new byte[]{'\n'}), start + line.length);
+        channel.force(false);
+        index(u);
+        return true;
+    }
+
+    @Override
+    public synchronized void save(User user) {
+        if (user == null || user.getId() == null || user.getId().isBlank()) {
+            throw new IllegalArgumentException("User/id cannot be null");
+        }
+        if (user.getEmail() == null || user.getEmail().isBlank()) {
+            throw new IllegalArgumentException("User email is required");
+        }
+        String owner = idByEmail.get(emailKey(user.getEmail()));
+        if (owner != null && !owner.equals(user.getId())) {
+            throw new IllegalStateException("Email already registered: " + user.getEmail());
+        }
+
+        try {
+            byte[] json = mapper.writeValueAsBytes(user);
+            ByteBuffer buf = ByteBuffer.allocate(json.length + 1);
+            buf.put(json).put((byte) '\n').flip();
+            while (buf.hasRemaining()) channel.write(buf);
+            channel.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to save user " + user.getId(), e);
+        }
+        index(copy(user));
+    }
+
+    @Override
+    public Optional<User> findById(String id) {
+        if (id == null) return Optional.empty();
+        return Optional.ofNullable(byId.get(id)).map(JsonLogUserStorage::copy);
+    }
+
+    @Override
+    public Optional<User> findByEmail(String email) {
+        if (email == null) return Optional.empty();
+        String id = idByEmail.get(emailKey(email));
+        return id == null ? Optional.empty() : findById(id);
+    }
+
+    @Override
+    public List<User> findAll() {
+        List<User> all = new ArrayList<>(byId.size());
+        for (User u : byId.values()) all.add(copy(u));
+        return all;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to close user storage: " + logFile, e);
+        }
+    }
+
+    private void index(User u) {
+        User previous = byId.put(u.getId(), u);
+        if (previous != null && previous.getEmail() != null) idByEmail.remove(emailKey(previous.getEmail()));
+        if (u.getEmail() != null) idByEmail.put(emailKey(u.getEmail()), u.getId());
+    }
+
+    private static String emailKey(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static User copy(User u) {
+        User c = new User();
+        c.setId(u.getId());
+        c.setName(u.getName());
+        c.setEmail(u.getEmail());
+        c.setCity(u.getCity());
+        return c;
+    }
+}
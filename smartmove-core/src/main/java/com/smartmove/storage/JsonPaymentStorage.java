@@ -1,8 +1,11 @@
 package com.smartmove.storage;
 
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartmove.codec.StorageCodec;
+import com.smartmove.codec.StorageCodecs;
 import com.smartmove.domain.Payment;
+import com.smartmove.trace.Span;
+import com.smartmove.trace.Tracer;
 
 import java.io.IOException;
 import java.nio.file.*;
@@ -13,11 +16,20 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 public class JsonPaymentStorage implements PaymentStorage {
 
     private final Path filePath;
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final StorageCodec codec;
     private final ReentrantReadWriteLock rw = new ReentrantReadWriteLock();
 
+    // Saves held back while writes are deferred (guarded by rw)
+    private final List<Payment> pending = new ArrayList<>();
+    private volatile boolean deferred;
+
     public JsonPaymentStorage(Path filePath) {
+        this(filePath, StorageCodecs.fromConfig());
+    }
+
+    public JsonPaymentStorage(Path filePath, StorageCodec codec) {
         this.filePath = filePath;
+        this.codec = codec;
         ensureFileExists();
     }
 
@@ -35,19 +47,24 @@ public class JsonPaymentStorage implements PaymentStorage {
 
     @Override
     public void save(Payment payment) {
+        Span span = Tracer.span("paymentStorage.save");
         rw.writeLock().lock();
         try {
-            List<Payment> all = findAllInternal();
+            if (deferred) {
+                pending.add(payment);
+                return;
+            }
+            List<Payment> all;
+            try (Span read = Tracer.span("paymentStorage.read")) {
+                all = findAllInternal();
+            }
             all.add(payment);
-
-            Path tmp = filePath.resolveSibling(filePath.getFileName() + ".tmp");
-            Files.writeString(tmp, mapper.writeValueAsString(all),
-                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-            Files.move(tmp, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writeAll(all);
         } catch (Exception e) {
             throw new RuntimeException("Failed to save payment", e);
         } finally {
             rw.writeLock().unlock();
+            span.close();
         }
     }
 
@@ -55,17 +72,48 @@ public class JsonPaymentStorage implements PaymentStorage {
     public List<Payment> findAll() {
         rw.readLock().lock();
         try {
-            return new ArrayList<>(findAllInternal());
+            List<Payment> all = new ArrayList<>(findAllInternal());
+            all.addAll(pending);
+            return all;
         } finally {
             rw.readLock().unlock();
         }
     }
 
+    /** Saves after this are kept in memory (in save order) until {@link #flush()}. */
+    @Override
+    public void deferWrites() {
+        deferred = true;
+    }
+
+    @Override
+    public void flush() {
+        rw.writeLock().lock();
+        try {
+            if (pending.isEmpty()) return;
+            List<Payment> all = findAllInternal();
+            all.addAll(pending);
+            writeAll(all);
+            pending.clear();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to flush payments", e);
+        } finally {
+            rw.writeLock().unlock();
+        }
+    }
+
+    private void writeAll(List<Payment> all) throws IOException {
+        try (Span write = Tracer.span("paymentStorage.write")) {
+            DurableFiles.replace(filePath, codec.encode(all));
+        }
+    }
+
     private List<Payment> findAllInternal() {
         try {
-            String json = Files.readString(filePath);
-            if (json == null || json.isBlank()) json = "[]";
-            return mapper.readValue(json, new TypeReference<List<Payment>>() {});
+            byte[] data = Files.readAllBytes(filePath);
+            if (StorageCodecs.isBlank(data)) return new ArrayList<>();
+            // whatever format the file is in; the next save rewrites it with our codec
+            return StorageCodecs.detect(data).decode(data, new TypeReference<List<Payment>>() {});
         } catch (IOException e) {
             throw new RuntimeException("Failed to read payments", e);
         }
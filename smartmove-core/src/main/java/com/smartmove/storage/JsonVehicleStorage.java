@@ -1,35 +1,95 @@
 package com.smartmove.storage;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartmove.codec.StorageCodec;
+import com.smartmove.codec.StorageCodecs;
 import com.smartmove.domain.Vehicle;
+import com.smartmove.metrics.LatencyHistogram;
+import com.smartmove.metrics.MetricsRegistry;
+import com.smartmove.trace.Span;
+import com.smartmove.trace.Tracer;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.*;
 import java.util.*;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * File-backed VehicleStorage using a single JSON file.
  * - Loads all vehicles on startup into an in-memory cache
- * - Persists changes back to disk using atomic temp-file replacement
+ * - Persists changes back to disk using atomic temp-file replacement,
+ *   forced to disk before and after the rename (see DurableFiles)
+ * - Writes with the configured StorageCodec (compact JSON or Smile);
+ *   a file in the other format is read and converted on load
+ * - A JSON file is loaded lazily: one streaming pass indexes each record's
+ *   id and byte range, and a Vehicle is only bound on first access.
+ *   Records never touched are written back as the bytes they were read as.
+ *   Records with a user assigned are bound right away (see findWithUser).
+ *   (Smile files are bound eagerly: shared-name back-references mean a
+ *   record cannot be decoded on its own.)
+ * - With deferWrites() (behind a TransactionJournal) saves only update the
+ *   cache and the file is rewritten on flush()
+ * - Reads never wait for disk I/O: the in-memory state is guarded by a
+ *   StampedLock (a seqlock - findById reads optimistically and only falls
+ *   back to the read lock to bind a lazy record), writers hold its write
+ *   lock just for the map update, and the file is rewritten afterwards
+ *   under a separate I/O lock from a snapshot. Each update bumps a version;
+ *   a rewrite covers every version up to its snapshot, so writers queued
+ *   behind one rewrite usually find their change already on disk.
  *
  * Meets lab requirement: local JSON persistence (no DB).
  */
 public class JsonVehicleStorage implements VehicleStorage {
 
     private final Path filePath;
-    private final ObjectMapper mapper;
-    private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+    private final StorageCodec codec;
+    // Guards cache/unhydrated/loaded/version; never held across I/O
+    private final StampedLock stateLock = new StampedLock();
+    // Serializes file rewrites; readers never take it
+    private final ReentrantLock ioLock = new ReentrantLock();
 
-    // In-memory cache for performance
-    private final Map<String, Vehicle> cache = new HashMap<>();
+    // In-memory cache for performance; hydrated on read under the read lock, hence concurrent
+    private final Map<String, Vehicle> cache = new ConcurrentHashMap<>();
+
+    // Records not bound yet: id -> {offset, length} into the loaded file content
+    private final Map<String, int[]> unhydrated = new ConcurrentHashMap<>();
+    private volatile byte[] loaded;
+    private final List<String> assigned = new ArrayList<>();
+    private long loadMillis;
+    private volatile boolean deferred;
+    private volatile long version;          // bumped under the write lock on every change
+    private volatile long persistedVersion; // newest version on disk; written under ioLock
+
+    private static final LatencyHistogram READ_LOCK_WAIT = MetricsRegistry.global().histogram(
+            "smartmove_vehicle_storage_lock_wait_seconds", "Time spent waiting for the vehicle store lock", "mode", "read");
+    private static final LatencyHistogram WRITE_LOCK_WAIT = MetricsRegistry.global().histogram(
+            "smartmove_vehicle_storage_lock_wait_seconds", "Time spent waiting for the vehicle store lock", "mode", "write");
+    private static final LatencyHistogram FLUSH_LATENCY = MetricsRegistry.global().histogram(
+            "smartmove_vehicle_storage_flush_seconds", "Time to rewrite the vehicle file");
+    private static final LatencyHistogram LOAD_LATENCY = MetricsRegistry.global().histogram(
+            "smartmove_storage_load_seconds", "Time to load a store on startup", "store", "vehicles");
 
     public JsonVehicleStorage(Path filePath) {
+        this(filePath, StorageCodecs.fromConfig());
+    }
+
+    public JsonVehicleStorage(Path filePath, StorageCodec codec) {
         this.filePath = filePath;
-        this.mapper = new ObjectMapper();
+        this.codec = codec;
         ensureFileExists();
-        loadFromDisk();
+        if (loadFromDisk()) {
+            // written in the other format: convert it
+            try {
+                writeThrough(++version);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to convert vehicles file: " + filePath, e);
+            }
+        }
     }
 
     private void ensureFileExists() {
@@ -45,61 +105,224 @@ public class JsonVehicleStorage implements VehicleStorage {
         }
     }
 
-    private void loadFromDisk() {
-        rwLock.writeLock().lock();
+    /** Loads the file; true if it is in another format and should be rewritten. */
+    private boolean loadFromDisk() {
+        long start = System.nanoTime();
+        long stamp = stateLock.writeLock();
         try {
-            String json = Files.readString(filePath);
-            if (json == null || json.isBlank()) json = "[]";
-
-            List<Vehicle> vehicles = mapper.readValue(json, new TypeReference<List<Vehicle>>() {});
+            byte[] data = Files.readAllBytes(filePath);
+            StorageCodec onDisk = StorageCodecs.detect(data);
             cache.clear();
+            unhydrated.clear();
+            loaded = null;
+            if (StorageCodecs.isBlank(data)) return false;
 
+            if (onDisk == codec && codec.isText()) {
+                index(data);
+                return false;
+            }
+
+            List<Vehicle> vehicles = onDisk.decode(data, new TypeReference<List<Vehicle>>() {});
             for (Vehicle v : vehicles) {
                 if (v == null) continue;
                 String id = v.getId(); // IMPORTANT: your Vehicle must have getId()
                 cache.put(id, v);
             }
+
+            return onDisk != codec;
         } catch (IOException e) {
             throw new RuntimeException("Failed to load vehicles from JSON: " + filePath, e);
         } finally {
-            rwLock.writeLock().unlock();
+            stateLock.unlockWrite(stamp);
+            loadMillis = (System.nanoTime() - start) / 1_000_000;
+            LOAD_LATENCY.recordSince(start);
+        }
+    }
+
+    /** Records each vehicle's id and byte range without binding it. */
+    private void index(byte[] data) throws IOException {
+        try (JsonParser p = codec.parser(data)) {
+            if (p.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected an array of vehicles in " + filePath);
+            }
+            JsonToken t;
+            while ((t = p.nextToken()) == JsonToken.START_OBJECT) {
+                int from = (int) p.currentTokenLocation().getByteOffset();
+                String id = null;
+                boolean withUser = false;
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = p.currentName();
+                    JsonToken value = p.nextToken();
+                    if ("id".equals(field)) id = p.getValueAsString();
+                    else if ("userId".equals(field)) withUser = value == JsonToken.VALUE_STRING;
+                    else p.skipChildren();
+                }
+                int to = (int) p.currentLocation().getByteOffset();
+                if (id != null) unhydrated.put(id, new int[]{from, to - from});
+                if (id != null && withUser) assigned.add(id);
+            }
+            if (t != JsonToken.END_ARRAY && t != JsonToken.VALUE_NULL) {
+                throw new IOException("Unexpected " + t + " in " + filePath);
+            }
+        }
+        loaded = unhydrated.isEmpty() ? null : data;
+        for (String id : assigned) hydrate(id);
+        assigned.clear();
+    }
+
+    /** Binds a lazily loaded record; callers hold the read or write lock. */
+    private Vehicle hydrate(String id) {
+        Vehicle v = cache.get(id);
+        if (v != null) return v;
+        int[] range = unhydrated.get(id);
+        byte[] data = loaded;
+        // a concurrent bind caches the record before dropping its range
+        if (range == null || data == null) return cache.get(id);
+        try {
+            Vehicle bound = codec.decode(data, range[0], range[1], Vehicle.class);
+            Vehicle raced = cache.putIfAbsent(id, bound);
+            unhydrated.remove(id);
+            if (unhydrated.isEmpty()) loaded = null;
+            return raced == null ? bound : raced;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read vehicle " + id + " from " + filePath, e);
         }
     }
 
-    private void flushToDiskAtomic() throws IOException {
-        // Write to temp file first, then atomically replace main file
-        Path tmp = filePath.resolveSibling(filePath.getFileName() + ".tmp");
+    /** Milliseconds the last load took (indexing only, for lazily loaded files). */
+    public long loadMillis() {
+        return loadMillis;
+    }
 
-        List<Vehicle> vehicles = new ArrayList<>(cache.values());
-        String json = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(vehicles);
+    /** Vehicles indexed on load but not yet bound. */
+    public int unhydratedCount() {
+        return unhydrated.size();
+    }
 
-        Files.writeString(tmp, json, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    @Override
+    public void deferWrites() {
+        deferred = true;
+    }
 
-        // ATOMIC_MOVE is best-effort; if filesystem doesn't support it, it may throw
+    @Override
+    public void flush() {
         try {
-            Files.move(tmp, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
-        } catch (AtomicMoveNotSupportedException ex) {
-            Files.move(tmp, filePath, StandardCopyOption.REPLACE_EXISTING);
+            writeThrough(version);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to flush vehicles to JSON file: " + filePath, e);
         }
     }
 
+    /** Gets change {@code upTo} on disk, unless writes are deferred; called without the state lock. */
+    private void persist(long upTo) throws IOException {
+        if (!deferred) writeThrough(upTo);
+    }
+
+    /**
+     * Rewrites the file from a snapshot taken after {@code ioLock} is acquired,
+     * so the last rewrite always holds the newest state. Returns at once if a
+     * rewrite since then already covered {@code upTo}.
+     */
+    private void writeThrough(long upTo) throws IOException {
+        ioLock.lock();
+        try {
+            if (persistedVersion >= upTo) return;
+            long start = System.nanoTime();
+            try (Span span = Tracer.span("vehicleStorage.flush")) {
+                // exclusive, as binding a record under the read lock moves it between the maps
+                long stamp = stateLock.writeLock();
+                long snapshotVersion;
+                List<Vehicle> vehicles;
+                List<int[]> untouched;
+                byte[] data;
+                try {
+                    snapshotVersion = version;
+                    vehicles = new ArrayList<>(cache.values());
+                    data = loaded;
+                    untouched = data == null ? List.of() : new ArrayList<>(unhydrated.values());
+                } finally {
+                    stateLock.unlockWrite(stamp);
+                }
+                DurableFiles.replace(filePath, encodeAll(vehicles, data, untouched));
+                persistedVersion = snapshotVersion;
+            } finally {
+                FLUSH_LATENCY.recordSince(start);
+            }
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    private byte[] encodeAll(List<Vehicle> vehicles, byte[] data, List<int[]> untouched) throws IOException {
+        if (data == null || untouched.isEmpty()) {
+            return codec.encode(vehicles);
+        }
+        // text codec: splice untouched records in as they were read
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length + vehicles.size() * 256);
+        out.write('[');
+        boolean first = true;
+        for (Vehicle v : vehicles) {
+            if (!first) out.write(',');
+            codec.encode(out, v);
+            first = false;
+        }
+        for (int[] range : untouched) {
+            if (!first) out.write(',');
+            out.write(data, range[0], range[1]);
+            first = false;
+        }
+        out.write(']');
+        return out.toByteArray();
+    }
+
+    /**
+     * Lock-free unless the record still has to be bound: a cached vehicle is
+     * current as read, and "absent" is only trusted if no write (a delete
+     * racing a bind) happened meanwhile and the cache still has no entry (a
+     * bind under the read lock does not invalidate the stamp).
+     */
     @Override
     public Optional<Vehicle> findById(String id) {
-        rwLock.readLock().lock();
+        long stamp = stateLock.tryOptimisticRead();
+        if (stamp != 0) {
+            Vehicle v = cache.get(id);
+            if (v != null) return Optional.of(v);
+            if (!unhydrated.containsKey(id) && stateLock.validate(stamp)) {
+                // binding does not bump the stamp: the record may have moved to the cache meanwhile
+                return Optional.ofNullable(cache.get(id));
+            }
+        }
+        stamp = lockRead();
         try {
-            return Optional.ofNullable(cache.get(id));
+            return Optional.ofNullable(hydrate(id));
         } finally {
-            rwLock.readLock().unlock();
+            stateLock.unlockRead(stamp);
         }
     }
 
     @Override
     public List<Vehicle> findAll() {
-        rwLock.readLock().lock();
+        long stamp = lockRead();
         try {
+            for (String id : unhydrated.keySet()) hydrate(id);
             return new ArrayList<>(cache.values());
         } finally {
-            rwLock.readLock().unlock();
+            stateLock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public List<Vehicle> findWithUser() {
+        long stamp = lockRead();
+        try {
+            // assigned records were bound on load, and binding or saving keeps them in the cache
+            List<Vehicle> out = new ArrayList<>();
+            for (Vehicle v : cache.values()) {
+                if (v.getUserId() != null) out.add(v);
+            }
+            return out;
+        } finally {
+            stateLock.unlockRead(stamp);
         }
     }
 
@@ -109,27 +332,87 @@ public class JsonVehicleStorage implements VehicleStorage {
         if (vehicle.getId() == null || vehicle.getId().isBlank())
             throw new IllegalArgumentException("vehicle.id cannot be null/blank");
 
-        rwLock.writeLock().lock();
+        long stamp = lockWrite();
+        long changed;
         try {
             cache.put(vehicle.getId(), vehicle);
-            flushToDiskAtomic();
+            unhydrated.remove(vehicle.getId());
+            changed = ++version;
+        } finally {
+            stateLock.unlockWrite(stamp);
+        }
+        try {
+            persist(changed);
         } catch (IOException e) {
             throw new RuntimeException("Failed to save vehicle to JSON file: " + filePath, e);
+        }
+    }
+
+    /** One cache update and one file rewrite for the whole batch. */
+    @Override
+    public void saveAll(List<Vehicle> vehicles) {
+        for (Vehicle v : vehicles) {
+            if (v == null) throw new IllegalArgumentException("vehicle cannot be null");
+            if (v.getId() == null || v.getId().isBlank())
+                throw new IllegalArgumentException("vehicle.id cannot be null/blank");
+        }
+
+        long stamp = lockWrite();
+        long changed;
+        try {
+            for (Vehicle v : vehicles) {
+                cache.put(v.getId(), v);
+                unhydrated.remove(v.getId());
+            }
+            changed = ++version;
         } finally {
-            rwLock.writeLock().unlock();
+            stateLock.unlockWrite(stamp);
+        }
+        try {
+            persist(changed);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to save vehicles to JSON file: " + filePath, e);
         }
     }
 
     @Override
     public void deleteById(String id) {
-        rwLock.writeLock().lock();
+        long stamp = lockWrite();
+        long changed;
         try {
             cache.remove(id);
-            flushToDiskAtomic();
+            unhydrated.remove(id);
+            changed = ++version;
+        } finally {
+            stateLock.unlockWrite(stamp);
+        }
+        try {
+            persist(changed);
         } catch (IOException e) {
             throw new RuntimeException("Failed to delete vehicle from JSON file: " + filePath, e);
-        } finally {
-            rwLock.writeLock().unlock();
         }
     }
+
+    // Lock acquisition, timed around a plain acquire: a tryLock fast path would
+    // let a newcomer take the lock ahead of threads already queued for it
+
+    private long lockRead() {
+        long start = System.nanoTime();
+        long stamp;
+        try (Span span = Tracer.span("vehicleStorage.readLockWait")) {
+            stamp = stateLock.readLock();
+        }
+        READ_LOCK_WAIT.recordSince(start);
+        return stamp;
+    }
+
+    private long lockWrite() {
+        long start = System.nanoTime();
+        long stamp;
+        try (Span span = Tracer.span("vehicleStorage.writeLockWait")) {
+            stamp = stateLock.writeLock();
+        }
+        WRITE_LOCK_WAIT.recordSince(start);
+        return stamp;
+    }
 }
@@ -0,0 +1,533 @@
+package com.smartmove.storage;
+
+import com.smartmove.domain.City;
+import com.smartmove.domain.Trip;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.domain.VehicleState;
+import com.smartmove.domain.VehicleType;
+import com.smartmove.telemetry.TelemetryData;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * VehicleStorage on a memory-mapped file of fixed-size slots.
+ * - One slot per vehicle; a save rewrites only that slot in place
+ * - Slot directory (id -> slot) is rebuilt from the file on startup
+ * - Each slot holds two copies of its record, each with a sequence number
+ *   and a CRC32. The first save after a force goes to the older copy, so
+ *   the last forced record stays intact and a crash mid-write falls back
+ *   to it on load. A slot with no intact copy is corruption, not a torn
+ *   write, and the store refuses to open rather than drop the vehicle
+ * - Deleted slots go to a free list and are reused before the file grows
+ *
+ * Files of layouts 1 and 2 (one record per slot) are rewritten into the
+ * current layout on open. Builds writing layout 1 kept either a bare rental
+ * start and distance (F_TRIP unset) or a full trip at the same offsets, so
+ * records of the former are converted to trips on the way.
+ *
+ * Writes land in the page cache like the JSON store's; call {@link #close()}
+ * (or {@link #force()}) to flush them to the device. After deferWrites()
+ * saveAll no longer forces; flush() does.
+ */
+public class MappedVehicleStorage implements VehicleStorage, AutoCloseable {
+
+    // -------------------------
+    // File layout
+    // -------------------------
+    private static final int MAGIC = 0x534D5653; // "SMVS"
+    private static final int LAYOUT_VERSION = 3;
+    private static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 256;
+    static final int SLOT_SIZE = 2 * RECORD_SIZE;
+    private static final int INITIAL_CAPACITY = 64;
+    // the mapping is addressed with int offsets
+    private static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE;
+
+    // Record layout (offsets within a record; layouts 1 and 2 had one record per slot)
+    private static final int OFF_STATUS = 0;
+    private static final int OFF_ID_LEN = 1;
+    private static final int OFF_ID = 2;
+    static final int MAX_ID_BYTES = 64;
+    private static final int OFF_TYPE = OFF_ID + MAX_ID_BYTES;   // 66
+    private static final int OFF_STATE = OFF_TYPE + 1;
+    private static final int OFF_CITY = OFF_STATE + 1;
+    private static final int OFF_FLAGS = OFF_CITY + 1;
+    private static final int OFF_LAT = OFF_FLAGS + 1;            // 70
+    private static final int OFF_LON = OFF_LAT + 8;
+    private static final int OFF_BATTERY = OFF_LON + 8;
+    private static final int OFF_TEMP = OFF_BATTERY + 4;         // 90
+    // layout 1 only: rental start and distance from before trips were stored
+    private static final int OFF_V1_RENTAL_STARTED = OFF_TEMP + 8;           // 98
+    private static final int OFF_V1_TRIP_METERS = OFF_V1_RENTAL_STARTED + 8; // 106
+    private static final int OFF_TRIP_STARTED = OFF_TEMP + 8;    // 98
+    private static final int OFF_TRIP_METERS = OFF_TRIP_STARTED + 8;
+    private static final int OFF_TRIP_MAX_TEMP = OFF_TRIP_METERS + 8;
+    private static final int OFF_TRIP_MIN_BATTERY = OFF_TRIP_MAX_TEMP + 8;   // 122
+    private static final int OFF_TRIP_SAMPLES = OFF_TRIP_MIN_BATTERY + 4;
+    private static final int OFF_TRIP_LAT = OFF_TRIP_SAMPLES + 4;            // 130
+    private static final int OFF_TRIP_LON = OFF_TRIP_LAT + 8;
+    private static final int OFF_USER_ID_LEN = OFF_TRIP_LON + 8;             // 146, 0 = no user
+    private static final int OFF_USER_ID = OFF_USER_ID_LEN + 1;              // ends at 211
+    private static final int OFF_SEQ = OFF_USER_ID + MAX_ID_BYTES;           // 211, layout 3; rest reserved
+    private static final int OFF_CRC = RECORD_SIZE - 4;
+
+    private static final byte FREE = 0;
+    private static final byte USED = 1;
+    private static final byte NONE = (byte) 0xFF;
+
+    private static final int F_RENTAL_ACTIVE = 1;
+    private static final int F_HAS_TELEMETRY = 1 << 1;
+    private static final int F_HELMET = 1 << 2;
+    private static final int F_MOVEMENT = 1 << 3;
+    private static final int F_FAULT = 1 << 4;
+    private static final int F_TRIP = 1 << 5;
+    private static final int F_TRIP_FIX = 1 << 6;
+
+    private static final VehicleType[] TYPES = VehicleType.values();
+    private static final VehicleState[] STATES = VehicleState.values();
+    private static final City[] CITIES = City.values();
+
+    private final Path filePath;
+    private final FileChannel channel;
+    private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+    private final CRC32 crc = new CRC32();   // guarded by the write lock
+
+    private MappedByteBuffer map;
+    private int capacity;
+    private byte[] live = new byte[0];   // slot -> copy holding its current record
+    private boolean[] unforced = new boolean[0];   // slot -> current copy written since the last force
+
+    private final Map<String, Integer> directory = new HashMap<>();
+    private int[] freeSlots = new int[16];
+    private int freeCount = 0;
+    private int recoveredSlots = 0;
+    private volatile boolean deferred;
+
+    public MappedVehicleStorage(Path filePath) {
+        this.filePath = filePath;
+        try {
+            Path parent = filePath.getParent();
+            if (parent != null) Files.createDirectories(parent);
+            boolean fresh = !Files.exists(filePath) || Files.size(filePath) == 0;
+            if (!fresh) upgradeLegacyFile(filePath);
+            this.channel = FileChannel.open(filePath,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            if (fresh) {
+                remap(INITIAL_CAPACITY);
+                map.putInt(0, MAGIC);
+                map.putInt(4, LAYOUT_VERSION);
+                map.putInt(8, SLOT_SIZE);
+                map.putInt(12, capacity);
+            } else {
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                if (header.getInt(4) != LAYOUT_VERSION || header.getInt(8) != SLOT_SIZE) {
+                    throw new IOException("Unsupported slot layout " + header.getInt(4) + "/" + header.getInt(8));
+                }
+                remap(header.getInt(12));
+            }
+            loadDirectory();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open mapped vehicle storage: " + filePath, e);
+        }
+    }
+
+    private void remap(int newCapacity) throws IOException {
+        if (newCapacity > MAX_CAPACITY) throw new IOException("Slot file too large: " + newCapacity + " slots");
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+        live = Arrays.copyOf(live, newCapacity);
+        unforced = Arrays.copyOf(unforced, newCapacity);
+        capacity = newCapacity;
+    }
+
+    private void loadDirectory() throws IOException {
+        for (int slot = capacity - 1; slot >= 0; slot--) {
+            int first = recordOffset(slot, 0);
+            int second = recordOffset(slot, 1);
+            boolean firstOk = intact(first);
+            boolean secondOk = intact(second);
+            int current;
+            if (firstOk && secondOk) {
+                current = map.getInt(second + OFF_SEQ) - map.getInt(first + OFF_SEQ) > 0 ? 1 : 0;
+            } else if (firstOk || secondOk) {
+                current = firstOk ? 0 : 1;
+                // the other copy was being overwritten when the process died
+                if (map.getInt(firstOk ? second + OFF_CRC : first + OFF_CRC) != 0) recoveredSlots++;
+            } else if (map.getInt(first + OFF_CRC) == 0 && map.getInt(second + OFF_CRC) == 0) {
+                // never written, or its first write never completed
+                pushFree(slot);
+                continue;
+            } else {
+                throw new IOException("Slot " + slot + " has no intact copy of its record");
+            }
+            live[slot] = (byte) current;
+            int base = recordOffset(slot, current);
+            if (map.get(base + OFF_STATUS) == USED) {
+                directory.put(readId(base), slot);
+            } else {
+                pushFree(slot);
+            }
+        }
+        if (recoveredSlots > 0) {
+            System.err.println("MappedVehicleStorage: restored " + recoveredSlots
+                    + " slot(s) from their previous copy in " + filePath);
+        }
+    }
+
+    /** Whether a record copy was completely written: the CRC is zeroed first and set last. */
+    private boolean intact(int base) {
+        int stored = map.getInt(base + OFF_CRC);
+        return stored != 0 && stored == checksum(crc, map, base);
+    }
+
+    // -------------------------
+    // Layout upgrade
+    // -------------------------
+
+    /**
+     * Rewrites a layout 1 or 2 file (one record per slot) into the current
+     * layout through a temporary file, so a crash leaves either the old file
+     * or the new one. Each record becomes the first copy of its slot. A
+     * record with a bad checksum has no other copy to fall back on, so the
+     * upgrade refuses it like a corrupt slot.
+     */
+    private static void upgradeLegacyFile(Path file) throws IOException {
+        ByteBuffer old;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && in.read(header) >= 0) { }
+            if (header.getInt(0) != MAGIC) throw new IOException("Not a vehicle slot file");
+            int version = header.getInt(4);
+            if (version == LAYOUT_VERSION) return;
+            if ((version != 1 && version != 2) || header.getInt(8) != RECORD_SIZE) {
+                throw new IOException("Unsupported slot layout " + version + "/" + header.getInt(8));
+            }
+            if (header.getInt(12) > MAX_CAPACITY) throw new IOException("Slot file too large to upgrade");
+            old = ByteBuffer.allocate(HEADER_SIZE + header.getInt(12) * RECORD_SIZE);
+            in.position(0);
+            while (old.hasRemaining() && in.read(old) >= 0) { }
+        }
+        int legacyVersion = old.getInt(4);
+        int slots = old.getInt(12);
+
+        CRC32 crc = new CRC32();
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + slots * SLOT_SIZE);
+        out.putInt(0, MAGIC).putInt(4, LAYOUT_VERSION).putInt(8, SLOT_SIZE).putInt(12, slots);
+        int trips = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            int from = HEADER_SIZE + slot * RECORD_SIZE;
+            if (old.get(from + OFF_STATUS) != USED) continue;
+            if (old.getInt(from + OFF_CRC) != checksum(crc, old, from)) {
+                throw new IOException("Slot " + slot + " has a bad checksum; cannot upgrade layout " + legacyVersion);
+            }
+            int to = recordOffset(slot, 0);
+            out.put(to, old, from, RECORD_SIZE);
+            if (legacyVersion == 1 && tripFromV1(out, to)) trips++;
+            out.putInt(to + OFF_SEQ, 1);
+            out.putInt(to + OFF_CRC, checksum(crc, out, to));
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel tmpChannel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.position(0);
+            while (out.hasRemaining()) tmpChannel.write(out);
+            tmpChannel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        DurableFiles.forceDirectory(file.toAbsolutePath().getParent());
+        System.err.println("MappedVehicleStorage: upgraded " + file + " from layout " + legacyVersion
+                + (trips > 0 ? " (" + trips + " rental(s) converted to trips)" : ""));
+    }
+
+    /**
+     * Converts a layout 1 record that carries a bare rental start and distance
+     * into one with a trip. Returns false for records that need no change.
+     */
+    private static boolean tripFromV1(ByteBuffer buf, int base) {
+        int flags = buf.get(base + OFF_FLAGS);
+        long startedAt = buf.getLong(base + OFF_V1_RENTAL_STARTED);
+        if ((flags & F_RENTAL_ACTIVE) == 0 || (flags & F_TRIP) != 0 || startedAt == 0) return false;
+        double meters = buf.getDouble(base + OFF_V1_TRIP_METERS);
+        buf.putLong(base + OFF_TRIP_STARTED, startedAt);
+        buf.putDouble(base + OFF_TRIP_METERS, meters);
+        buf.putDouble(base + OFF_TRIP_MAX_TEMP, 0);
+        buf.putInt(base + OFF_TRIP_MIN_BATTERY, 0);
+        buf.putInt(base + OFF_TRIP_SAMPLES, 0);
+        buf.putDouble(base + OFF_TRIP_LAT, 0);
+        buf.putDouble(base + OFF_TRIP_LON, 0);
+        buf.put(base + OFF_FLAGS, (byte) (flags | F_TRIP));
+        return true;
+    }
+
+
+    // -------------------------
+    // VehicleStorage
+    // -------------------------
+
+    @Override
+    public Optional<Vehicle> findById(String id) {
+        rwLock.readLock().lock();
+        try {
+            Integer slot = directory.get(id);
+            return slot == null ? Optional.empty() : Optional.of(decode(currentRecord(slot)));
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Vehicle> findAll() {
+        rwLock.readLock().lock();
+        try {
+            List<Vehicle> all = new ArrayList<>(directory.size());
+            for (int slot : directory.values()) all.add(decode(currentRecord(slot)));
+            return all;
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void save(Vehicle vehicle) {
+        if (vehicle == null) throw new IllegalArgumentException("vehicle cannot be null");
+        if (vehicle.getId() == null || vehicle.getId().isBlank())
+            throw new IllegalArgumentException("vehicle.id cannot be null/blank");
+        byte[] id = vehicle.getId().getBytes(StandardCharsets.UTF_8);
+        byte[] userId = vehicle.getUserId() == null ? new byte[0] : vehicle.getUserId().getBytes(StandardCharsets.UTF_8);
+        if (id.length > MAX_ID_BYTES)
+            throw new IllegalArgumentException("vehicle.id longer than " + MAX_ID_BYTES + " bytes");
+        if (userId.length > MAX_ID_BYTES)
+            throw new IllegalArgumentException("vehicle.userId longer than " + MAX_ID_BYTES + " bytes");
+
+        rwLock.writeLock().lock();
+        try {
+            Integer slot = directory.get(vehicle.getId());
+            if (slot == null) {
+                slot = allocateSlot();
+                directory.put(vehicle.getId(), slot);
+            }
+            encode(writeTarget(slot), id, userId, vehicle);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to grow mapped vehicle storage: " + filePath, e);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    /** Writes each slot, then forces the mapping once so the whole batch is on the device. */
+    @Override
+    public void saveAll(List<Vehicle> vehicles) {
+        for (Vehicle v : vehicles) save(v);
+        if (!deferred) force();
+    }
+
+    @Override
+    public void deferWrites() {
+        deferred = true;
+    }
+
+    @Override
+    public void flush() {
+        force();
+    }
+
+    @Override
+    public void deleteById(String id) {
+        rwLock.writeLock().lock();
+        try {
+            Integer slot = directory.remove(id);
+            if (slot == null) return;
+            // the free record becomes the current copy, so the vehicle cannot reappear
+            int base = writeTarget(slot);
+            map.putInt(base + OFF_CRC, 0);
+            map.put(base + OFF_STATUS, FREE);
+            map.putInt(base + OFF_CRC, checksum(crc, map, base));
+            pushFree(slot);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    /** Number of slots loaded from their previous copy because the newer one was torn. */
+    public int recoveredSlotCount() {
+        return recoveredSlots;
+    }
+
+    public void force() {
+        rwLock.writeLock().lock();
+        try {
+            map.force();
+            Arrays.fill(unforced, false);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        force();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // -------------------------
+    // Slot management
+    // -------------------------
+
+    private static int recordOffset(int slot, int copy) {
+        return Math.toIntExact(HEADER_SIZE + (long) slot * SLOT_SIZE + (long) copy * RECORD_SIZE);
+    }
+
+    private int currentRecord(int slot) {
+        return recordOffset(slot, live[slot]);
+    }
+
+    /**
+     * The record a write to the slot goes to. A copy written since the last
+     * force is rewritten in place; otherwise the other copy is taken with the
+     * next sequence number, so the forced copy survives until the next force.
+     */
+    private int writeTarget(int slot) {
+        if (unforced[slot]) return currentRecord(slot);
+        int seq = map.getInt(currentRecord(slot) + OFF_SEQ) + 1;
+        live[slot] ^= 1;
+        unforced[slot] = true;
+        int base = currentRecord(slot);
+        map.putInt(base + OFF_CRC, 0);
+        map.putInt(base + OFF_SEQ, seq);
+        return base;
+    }
+
+    private int allocateSlot() throws IOException {
+        if (freeCount == 0) {
+            int old = capacity;
+            if (old == MAX_CAPACITY) throw new IOException("Slot file full at " + old + " vehicles");
+            remap((int) Math.min(2L * old, MAX_CAPACITY));
+            map.putInt(12, capacity);
+            for (int slot = capacity - 1; slot >= old; slot--) pushFree(slot);
+        }
+        return freeSlots[--freeCount];
+    }
+
+    private void pushFree(int slot) {
+        if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        freeSlots[freeCount++] = slot;
+    }
+
+    // -------------------------
+    // Encoding
+    // -------------------------
+
+    private void encode(int base, byte[] id, byte[] userId, Vehicle v) {
+        // invalidate first: a crash mid-write leaves a slot whose CRC cannot match
+        map.putInt(base + OFF_CRC, 0);
+
+        map.put(base + OFF_ID_LEN, (byte) id.length);
+        map.put(base + OFF_ID, id);
+        map.put(base + OFF_TYPE, v.getType() == null ? NONE : (byte) v.getType().ordinal());
+        map.put(base + OFF_STATE, v.getState() == null ? NONE : (byte) v.getState().ordinal());
+        map.put(base + OFF_CITY, v.getCity() == null ? NONE : (byte) v.getCity().ordinal());
+
+        int flags = v.isRentalActive() ? F_RENTAL_ACTIVE : 0;
+        TelemetryData t = v.getTelemetry();
+        if (t != null) {
+            flags |= F_HAS_TELEMETRY;
+            if (t.isHelmetPresent()) flags |= F_HELMET;
+            if (t.isMovementDetected()) flags |= F_MOVEMENT;
+            if (t.isFault()) flags |= F_FAULT;
+            map.putDouble(base + OFF_LAT, t.getLatitude());
+            map.putDouble(base + OFF_LON, t.getLongitude());
+            map.putInt(base + OFF_BATTERY, t.getBatteryPercent());
+            map.putDouble(base + OFF_TEMP, t.getTemperatureC());
+        }
+        Trip trip = v.getTrip();
+        if (trip != null) {
+            flags |= F_TRIP;
+            if (trip.isGpsFix()) flags |= F_TRIP_FIX;
+            map.putLong(base + OFF_TRIP_STARTED, trip.getStartedAt());
+            map.putDouble(base + OFF_TRIP_METERS, trip.getMeters());
+            map.putDouble(base + OFF_TRIP_MAX_TEMP, trip.getMaxTemperatureC());
+            map.putInt(base + OFF_TRIP_MIN_BATTERY, trip.getMinBatteryPercent());
+            map.putInt(base + OFF_TRIP_SAMPLES, trip.getSamples());
+            map.putDouble(base + OFF_TRIP_LAT, trip.getLastLatitude());
+            map.putDouble(base + OFF_TRIP_LON, trip.getLastLongitude());
+        }
+        map.put(base + OFF_FLAGS, (byte) flags);
+        map.put(base + OFF_USER_ID_LEN, (byte) userId.length);
+        map.put(base + OFF_USER_ID, userId);
+        map.put(base + OFF_STATUS, USED);
+
+        map.putInt(base + OFF_CRC, checksum(crc, map, base));
+    }
+
+    private Vehicle decode(int base) {
+        Vehicle v = new Vehicle();
+        v.setId(readId(base));
+        byte type = map.get(base + OFF_TYPE);
+        byte state = map.get(base + OFF_STATE);
+        byte city = map.get(base + OFF_CITY);
+        v.setType(type == NONE ? null : TYPES[type]);
+        v.setState(state == NONE ? null : STATES[state]);
+        v.setCity(city == NONE ? null : CITIES[city]);
+
+        int flags = map.get(base + OFF_FLAGS);
+        v.setRentalActive((flags & F_RENTAL_ACTIVE) != 0);
+        if ((flags & F_HAS_TELEMETRY) != 0) {
+            TelemetryData t = new TelemetryData(v.getId(),
+                    map.getDouble(base + OFF_LAT),
+                    map.getDouble(base + OFF_LON),
+                    map.getInt(base + OFF_BATTERY),
+                    map.getDouble(base + OFF_TEMP));
+            t.setHelmetPresent((flags & F_HELMET) != 0);
+            t.setMovementDetected((flags & F_MOVEMENT) != 0);
+            t.setFault((flags & F_FAULT) != 0);
+            v.setTelemetry(t);
+        }
+        if ((flags & F_TRIP) != 0) {
+            Trip trip = new Trip();
+            trip.setStartedAt(map.getLong(base + OFF_TRIP_STARTED));
+            trip.setMeters(map.getDouble(base + OFF_TRIP_METERS));
+            trip.setMaxTemperatureC(map.getDouble(base + OFF_TRIP_MAX_TEMP));
+            trip.setMinBatteryPercent(map.getInt(base + OFF_TRIP_MIN_BATTERY));
+            trip.setSamples(map.getInt(base + OFF_TRIP_SAMPLES));
+            trip.setGpsFix((flags & F_TRIP_FIX) != 0);
+            trip.setLastLatitude(map.getDouble(base + OFF_TRIP_LAT));
+            trip.setLastLongitude(map.getDouble(base + OFF_TRIP_LON));
+            v.setTrip(trip);
+        }
+        int userIdLen = map.get(base + OFF_USER_ID_LEN) & 0xFF;
+        if (userIdLen > 0) {
+            byte[] userId = new byte[userIdLen];
+            map.get(base + OFF_USER_ID, userId);
+            v.setUserId(new String(userId, StandardCharsets.UTF_8));
+        }
+        return v;
+    }
+
+    private String readId(int base) {
+        int len = map.get(base + OFF_ID_LEN) & 0xFF;
+        byte[] id = new byte[len];
+        map.get(base + OFF_ID, id);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(CRC32 crc, ByteBuffer buf, int base) {
+        crc.reset();
+        crc.update(buf.slice(base, OFF_CRC));
+        return (int) crc.getValue();
+    }
+}
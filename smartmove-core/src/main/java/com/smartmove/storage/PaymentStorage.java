@@ -6,4 +6,10 @@ import java.util.List;
 public interface PaymentStorage {
     void save(Payment payment);
     List<Payment> findAll();
+
+    /** See {@link VehicleStorage#deferWrites()}. */
+    default void deferWrites() {}
+
+    /** See {@link VehicleStorage#flush()}. */
+    default void flush() {}
 }
@@ -1,5 +1,14 @@
 package com.smartmove.storage;
 
-public class UserStorage {
-    
+import com.smartmove.domain.User;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface UserStorage {
+    /** Inserts or updates a user; emails are unique (case-insensitive). */
+    void save(User user);
+    Optional<User> findById(String id);
+    Optional<User> findByEmail(String email);
+    List<User> findAll();
 }
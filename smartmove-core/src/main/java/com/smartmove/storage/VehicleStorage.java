@@ -9,4 +9,26 @@ public interface VehicleStorage {
     List<Vehicle> findAll();
     void save(Vehicle vehicle);
     void deleteById(String id);
+
+    /** Saves several vehicles as one write where the store supports it. */
+    default void saveAll(List<Vehicle> vehicles) {
+        for (Vehicle v : vehicles) save(v);
+    }
+
+    /** Vehicles with a user assigned; stores that load lazily can answer without binding the rest. */
+    default List<Vehicle> findWithUser() {
+        return findAll().stream().filter(v -> v.getUserId() != null).toList();
+    }
+
+    /**
+     * Keeps later writes in memory until {@link #flush()}. Only for use behind
+     * a TransactionJournal, which can replay whatever was not flushed.
+     */
+    default void deferWrites() {}
+
+    /**
+     * Writes out anything held back since {@link #deferWrites()}; returns once
+     * it is on disk, as the journal is truncated right after.
+     */
+    default void flush() {}
 }
@@ -0,0 +1,42 @@
+package com.smartmove.storage;
+
+import com.smartmove.domain.Vehicle;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Config-based selection of the vehicle storage backend.
+ *
+ * -Dsmartmove.vehicleStore=json   (default) whole-file JSON/Smile document
+ * -Dsmartmove.vehicleStore=mapped memory-mapped fixed-slot file
+ *
+ * The first time the mapped backend starts next to an existing vehicles file,
+ * it imports those vehicles once.
+ */
+public final class VehicleStorages {
+
+    public static final String CONFIG_PROPERTY = "smartmove.vehicleStore";
+
+    private VehicleStorages() {}
+
+    public static VehicleStorage fromConfig(Path dataDir) {
+        String kind = System.getProperty(CONFIG_PROPERTY, "json").trim().toLowerCase();
+        Path jsonFile = dataDir.resolve("vehicles.json");
+
+        return switch (kind) {
+            case "json" -> new JsonVehicleStorage(jsonFile);
+            case "mapped" -> {
+                Path slotFile = dataDir.resolve("vehicles.slots");
+                boolean fresh = !Files.exists(slotFile);
+                MappedVehicleStorage mapped = new MappedVehicleStorage(slotFile);
+                if (fresh && Files.exists(jsonFile)) {
+                    for (Vehicle v : new JsonVehicleStorage(jsonFile).findAll()) mapped.save(v);
+                    mapped.force();
+                }
+                yield mapped;
+            }
+            default -> throw new IllegalArgumentException("Unknown vehicle store: " + kind);
+        };
+    }
+}
@@ -1,5 +1,7 @@
 package com.smartmove.telemetry;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 public class TelemetryData {
 
     private String vehicleId;
@@ -30,6 +32,17 @@ public class TelemetryData {
     // Used to trigger Maintenance state
     private boolean fault;
 
+    // handed out by a TelemetryPool, so it may be recycled once processed
+    boolean pooled;
+
+    // when the sample was queued for the worker (System.nanoTime); not part of the sample
+    @JsonIgnore
+    private long queuedAtNanos;
+
+    // VehicleIds handle of vehicleId if the decoder resolved it, else -1; not part of the sample
+    @JsonIgnore
+    private int vehicleHandle = -1;
+
     // Required for JSON deserialization
     public TelemetryData() {}
 
@@ -81,12 +94,24 @@ public class TelemetryData {
         return fault;
     }
 
+    @JsonIgnore
+    public long getQueuedAtNanos() {
+        return queuedAtNanos;
+    }
+
+    @JsonIgnore
+    public int getVehicleHandle() {
+        return vehicleHandle;
+    }
+
     // -------------------------
     // Setters
     // -------------------------
 
+    /** Also forgets the handle; set it again after the id if it is known. */
     public void setVehicleId(String vehicleId) {
         this.vehicleId = vehicleId;
+        this.vehicleHandle = -1;
     }
 
     public void setLatitude(double latitude) {
@@ -117,10 +142,49 @@ public class TelemetryData {
         this.fault = fault;
     }
 
+    @JsonIgnore
+    public void setQueuedAtNanos(long queuedAtNanos) {
+        this.queuedAtNanos = queuedAtNanos;
+    }
+
+    /** VehicleIds handle of the current vehicleId, or -1 if not resolved. */
+    @JsonIgnore
+    public void setVehicleHandle(int vehicleHandle) {
+        this.vehicleHandle = vehicleHandle;
+    }
+
     // -------------------------
     // Utility
     // -------------------------
 
+    /** Overwrites every field with {@code other}'s, so a holder can be reused. */
+    public TelemetryData copyFrom(TelemetryData other) {
+        this.vehicleId = other.vehicleId;
+        this.latitude = other.latitude;
+        this.longitude = other.longitude;
+        this.batteryPercent = other.batteryPercent;
+        this.temperatureC = other.temperatureC;
+        this.helmetPresent = other.helmetPresent;
+        this.movementDetected = other.movementDetected;
+        this.fault = other.fault;
+        this.vehicleHandle = other.vehicleHandle;
+        return this;
+    }
+
+    /** Back to the state of a freshly constructed instance. */
+    void clear() {
+        vehicleId = null;
+        latitude = 0;
+        longitude = 0;
+        batteryPercent = 0;
+        temperatureC = 0;
+        helmetPresent = false;
+        movementDetected = false;
+        fault = false;
+        queuedAtNanos = 0;
+        vehicleHandle = -1;
+    }
+
     /**
      * Deep copy for rollback safety (used by Vehicle.copy()).
      */
@@ -134,6 +198,7 @@ public class TelemetryData {
         t.helmetPresent = this.helmetPresent;
         t.movementDetected = this.movementDetected;
         t.fault = this.fault;   // IMPORTANT: include new field
+        t.vehicleHandle = this.vehicleHandle;
         return t;
     }
 
@@ -0,0 +1,244 @@
+package com.smartmove.telemetry;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartmove.domain.VehicleIds;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Decodes a telemetry JSON object straight into a TelemetryData holder.
+ *
+ * The usual shape - a flat object of the known fields holding plain strings,
+ * numbers and booleans - is scanned in place without allocating: the body
+ * is read into a reused buffer, numbers are parsed from the bytes and the
+ * vehicle id is looked up in a table of ids already seen, which also gives
+ * its VehicleIds handle. Anything else
+ * (escapes, nulls, exponents, long numbers, unknown fields) is handed to
+ * Jackson, so what is accepted, and the errors for what is not, stay the same.
+ *
+ * Keeps per-instance buffers: use one per thread.
+ */
+public final class TelemetryDecoder {
+
+    static final int MAX_BODY_BYTES = 64 * 1024;
+    static final int ID_TABLE_SIZE = 4096;
+
+    private static final ObjectMapper FALLBACK = new ObjectMapper();
+
+    private static final byte[][] FIELDS = {
+            ascii("vehicleId"), ascii("latitude"), ascii("longitude"), ascii("batteryPercent"),
+            ascii("temperatureC"), ascii("helmetPresent"), ascii("movementDetected"), ascii("fault")};
+    private static final int VEHICLE_ID = 0, LATITUDE = 1, LONGITUDE = 2, BATTERY = 3,
+            TEMPERATURE = 4, HELMET = 5, MOVEMENT = 6, FAULT = 7;
+
+    private static final byte[] TRUE = ascii("true");
+    private static final byte[] FALSE = ascii("false");
+
+    // Exact powers of ten; a mantissa below 2^53 divided by one is correctly rounded
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private byte[] body = new byte[512];
+    private final VehicleIdTable ids = new VehicleIdTable(ID_TABLE_SIZE, VehicleIds.global());
+
+    // Scan state
+    private byte[] in;
+    private int pos;
+    private int end;
+    private double number;
+    private String text;
+    private int textHandle;
+
+    /** Reads the whole body (at most 64 KiB) and decodes it into {@code into}. */
+    public void decode(InputStream stream, TelemetryData into) throws IOException {
+        int n = 0;
+        while (true) {
+            if (n == body.length) {
+                if (n >= MAX_BODY_BYTES) {
+                    if (stream.read() != -1) throw new IllegalArgumentException("Telemetry body too large");
+                    break;
+                }
+                body = Arrays.copyOf(body, Math.min(n * 2, MAX_BODY_BYTES));
+            }
+            int r = stream.read(body, n, body.length - n);
+            if (r < 0) break;
+            n += r;
+        }
+        decode(body, 0, n, into);
+    }
+
+    public void decode(byte[] data, int offset, int length, TelemetryData into) throws IOException {
+        into.clear();
+        in = data;
+        pos = offset;
+        end = offset + length;
+        try {
+            if (!scanObject(into)) {
+                into.copyFrom(FALLBACK.readValue(data, offset, length, TelemetryData.class));
+            }
+        } finally {
+            in = null;
+            text = null;
+        }
+    }
+
+    // ---- Fast path; false means "not the simple shape", never "invalid" ----
+
+    private boolean scanObject(TelemetryData t) {
+        skipWs();
+        if (!consume('{')) return false;
+        skipWs();
+        if (consume('}')) return atEnd();
+        while (true) {
+            skipWs();
+            int field = fieldName();
+            if (field < 0) return false;
+            skipWs();
+            if (!consume(':')) return false;
+            skipWs();
+            switch (field) {
+                case VEHICLE_ID -> {
+                    if (!string()) return false;
+                    t.setVehicleId(text);
+                    t.setVehicleHandle(textHandle);
+                }
+                case LATITUDE -> {
+                    if (!number()) return false;
+                    t.setLatitude(number);
+                }
+                case LONGITUDE -> {
+                    if (!number()) return false;
+                    t.setLongitude(number);
+                }
+                case BATTERY -> {
+                    // Jackson truncates a fractional value for an int field; so do we
+                    if (!number() || number < Integer.MIN_VALUE || number > Integer.MAX_VALUE) return false;
+                    t.setBatteryPercent((int) number);
+                }
+                case TEMPERATURE -> {
+                    if (!number()) return false;
+                    t.setTemperatureC(number);
+                }
+                default -> {
+                    int b = bool();
+                    if (b < 0) return false;
+                    if (field == HELMET) t.setHelmetPresent(b == 1);
+                    else if (field == MOVEMENT) t.setMovementDetected(b == 1);
+                    else t.setFault(b == 1);
+                }
+            }
+            skipWs();
+            if (consume(',')) continue;
+            return consume('}') && atEnd();
+        }
+    }
+
+    private int fieldName() {
+        if (!consume('"')) return -1;
+        int from = pos;
+        while (pos < end && in[pos] != '"') {
+            if (in[pos] == '\\') return -1;
+            pos++;
+        }
+        if (pos == end) return -1;
+        int length = pos - from;
+        pos++;
+        for (int f = 0; f < FIELDS.length; f++) {
+            if (FIELDS[f].length == length && Arrays.equals(in, from, from + length, FIELDS[f], 0, length)) return f;
+        }
+        return -1;
+    }
+
+    private boolean string() {
+        if (!consume('"')) return false;
+        int from = pos;
+        boolean ascii = true;
+        while (pos < end && in[pos] != '"') {
+            byte b = in[pos];
+            if (b == '\\' || (b >= 0 && b < 0x20)) return false;
+            if (b < 0) ascii = false;
+            pos++;
+        }
+        if (pos == end) return false;
+        if (ascii) {
+            int slot = ids.slot(in, from, pos);
+            textHandle = ids.handle(slot);   // first: may swap in the registry's String
+            text = ids.id(slot);
+        } else {
+            text = new String(in, from, pos - from, StandardCharsets.UTF_8);
+            textHandle = -1;
+        }
+        pos++;
+        return true;
+    }
+
+    private boolean number() {
+        int i = pos;
+        boolean negative = i < end && in[i] == '-';
+        if (negative) i++;
+        int start = i;
+        long mantissa = 0;
+        int digits = 0;
+        while (i < end && in[i] >= '0' && in[i] <= '9') {
+            mantissa = mantissa * 10 + (in[i++] - '0');
+            digits++;
+        }
+        if (i == start || (in[start] == '0' && i - start > 1)) return false;
+        int scale = 0;
+        if (i < end && in[i] == '.') {
+            int fraction = ++i;
+            while (i < end && in[i] >= '0' && in[i] <= '9') {
+                mantissa = mantissa * 10 + (in[i++] - '0');
+                digits++;
+                scale++;
+            }
+            if (i == fraction) return false;
+        }
+        if (i < end && (in[i] == 'e' || in[i] == 'E')) return false;
+        if (digits > 15 || scale >= POW10.length) return false;
+        double value = scale == 0 ? mantissa : mantissa / POW10[scale];
+        number = negative ? -value : value;
+        pos = i;
+        return true;
+    }
+
+    /** 1 for true, 0 for false, -1 for anything else. */
+    private int bool() {
+        if (matches(TRUE)) return 1;
+        if (matches(FALSE)) return 0;
+        return -1;
+    }
+
+    private boolean matches(byte[] literal) {
+        if (end - pos < literal.length || !Arrays.equals(in, pos, pos + literal.length, literal, 0, literal.length)) {
+            return false;
+        }
+        pos += literal.length;
+        return true;
+    }
+
+    private boolean consume(char c) {
+        if (pos < end && in[pos] == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWs() {
+        while (pos < end && (in[pos] == ' ' || in[pos] == '\t' || in[pos] == '\n' || in[pos] == '\r')) pos++;
+    }
+
+    private boolean atEnd() {
+        skipWs();
+        return pos == end;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
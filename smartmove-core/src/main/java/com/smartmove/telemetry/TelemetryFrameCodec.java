@@ -0,0 +1,125 @@
+package com.smartmove.telemetry;
+
+import com.smartmove.domain.VehicleIds;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compact fixed-layout binary telemetry frame, for devices that cannot
+ * afford HTTP+JSON. Big-endian, 14 bytes plus the id:
+ *
+ * <pre>
+ *  0  u8   version (1)
+ *  1  u8   flags: 1 helmetPresent, 2 movementDetected, 4 fault
+ *  2  u8   batteryPercent
+ *  3  u8   vehicleId length, 1..64
+ *  4  i32  latitude,  in 1e-7 degrees
+ *  8  i32  longitude, in 1e-7 degrees
+ * 12  i16  temperatureC, in tenths of a degree
+ * 14  ...  vehicleId, ASCII
+ * </pre>
+ *
+ * Frames are self-delimiting, so a datagram may carry several back to back;
+ * on a stream each is preceded by its length as a u16 (see TelemetryGateway).
+ *
+ * Decoding reads the buffer in place into a caller-supplied holder and
+ * reuses the id Strings (and VehicleIds handles) it has seen, so a warm
+ * decoder does not allocate.
+ * Keeps per-instance state: use one per thread.
+ */
+public final class TelemetryFrameCodec {
+
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 14;
+    public static final int MAX_ID_BYTES = 64;
+    public static final int MAX_FRAME_BYTES = HEADER_BYTES + MAX_ID_BYTES;
+
+    static final int HELMET = 1, MOVEMENT = 2, FAULT = 4;
+    private static final double DEGREE_UNITS = 1e7;
+    private static final double TEMPERATURE_UNITS = 10;
+
+    private final VehicleIdTable ids = new VehicleIdTable(TelemetryDecoder.ID_TABLE_SIZE, VehicleIds.global());
+    private final byte[] id = new byte[MAX_ID_BYTES];
+
+    /**
+     * Decodes the frame at the buffer's position into {@code into} and moves
+     * past it. Returns false, leaving the buffer untouched, if fewer bytes
+     * than a whole frame remain.
+     * @throws IllegalArgumentException for a malformed frame
+     */
+    public boolean decode(ByteBuffer in, TelemetryData into) {
+        int p = in.position();
+        if (in.remaining() < HEADER_BYTES) return false;
+        int version = in.get(p) & 0xFF;
+        if (version != VERSION) throw new IllegalArgumentException("Unsupported telemetry frame version " + version);
+        int idLength = in.get(p + 3) & 0xFF;
+        if (idLength == 0 || idLength > MAX_ID_BYTES) {
+            throw new IllegalArgumentException("Vehicle id must be 1.." + MAX_ID_BYTES + " bytes, was " + idLength);
+        }
+        if (in.remaining() < HEADER_BYTES + idLength) return false;
+
+        in.get(p + HEADER_BYTES, id, 0, idLength);
+        for (int i = 0; i < idLength; i++) {
+            if (id[i] <= ' ' || id[i] > '~') throw new IllegalArgumentException("Vehicle id must be printable ASCII");
+        }
+        int flags = in.get(p + 1) & 0xFF;
+        int slot = ids.slot(id, 0, idLength);
+        int handle = ids.handle(slot);   // first: may swap in the registry's String
+        into.setVehicleId(ids.id(slot));
+        into.setVehicleHandle(handle);
+        into.setBatteryPercent(in.get(p + 2) & 0xFF);
+        into.setLatitude(in.getInt(p + 4) / DEGREE_UNITS);
+        into.setLongitude(in.getInt(p + 8) / DEGREE_UNITS);
+        into.setTemperatureC(in.getShort(p + 12) / TEMPERATURE_UNITS);
+        into.setHelmetPresent((flags & HELMET) != 0);
+        into.setMovementDetected((flags & MOVEMENT) != 0);
+        into.setFault((flags & FAULT) != 0);
+        in.position(p + HEADER_BYTES + idLength);
+        return true;
+    }
+
+    /** Size of the frame for {@code t}. */
+    public static int frameBytes(TelemetryData t) {
+        return HEADER_BYTES + t.getVehicleId().length();
+    }
+
+    /**
+     * Appends the frame for {@code t} (for devices, simulators and tests).
+     * Coordinates and temperature are rounded to the frame's resolution.
+     * @throws IllegalArgumentException if a value does not fit the layout
+     */
+    public static void encode(TelemetryData t, ByteBuffer out) {
+        String vehicleId = t.getVehicleId();
+        if (vehicleId == null || vehicleId.isEmpty() || vehicleId.length() > MAX_ID_BYTES) {
+            throw new IllegalArgumentException("Vehicle id must be 1.." + MAX_ID_BYTES + " characters");
+        }
+        for (int i = 0; i < vehicleId.length(); i++) {
+            char c = vehicleId.charAt(i);
+            if (c <= ' ' || c > '~') throw new IllegalArgumentException("Vehicle id must be printable ASCII");
+        }
+        if (t.getBatteryPercent() < 0 || t.getBatteryPercent() > 255) {
+            throw new IllegalArgumentException("batteryPercent out of range: " + t.getBatteryPercent());
+        }
+        int latitude = fixed(t.getLatitude(), DEGREE_UNITS, Integer.MAX_VALUE, "latitude");
+        int longitude = fixed(t.getLongitude(), DEGREE_UNITS, Integer.MAX_VALUE, "longitude");
+        int temperature = fixed(t.getTemperatureC(), TEMPERATURE_UNITS, Short.MAX_VALUE, "temperatureC");
+        int flags = (t.isHelmetPresent() ? HELMET : 0) | (t.isMovementDetected() ? MOVEMENT : 0) | (t.isFault() ? FAULT : 0);
+
+        out.put((byte) VERSION)
+                .put((byte) flags)
+                .put((byte) t.getBatteryPercent())
+                .put((byte) vehicleId.length())
+                .putInt(latitude)
+                .putInt(longitude)
+                .putShort((short) temperature);
+        for (int i = 0; i < vehicleId.length(); i++) out.put((byte) vehicleId.charAt(i));
+    }
+
+    private static int fixed(double value, double units, int max, String field) {
+        long scaled = Math.round(value * units);
+        if (Double.isNaN(value) || scaled > max || scaled < -max) {
+            throw new IllegalArgumentException(field + " out of range: " + value);
+        }
+        return (int) scaled;
+    }
+}
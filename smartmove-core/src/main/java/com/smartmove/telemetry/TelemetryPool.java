@@ -0,0 +1,41 @@
+package com.smartmove.telemetry;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Recycled TelemetryData holders for the ingest path: the HTTP thread takes
+ * one, decodes a sample into it and queues it; the telemetry worker hands it
+ * back once processed. Only holders that came from a pool are taken back,
+ * so samples built by other callers are never reused under them.
+ *
+ * Array-backed, so neither acquire nor release allocates once warm.
+ */
+public final class TelemetryPool {
+
+    private final ArrayBlockingQueue<TelemetryData> free;
+
+    public TelemetryPool(int capacity) {
+        this.free = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /** A cleared holder; a new one if the pool is empty. */
+    public TelemetryData acquire() {
+        TelemetryData t = free.poll();
+        if (t == null) {
+            t = new TelemetryData();
+            t.pooled = true;
+        }
+        return t;
+    }
+
+    /** Takes a pooled holder back (dropped if the pool is full); others are ignored. */
+    public void release(TelemetryData t) {
+        if (t == null || !t.pooled) return;
+        t.clear();
+        free.offer(t);
+    }
+
+    public int available() {
+        return free.size();
+    }
+}
@@ -0,0 +1,79 @@
+package com.smartmove.telemetry;
+
+import com.smartmove.domain.VehicleIds;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Vehicle ids seen by a decoder, so a repeated id costs a lookup instead of
+ * a new String. Open addressing over a fixed table that is simply cleared
+ * when it fills up, so it stays bounded. Not thread-safe: one per decoder.
+ *
+ * Each slot also remembers the id's VehicleIds handle, and holds the
+ * registry's own String once the id is registered. Ids are only looked up
+ * there, never registered: anything can arrive off the network.
+ */
+final class VehicleIdTable {
+
+    private final VehicleIds registry;
+    private final String[] ids;
+    private final int[] handles;   // -1: not registered when last checked
+    private int count;
+
+    VehicleIdTable(int size, VehicleIds registry) {
+        if (Integer.bitCount(size) != 1) throw new IllegalArgumentException("size must be a power of two");
+        this.registry = registry;
+        this.ids = new String[size];
+        this.handles = new int[size];
+    }
+
+    /** Slot of the ASCII bytes {@code [from, to)}, adding them if they were not seen before. */
+    int slot(byte[] in, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) h = 31 * h + in[i];   // == String.hashCode() for ASCII
+        int mask = ids.length - 1;
+        int slot = (h ^ (h >>> 16)) & mask;
+        for (String s = ids[slot]; s != null; s = ids[slot]) {
+            if (s.hashCode() == h && sameAscii(s, in, from, to)) return slot;
+            slot = (slot + 1) & mask;
+        }
+        String id = new String(in, from, to - from, StandardCharsets.ISO_8859_1);
+        if (count >= ids.length * 3 / 4) {
+            Arrays.fill(ids, null);
+            count = 0;
+            slot = (h ^ (h >>> 16)) & mask;
+        }
+        int handle = registry.find(id);
+        ids[slot] = handle < 0 ? id : registry.id(handle);
+        handles[slot] = handle;
+        count++;
+        return slot;
+    }
+
+    String id(int slot) {
+        return ids[slot];
+    }
+
+    /** The id's handle, or -1 if it is still not registered. */
+    int handle(int slot) {
+        int handle = handles[slot];
+        if (handle < 0) {
+            // registered since we saw it? (a new vehicle's first samples)
+            handle = registry.find(ids[slot]);
+            if (handle >= 0) {
+                handles[slot] = handle;
+                ids[slot] = registry.id(handle);
+            }
+        }
+        return handle;
+    }
+
+    private static boolean sameAscii(String s, byte[] in, int from, int to) {
+        if (s.length() != to - from) return false;
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i - from) != in[i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,23 @@
+package com.smartmove.trace;
+
+/**
+ * A timed section of a traced request, closed with try-with-resources.
+ * Outside a sampled request {@link Tracer#span} returns {@link #NOOP}.
+ */
+public class Span implements AutoCloseable {
+
+    static final Span NOOP = new Span(null, -1);
+
+    private final Trace trace;
+    private final int index;
+
+    Span(Trace trace, int index) {
+        this.trace = trace;
+        this.index = index;
+    }
+
+    @Override
+    public void close() {
+        if (trace != null) trace.close(index);
+    }
+}
@@ -0,0 +1,70 @@
+package com.smartmove.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Span timings of one request, in the order the spans were opened.
+ * A trace is only touched by the thread that handles the request;
+ * it is handed to the slow-request log once finished.
+ */
+public class Trace {
+
+    /** Spans beyond this are counted but not recorded (e.g. a findAll loop). */
+    static final int MAX_SPANS = 256;
+
+    public static class SpanRecord {
+        public String name;
+        public int depth;
+        public long offsetMicros;
+        public long durationMicros = -1;   // -1 while open
+
+        SpanRecord(String name, int depth, long offsetMicros) {
+            this.name = name;
+            this.depth = depth;
+            this.offsetMicros = offsetMicros;
+        }
+    }
+
+    public final String name;
+    public final long startedAt;
+    public int status;
+    public long durationMicros;
+    public int droppedSpans;
+    public String error;
+    public final List<SpanRecord> spans = new ArrayList<>();
+
+    private final long startNanos;
+    private int depth;
+
+    Trace(String name) {
+        this.name = name;
+        this.startedAt = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+
+    Span open(String spanName) {
+        if (spans.size() >= MAX_SPANS) {
+            droppedSpans++;
+            return Span.NOOP;
+        }
+        spans.add(new SpanRecord(spanName, depth++, micros(System.nanoTime() - startNanos)));
+        return new Span(this, spans.size() - 1);
+    }
+
+    void close(int index) {
+        SpanRecord s = spans.get(index);
+        s.durationMicros = micros(System.nanoTime() - startNanos) - s.offsetMicros;
+        depth--;
+    }
+
+    void finish(int status, Throwable failure) {
+        this.status = status;
+        if (failure != null) this.error = failure.toString();
+        this.durationMicros = micros(System.nanoTime() - startNanos);
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1_000;
+    }
+}
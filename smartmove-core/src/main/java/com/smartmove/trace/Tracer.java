@@ -0,0 +1,104 @@
+package com.smartmove.trace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Minimal in-process request tracing.
+ *
+ * The API opens a trace per request with {@link #begin}; code along the
+ * call path wraps interesting sections in {@code try (Span s = Tracer.span("..."))}.
+ * Finished traces slower than the threshold are kept in a fixed-size ring
+ * buffer for /debug/slow-requests.
+ *
+ * Configured with -Dsmartmove.trace.slowMs (negative disables). Off by
+ * default: every traced request allocates its trace and spans, which the
+ * hot paths should not pay for unless someone is looking, e.g. with
+ * -Dsmartmove.trace.slowMs=250. When disabled, {@link #span} is a volatile
+ * read returning a shared no-op.
+ */
+public final class Tracer {
+
+    public static final String SLOW_MS_PROPERTY = "smartmove.trace.slowMs";
+    private static final int CAPACITY = 64;
+
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+
+    // Ring buffer of slow traces, guarded by itself
+    private static final Trace[] slow = new Trace[CAPACITY];
+    private static long slowCount = 0;
+
+    private static volatile boolean enabled;
+    private static volatile long slowThresholdMicros;
+
+    static {
+        configure(Long.getLong(SLOW_MS_PROPERTY, -1));
+    }
+
+    private Tracer() {}
+
+    /** Sets the slow-request threshold in ms; a negative value turns tracing off. */
+    public static void configure(long slowMs) {
+        slowThresholdMicros = Math.max(0, slowMs) * 1_000;
+        enabled = slowMs >= 0;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static long slowThresholdMs() {
+        return slowThresholdMicros / 1_000;
+    }
+
+    /** Starts a trace for the current thread, or returns null when tracing is off. */
+    public static Trace begin(String name) {
+        if (!enabled) return null;
+        Trace t = new Trace(name);
+        CURRENT.set(t);
+        return t;
+    }
+
+    /** Opens a span in the current thread's trace. */
+    public static Span span(String name) {
+        if (!enabled) return Span.NOOP;
+        Trace t = CURRENT.get();
+        return t == null ? Span.NOOP : t.open(name);
+    }
+
+    /** Ends the trace started by {@link #begin} and keeps it if it was slow. */
+    public static void finish(Trace trace, int status) {
+        finish(trace, status, null);
+    }
+
+    /** As {@link #finish(Trace, int)}, for a request that failed with {@code failure}. */
+    public static void finish(Trace trace, int status, Throwable failure) {
+        if (trace == null) return;
+        CURRENT.remove();
+        trace.finish(status, failure);
+        if (trace.durationMicros < slowThresholdMicros) return;
+        synchronized (slow) {
+            slow[(int) (slowCount++ % CAPACITY)] = trace;
+        }
+    }
+
+    /** Retained slow traces, newest first. */
+    public static List<Trace> slowRequests() {
+        synchronized (slow) {
+            int n = (int) Math.min(slowCount, CAPACITY);
+            List<Trace> out = new ArrayList<>(n);
+            for (int i = 1; i <= n; i++) {
+                out.add(slow[(int) ((slowCount - i) % CAPACITY)]);
+            }
+            return out;
+        }
+    }
+
+    public static void clearSlowRequests() {
+        synchronized (slow) {
+            Arrays.fill(slow, null);
+            slowCount = 0;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.smartmove.tx;
+
+import com.smartmove.audit.AuditLogEntry;
+import com.smartmove.audit.AuditLogService;
+import com.smartmove.codec.StorageCodec;
+import com.smartmove.codec.StorageCodecs;
+import com.smartmove.domain.Payment;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.metrics.LatencyHistogram;
+import com.smartmove.metrics.MetricsRegistry;
+import com.smartmove.storage.PaymentStorage;
+import com.smartmove.storage.VehicleStorage;
+import com.smartmove.trace.Span;
+import com.smartmove.trace.Tracer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Write-ahead journal shared by the vehicle, payment and audit stores.
+ *
+ * A {@link UnitOfWork} is committed as one JSON line (vehicles saved or
+ * deleted, payments, stamped audit entries) with one write and one fsync,
+ * and only then applied to the stores. The stores defer their own writes
+ * (see VehicleStorage#deferWrites), so a commit is all-or-nothing and costs
+ * one fsync instead of a rewrite or fsync per store.
+ *
+ * Once the journal passes {@code checkpointBytes} or {@code checkpointMs}
+ * (and on close) the stores are flushed and the journal is truncated. On
+ * startup any records left are replayed in commit order: vehicles are
+ * re-saved, payments not already stored are saved, and audit entries past
+ * the log's last id are appended as stamped.
+ *
+ * Commit order: journal lock, then the audit log's lock (to stamp entries
+ * and journal them in the same order). Nothing takes them the other way.
+ */
+public class TransactionJournal implements AutoCloseable {
+
+    public static final String ENABLED_PROPERTY = "smartmove.journal";
+    public static final String CHECKPOINT_BYTES_PROPERTY = "smartmove.journal.checkpointBytes";
+    public static final String CHECKPOINT_MS_PROPERTY = "smartmove.journal.checkpointMs";
+
+    static final long DEFAULT_CHECKPOINT_BYTES = 16L * 1024 * 1024;
+    static final long DEFAULT_CHECKPOINT_MS = 5_000;
+
+    /** One committed unit of work, as journaled. */
+    static class Record {
+        public long seq;
+        public List<Vehicle> vehicles = new ArrayList<>();
+        public List<String> deletes = new ArrayList<>();
+        public List<Payment> payments = new ArrayList<>();
+        public List<AuditLogEntry> audit = new ArrayList<>();
+    }
+
+    private static final StorageCodec CODEC = StorageCodecs.JSON;
+    private static final LatencyHistogram COMMIT_LATENCY = MetricsRegistry.global().histogram(
+            "smartmove_journal_commit_seconds", "Time to journal and apply one unit of work");
+    private static final LatencyHistogram CHECKPOINT_LATENCY = MetricsRegistry.global().histogram(
+            "smartmove_journal_checkpoint_seconds", "Time to flush the stores and truncate the journal");
+
+    private final Path file;
+    private final VehicleStorage vehicles;
+    private final PaymentStorage payments;
+    private final AuditLogService audit;
+    private final long checkpointBytes;
+    private final long checkpointMs;
+    private final FileChannel channel;
+
+    private long seq;
+    private long size;
+    private long lastCheckpointAt = System.currentTimeMillis();
+    private int replayed;
+    // set when a commit reached the journal but not the stores; replaying on restart repairs it
+    private RuntimeException failed;
+
+    /** Journal configured by system properties, or null if -Dsmartmove.journal=false. */
+    public static TransactionJournal fromConfig(Path file, VehicleStorage vehicles, PaymentStorage payments,
+                                                AuditLogService audit) {
+        if (!Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"))) return null;
+        return new TransactionJournal(file, vehicles, payments, audit,
+                Long.getLong(CHECKPOINT_BYTES_PROPERTY, DEFAULT_CHECKPOINT_BYTES),
+                Long.getLong(CHECKPOINT_MS_PROPERTY, DEFAULT_CHECKPOINT_MS));
+    }
+
+    public TransactionJournal(Path file, VehicleStorage vehicles, PaymentStorage payments, AuditLogService audit) {
+        this(file, vehicles, payments, audit, DEFAULT_CHECKPOINT_BYTES, DEFAULT_CHECKPOINT_MS);
+    }
+
+    /**
+     * Opens the journal, switches the stores to deferred writes and replays
+     * whatever a previous run left, then checkpoints.
+     */
+    public TransactionJournal(Path file, VehicleStorage vehicles, PaymentStorage payments, AuditLogService audit,
+                              long checkpointBytes, long checkpointMs) {
+        this.file = file;
+        this.vehicles = vehicles;
+        this.payments = payments;
+        this.audit = audit;
+        this.checkpointBytes = checkpointBytes;
+        this.checkpointMs = checkpointMs;
+        try {
+            Path parent = file.getParent();
+            if (parent != null) Files.createDirectories(parent);
+            this.channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open transaction journal: " + file, e);
+        }
+        vehicles.deferWrites();
+        payments.deferWrites();
+        replay();
+        checkpoint();
+    }
+
+    // ---- Commit ----
+
+    /** Journals the unit of work with one fsync, then applies it to the stores. */
+    void commit(UnitOfWork work) {
+        long start = System.nanoTime();
+        try (Span span = Tracer.span("journal.commit")) {
+            commitLocked(work);
+        } finally {
+            COMMIT_LATENCY.recordSince(start);
+        }
+    }
+
+    private synchronized void commitLocked(UnitOfWork work) {
+        if (failed != null) {
+            throw new RuntimeException("Transaction journal stopped after a failed apply; restart to replay it", failed);
+        }
+        Record r = new Record();
+        r.seq = seq + 1;
+        r.vehicles = work.saves;
+        r.deletes = work.deletes;
+        r.payments = work.paid;
+        r.audit = work.entries;
+
+        try {
+            // audit entries are stamped under the log's lock, journaled, then appended
+            if (r.audit.isEmpty()) write(r);
+            else audit.appendCommitted(r.audit, stamped -> write(r));
+            work.applyVehicles(r.vehicles, r.deletes);
+            work.applyPayments(r.payments);
+        } catch (RuntimeException e) {
+            if (seq != r.seq) throw e;   // not journaled: nothing happened
+            failed = e;
+            throw new RuntimeException("Committed to the journal but not applied; restart to replay it", e);
+        }
+
+        if (size >= checkpointBytes || System.currentTimeMillis() - lastCheckpointAt >= checkpointMs) {
+            try {
+                checkpointLocked();
+            } catch (RuntimeException e) {
+                // the commit stands; the journal is simply kept until a checkpoint succeeds
+                System.err.println("TransactionJournal: checkpoint failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void write(Record r) {
+        try {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(1024);
+            CODEC.encode(line, r);
+            line.write('\n');
+            ByteBuffer buf = ByteBuffer.wrap(line.toByteArray());
+            long position = size;
+            while (buf.hasRemaining()) {
+                position += channel.write(buf, position);
+            }
+            channel.force(false);
+            size = position;
+            seq = r.seq;
+        } catch (IOException e) {
+            // drop whatever part of the line made it to disk
+            try { channel.truncate(size); } catch (IOException ignored) {}
+            throw new RuntimeException("Journal write failed: " + file, e);
+        }
+    }
+
+    // ---- Checkpoint ----
+
+    /** Flushes the stores and empties the journal. */
+    public synchronized void checkpoint() {
+        checkpointLocked();
+    }
+
+    private void checkpointLocked() {
+        long start = System.nanoTime();
+        try (Span span = Tracer.span("journal.checkpoint")) {
+            // each store is durable when flush returns; only then may the records go
+            vehicles.flush();
+            payments.flush();
+            audit.sync();
+            channel.truncate(0);
+            channel.force(false);
+            size = 0;
+            lastCheckpointAt = System.currentTimeMillis();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to truncate transaction journal: " + file, e);
+        } finally {
+            CHECKPOINT_LATENCY.recordSince(start);
+        }
+    }
+
+    // ---- Recovery ----
+
+    /**
+     * Reapplies the records a previous run journaled but may not have flushed.
+     * A torn trailing line (crash mid-write, never acknowledged) is dropped.
+     */
+    private void replay() {
+        UnitOfWork applier = new UnitOfWork(null, vehicles, payments, audit);
+        Set<String> stored = null;
+        long position = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(1024);
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                if (line.size() > 0) {
+                    Record r = CODEC.decode(line.toByteArray(), 0, line.size(), Record.class);
+                    applier.applyVehicles(r.vehicles, r.deletes);
+                    if (!r.payments.isEmpty()) {
+                        if (stored == null) {
+                            stored = new HashSet<>();
+                            for (Payment p : payments.findAll()) stored.add(p.getId());
+                        }
+                        for (Payment p : r.payments) {
+                            if (stored.add(p.getId())) payments.save(p);
+                        }
+                    }
+                    for (AuditLogEntry entry : r.audit) {
+                        if (entry.id > audit.lastId()) audit.replicate(entry);
+                    }
+                    seq = r.seq;
+                    replayed++;
+                }
+                position += line.size() + 1;
+                line.reset();
+            }
+            if (channel.size() != position) channel.truncate(position);
+            size = position;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to replay transaction journal: " + file, e);
+        }
+    }
+
+    /** Records replayed on startup (non-zero after an unclean shutdown). */
+    public int replayedCount() {
+        return replayed;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    /** Checkpoints (unless a commit failed half-way, which must be replayed) and closes. */
+    @Override
+    public synchronized void close() {
+        try {
+            if (failed == null) checkpointLocked();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.smartmove.tx;
+
+import com.smartmove.audit.AuditLogEntry;
+import com.smartmove.audit.AuditLogService;
+import com.smartmove.domain.Payment;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.storage.PaymentStorage;
+import com.smartmove.storage.VehicleStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Vehicle, payment and audit writes staged to be committed together.
+ *
+ * With a {@link TransactionJournal} the commit is one journal record, applied
+ * to the stores only once it is on disk. Without one (tests, embedded use) the
+ * writes go straight to the stores, vehicles first and audit last, so a
+ * failure leaves at most the vehicle to be restored by the caller.
+ */
+public class UnitOfWork {
+
+    private final TransactionJournal journal;   // null: apply directly
+    private final VehicleStorage vehicles;
+    private final PaymentStorage payments;
+    private final AuditLogService audit;
+
+    final List<Vehicle> saves = new ArrayList<>(1);
+    final List<String> deletes = new ArrayList<>(0);
+    final List<Payment> paid = new ArrayList<>(0);
+    final List<AuditLogEntry> entries = new ArrayList<>(2);
+
+    public UnitOfWork(TransactionJournal journal, VehicleStorage vehicles, PaymentStorage payments, AuditLogService audit) {
+        this.journal = journal;
+        this.vehicles = vehicles;
+        this.payments = payments;
+        this.audit = audit;
+    }
+
+    public UnitOfWork save(Vehicle v) {
+        saves.add(v);
+        return this;
+    }
+
+    public UnitOfWork delete(String vehicleId) {
+        deletes.add(vehicleId);
+        return this;
+    }
+
+    public UnitOfWork pay(Payment p) {
+        paid.add(p);
+        return this;
+    }
+
+    public UnitOfWork audit(AuditLogEntry entry) {
+        entries.add(entry);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return saves.isEmpty() && deletes.isEmpty() && paid.isEmpty() && entries.isEmpty();
+    }
+
+    /** Makes every staged write durable and visible, or (with a journal) none of them. */
+    public void commit() {
+        if (isEmpty()) return;
+        if (journal != null) {
+            journal.commit(this);
+            return;
+        }
+        applyVehicles(saves, deletes);
+        applyPayments(paid);
+        if (entries.size() == 1) audit.append(entries.get(0));
+        else if (!entries.isEmpty()) audit.appendAll(entries);
+    }
+
+    // ---- Applying to the stores (also used by the journal and its replay) ----
+
+    void applyVehicles(List<Vehicle> toSave, List<String> toDelete) {
+        if (toSave.size() == 1) vehicles.save(toSave.get(0));
+        else if (!toSave.isEmpty()) vehicles.saveAll(toSave);
+        for (String id : toDelete) vehicles.deleteById(id);
+    }
+
+    void applyPayments(List<Payment> toSave) {
+        for (Payment p : toSave) payments.save(p);
+    }
+}
@@ -0,0 +1,186 @@
+package com.smartmove.audit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartmove.codec.StorageCodecs;
+import com.smartmove.domain.City;
+import com.smartmove.domain.VehicleState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditLogServiceTest {
+
+    // Written by the pre-typed format: hash over the concatenated details string
+    private static final String LEGACY_LINE =
+            "{\"id\":1,\"timestamp\":1770986927432,\"event\":\"VEHICLE_REGISTERED\","
+            + "\"details\":\"vehicleId=04d4a23a-36fb-4cba-a38f-4f9da375646a, type=BICYCLE\","
+            + "\"previousChecksum\":\"GENESIS\","
+            + "\"checksum\":\"6d2b69872d505f37711e15d64d84585d4bf27ac2bdc6568bee000d51c755365a\"}\n";
+
+    @TempDir
+    Path tempDir;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void appendStoresTypedFields_andChainsChecksums() throws IOException {
+        Path file = tempDir.resolve("audit.jsonl");
+        AuditLogService audit = new AuditLogService(file);
+
+        audit.append(AuditLogEntry.of(AuditEvent.STATE_CHANGE, "v1")
+                .city(City.ROME)
+                .transition(VehicleState.AVAILABLE, VehicleState.RESERVED)
+                .reason("reserve"));
+        audit.append(AuditLogEntry.of(AuditEvent.TELEMETRY, "v1").telemetry(80, 25.5));
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+
+        JsonNode first = mapper.readTree(lines.get(0));
+        JsonNode second = mapper.readTree(lines.get(1));
+        assertEquals("STATE_CHANGE", first.get("event").asText());
+        assertEquals("RESERVED", first.get("toState").asText());
+        assertFalse(first.has("details"));
+        assertFalse(first.has("batteryPercent"));
+        assertEquals(80, second.get("batteryPercent").asInt());
+        assertEquals(first.get("checksum").asText(), second.get("previousChecksum").asText());
+
+        // reopening re-verifies the whole chain
+        assertDoesNotThrow(() -> new AuditLogService(file));
+    }
+
+    @Test
+    void legacyEntriesStillVerify_andNewEntriesChainOntoThem() throws IOException {
+        Path file = tempDir.resolve("audit.jsonl");
+        Files.writeString(file, LEGACY_LINE);
+
+        AuditLogService audit = new AuditLogService(file);
+        audit.append(AuditLogEntry.of(AuditEvent.RENTAL_STARTED, "v2").city(City.LONDON));
+
+        JsonNode appended = mapper.readTree(Files.readAllLines(file).get(1));
+        assertEquals(2, appended.get("id").asLong());
+        assertEquals("6d2b69872d505f37711e15d64d84585d4bf27ac2bdc6568bee000d51c755365a",
+                appended.get("previousChecksum").asText());
+
+        assertDoesNotThrow(() -> new AuditLogService(file));
+    }
+
+    @Test
+    void tamperedTypedFieldIsDetected() throws IOException {
+        Path file = tempDir.resolve("audit.jsonl");
+        AuditLogService audit = new AuditLogService(file);
+        audit.append(AuditLogEntry.of(AuditEvent.PAYMENT, "v3").payment("p1", 10.0, 5.0, 15.0));
+
+        String line = Files.readString(file);
+        Files.writeString(file, line.replace("\"total\":15.0", "\"total\":1.0"));
+
+        assertThrows(RuntimeException.class, () -> new AuditLogService(file));
+    }
+
+    @Test
+    void canonicalLengthsDoNotWrapForLongStrings() {
+        AuditCodec codec = new AuditCodec();
+        String shortReason = "x".repeat(10);
+        String longReason = "x".repeat(65_536 + 10);   // would wrap to 10 in a u16
+        AuditLogEntry entry = AuditLogEntry.of(AuditEvent.STATE_CHANGE, "v1").reason(shortReason);
+        entry.previousChecksum = "GENESIS";
+        int shortLength = codec.encode(entry);
+        entry.reason = longReason;
+        int longLength = codec.encode(entry);
+        assertEquals(shortLength + 65_536 + 4, longLength);
+    }
+
+    @Test
+    void startupResumesFromCheckpoint_andStillVerifiesWhatFollows() throws IOException {
+        Path file = tempDir.resolve("audit.jsonl");
+        AuditLogService audit = new AuditLogService(file);
+        for (int i = 1; i <= 10; i++) audit.append(AuditLogEntry.of(AuditEvent.PAYMENT, "v" + i).payment("p" + i, 10.0, 0.0, 10.0));
+        audit.checkpoint();
+        audit.append(AuditLogEntry.of(AuditEvent.PAYMENT, "v11").payment("p11", 10.0, 5.0, 15.0));
+        assertTrue(Files.exists(tempDir.resolve("audit.jsonl.checkpoint")));
+
+        AuditLogService resumed = new AuditLogService(file);
+        assertEquals(11, resumed.lastId());
+        resumed.append(AuditLogEntry.of(AuditEvent.TELEMETRY, "v1").telemetry(50, 20.0));
+        assertEquals(resumed.read(10, 1).get(0).checksum, resumed.read(11, 1).get(0).previousChecksum);
+
+        // after the checkpoint: caught on the fast path
+        String log = Files.readString(file);
+        Files.writeString(file, log.replace("\"total\":15.0", "\"total\":1.0"));
+        assertThrows(RuntimeException.class, () -> new AuditLogService(file));
+
+        // before it: only a full verification re-hashes those entries
+        Files.writeString(file, log.replace("\"paymentId\":\"p3\"", "\"paymentId\":\"pX\""));
+        System.setProperty(AuditLogService.FULL_VERIFY_PROPERTY, "true");
+        try {
+            assertThrows(RuntimeException.class, () -> new AuditLogService(file));
+        } finally {
+            System.clearProperty(AuditLogService.FULL_VERIFY_PROPERTY);
+        }
+    }
+
+    @Test
+    void tornTrailingRecordIsDroppedOnStartup() throws IOException {
+        for (var codec : List.of(StorageCodecs.JSON, StorageCodecs.SMILE)) {
+            Path file = tempDir.resolve("torn-" + codec.name() + ".log");
+            AuditLogService audit = new AuditLogService(file, codec);
+            audit.append(AuditLogEntry.of(AuditEvent.RENTAL_STARTED, "v1"));
+            audit.append(AuditLogEntry.of(AuditEvent.RENTAL_ENDED, "v1"));
+            long intact = Files.size(file);
+            audit.append(AuditLogEntry.of(AuditEvent.TELEMETRY, "v1").telemetry(50, 20.0));
+            long full = Files.size(file);
+
+            // crash part way through the third record
+            try (var ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.truncate(intact + (full - intact) / 2);
+            }
+            AuditLogService reopened = new AuditLogService(file, codec);
+            assertEquals(2, reopened.lastId(), codec.name());
+            assertEquals(intact, Files.size(file), codec.name());
+
+            // again after the checkpoint the reopened log wrote, on the fast startup path
+            reopened.append(AuditLogEntry.of(AuditEvent.TELEMETRY, "v1").telemetry(40, 21.0));
+            intact = Files.size(file);
+            reopened.append(AuditLogEntry.of(AuditEvent.TELEMETRY, "v1").telemetry(30, 22.0));
+            try (var ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.truncate(Files.size(file) - 1);
+            }
+            assertTrue(Files.exists(file.resolveSibling(file.getFileName() + ".checkpoint")));
+            assertEquals(3, new AuditLogService(file, codec).lastId(), codec.name());
+            assertEquals(intact, Files.size(file), codec.name());
+        }
+    }
+
+    @Test
+    void handWrittenJsonMatchesJackson() throws IOException {
+        AuditLogEntry telemetry = AuditLogEntry.of(AuditEvent.TELEMETRY, "v1").telemetry(87, 24.5);
+        AuditLogEntry payment = AuditLogEntry.of(AuditEvent.PAYMENT, "v2").payment("p1", 0.1 + 0.2, 1e-9, 12345678.9);
+        AuditLogEntry text = AuditLogEntry.of(AuditEvent.STATE_CHANGE, "v3")
+                .city(City.MILAN)
+                .transition(VehicleState.IN_USE, VehicleState.MAINTENANCE)
+                .reason("quote \" slash \\ tab \t bell \u0007 unit \u001f caf\u00e9 \u20ac \ud83d\udef4");
+        telemetry.id = 7;
+        telemetry.timestamp = -1;
+        telemetry.checksum = "abc";
+
+        AuditJsonWriter writer = new AuditJsonWriter();
+        for (AuditLogEntry e : List.of(telemetry, payment, text)) {
+            ByteArrayOutputStream jackson = new ByteArrayOutputStream();
+            StorageCodecs.JSON.encode(jackson, e);
+            int n = writer.write(e);
+            assertEquals(jackson.toString(StandardCharsets.UTF_8),
+                    new String(writer.buffer(), 0, n, StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.smartmove.cdc;
+
+import com.smartmove.audit.AuditLogService;
+import com.smartmove.domain.City;
+import com.smartmove.domain.Payment;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.domain.VehicleState;
+import com.smartmove.domain.VehicleType;
+import com.smartmove.storage.JsonPaymentStorage;
+import com.smartmove.storage.JsonVehicleStorage;
+import com.smartmove.tx.TransactionJournal;
+import com.smartmove.tx.UnitOfWork;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeLogTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path logFile() {
+        return tempDir.resolve("changes.jsonl");
+    }
+
+    @Test
+    void offsetsIncreaseAndReadResumesAfterSince() {
+        try (ChangeLog log = new ChangeLog(logFile())) {
+            for (int i = 0; i < 5; i++) {
+                assertEquals(i + 1, log.append(ChangeRecord.Entity.VEHICLE, ChangeRecord.Op.UPSERT, "v" + i, Map.of("n", i)));
+            }
+
+            List<ChangeRecord> page = log.read(2, 2);
+            assertEquals(2, page.size());
+            assertEquals(3, page.get(0).offset);
+            assertEquals(4, page.get(1).offset);
+            assertEquals("v2", page.get(0).key);
+
+            assertTrue(log.read(5, 10).isEmpty());
+        }
+    }
+
+    @Test
+    void appendAllAssignsConsecutiveOffsets_andIndexesAcrossBoundaries() {
+        try (ChangeLog log = new ChangeLog(logFile())) {
+            log.append(ChangeRecord.Entity.VEHICLE, ChangeRecord.Op.UPSERT, "first", null);
+            Map<String, Object> batch = new LinkedHashMap<>();
+            for (int i = 0; i < 300; i++) batch.put("v" + i, Map.of("n", i));
+
+            assertEquals(301, log.appendAll(ChangeRecord.Entity.VEHICLE, ChangeRecord.Op.UPSERT, batch));
+            assertEquals("v256", log.read(257, 1).get(0).key);
+        }
+        try (ChangeLog log = new ChangeLog(logFile())) {
+            assertEquals(301, log.lastOffset());
+            assertEquals("v299", log.read(300, 1).get(0).key);
+        }
+    }
+
+    @Test
+    void reopenedLogKeepsOffsets_acrossIndexBoundaries() {
+        try (ChangeLog log = new ChangeLog(logFile())) {
+            for (int i = 0; i < 600; i++) {
+                log.append(ChangeRecord.Entity.PAYMENT, ChangeRecord.Op.UPSERT, "p" + i, null);
+            }
+        }
+
+        try (ChangeLog log = new ChangeLog(logFile())) {
+            assertEquals(600, log.lastOffset());
+            assertEquals(601, log.append(ChangeRecord.Entity.VEHICLE, ChangeRecord.Op.DELETE, "x", null));
+
+            List<ChangeRecord> page = log.read(510, 3);
+            assertEquals(List.of(511L, 512L, 513L), page.stream().map(r -> r.offset).toList());
+        }
+    }
+
+    @Test
+    void tornTrailingLineIsDroppedOnRecovery() throws IOException {
+        try (ChangeLog log = new ChangeLog(logFile())) {
+            log.append(ChangeRecord.Entity.VEHICLE, ChangeRecord.Op.UPSERT, "a", null);
+        }
+        Files.writeString(logFile(), "{\"offset\":2,\"enti", StandardOpenOption.APPEND);
+
+        try (ChangeLog log = new ChangeLog(logFile())) {
+            assertEquals(1, log.lastOffset());
+            assertEquals(2, log.append(ChangeRecord.Entity.VEHICLE, ChangeRecord.Op.UPSERT, "b", null));
+            assertEquals("b", log.read(1, 10).get(0).key);
+        }
+    }
+
+    @Test
+    void decoratorsCaptureVehicleAndPaymentWrites() {
+        try (ChangeLog log = new ChangeLog(logFile())) {
+            ChangeCapturingVehicleStorage vehicles = new ChangeCapturingVehicleStorage(
+                    new JsonVehicleStorage(tempDir.resolve("vehicles.json")), log);
+            ChangeCapturingPaymentStorage payments = new ChangeCapturingPaymentStorage(
+                    new JsonPaymentStorage(tempDir.resolve("payments.json")), log);
+
+            Vehicle v = new Vehicle("v1", VehicleType.E_SCOOTER, City.LONDON);
+            vehicles.save(v);
+            payments.save(new Payment("v1", City.LONDON, 1000, 500));
+            vehicles.deleteById("v1");
+
+            List<ChangeRecord> all = log.read(0, 10);
+            assertEquals(3, all.size());
+            assertEquals(ChangeRecord.Entity.VEHICLE, all.get(0).entity);
+            assertEquals("E_SCOOTER", all.get(0).data.get("type").asText());
+            assertEquals(ChangeRecord.Entity.PAYMENT, all.get(1).entity);
+            assertEquals(1500, all.get(1).data.get("totalCents").asLong());
+            assertEquals(ChangeRecord.Op.DELETE, all.get(2).op);
+            assertNull(all.get(2).data);
+        }
+    }
+
+    @Test
+    void writeThatLeavesAKeyAsRecordedIsNotAChange() {
+        try (ChangeLog log = new ChangeLog(logFile())) {
+            ChangeCapturingVehicleStorage vehicles = new ChangeCapturingVehicleStorage(
+                    new JsonVehicleStorage(tempDir.resolve("vehicles.json")), log);
+            Vehicle before = new Vehicle("v1", VehicleType.E_SCOOTER, City.LONDON);
+            vehicles.save(before);
+
+            // a rollback restoring a change that never got captured
+            vehicles.save(before.copy());
+            assertEquals(1, log.lastOffset());
+
+            // ... and one undoing a captured change, which consumers must see
+            Vehicle changed = before.copy();
+            changed.setState(VehicleState.MAINTENANCE);
+            vehicles.save(changed);
+            vehicles.save(before);
+            assertEquals(3, log.lastOffset());
+            assertEquals("AVAILABLE", log.read(2, 1).get(0).data.get("state").asText());
+
+            vehicles.deleteById("v1");
+            vehicles.deleteById("v1");
+            assertEquals(4, log.lastOffset());
+        }
+        try (ChangeLog log = new ChangeLog(logFile())) {
+            // recovered: the delete is remembered
+            assertEquals(4, log.append(ChangeRecord.Entity.VEHICLE, ChangeRecord.Op.DELETE, "v1", null));
+        }
+    }
+
+    @Test
+    void journalReplayAfterACrashAddsNoRecords() {
+        ChangeLog log = new ChangeLog(logFile());
+        ChangeCapturingVehicleStorage vehicles = new ChangeCapturingVehicleStorage(
+                new JsonVehicleStorage(tempDir.resolve("vehicles.json")), log);
+        ChangeCapturingPaymentStorage payments = new ChangeCapturingPaymentStorage(
+                new JsonPaymentStorage(tempDir.resolve("payments.json")), log);
+        AuditLogService audit = new AuditLogService(tempDir.resolve("audit.jsonl"));
+        TransactionJournal journal = new TransactionJournal(tempDir.resolve("journal.jsonl"),
+                vehicles, payments, audit, Long.MAX_VALUE, Long.MAX_VALUE);
+        Vehicle v = new Vehicle("v1", VehicleType.MOPED, City.LONDON);
+        new UnitOfWork(journal, vehicles, payments, audit)
+                .save(v)
+                .pay(new Payment("v1", City.LONDON, 1000, 500))
+                .commit();
+        assertEquals(2, log.lastOffset());
+        log.close();
+
+        // "restart" without a checkpoint: the journal re-saves the vehicle and payment
+        try (ChangeLog reopened = new ChangeLog(logFile())) {
+            ChangeCapturingVehicleStorage vehicles2 = new ChangeCapturingVehicleStorage(
+                    new JsonVehicleStorage(tempDir.resolve("vehicles.json")), reopened);
+            TransactionJournal recovered = new TransactionJournal(tempDir.resolve("journal.jsonl"), vehicles2,
+                    new ChangeCapturingPaymentStorage(new JsonPaymentStorage(tempDir.resolve("payments.json")), reopened),
+                    new AuditLogService(tempDir.resolve("audit.jsonl")), Long.MAX_VALUE, Long.MAX_VALUE);
+            assertEquals(1, recovered.replayedCount());
+            assertTrue(vehicles2.findById("v1").isPresent());
+            assertEquals(2, reopened.lastOffset());
+            recovered.close();
+        }
+    }
+
+    @Test
+    void compactionKeepsTheLatestRecordPerKey_withItsOffset() throws IOException {
+        try (ChangeLog log = new ChangeLog(logFile(), 4096)) {
+            for (int i = 0; i < 200; i++) {
+                log.append(ChangeRecord.Entity.VEHICLE, ChangeRecord.Op.UPSERT, "v" + (i % 3), Map.of("n", i));
+            }
+            log.append(ChangeRecord.Entity.VEHICLE, ChangeRecord.Op.DELETE, "v0", null);
+
+            assertTrue(Files.size(logFile()) < 4096);
+            assertEquals(201, log.lastOffset());
+            List<ChangeRecord> all = log.read(0, 1000);
+            assertTrue(all.size() < 100, "compacted: " + all.size());
+            for (int i = 1; i < all.size(); i++) assertTrue(all.get(i).offset > all.get(i - 1).offset);
+
+            // a consumer resuming anywhere ends up with every key's current value
+            for (long since : new long[]{0, 120, 197}) {
+                Map<String, ChangeRecord> current = new LinkedHashMap<>();
+                for (ChangeRecord r : log.read(since, 1000)) current.put(r.key, r);
+                assertEquals(ChangeRecord.Op.DELETE, current.get("v0").op);
+                assertEquals(199, current.get("v1").data.get("n").asInt());
+                assertEquals(197, current.get("v2").data.get("n").asInt());
+                assertEquals(198, current.get("v2").offset);
+            }
+            assertEquals(List.of(201L), log.read(200, 10).stream().map(r -> r.offset).toList());
+
+            assertEquals(202, log.append(ChangeRecord.Entity.VEHICLE, ChangeRecord.Op.UPSERT, "v1", Map.of("n", 1)));
+        }
+        try (ChangeLog log = new ChangeLog(logFile(), 4096)) {
+            assertEquals(202, log.lastOffset());
+            assertEquals("v1", log.read(201, 1).get(0).key);
+        }
+    }
+}
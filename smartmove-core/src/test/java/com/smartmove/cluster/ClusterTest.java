@@ -0,0 +1,120 @@
+package com.smartmove.cluster;
+
+import com.smartmove.audit.AuditLogService;
+import com.smartmove.controller.SmartMoveCentralController;
+import com.smartmove.domain.City;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.domain.VehicleState;
+import com.smartmove.domain.VehicleType;
+import com.smartmove.storage.JsonVehicleStorage;
+import com.smartmove.storage.PaymentStorage;
+import com.smartmove.zones.ZoneService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class ClusterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static Membership membership(Membership.Partitioning partitioning, String... ids) {
+        Membership m = new Membership();
+        m.epoch = 1;
+        m.partitioning = partitioning;
+        for (String id : ids) m.nodes.add(new ClusterNode(id, "http://" + id));
+        return m;
+    }
+
+    @Test
+    void joiningNodeOnlyTakesVehiclesFromOthers_aboutOneNth() {
+        Partitioner two = Partitioner.of(membership(Membership.Partitioning.HASH, "n1", "n2"));
+        Partitioner three = Partitioner.of(membership(Membership.Partitioning.HASH, "n1", "n2", "n3"));
+
+        int moved = 0;
+        Map<String, Integer> load = new HashMap<>();
+        for (int i = 0; i < 30_000; i++) {
+            String id = "vehicle-" + i;
+            String before = two.ownerOf(id, null);
+            String after = three.ownerOf(id, null);
+            load.merge(after, 1, Integer::sum);
+            if (!before.equals(after)) {
+                assertEquals("n3", after, id);
+                moved++;
+            }
+        }
+        assertTrue(moved > 7_000 && moved < 13_000, "moved " + moved);
+        load.values().forEach(n -> assertTrue(n > 7_000, load.toString()));
+    }
+
+    @Test
+    void cityPartitioningHonoursExplicitCities_andNeedsACity() {
+        Membership m = membership(Membership.Partitioning.CITY, "a", "b");
+        m.nodes.get(1).cities.add(City.LONDON);
+        Partitioner p = Partitioner.of(m);
+
+        assertEquals("b", p.ownerOf("v1", City.LONDON));
+        assertNotNull(p.ownerOf("v1", City.ROME));
+        assertNull(p.ownerOf("v1", null));
+    }
+
+    @Test
+    void olderMembershipsAreIgnored() {
+        Cluster cluster = new Cluster("n1", membership(Membership.Partitioning.HASH, "n1", "n2"));
+        Membership joined = cluster.membership().with(new ClusterNode("n3", "http://n3"));
+
+        assertTrue(cluster.update(joined));
+        assertFalse(cluster.update(membership(Membership.Partitioning.HASH, "n1")));
+        assertEquals(3, cluster.membership().nodes.size());
+        assertThrows(IllegalArgumentException.class, () -> {
+            Membership without = membership(Membership.Partitioning.HASH, "n2");
+            without.epoch = 5;
+            cluster.update(without);
+        });
+    }
+
+    @Test
+    void rebalanceHandsForeignVehiclesToTheirOwner_keepingRentalState() {
+        JsonVehicleStorage storeA = new JsonVehicleStorage(tempDir.resolve("a/vehicles.json"));
+        JsonVehicleStorage storeB = new JsonVehicleStorage(tempDir.resolve("b/vehicles.json"));
+        SmartMoveCentralController a = controller(storeA, "a");
+        SmartMoveCentralController b = controller(storeB, "b");
+        try {
+            for (int i = 0; i < 50; i++) a.registerVehicle(new Vehicle("v" + i, VehicleType.BICYCLE, City.MILAN));
+            a.reserveVehicle("v7", City.MILAN, "u1");
+            a.startRental("v7", City.MILAN, "u1");
+
+            Cluster cluster = new Cluster("a", membership(Membership.Partitioning.HASH, "a"));
+            Rebalancer rebalancer = new Rebalancer(cluster, storeA, a, (target, v) -> b.acceptTransfer(v, "a"));
+            assertEquals(0, rebalancer.rebalance().moved);
+
+            cluster.update(cluster.membership().with(new ClusterNode("b", "http://b")));
+            Rebalancer.Result result = rebalancer.rebalance();
+
+            assertEquals(0, result.failed);
+            assertEquals(50, storeA.findAll().size() + storeB.findAll().size());
+            assertEquals(result.moved, storeB.findAll().size());
+            assertTrue(result.moved > 10 && result.moved < 40, "moved " + result.moved);
+            for (Vehicle v : storeB.findAll()) assertEquals("b", cluster.ownerOf(v.getId(), v.getCity()));
+
+            SmartMoveCentralController owner = cluster.ownerOf("v7", City.MILAN).equals("b") ? b : a;
+            assertEquals(VehicleState.IN_USE, owner.getVehicle("v7").orElseThrow().getState());
+            assertEquals(1, owner.activeRentals("u1"));
+        } finally {
+            a.shutdown();
+            b.shutdown();
+        }
+    }
+
+    private SmartMoveCentralController controller(JsonVehicleStorage store, String dir) {
+        return new SmartMoveCentralController(store,
+                new AuditLogService(tempDir.resolve(dir + "/audit-log.jsonl")),
+                mock(ZoneService.class), mock(PaymentStorage.class));
+    }
+}
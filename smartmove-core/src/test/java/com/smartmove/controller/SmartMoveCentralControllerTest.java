@@ -1,17 +1,30 @@
 package com.smartmove.controller;
 
+import com.smartmove.audit.AuditEvent;
+import com.smartmove.audit.AuditLogEntry;
 import com.smartmove.audit.AuditLogService;
 import com.smartmove.domain.*;
+import com.smartmove.pricing.TariffPricingEngine;
 import com.smartmove.storage.PaymentStorage;
+import com.smartmove.storage.UserStorage;
 import com.smartmove.storage.VehicleStorage;
 import com.smartmove.telemetry.TelemetryData;
 import com.smartmove.zones.ZoneService;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatcher;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 class SmartMoveCentralControllerTest {
@@ -42,7 +55,7 @@ class SmartMoveCentralControllerTest {
 
         assertEquals(VehicleState.AVAILABLE, v.getState());
         verify(vehicleStorage).save(v);
-        verify(auditLog).append(eq("VEHICLE_REGISTERED"), contains("vehicleId=v1"));
+        verify(auditLog).append(argThat(audit(AuditEvent.VEHICLE_REGISTERED, "v1")));
     }
 
     @Test
@@ -52,15 +65,17 @@ class SmartMoveCentralControllerTest {
         Vehicle v = new Vehicle("v2", VehicleType.E_SCOOTER, City.LONDON);
         v.setState(VehicleState.AVAILABLE);
 
-        when(vehicleStorage.findById("v2")).thenReturn(Optional.of(v));
+        Map<String, Vehicle> stored = stored(v);
 
         controller.reserveVehicle("v2", City.ROME);
 
-        assertEquals(VehicleState.RESERVED, v.getState());
-        assertEquals(City.ROME, v.getCity());
+        assertEquals(VehicleState.RESERVED, stored.get("v2").getState());
+        assertEquals(City.ROME, stored.get("v2").getCity());
 
         verify(vehicleStorage).save(v);
-        verify(auditLog).append(eq("STATE_CHANGE"), contains("AVAILABLE->RESERVED"));
+        verify(auditLog).append(argThat(e -> e.event == AuditEvent.STATE_CHANGE
+                && e.fromState == VehicleState.AVAILABLE
+                && e.toState == VehicleState.RESERVED));
     }
 
     @Test
@@ -70,15 +85,15 @@ class SmartMoveCentralControllerTest {
         Vehicle v = new Vehicle("v3", VehicleType.E_SCOOTER, City.LONDON);
         v.setState(VehicleState.RESERVED);
 
-        when(vehicleStorage.findById("v3")).thenReturn(Optional.of(v));
+        Map<String, Vehicle> stored = stored(v);
 
         controller.startRental("v3", City.ROME);
 
-        assertEquals(VehicleState.IN_USE, v.getState());
-        assertTrue(v.isRentalActive());
+        assertEquals(VehicleState.IN_USE, stored.get("v3").getState());
+        assertTrue(stored.get("v3").isRentalActive());
 
         verify(vehicleStorage).save(v);
-        verify(auditLog).append(eq("RENTAL_STARTED"), contains("vehicleId=v3"));
+        verify(auditLog).append(argThat(audit(AuditEvent.RENTAL_STARTED, "v3")));
     }
 
     @Test
@@ -89,16 +104,185 @@ class SmartMoveCentralControllerTest {
         v.setState(VehicleState.IN_USE);
         v.setRentalActive(true);
 
-        when(vehicleStorage.findById("v4")).thenReturn(Optional.of(v));
+        Map<String, Vehicle> stored = stored(v);
 
         controller.endRental("v4");
 
-        assertEquals(VehicleState.AVAILABLE, v.getState());
-        assertFalse(v.isRentalActive());
+        assertEquals(VehicleState.AVAILABLE, stored.get("v4").getState());
+        assertFalse(stored.get("v4").isRentalActive());
 
         verify(paymentStorage).save(any(Payment.class));
         verify(vehicleStorage).save(v);
-        verify(auditLog).append(eq("RENTAL_ENDED"), contains("vehicleId=v4"));
+        // payment and rental end are audited together, as one unit of work
+        verify(auditLog).appendAll(argThat(es -> es.size() == 2
+                && es.get(0).event == AuditEvent.PAYMENT
+                && audit(AuditEvent.RENTAL_ENDED, "v4").matches(es.get(1))));
+    }
+
+    @Test
+    void tripIsAccumulatedFromTelemetry_andFinalizedIntoPayment() {
+        controller = new SmartMoveCentralController(vehicleStorage, auditLog, zoneService, paymentStorage);
+
+        Vehicle v = new Vehicle("v7", VehicleType.BICYCLE, City.MILAN);
+        v.setState(VehicleState.RESERVED);
+        v.setTelemetry(new TelemetryData("v7", 45.4600, 9.1900, 90, 20.0));
+        Map<String, Vehicle> stored = stored(v);
+
+        controller.startRental("v7", City.MILAN);
+        controller.handleTelemetry(new TelemetryData("v7", 45.4700, 9.1900, 80, 31.0));
+        controller.handleTelemetry(new TelemetryData("v7", 0.0, 0.0, 75, 25.0));   // no fix
+        controller.handleTelemetry(new TelemetryData("v7", 45.4800, 9.1900, 70, 28.0));
+
+        Trip trip = stored.get("v7").getTrip();
+        assertEquals(3, trip.getSamples());
+        assertEquals(2224, trip.getMeters(), 5);   // 2 x 0.01 deg of latitude
+        assertEquals(31.0, trip.getMaxTemperatureC());
+        assertEquals(70, trip.getMinBatteryPercent());
+
+        controller.endRental("v7");
+
+        assertNull(stored.get("v7").getTrip());
+        verify(paymentStorage).save(argThat(p -> Math.abs(p.getDistanceMeters() - 2224) <= 5
+                && p.getMaxTemperatureC() == 31.0
+                && p.getMinBatteryPercent() == 70));
+    }
+
+    @Test
+    void userMayHoldOneVehicle_andPaymentIsAttributed() {
+        UserStorage users = mock(UserStorage.class);
+        User ada = new User("Ada", "ada@example.com", "ROME");
+        when(users.findById(ada.getId())).thenReturn(Optional.of(ada));
+        controller = new SmartMoveCentralController(vehicleStorage, auditLog, zoneService, paymentStorage,
+                TariffPricingEngine.defaults(), users);
+
+        Vehicle first = new Vehicle("v8", VehicleType.E_SCOOTER, City.ROME);
+        Vehicle second = new Vehicle("v9", VehicleType.E_SCOOTER, City.ROME);
+        Map<String, Vehicle> stored = stored(first, second);
+
+        controller.reserveVehicle("v8", City.ROME, ada.getId());
+        assertEquals(ada.getId(), stored.get("v8").getUserId());
+        assertEquals(1, controller.activeRentals(ada.getId()));
+
+        assertThrows(IllegalStateException.class, () -> controller.reserveVehicle("v9", City.ROME, ada.getId()));
+        assertEquals(VehicleState.AVAILABLE, stored.get("v9").getState());
+        assertThrows(IllegalArgumentException.class, () -> controller.reserveVehicle("v9", City.ROME, "nobody"));
+        assertThrows(IllegalStateException.class, () -> controller.startRental("v8", City.ROME, "someone-else"));
+
+        controller.startRental("v8", City.ROME, ada.getId());
+        controller.endRental("v8", ada.getId());
+
+        assertNull(stored.get("v8").getUserId());
+        assertEquals(0, controller.activeRentals(ada.getId()));
+        verify(paymentStorage).save(argThat(p -> ada.getId().equals(p.getUserId())));
+        controller.reserveVehicle("v9", City.ROME, ada.getId());
+    }
+
+    @Test
+    void heldVehicleCannotBeStartedOrEndedWithoutTheHoldersId() {
+        UserStorage users = mock(UserStorage.class);
+        User ada = new User("Ada", "ada@example.com", "ROME");
+        when(users.findById(ada.getId())).thenReturn(Optional.of(ada));
+        controller = new SmartMoveCentralController(vehicleStorage, auditLog, zoneService, paymentStorage,
+                TariffPricingEngine.defaults(), users);
+        Vehicle v = new Vehicle("v10", VehicleType.E_SCOOTER, City.ROME);
+        Map<String, Vehicle> stored = stored(v);
+
+        controller.reserveVehicle("v10", City.ROME, ada.getId());
+        assertThrows(IllegalStateException.class, () -> controller.startRental("v10", City.ROME));
+        assertEquals(VehicleState.RESERVED, stored.get("v10").getState());
+
+        controller.startRental("v10", City.ROME, ada.getId());
+        assertThrows(IllegalStateException.class, () -> controller.endRental("v10"));
+        assertThrows(IllegalStateException.class, () -> controller.endRental("v10", "someone-else"));
+        assertEquals(VehicleState.IN_USE, stored.get("v10").getState());
+        assertEquals(ada.getId(), stored.get("v10").getUserId());
+        verify(paymentStorage, never()).save(any());
+
+        controller.endRental("v10", ada.getId());
+        assertEquals(VehicleState.AVAILABLE, stored.get("v10").getState());
+        assertEquals(0, controller.activeRentals(ada.getId()));
+    }
+
+    @Test
+    void changeStates_commitsValidVehiclesTogether_andReportsEachOne() {
+        controller = new SmartMoveCentralController(vehicleStorage, auditLog, zoneService, paymentStorage);
+        Vehicle a = new Vehicle("a", VehicleType.E_SCOOTER, City.ROME);
+        Vehicle b = new Vehicle("b", VehicleType.E_SCOOTER, City.ROME);
+        Vehicle riding = new Vehicle("c", VehicleType.MOPED, City.ROME);
+        riding.setState(VehicleState.IN_USE);
+        riding.setRentalActive(true);
+        when(vehicleStorage.findById("a")).thenReturn(Optional.of(a));
+        when(vehicleStorage.findById("b")).thenReturn(Optional.of(b));
+        when(vehicleStorage.findById("c")).thenReturn(Optional.of(riding));
+
+        List<SmartMoveCentralController.TransitionResult> results =
+                controller.changeStates(List.of("b", "missing", "c", "a"), VehicleState.RELOCATING, "rebalance");
+
+        assertEquals(List.of("b", "missing", "c", "a"), results.stream().map(r -> r.vehicleId).toList());
+        assertTrue(results.get(0).isOk());
+        assertEquals("Vehicle not found", results.get(1).error);
+        assertFalse(results.get(2).isOk());
+        assertTrue(results.get(3).isOk());
+
+        verify(vehicleStorage).saveAll(argThat(vs -> vs.size() == 2
+                && vs.stream().allMatch(v -> v.getState() == VehicleState.RELOCATING)));
+        verify(auditLog).appendAll(argThat(es -> es.size() == 2
+                && es.stream().allMatch(e -> e.toState == VehicleState.RELOCATING && "rebalance".equals(e.reason))));
+        verify(vehicleStorage, never()).save(any());
+        assertEquals(VehicleState.IN_USE, riding.getState());
+    }
+
+    @Test
+    void changeStates_rollsBackStorageWhenTheAuditAppendFails() {
+        controller = new SmartMoveCentralController(vehicleStorage, auditLog, zoneService, paymentStorage);
+        Vehicle a = new Vehicle("a", VehicleType.BICYCLE, City.MILAN);
+        when(vehicleStorage.findById("a")).thenReturn(Optional.of(a));
+        doThrow(new RuntimeException("disk full")).when(auditLog).append(any());
+
+        assertThrows(RuntimeException.class,
+                () -> controller.changeStates(List.of("a"), VehicleState.RELOCATING, "rebalance"));
+
+        verify(vehicleStorage).saveAll(argThat(vs -> vs.size() == 1 && vs.get(0).getState() == VehicleState.AVAILABLE));
+    }
+
+    @Test
+    void changeStates_lockingARentedVehicleEndsTheRental_andItCanBeRentedAgain() {
+        UserStorage users = mock(UserStorage.class);
+        User ada = new User("Ada", "ada@example.com", "ROME");
+        when(users.findById(ada.getId())).thenReturn(Optional.of(ada));
+        controller = new SmartMoveCentralController(vehicleStorage, auditLog, zoneService, paymentStorage,
+                TariffPricingEngine.defaults(), users);
+        Map<String, Vehicle> stored = stored(new Vehicle("v11", VehicleType.E_SCOOTER, City.ROME));
+
+        controller.reserveVehicle("v11", City.ROME, ada.getId());
+        controller.startRental("v11", City.ROME, ada.getId());
+        assertTrue(controller.changeStates(List.of("v11"), VehicleState.MAINTENANCE, "inspection").get(0).isOk());
+
+        Vehicle locked = stored.get("v11");
+        assertEquals(VehicleState.MAINTENANCE, locked.getState());
+        assertFalse(locked.isRentalActive());
+        assertNull(locked.getTrip());
+        assertNull(locked.getUserId());
+        assertEquals(0, controller.activeRentals(ada.getId()));
+
+        assertTrue(controller.changeStates(List.of("v11"), VehicleState.AVAILABLE, "repaired").get(0).isOk());
+        controller.reserveVehicle("v11", City.ROME, ada.getId());
+        controller.startRental("v11", City.ROME, ada.getId());
+        controller.endRental("v11", ada.getId());
+        assertEquals(VehicleState.AVAILABLE, stored.get("v11").getState());
+        verify(paymentStorage, times(1)).save(any());
+    }
+
+    @Test
+    void activeRentalIndexIsRebuiltFromStorage() {
+        Vehicle held = new Vehicle("v10", VehicleType.MOPED, City.MILAN);
+        held.setState(VehicleState.IN_USE);
+        held.setUserId("u1");
+        when(vehicleStorage.findWithUser()).thenReturn(List.of(held));
+
+        controller = new SmartMoveCentralController(vehicleStorage, auditLog, zoneService, paymentStorage);
+
+        assertEquals(1, controller.activeRentals("u1"));
     }
 
     @Test
@@ -109,16 +293,107 @@ class SmartMoveCentralControllerTest {
         v.setState(VehicleState.AVAILABLE);
         v.setRentalActive(false);
 
-        when(vehicleStorage.findById("v5")).thenReturn(Optional.of(v));
+        Map<String, Vehicle> stored = stored(v);
 
         TelemetryData t = new TelemetryData("v5", 0.0, 0.0, 50, 20.0);
         t.setMovementDetected(true);
 
         controller.handleTelemetry(t);
 
-        assertEquals(VehicleState.EMERGENCY_LOCK, v.getState());
+        assertEquals(VehicleState.EMERGENCY_LOCK, stored.get("v5").getState());
         verify(vehicleStorage).save(v);
-        verify(auditLog).append(eq("THEFT_ALARM"), contains("vehicleId=v5"));
+        verify(auditLog).appendAll(argThat(es -> audit(AuditEvent.THEFT_ALARM, "v5").matches(es.get(0))));
+    }
+
+    @Test
+    void sendTelemetry_safetyCriticalSamplesOvertakeTheRoutineBacklog() throws Exception {
+        Thread caller = Thread.currentThread();
+        List<String> processed = new CopyOnWriteArrayList<>();
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Vehicle parked = new Vehicle("parked", VehicleType.MOPED, City.ROME);
+        Vehicle rented = new Vehicle("rented", VehicleType.MOPED, City.ROME);
+        rented.setRentalActive(true);
+        when(vehicleStorage.findById(anyString())).thenAnswer(inv -> {
+            String id = inv.getArgument(0);
+            if (Thread.currentThread() != caller) {
+                processed.add(id);
+                if (id.equals("first")) {
+                    busy.countDown();
+                    release.await();
+                }
+            }
+            return Optional.ofNullable(id.equals("parked") ? parked : id.equals("rented") ? rented : null);
+        });
+        controller = new SmartMoveCentralController(vehicleStorage, auditLog, zoneService, paymentStorage);
+
+        // the worker sees "rented" once, so the ingest thread knows it is rented
+        controller.sendTelemetry(new TelemetryData("rented", 0, 0, 50, 20));
+        controller.sendTelemetry(new TelemetryData("first", 0, 0, 50, 20));
+        assertTrue(busy.await(5, TimeUnit.SECONDS));   // worker is now stuck on "first"
+
+        controller.sendTelemetry(new TelemetryData("ping", 0, 0, 50, 20));
+        TelemetryData ridden = new TelemetryData("rented", 0, 0, 50, 20);
+        ridden.setMovementDetected(true);
+        controller.sendTelemetry(ridden);
+        controller.sendTelemetry(new TelemetryData("hot", 0, 0, 50, 75));
+        TelemetryData stolen = new TelemetryData("parked", 0, 0, 50, 20);
+        stolen.setMovementDetected(true);
+        controller.sendTelemetry(stolen);
+        controller.sendTelemetry(new TelemetryData("flat", 0, 0, 3, 20));
+        assertEquals(5, controller.telemetryQueueDepth());
+
+        release.countDown();
+        // both "rented" samples processed; routing never read the store
+        verify(vehicleStorage, timeout(5000).times(2)).findById("rented");
+        verify(vehicleStorage, times(1)).findById("parked");
+        // urgent lane first, each lane in arrival order; movement during a rental is routine
+        assertEquals(List.of("rented", "first", "hot", "parked", "flat", "ping", "rented"), processed);
+    }
+
+    @Test
+    void sendTelemetry_routingFollowsRentalsStartedAndEnded() throws Exception {
+        Thread caller = Thread.currentThread();
+        List<String> processed = new CopyOnWriteArrayList<>();
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Vehicle riding = new Vehicle("riding", VehicleType.MOPED, City.ROME);
+        Vehicle returned = new Vehicle("returned", VehicleType.MOPED, City.ROME);
+        riding.setState(VehicleState.RESERVED);
+        returned.setState(VehicleState.RESERVED);
+        Map<String, Vehicle> stored = stored(riding, returned);
+        when(vehicleStorage.findById(anyString())).thenAnswer(inv -> {
+            String id = inv.getArgument(0);
+            if (Thread.currentThread() != caller) {
+                processed.add(id);
+                if (id.equals("gate")) {
+                    busy.countDown();
+                    release.await();
+                }
+            }
+            return Optional.ofNullable(stored.get(id));
+        });
+        controller = new SmartMoveCentralController(vehicleStorage, auditLog, zoneService, paymentStorage);
+
+        controller.startRental("riding", City.ROME);
+        controller.startRental("returned", City.ROME);
+        controller.endRental("returned");
+        controller.sendTelemetry(new TelemetryData("gate", 0, 0, 50, 20));
+        assertTrue(busy.await(5, TimeUnit.SECONDS));
+
+        for (String id : List.of("riding", "returned")) {
+            TelemetryData moving = new TelemetryData(id, 0, 0, 50, 20);
+            moving.setMovementDetected(true);
+            controller.sendTelemetry(moving);
+        }
+        release.countDown();
+
+        verify(vehicleStorage, timeout(5000).times(2)).findById("riding");   // start, then the sample
+        // the returned vehicle moving is a theft alarm, so it overtakes the ride
+        assertEquals(List.of("gate", "returned", "riding"), processed);
+        assertEquals(VehicleState.EMERGENCY_LOCK, stored.get("returned").getState());
     }
 
     @Test
@@ -129,7 +404,7 @@ class SmartMoveCentralControllerTest {
         v.setState(VehicleState.IN_USE);
         v.setRentalActive(true);
 
-        when(vehicleStorage.findById("v6")).thenReturn(Optional.of(v));
+        Map<String, Vehicle> stored = stored(v);
         when(zoneService.isRestricted(eq(City.ROME), eq(VehicleType.E_SCOOTER), anyDouble(), anyDouble()))
                 .thenReturn(true);
 
@@ -137,7 +412,41 @@ class SmartMoveCentralControllerTest {
 
         controller.handleTelemetry(t);
 
-        assertEquals(VehicleState.EMERGENCY_LOCK, v.getState());
+        assertEquals(VehicleState.EMERGENCY_LOCK, stored.get("v6").getState());
         verify(vehicleStorage).save(v);
     }
+
+    @Test
+    void failedCommitNeverShowsOnTheStoredVehicle() {
+        controller = new SmartMoveCentralController(vehicleStorage, auditLog, zoneService, paymentStorage);
+        Vehicle v = new Vehicle("v12", VehicleType.E_SCOOTER, City.ROME);
+        v.setState(VehicleState.RESERVED);
+        Map<String, Vehicle> stored = stored(v);
+        doThrow(new RuntimeException("disk full")).when(auditLog).append(any());
+
+        assertThrows(RuntimeException.class, () -> controller.startRental("v12", City.ROME));
+
+        // readers holding the stored instance never saw the rental
+        assertEquals(VehicleState.RESERVED, v.getState());
+        assertFalse(v.isRentalActive());
+        assertNull(v.getTrip());
+        assertEquals(VehicleState.RESERVED, stored.get("v12").getState());
+    }
+
+    /** Backs the mocked storage with a map: operations save a changed copy, not the vehicle they read. */
+    private Map<String, Vehicle> stored(Vehicle... vehicles) {
+        Map<String, Vehicle> stored = new ConcurrentHashMap<>();
+        for (Vehicle v : vehicles) stored.put(v.getId(), v);
+        when(vehicleStorage.findById(anyString())).thenAnswer(inv -> Optional.ofNullable(stored.get(inv.<String>getArgument(0))));
+        doAnswer(inv -> stored.put(inv.<Vehicle>getArgument(0).getId(), inv.getArgument(0))).when(vehicleStorage).save(any());
+        doAnswer(inv -> {
+            for (Vehicle v : inv.<List<Vehicle>>getArgument(0)) stored.put(v.getId(), v);
+            return null;
+        }).when(vehicleStorage).saveAll(anyList());
+        return stored;
+    }
+
+    private static ArgumentMatcher<AuditLogEntry> audit(AuditEvent event, String vehicleId) {
+        return e -> e.event == event && vehicleId.equals(e.vehicleId);
+    }
 }
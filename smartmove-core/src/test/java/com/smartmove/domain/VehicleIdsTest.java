@@ -0,0 +1,79 @@
+package com.smartmove.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VehicleIdsTest {
+
+    @Test
+    void handlesAreDense_andStableForEqualIds() {
+        VehicleIds ids = new VehicleIds();
+        assertEquals(0, ids.handle("a"));
+        assertEquals(1, ids.handle("b"));
+        assertEquals(0, ids.handle(new String("a")));
+        assertEquals(2, ids.size());
+        assertEquals("b", ids.id(1));
+        assertThrows(IllegalArgumentException.class, () -> ids.id(2));
+        assertThrows(IllegalArgumentException.class, () -> ids.handle(null));
+    }
+
+    @Test
+    void findAndCanonicalDoNotRegister() {
+        VehicleIds ids = new VehicleIds();
+        String registered = "v-1";
+        ids.handle(registered);
+
+        assertEquals(-1, ids.find("v-2"));
+        assertEquals(-1, ids.find(null));
+        String other = new String("v-2");
+        assertSame(other, ids.canonical(other));
+        assertSame(registered, ids.canonical(new String("v-1")));
+        assertEquals(1, ids.size());
+    }
+
+    @Test
+    void growsPastTheInitialTable() {
+        VehicleIds ids = new VehicleIds();
+        for (int i = 0; i < 5000; i++) assertEquals(i, ids.handle("v" + i));
+        for (int i = 0; i < 5000; i++) assertEquals("v" + i, ids.id(i));
+    }
+
+    @Test
+    void concurrentRegistrationHandsOutEachHandleOnce() throws InterruptedException {
+        VehicleIds ids = new VehicleIds();
+        int threads = 8, perThread = 2000;
+        Set<Integer> seen = ConcurrentHashMap.newKeySet();
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread w = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // every thread registers the same ids, racing for each
+                for (int i = 0; i < perThread; i++) {
+                    int h = ids.handle("v" + i);
+                    assertEquals("v" + i, ids.id(h));
+                    seen.add(h);
+                }
+            });
+            workers.add(w);
+            w.start();
+        }
+        go.countDown();
+        for (Thread w : workers) w.join();
+
+        assertEquals(perThread, ids.size());
+        assertEquals(perThread, seen.size());
+        for (int i = 0; i < perThread; i++) assertTrue(seen.contains(i));
+    }
+}
@@ -0,0 +1,77 @@
+package com.smartmove.feed;
+
+import com.smartmove.domain.City;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.domain.VehicleState;
+import com.smartmove.domain.VehicleType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VehicleChangeFeedTest {
+
+    @Test
+    void publishIncrementsPerVehicleVersion() {
+        VehicleChangeFeed feed = new VehicleChangeFeed();
+        Vehicle a = new Vehicle("a", VehicleType.E_SCOOTER, City.LONDON);
+        Vehicle b = new Vehicle("b", VehicleType.BICYCLE, City.ROME);
+
+        assertEquals(0, feed.version("a"));
+        assertEquals(1, feed.publish(a));
+        assertEquals(2, feed.publish(a));
+        assertEquals(1, feed.publish(b));
+        assertEquals(2, feed.version("a"));
+    }
+
+    @Test
+    void subscribersOnlyReceiveMatchingVehicles() {
+        VehicleChangeFeed feed = new VehicleChangeFeed();
+        List<VehicleChangeEvent> byId = new ArrayList<>();
+        List<VehicleChangeEvent> byCity = new ArrayList<>();
+
+        feed.subscribe(VehicleChangeFeed.forVehicles(Set.of("a")), byId::add);
+        feed.subscribe(VehicleChangeFeed.forCity(City.ROME), byCity::add);
+
+        feed.publish(new Vehicle("a", VehicleType.E_SCOOTER, City.LONDON));
+        feed.publish(new Vehicle("b", VehicleType.BICYCLE, City.ROME));
+
+        assertEquals(1, byId.size());
+        assertEquals("a", byId.get(0).getVehicleId());
+        assertEquals(1, byCity.size());
+        assertEquals("b", byCity.get(0).getVehicleId());
+    }
+
+    @Test
+    void eventCarriesSnapshotNotLiveInstance() {
+        VehicleChangeFeed feed = new VehicleChangeFeed();
+        List<VehicleChangeEvent> events = new ArrayList<>();
+        feed.subscribe(v -> true, events::add);
+
+        Vehicle v = new Vehicle("a", VehicleType.E_SCOOTER, City.LONDON);
+        feed.publish(v);
+        v.setState(VehicleState.IN_USE);
+
+        assertEquals(VehicleState.AVAILABLE, events.get(0).getVehicle().getState());
+    }
+
+    @Test
+    void closedSubscriptionStopsReceiving_andFailingListenerIsIsolated() {
+        VehicleChangeFeed feed = new VehicleChangeFeed();
+        List<VehicleChangeEvent> events = new ArrayList<>();
+
+        feed.subscribe(v -> true, e -> { throw new RuntimeException("boom"); });
+        VehicleChangeFeed.Subscription sub = feed.subscribe(v -> true, events::add);
+
+        Vehicle v = new Vehicle("a", VehicleType.E_SCOOTER, City.LONDON);
+        feed.publish(v);
+        sub.close();
+        feed.publish(v);
+
+        assertEquals(1, events.size());
+        assertEquals(1, feed.subscriberCount());
+    }
+}
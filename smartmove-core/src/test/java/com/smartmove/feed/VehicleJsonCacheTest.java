@@ -0,0 +1,90 @@
+package com.smartmove.feed;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartmove.domain.City;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.domain.VehicleState;
+import com.smartmove.domain.VehicleType;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VehicleJsonCacheTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final VehicleChangeFeed feed = new VehicleChangeFeed();
+    private final Map<String, Vehicle> stored = new HashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final VehicleJsonCache cache = new VehicleJsonCache(feed, id -> {
+        loads.incrementAndGet();
+        return Optional.ofNullable(stored.get(id));
+    }, mapper);
+
+    private Vehicle store(String id) {
+        Vehicle v = new Vehicle(id, VehicleType.E_SCOOTER, City.ROME);
+        v.setState(VehicleState.AVAILABLE);
+        stored.put(id, v);
+        return v;
+    }
+
+    @Test
+    void serializesOncePerVersion_likeJackson() throws Exception {
+        Vehicle v = store("v1");
+        VehicleJsonCache.Entry first = cache.get("v1");
+        assertArrayEquals(mapper.writeValueAsBytes(v), first.json);
+        assertSame(first, cache.get("v1"));
+        assertEquals(1, loads.get());
+
+        v.setState(VehicleState.MAINTENANCE);
+        feed.publish(v);
+        VehicleJsonCache.Entry second = cache.get("v1");
+        assertNotEquals(first.etag, second.etag);
+        assertArrayEquals(mapper.writeValueAsBytes(v), second.json);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void ifNoneMatchIsAnsweredWithoutLoading() {
+        store("v1");
+        String etag = cache.get("v1").etag;
+        int before = loads.get();
+
+        assertEquals(etag, cache.notModified("v1", etag));
+        assertEquals(etag, cache.notModified("v1", "\"other\", W/" + etag));
+        assertNull(cache.notModified("v1", "\"other\""));
+        assertNull(cache.notModified("v1", null));
+        assertEquals(before, loads.get());
+
+        feed.touch("v1");   // e.g. a rolled-back write
+        assertNull(cache.notModified("v1", etag));
+    }
+
+    @Test
+    void starMatchesExistingVehiclesOnly() {
+        store("v1");
+        assertNotNull(cache.notModified("v1", "*"));
+        assertNull(cache.notModified("missing", "*"));
+    }
+
+    @Test
+    void removedVehiclesAreNotServedFromTheCache() {
+        store("v1");
+        assertNotNull(cache.get("v1"));
+        stored.remove("v1");
+        feed.touch("v1");   // as the controller does when a vehicle moves to another node
+        assertNull(cache.get("v1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void etagsDifferBetweenInstances() {
+        store("v1");
+        VehicleJsonCache restarted = new VehicleJsonCache(new VehicleChangeFeed(), id -> Optional.ofNullable(stored.get(id)), mapper);
+        assertNotEquals(cache.get("v1").etag, restarted.get("v1").etag);
+    }
+}
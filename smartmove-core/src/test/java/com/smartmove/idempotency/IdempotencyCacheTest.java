@@ -0,0 +1,71 @@
+package com.smartmove.idempotency;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyCacheTest {
+
+    private static final byte[] OK = "{\"ok\":true}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void completedKeyIsReplayed_andReuseForAnotherRequestIsRejected() {
+        IdempotencyCache cache = new IdempotencyCache(16, 60_000);
+
+        assertEquals(IdempotencyCache.Kind.EXECUTE, cache.begin("/end", "k1", 42).kind);
+        cache.complete("/end", "k1", 200, OK);
+
+        IdempotencyCache.Outcome retry = cache.begin("/end", "k1", 42);
+        assertEquals(IdempotencyCache.Kind.REPLAY, retry.kind);
+        assertEquals(200, retry.response.status);
+        assertArrayEquals(OK, retry.response.body);
+
+        assertEquals(IdempotencyCache.Kind.MISMATCH, cache.begin("/end", "k1", 7).kind);
+        // same key on another endpoint is a different request
+        assertEquals(IdempotencyCache.Kind.EXECUTE, cache.begin("/start", "k1", 42).kind);
+    }
+
+    @Test
+    void retryWaitsForTheRunningRequest_andAbandonedKeysCanRunAgain() throws Exception {
+        IdempotencyCache cache = new IdempotencyCache(16, 60_000);
+        assertEquals(IdempotencyCache.Kind.EXECUTE, cache.begin("/start", "k", 1).kind);
+        assertEquals(IdempotencyCache.Kind.IN_PROGRESS, cache.begin("/start", "k", 1).kind);
+
+        CompletableFuture<IdempotencyCache.Response> waiter =
+                CompletableFuture.supplyAsync(() -> cache.await("/start", "k", 5_000));
+        cache.complete("/start", "k", 409, OK);
+        assertEquals(409, waiter.get(5, TimeUnit.SECONDS).status);
+
+        assertEquals(IdempotencyCache.Kind.EXECUTE, cache.begin("/end", "k", 1).kind);
+        cache.abandon("/end", "k");
+        assertEquals(IdempotencyCache.Kind.EXECUTE, cache.begin("/end", "k", 1).kind);
+    }
+
+    @Test
+    void oldestKeysAreEvicted_andIndexStaysConsistentUnderChurn() {
+        IdempotencyCache cache = new IdempotencyCache(100, 60_000);
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(IdempotencyCache.Kind.EXECUTE, cache.begin("/telemetry", "key-" + i, i).kind);
+            cache.complete("/telemetry", "key-" + i, 200, OK);
+        }
+        assertEquals(100, cache.size());
+        for (int i = 9_900; i < 10_000; i++) {
+            assertEquals(IdempotencyCache.Kind.REPLAY, cache.begin("/telemetry", "key-" + i, i).kind, "key-" + i);
+        }
+        assertEquals(IdempotencyCache.Kind.EXECUTE, cache.begin("/telemetry", "key-9899", 9899).kind);
+    }
+
+    @Test
+    void expiredKeysAreForgotten() throws Exception {
+        IdempotencyCache cache = new IdempotencyCache(16, 20);
+        cache.begin("/end", "k", 1);
+        cache.complete("/end", "k", 200, OK);
+        Thread.sleep(40);
+        assertEquals(IdempotencyCache.Kind.EXECUTE, cache.begin("/end", "k", 1).kind);
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,51 @@
+package com.smartmove.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsRegistryTest {
+
+    @Test
+    void histogramPercentilesStayWithinBucketError() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long i = 1; i <= 10_000; i++) h.record(i * 1_000);   // 1 us .. 10 ms
+
+        assertEquals(10_000, h.count());
+        assertEquals(10_000_000, h.maxNanos());
+        assertEquals(5_000_000, h.percentile(0.5), 5_000_000 * 0.07);
+        assertEquals(9_900_000, h.percentile(0.99), 9_900_000 * 0.07);
+        assertEquals(10_000_000, h.percentile(1.0));
+        assertEquals(0, new LatencyHistogram().percentile(0.99));
+    }
+
+    @Test
+    void bucketIndexIsMonotonic() {
+        int previous = -1;
+        for (long v = 0; v < 1L << 20; v += 7) {
+            int idx = LatencyHistogram.indexOf(v);
+            assertTrue(idx >= previous);
+            assertTrue(LatencyHistogram.upperBound(idx) >= v);
+            previous = idx;
+        }
+    }
+
+    @Test
+    void writesPrometheusText() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("x_total", "things").inc();
+        registry.gauge("x_depth", "queue", () -> 7);
+        registry.histogram("x_seconds", "latency", "op", "start").record(2_000_000);
+
+        StringBuilder out = new StringBuilder();
+        registry.writePrometheus(out);
+        String text = out.toString();
+
+        assertTrue(text.contains("# TYPE x_total counter\nx_total 1\n"));
+        assertTrue(text.contains("x_depth 7\n"));
+        assertTrue(text.contains("# TYPE x_seconds summary"));
+        assertTrue(text.contains("x_seconds{op=\"start\",quantile=\"0.99\"}"));
+        assertTrue(text.contains("x_seconds_count{op=\"start\"} 1\n"));
+        assertThrows(IllegalArgumentException.class, () -> registry.counter("x_seconds", "clash"));
+    }
+}
@@ -0,0 +1,110 @@
+package com.smartmove.payments;
+
+import com.smartmove.codec.StorageCodecs;
+import com.smartmove.domain.City;
+import com.smartmove.domain.Payment;
+import com.smartmove.domain.VehicleType;
+import com.smartmove.storage.JsonPaymentStorage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentRollupsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Payment payment(City city, VehicleType type, long base, long congestion) {
+        Payment p = new Payment("v-" + city, city, base, congestion);
+        p.setVehicleType(type);
+        return p;
+    }
+
+    @Test
+    void savesAreRolledUpPerCityTypeAndPeriod() {
+        JsonPaymentStorage store = new JsonPaymentStorage(tempDir.resolve("payments.json"), StorageCodecs.JSON);
+        PaymentRollups rollups = new PaymentRollups(tempDir.resolve("rollups.json"), StorageCodecs.JSON);
+        AggregatingPaymentStorage payments = new AggregatingPaymentStorage(store, rollups);
+
+        payments.save(payment(City.LONDON, VehicleType.MOPED, 1000, 500));
+        payments.save(payment(City.LONDON, VehicleType.E_SCOOTER, 1000, 500));
+        payments.save(payment(City.ROME, VehicleType.MOPED, 1000, 0));
+
+        String today = PaymentRollups.period("today");
+        PaymentRollups.Totals london = rollups.totals(City.LONDON, null, today);
+        assertEquals(2, london.count);
+        assertEquals(1000, london.congestionCents);
+        assertEquals(3000, london.totalCents);
+
+        PaymentRollups.Totals mopeds = rollups.totals(null, VehicleType.MOPED, PaymentRollups.ALL_TIME);
+        assertEquals(2, mopeds.count);
+        assertEquals(2500, mopeds.totalCents);
+
+        assertEquals(3, rollups.totals(null, null, PaymentRollups.ALL_TIME).count);
+        assertEquals(0, rollups.totals(City.MILAN, null, PaymentRollups.ALL_TIME).count);
+        assertEquals(0, rollups.totals(null, null, "2001-01-01").count);
+    }
+
+    @Test
+    void snapshotIsReloaded_andMissedPaymentsAreFoldedInOnStartup() {
+        Path paymentsFile = tempDir.resolve("payments.json");
+        Path rollupFile = tempDir.resolve("rollups.json");
+        JsonPaymentStorage store = new JsonPaymentStorage(paymentsFile, StorageCodecs.JSON);
+        AggregatingPaymentStorage payments =
+                new AggregatingPaymentStorage(store, new PaymentRollups(rollupFile, StorageCodecs.JSON));
+        payments.save(payment(City.MILAN, VehicleType.BICYCLE, 1000, 0));
+        payments.flush();
+
+        // stored, but the process died before the snapshot was written
+        payments.save(payment(City.MILAN, VehicleType.BICYCLE, 1000, 0));
+
+        PaymentRollups reopened = new PaymentRollups(rollupFile, StorageCodecs.JSON);
+        assertEquals(1, reopened.paymentCount());
+        new AggregatingPaymentStorage(store, reopened);
+        assertEquals(2, reopened.paymentCount());
+        assertEquals(2000, reopened.totals(City.MILAN, VehicleType.BICYCLE, PaymentRollups.ALL_TIME).totalCents);
+    }
+
+    @Test
+    void snapshotIsNotRewrittenPerPayment() {
+        Path rollupFile = tempDir.resolve("rollups.json");
+        JsonPaymentStorage store = new JsonPaymentStorage(tempDir.resolve("payments.json"), StorageCodecs.JSON);
+        AggregatingPaymentStorage payments =
+                new AggregatingPaymentStorage(store, new PaymentRollups(rollupFile, StorageCodecs.JSON));
+        for (int i = 0; i < 10; i++) payments.save(payment(City.ROME, VehicleType.MOPED, 1000, 0));
+        assertFalse(Files.exists(rollupFile));
+
+        payments.flush();
+        PaymentRollups reopened = new PaymentRollups(rollupFile, StorageCodecs.JSON);
+        assertEquals(10, reopened.paymentCount());
+        assertEquals(10_000, reopened.totals(City.ROME, null, PaymentRollups.ALL_TIME).totalCents);
+    }
+
+    @Test
+    void corruptSnapshotIsRebuiltFromPayments() throws Exception {
+        Path rollupFile = tempDir.resolve("rollups.json");
+        JsonPaymentStorage store = new JsonPaymentStorage(tempDir.resolve("payments.json"), StorageCodecs.JSON);
+        store.save(payment(City.ROME, VehicleType.E_SCOOTER, 1000, 0));
+        Files.writeString(rollupFile, "{not json");
+
+        PaymentRollups rollups = new PaymentRollups(rollupFile, StorageCodecs.SMILE);
+        new AggregatingPaymentStorage(store, rollups);
+        assertEquals(1, rollups.totals(City.ROME, null, PaymentRollups.ALL_TIME).count);
+        assertSame(StorageCodecs.SMILE, StorageCodecs.detect(Files.readAllBytes(rollupFile)));
+    }
+
+    @Test
+    void periodIsValidated() {
+        assertEquals(PaymentRollups.ALL_TIME, PaymentRollups.period(null));
+        assertEquals(LocalDate.now(ZoneOffset.UTC).toString(), PaymentRollups.period("today"));
+        assertEquals("2026-10-19T07", PaymentRollups.period("2026-10-19T07"));
+        assertThrows(IllegalArgumentException.class, () -> PaymentRollups.period("2026-10-19T24"));
+        assertThrows(IllegalArgumentException.class, () -> PaymentRollups.period("yesterday"));
+    }
+}
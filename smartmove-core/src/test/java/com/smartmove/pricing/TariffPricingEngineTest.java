@@ -0,0 +1,86 @@
+package com.smartmove.pricing;
+
+import com.smartmove.domain.City;
+import com.smartmove.domain.VehicleType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TariffPricingEngineTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static long at(String localDateTime, City city) {
+        return ZonedDateTime.of(LocalDateTime.parse(localDateTime), TariffPricingEngine.zoneOf(city))
+                .toInstant().toEpochMilli();
+    }
+
+    @Test
+    void defaultsKeepTheFixedLabFares() {
+        TariffPricingEngine engine = TariffPricingEngine.defaults();
+        long now = System.currentTimeMillis();
+        assertEquals(1000, engine.baseFareCents(City.ROME, VehicleType.MOPED, now, 3_600_000, 5000));
+        assertEquals(500, engine.congestionCents(City.LONDON, VehicleType.BICYCLE, now));
+        assertEquals(0, engine.congestionCents(City.MILAN, VehicleType.BICYCLE, now));
+    }
+
+    @Test
+    void mostSpecificTariffWins_andMinutesRoundUp() {
+        TariffConfig config = new TariffConfig();
+        config.tariffs.add(new TariffConfig.Tariff("ROME", "E_SCOOTER", 50, 0));
+        config.tariffs.get(0).perMinuteCents = 20;
+        config.tariffs.get(0).perKmCents = 100;
+        config.tariffs.add(new TariffConfig.Tariff(TariffConfig.ANY, TariffConfig.ANY, 100, 0));
+        config.tariffs.get(1).minimumCents = 300;
+        TariffPricingEngine engine = TariffPricingEngine.compile(config);
+
+        long start = at("2026-10-19T12:00", City.ROME);
+        // 50 + 20 * 3 min (2m01s rounds up) + 100 * 2.5 km
+        assertEquals(360, engine.baseFareCents(City.ROME, VehicleType.E_SCOOTER, start, 121_000, 2500));
+        // zero-length trips still pay one minute
+        assertEquals(70, engine.baseFareCents(City.ROME, VehicleType.E_SCOOTER, start, 0, 0));
+        // falls back to the wildcard tariff, raised to its minimum
+        assertEquals(300, engine.baseFareCents(City.ROME, VehicleType.MOPED, start, 60_000, 0));
+    }
+
+    @Test
+    void timeBandsAndCongestionHoursUseLocalTime_acrossDst() {
+        TariffConfig config = new TariffConfig();
+        TariffConfig.Tariff london = new TariffConfig.Tariff("LONDON", TariffConfig.ANY, 1000, 500);
+        london.congestionFromHour = 7;
+        london.congestionToHour = 18;
+        config.tariffs.add(london);
+        TariffConfig.TimeBand night = new TariffConfig.TimeBand();
+        night.fromHour = 22;
+        night.toHour = 6;
+        night.percent = 150;
+        config.timeBands.add(night);
+        TariffPricingEngine engine = TariffPricingEngine.compile(config);
+
+        // 07:30 local is 06:30 UTC in summer and 07:30 UTC in winter
+        assertEquals(500, engine.congestionCents(City.LONDON, VehicleType.MOPED, at("2026-07-01T07:30", City.LONDON)));
+        assertEquals(500, engine.congestionCents(City.LONDON, VehicleType.MOPED, at("2026-12-01T07:30", City.LONDON)));
+        assertEquals(0, engine.congestionCents(City.LONDON, VehicleType.MOPED, at("2026-07-01T06:59", City.LONDON)));
+        assertEquals(0, engine.congestionCents(City.LONDON, VehicleType.MOPED, at("2026-12-01T18:00", City.LONDON)));
+
+        assertEquals(1500, engine.baseFareCents(City.LONDON, VehicleType.MOPED, at("2026-07-01T23:10", City.LONDON), 0, 0));
+        assertEquals(1000, engine.baseFareCents(City.LONDON, VehicleType.MOPED, at("2026-07-01T12:00", City.LONDON), 0, 0));
+    }
+
+    @Test
+    void loadWritesDefaults_andRejectsUnknownCities() throws Exception {
+        Path file = tempDir.resolve("tariffs.json");
+        TariffPricingEngine.load(file);
+        assertTrue(Files.readString(file).contains("\"congestionCents\" : 500"));
+
+        Files.writeString(file, "{\"tariffs\":[{\"city\":\"PARIS\",\"unlockCents\":100}]}");
+        assertThrows(IllegalArgumentException.class, () -> TariffPricingEngine.load(file));
+    }
+}
@@ -0,0 +1,173 @@
+package com.smartmove.replication;
+
+import com.smartmove.audit.AuditEvent;
+import com.smartmove.audit.AuditLogEntry;
+import com.smartmove.audit.AuditLogService;
+import com.smartmove.cdc.ChangeCapturingVehicleStorage;
+import com.smartmove.cdc.ChangeLog;
+import com.smartmove.codec.StorageCodecs;
+import com.smartmove.controller.SmartMoveCentralController;
+import com.smartmove.domain.City;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.domain.VehicleState;
+import com.smartmove.domain.VehicleType;
+import com.smartmove.storage.JsonVehicleStorage;
+import com.smartmove.storage.PaymentStorage;
+import com.smartmove.storage.VehicleStorage;
+import com.smartmove.zones.ZoneService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class ReplicationTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ChangeLog changeLog;
+    private ReplicationServer server;
+    private ReplicaClient replica;
+
+    @AfterEach
+    void tearDown() {
+        if (replica != null) replica.close();
+        if (server != null) server.close();
+        if (changeLog != null) changeLog.close();
+    }
+
+    @Test
+    void auditLogReadServesATailAcrossIndexIntervals_inBothFormats() {
+        for (var codec : List.of(StorageCodecs.JSON, StorageCodecs.SMILE)) {
+            AuditLogService audit = new AuditLogService(tempDir.resolve(codec.name() + "/audit.log"), codec);
+            for (int i = 0; i < 600; i++) audit.append(AuditLogEntry.of(AuditEvent.TELEMETRY, "v" + i).telemetry(i % 100, 20.0));
+
+            AuditLogService reopened = new AuditLogService(tempDir.resolve(codec.name() + "/audit.log"), codec);
+            List<AuditLogEntry> page = reopened.read(255, 300);
+            assertEquals(300, page.size());
+            assertEquals(256, page.get(0).id);
+            assertEquals(555, page.get(299).id);
+            assertEquals(List.of(), reopened.read(600, 10));
+            assertEquals(600, reopened.lastId());
+        }
+    }
+
+    @Test
+    void replicaFollowsVehiclesAndAuditChain() throws Exception {
+        VehicleStorage storage = primaryStorage();
+        AuditLogService primaryAudit = new AuditLogService(tempDir.resolve("primary/audit-log.jsonl"));
+        SmartMoveCentralController controller = new SmartMoveCentralController(storage, primaryAudit,
+                mock(ZoneService.class), mock(PaymentStorage.class));
+        try {
+            // written before the replica exists: arrives with the snapshot
+            controller.registerVehicle(new Vehicle("v1", VehicleType.E_SCOOTER, City.ROME));
+            startReplication(storage, primaryAudit, new AuditLogService(tempDir.resolve("replica/audit-log.jsonl")));
+
+            controller.registerVehicle(new Vehicle("v2", VehicleType.MOPED, City.MILAN));
+            controller.reserveVehicle("v2", City.MILAN);
+
+            await(() -> replica.changeOffset() == changeLog.lastOffset()
+                    && replica.auditId() == primaryAudit.lastId());
+            assertEquals(VehicleState.RESERVED, replica.findById("v2").orElseThrow().getState());
+            assertTrue(replica.findById("v1").isPresent());
+            assertEquals(1, replica.findAll(City.ROME).size());
+            await(replica::isFresh);
+
+            AuditLogEntry last = primaryAudit.read(primaryAudit.lastId() - 1, 1).get(0);
+            assertEquals(last.checksum, new AuditLogService(tempDir.resolve("replica/audit-log.jsonl"))
+                    .read(last.id - 1, 1).get(0).checksum);
+        } finally {
+            controller.shutdown();
+        }
+    }
+
+    @Test
+    void snapshotLargerThanAChunkArrivesWhole() throws Exception {
+        VehicleStorage storage = primaryStorage();
+        List<Vehicle> fleet = new ArrayList<>();
+        for (int i = 0; i < ReplicationServer.SNAPSHOT_CHUNK * 2 + 500; i++) {
+            fleet.add(new Vehicle("v" + i, VehicleType.BICYCLE, City.LONDON));
+        }
+        storage.saveAll(fleet);
+
+        startReplication(storage, new AuditLogService(tempDir.resolve("primary/audit-log.jsonl")),
+                new AuditLogService(tempDir.resolve("replica/audit-log.jsonl")));
+        await(() -> replica.changeOffset() == changeLog.lastOffset());
+        assertEquals(fleet.size(), replica.findAll(null).size());
+    }
+
+    @Test
+    void snapshotPartsAreOnlyServedOnceComplete() throws Exception {
+        replica = new ReplicaClient(InetSocketAddress.createUnresolved("localhost", 1),
+                new AuditLogService(tempDir.resolve("replica/audit-log.jsonl")), 2000);
+        replica.apply(snapshotPart(0, false, "a"));
+        replica.apply(snapshotPart(1, false, "b"));
+        assertTrue(replica.findAll(null).isEmpty());
+        assertEquals(0, replica.changeOffset());
+
+        replica.apply(snapshotPart(2, true, "c"));
+        assertEquals(3, replica.findAll(null).size());
+        assertEquals(7, replica.changeOffset());
+
+        assertThrows(IOException.class, () -> replica.apply(snapshotPart(1, true, "d")));
+    }
+
+    private static ReplicationProtocol.Batch snapshotPart(int part, boolean last, String vehicleId) {
+        ReplicationProtocol.Batch batch = new ReplicationProtocol.Batch();
+        batch.changeHead = 7;
+        batch.snapshotOffset = 7L;
+        batch.snapshot = List.of(new Vehicle(vehicleId, VehicleType.BICYCLE, City.ROME));
+        batch.snapshotPart = part;
+        batch.snapshotLast = last;
+        return batch;
+    }
+
+    @Test
+    void replicaWithADivergentAuditChainStopsAndGoesStale() throws Exception {
+        AuditLogService primaryAudit = new AuditLogService(tempDir.resolve("primary/audit-log.jsonl"));
+        primaryAudit.append(AuditLogEntry.of(AuditEvent.VEHICLE_REGISTERED, "v1").city(City.ROME));
+        primaryAudit.append(AuditLogEntry.of(AuditEvent.VEHICLE_REGISTERED, "v2").city(City.ROME));
+
+        AuditLogService replicaAudit = new AuditLogService(tempDir.resolve("replica/audit-log.jsonl"));
+        replicaAudit.append(AuditLogEntry.of(AuditEvent.VEHICLE_REGISTERED, "forged").city(City.ROME));
+
+        startReplication(primaryStorage(), primaryAudit, replicaAudit);
+
+        await(() -> replica.lastError() != null);
+        assertTrue(replica.lastError().contains("does not extend"), replica.lastError());
+        assertEquals(1, replicaAudit.lastId());
+        assertFalse(replica.isFresh());
+    }
+
+    private VehicleStorage primaryStorage() {
+        changeLog = new ChangeLog(tempDir.resolve("primary/changes.jsonl"));
+        return new ChangeCapturingVehicleStorage(
+                new JsonVehicleStorage(tempDir.resolve("primary/vehicles.json")), changeLog);
+    }
+
+    private void startReplication(VehicleStorage storage, AuditLogService primaryAudit, AuditLogService replicaAudit) {
+        server = new ReplicationServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                changeLog, primaryAudit, storage);
+        server.start();
+        replica = new ReplicaClient(InetSocketAddress.createUnresolved("localhost", server.port()), replicaAudit, 2000);
+        replica.start();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+}
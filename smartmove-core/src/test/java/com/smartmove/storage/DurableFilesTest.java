@@ -0,0 +1,29 @@
+package com.smartmove.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DurableFilesTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void replaceSwapsInTheNewContent_andLeavesNoTempFile() throws IOException {
+        Path file = tempDir.resolve("store.json");
+        Files.writeString(file, "[\"old\"]");
+        Files.writeString(tempDir.resolve("store.json.tmp"), "left over from a crash, and longer than the new content");
+
+        DurableFiles.replace(file, "[]".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("[]", Files.readString(file));
+        assertFalse(Files.exists(tempDir.resolve("store.json.tmp")));
+    }
+}
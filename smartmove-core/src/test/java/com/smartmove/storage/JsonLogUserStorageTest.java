@@ -0,0 +1,85 @@
+package com.smartmove.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartmove.domain.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonLogUserStorageTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void usersAreFoundByIdAndEmail_acrossReopen() {
+        Path file = tempDir.resolve("users.jsonl");
+        User ada = new User("Ada", "Ada@Example.com", "LONDON");
+        try (JsonLogUserStorage users = new JsonLogUserStorage(file)) {
+            users.save(ada);
+            users.save(new User("Bob", "bob@example.com", "ROME"));
+            ada.setEmail("ada@smartmove.test");
+            users.save(ada);   // update: the old email is released
+        }
+
+        try (JsonLogUserStorage users = new JsonLogUserStorage(file)) {
+            assertEquals(2, users.findAll().size());
+            assertEquals("Ada", users.findById(ada.getId()).orElseThrow().getName());
+            assertEquals(ada.getId(), users.findByEmail("ADA@smartmove.test").orElseThrow().getId());
+            assertTrue(users.findByEmail("ada@example.com").isEmpty());
+        }
+    }
+
+    @Test
+    void duplicateEmailIsRejected() {
+        try (JsonLogUserStorage users = new JsonLogUserStorage(tempDir.resolve("users.jsonl"))) {
+            users.save(new User("Ada", "ada@example.com", "LONDON"));
+            assertThrows(IllegalStateException.class,
+                    () -> users.save(new User("Imposter", " ADA@example.com", "MILAN")));
+            assertThrows(IllegalArgumentException.class, () -> users.save(new User("NoMail", null, "MILAN")));
+        }
+    }
+
+    @Test
+    void tornTrailingRecordIsDropped() throws Exception {
+        Path file = tempDir.resolve("users.jsonl");
+        User ada = new User("Ada", "ada@example.com", "LONDON");
+        try (JsonLogUserStorage users = new JsonLogUserStorage(file)) {
+            users.save(ada);
+        }
+        Files.writeString(file, "{\"id\":\"half", StandardOpenOption.APPEND);
+
+        try (JsonLogUserStorage users = new JsonLogUserStorage(file)) {
+            assertEquals(1, users.findAll().size());
+            users.save(new User("Bob", "bob@example.com", "ROME"));
+        }
+        try (JsonLogUserStorage users = new JsonLogUserStorage(file)) {
+            assertEquals(2, users.findAll().size());
+        }
+    }
+
+    @Test
+    void lastRecordMissingOnlyItsNewlineIsKept() throws Exception {
+        Path file = tempDir.resolve("users.jsonl");
+        try (JsonLogUserStorage users = new JsonLogUserStorage(file)) {
+            users.save(new User("Ada", "ada@example.com", "LONDON"));
+        }
+        User bob = new User("Bob", "bob@example.com", "ROME");
+        Files.write(file, new ObjectMapper().writeValueAsBytes(bob), StandardOpenOption.APPEND);
+
+        try (JsonLogUserStorage users = new JsonLogUserStorage(file)) {
+            assertEquals("Bob", users.findByEmail("bob@example.com").orElseThrow().getName());
+            users.save(new User("Cy", "cy@example.com", "MILAN"));
+        }
+        assertEquals(3, Files.readAllLines(file).size());
+        try (JsonLogUserStorage users = new JsonLogUserStorage(file)) {
+            assertEquals(3, users.findAll().size());
+            assertEquals(bob.getId(), users.findByEmail("bob@example.com").orElseThrow().getId());
+        }
+    }
+}
@@ -1,15 +1,25 @@
 package com.smartmove.storage;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.smartmove.codec.StorageCodec;
+import com.smartmove.codec.StorageCodecs;
 import com.smartmove.domain.City;
 import com.smartmove.domain.Vehicle;
 import com.smartmove.domain.VehicleType;
+import com.smartmove.telemetry.TelemetryData;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -76,6 +86,105 @@ class JsonVehicleStorageTest {
         assertFalse(storage2.findById(v.getId()).isPresent());
     }
 
+    @Test
+    void reopenedFileIsIndexedLazily_andUntouchedRecordsSurviveRewrites() {
+        Path file = storageFile();
+        JsonVehicleStorage storage = new JsonVehicleStorage(file);
+        for (int i = 0; i < 500; i++) {
+            Vehicle v = new Vehicle("v" + i, VehicleType.MOPED, City.MILAN);
+            v.setTelemetry(new TelemetryData(v.getId(), 45.4, 9.2, i % 100, 20.0));
+            storage.save(v);
+        }
+
+        JsonVehicleStorage reopened = new JsonVehicleStorage(file);
+        assertEquals(500, reopened.unhydratedCount());
+        assertEquals(7, reopened.findById("v7").orElseThrow().getTelemetry().getBatteryPercent());
+        assertEquals(499, reopened.unhydratedCount());
+        assertTrue(reopened.findById("missing").isEmpty());
+
+        reopened.save(new Vehicle("new", VehicleType.BICYCLE, City.ROME));
+        reopened.deleteById("v8");
+
+        JsonVehicleStorage again = new JsonVehicleStorage(file);
+        assertEquals(500, again.findAll().size());
+        assertEquals(0, again.unhydratedCount());
+        assertEquals(99, again.findById("v499").orElseThrow().getTelemetry().getBatteryPercent());
+        assertTrue(again.findById("v8").isEmpty());
+    }
+
+    @Test
+    void concurrentFirstReadsAllFindTheVehicle() throws Exception {
+        Path file = storageFile();
+        JsonVehicleStorage storage = new JsonVehicleStorage(file);
+        for (int i = 0; i < 50; i++) storage.save(new Vehicle("v" + i, VehicleType.BICYCLE, City.MILAN));
+
+        for (int round = 0; round < 20; round++) {
+            JsonVehicleStorage reopened = new JsonVehicleStorage(file);
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicBoolean missed = new AtomicBoolean();
+            Thread[] readers = new Thread[4];
+            for (int t = 0; t < readers.length; t++) {
+                readers[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 50; i++) {
+                        if (reopened.findById("v" + i).isEmpty()) missed.set(true);
+                    }
+                });
+                readers[t].start();
+            }
+            start.countDown();
+            for (Thread r : readers) r.join();
+            assertFalse(missed.get(), "a reader racing the first bind saw no vehicle");
+        }
+    }
+
+    @Test
+    void readsDoNotWaitForAFileRewrite() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean stall = new AtomicBoolean();
+        JsonVehicleStorage storage = new JsonVehicleStorage(storageFile(), stallingCodec(stall, writing, release));
+        storage.save(new Vehicle("v1", VehicleType.MOPED, City.ROME));
+
+        stall.set(true);
+        Thread writer = new Thread(() -> storage.save(new Vehicle("v2", VehicleType.MOPED, City.ROME)));
+        writer.start();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        // the rewrite is stuck mid-I/O; reads still answer, and already see v2
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
+            assertTrue(storage.findById("v1").isPresent());
+            assertTrue(storage.findById("v2").isPresent());
+            assertTrue(storage.findById("v3").isEmpty());
+            assertEquals(2, storage.findAll().size());
+        });
+
+        stall.set(false);
+        release.countDown();
+        writer.join();
+        assertEquals(2, new JsonVehicleStorage(storageFile()).findAll().size());
+    }
+
+    @Test
+    void concurrentSavesAllReachTheFile() throws Exception {
+        JsonVehicleStorage storage = new JsonVehicleStorage(storageFile());
+        Thread[] writers = new Thread[8];
+        for (int t = 0; t < writers.length; t++) {
+            int thread = t;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 25; i++) storage.save(new Vehicle("v" + thread + "-" + i, VehicleType.BICYCLE, City.MILAN));
+            });
+            writers[t].start();
+        }
+        for (Thread w : writers) w.join();
+
+        assertEquals(200, new JsonVehicleStorage(storageFile()).findAll().size());
+    }
+
     @Test
     void saveRejectsNullVehicle() {
         JsonVehicleStorage storage = new JsonVehicleStorage(storageFile());
@@ -113,4 +222,37 @@ class JsonVehicleStorageTest {
             + "}";
 }
 
+    /** JSON codec whose encoding blocks while {@code stall} is set, standing in for slow disk I/O. */
+    private static StorageCodec stallingCodec(AtomicBoolean stall, CountDownLatch writing, CountDownLatch release) {
+        StorageCodec json = StorageCodecs.JSON;
+        return new StorageCodec() {
+            @Override public String name() { return json.name(); }
+            @Override public boolean isText() { return json.isText(); }
+            @Override public byte[] encode(Object value) throws IOException {
+                await();
+                return json.encode(value);
+            }
+            @Override public void encode(OutputStream out, Object value) throws IOException {
+                await();
+                json.encode(out, value);
+            }
+            @Override public <T> T decode(byte[] data, TypeReference<T> type) throws IOException {
+                return json.decode(data, type);
+            }
+            @Override public <T> T decode(byte[] data, int offset, int length, Class<T> type) throws IOException {
+                return json.decode(data, offset, length, type);
+            }
+            @Override public JsonParser parser(byte[] data) throws IOException { return json.parser(data); }
+
+            private void await() {
+                if (!stall.get()) return;
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
 }
@@ -0,0 +1,272 @@
+package com.smartmove.storage;
+
+import com.smartmove.domain.City;
+import com.smartmove.domain.Trip;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.domain.VehicleState;
+import com.smartmove.domain.VehicleType;
+import com.smartmove.telemetry.TelemetryData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedVehicleStorageTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path slotFile() {
+        return tempDir.resolve("vehicles.slots");
+    }
+
+    @Test
+    void savedVehicleRoundTripsAllFields_acrossReopen() {
+        Vehicle v = new Vehicle("v1", VehicleType.MOPED, City.MILAN);
+        v.setState(VehicleState.IN_USE);
+        v.setRentalActive(true);
+        Trip trip = Trip.start(1_760_000_000_000L, null);
+        trip.accumulate(new TelemetryData("v1", 45.46, 9.19, 42, 31.5));
+        trip.setMeters(1234.5);
+        v.setTrip(trip);
+        v.setUserId("user-1");
+        TelemetryData t = new TelemetryData("v1", 45.46, 9.19, 42, 31.5);
+        t.setHelmetPresent(true);
+        t.setFault(true);
+        v.setTelemetry(t);
+
+        try (MappedVehicleStorage storage = new MappedVehicleStorage(slotFile())) {
+            storage.save(v);
+        }
+
+        try (MappedVehicleStorage storage = new MappedVehicleStorage(slotFile())) {
+            Vehicle loaded = storage.findById("v1").orElseThrow();
+            assertEquals(VehicleType.MOPED, loaded.getType());
+            assertEquals(VehicleState.IN_USE, loaded.getState());
+            assertEquals(City.MILAN, loaded.getCity());
+            assertTrue(loaded.isRentalActive());
+            assertEquals(1_760_000_000_000L, loaded.getTrip().getStartedAt());
+            assertEquals(1234.5, loaded.getTrip().getMeters());
+            assertEquals(31.5, loaded.getTrip().getMaxTemperatureC());
+            assertEquals(42, loaded.getTrip().getMinBatteryPercent());
+            assertEquals(1, loaded.getTrip().getSamples());
+            assertTrue(loaded.getTrip().isGpsFix());
+            assertEquals(9.19, loaded.getTrip().getLastLongitude());
+            assertEquals("user-1", loaded.getUserId());
+            assertEquals(45.46, loaded.getTelemetry().getLatitude());
+            assertEquals(9.19, loaded.getTelemetry().getLongitude());
+            assertEquals(42, loaded.getTelemetry().getBatteryPercent());
+            assertEquals(31.5, loaded.getTelemetry().getTemperatureC());
+            assertTrue(loaded.getTelemetry().isHelmetPresent());
+            assertFalse(loaded.getTelemetry().isMovementDetected());
+            assertTrue(loaded.getTelemetry().isFault());
+            assertEquals("v1", loaded.getTelemetry().getVehicleId());
+        }
+    }
+
+    @Test
+    void updatesAreInPlace_andDeletedSlotsAreReused() throws IOException {
+        try (MappedVehicleStorage storage = new MappedVehicleStorage(slotFile())) {
+            Vehicle a = new Vehicle("a", VehicleType.E_SCOOTER, City.ROME);
+            storage.save(a);
+            long size = Files.size(slotFile());
+
+            for (int i = 0; i < 100; i++) {
+                a.setTelemetry(new TelemetryData("a", 41.9, 12.5, 100 - i, 20.0));
+                storage.save(a);
+            }
+            assertEquals(size, Files.size(slotFile()));
+            assertEquals(1, storage.findById("a").orElseThrow().getTelemetry().getBatteryPercent());
+
+            storage.deleteById("a");
+            assertTrue(storage.findById("a").isEmpty());
+            storage.save(new Vehicle("b", VehicleType.BICYCLE, City.LONDON));
+            assertEquals(size, Files.size(slotFile()));
+            assertEquals(1, storage.findAll().size());
+        }
+    }
+
+    @Test
+    void growsBeyondInitialCapacity() {
+        try (MappedVehicleStorage storage = new MappedVehicleStorage(slotFile())) {
+            for (int i = 0; i < 500; i++) {
+                storage.save(new Vehicle("v" + i, VehicleType.BICYCLE, City.LONDON));
+            }
+        }
+        try (MappedVehicleStorage storage = new MappedVehicleStorage(slotFile())) {
+            assertEquals(500, storage.findAll().size());
+            assertTrue(storage.findById("v499").isPresent());
+        }
+    }
+
+    @Test
+    void tornUpdateFallsBackToThePreviousRecord() throws IOException {
+        try (MappedVehicleStorage storage = new MappedVehicleStorage(slotFile())) {
+            storage.save(new Vehicle("ok", VehicleType.BICYCLE, City.LONDON));
+            storage.save(withBattery("torn", 80));
+        }
+        try (MappedVehicleStorage storage = new MappedVehicleStorage(slotFile())) {
+            storage.save(withBattery("torn", 20));
+        }
+
+        // "torn" is in slot 1; its second write went to the first copy
+        corrupt(recordOffset(1, 0) + 70);
+
+        try (MappedVehicleStorage storage = new MappedVehicleStorage(slotFile())) {
+            assertEquals(1, storage.recoveredSlotCount());
+            assertTrue(storage.findById("ok").isPresent());
+            assertEquals(80, storage.findById("torn").orElseThrow().getTelemetry().getBatteryPercent());
+        }
+    }
+
+    @Test
+    void writesBetweenForcesLeaveTheForcedCopyAlone() throws IOException {
+        try (MappedVehicleStorage storage = new MappedVehicleStorage(slotFile())) {
+            storage.save(withBattery("a", 80));
+            storage.force();
+            storage.save(withBattery("a", 50));
+            storage.save(withBattery("a", 20));
+            assertEquals(20, storage.findById("a").orElseThrow().getTelemetry().getBatteryPercent());
+        }
+
+        corrupt(recordOffset(0, 0) + 70);
+
+        try (MappedVehicleStorage storage = new MappedVehicleStorage(slotFile())) {
+            assertEquals(80, storage.findById("a").orElseThrow().getTelemetry().getBatteryPercent());
+        }
+    }
+
+    @Test
+    void deleteSurvivesReopen_andSlotWithNoIntactCopyRefusesToOpen() throws IOException {
+        try (MappedVehicleStorage storage = new MappedVehicleStorage(slotFile())) {
+            storage.save(new Vehicle("gone", VehicleType.BICYCLE, City.LONDON));
+            storage.force();
+            storage.deleteById("gone");
+            storage.save(new Vehicle("only", VehicleType.BICYCLE, City.LONDON));
+        }
+        try (MappedVehicleStorage storage = new MappedVehicleStorage(slotFile())) {
+            assertTrue(storage.findById("gone").isEmpty());
+            assertEquals(1, storage.findAll().size());
+        }
+
+        // both copies of slot 0 damaged: nothing to fall back on
+        corrupt(recordOffset(0, 0) + 70);
+        corrupt(recordOffset(0, 1) + 70);
+        assertThrows(RuntimeException.class, () -> new MappedVehicleStorage(slotFile()));
+    }
+
+    @Test
+    void layoutOneFileIsUpgraded_andBareRentalBecomesATrip() throws IOException {
+        ByteBuffer rental = legacyRecord("old", VehicleState.IN_USE, 1);
+        rental.putLong(98, 1_760_000_000_000L);   // layout 1 rental start and meters
+        rental.putDouble(106, 850.0);
+        writeLegacyFile(1, seal(rental), seal(legacyRecord("idle", VehicleState.AVAILABLE, 0)));
+
+        try (MappedVehicleStorage storage = new MappedVehicleStorage(slotFile())) {
+            Trip trip = storage.findById("old").orElseThrow().getTrip();
+            assertNotNull(trip);
+            assertEquals(1_760_000_000_000L, trip.getStartedAt());
+            assertEquals(850.0, trip.getMeters());
+            assertEquals(0, trip.getSamples());
+            assertNull(storage.findById("idle").orElseThrow().getTrip());
+            storage.save(withBattery("idle", 60));
+        }
+        try (MappedVehicleStorage storage = new MappedVehicleStorage(slotFile())) {
+            assertEquals(850.0, storage.findById("old").orElseThrow().getTrip().getMeters());
+            assertEquals(60, storage.findById("idle").orElseThrow().getTelemetry().getBatteryPercent());
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(slotFile().toFile(), "r")) {
+            raf.seek(4);
+            assertEquals(3, raf.readInt());
+        }
+    }
+
+    @Test
+    void layoutTwoFileIsUpgraded_butNotWithACorruptRecord() throws IOException {
+        writeLegacyFile(2, seal(legacyRecord("a", VehicleState.AVAILABLE, 0)), seal(legacyRecord("b", VehicleState.AVAILABLE, 0)));
+        try (MappedVehicleStorage storage = new MappedVehicleStorage(slotFile())) {
+            assertEquals(2, storage.findAll().size());
+        }
+
+        ByteBuffer bad = seal(legacyRecord("c", VehicleState.AVAILABLE, 0));
+        bad.put(70, (byte) 0x7F);
+        writeLegacyFile(2, seal(legacyRecord("a", VehicleState.AVAILABLE, 0)), bad);
+        assertThrows(RuntimeException.class, () -> new MappedVehicleStorage(slotFile()));
+    }
+
+    private static Vehicle withBattery(String id, int battery) {
+        Vehicle v = new Vehicle(id, VehicleType.BICYCLE, City.LONDON);
+        v.setTelemetry(new TelemetryData(id, 51.5, -0.12, battery, 20.0));
+        return v;
+    }
+
+    private static int recordOffset(int slot, int copy) {
+        return 64 + slot * MappedVehicleStorage.SLOT_SIZE + copy * MappedVehicleStorage.RECORD_SIZE;
+    }
+
+    private void corrupt(long offset) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(slotFile().toFile(), "rw")) {
+            raf.seek(offset);
+            int b = raf.read();
+            raf.seek(offset);
+            raf.write(b ^ 0x7F);
+        }
+    }
+
+    /** A one-record-per-slot record as layouts 1 and 2 wrote it; see {@link #seal}. */
+    private static ByteBuffer legacyRecord(String id, VehicleState state, int flags) {
+        ByteBuffer rec = ByteBuffer.allocate(MappedVehicleStorage.RECORD_SIZE);
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        rec.put(0, (byte) 1);
+        rec.put(1, (byte) bytes.length);
+        rec.put(2, bytes);
+        rec.put(66, (byte) VehicleType.E_SCOOTER.ordinal());
+        rec.put(67, (byte) state.ordinal());
+        rec.put(68, (byte) City.ROME.ordinal());
+        rec.put(69, (byte) flags);
+        return rec;
+    }
+
+    private static ByteBuffer seal(ByteBuffer rec) {
+        CRC32 crc = new CRC32();
+        crc.update(rec.array(), 0, MappedVehicleStorage.RECORD_SIZE - 4);
+        return rec.putInt(MappedVehicleStorage.RECORD_SIZE - 4, (int) crc.getValue());
+    }
+
+    private void writeLegacyFile(int version, ByteBuffer... records) throws IOException {
+        ByteBuffer file = ByteBuffer.allocate(64 + records.length * MappedVehicleStorage.RECORD_SIZE);
+        file.putInt(0, 0x534D5653).putInt(4, version).putInt(8, MappedVehicleStorage.RECORD_SIZE).putInt(12, records.length);
+        for (int i = 0; i < records.length; i++) {
+            file.put(64 + i * MappedVehicleStorage.RECORD_SIZE, records[i].array());
+        }
+        Files.write(slotFile(), file.array());
+    }
+
+    @Test
+    void rejectsUnknownLayoutVersion() throws IOException {
+        try (MappedVehicleStorage storage = new MappedVehicleStorage(slotFile())) {
+            storage.save(new Vehicle("a", VehicleType.BICYCLE, City.LONDON));
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(slotFile().toFile(), "rw")) {
+            raf.seek(4);
+            raf.writeInt(99);
+        }
+        assertThrows(RuntimeException.class, () -> new MappedVehicleStorage(slotFile()));
+    }
+
+    @Test
+    void rejectsIdsThatDoNotFitASlot() {
+        try (MappedVehicleStorage storage = new MappedVehicleStorage(slotFile())) {
+            Vehicle v = new Vehicle("x".repeat(MappedVehicleStorage.MAX_ID_BYTES + 1), VehicleType.BICYCLE, City.ROME);
+            assertThrows(IllegalArgumentException.class, () -> storage.save(v));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.smartmove.telemetry;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartmove.domain.VehicleIds;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TelemetryDecoderTest {
+
+    private final TelemetryDecoder decoder = new TelemetryDecoder();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private TelemetryData decode(String json) throws IOException {
+        TelemetryData t = new TelemetryData();
+        decoder.decode(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), t);
+        return t;
+    }
+
+    private void assertSameAsJackson(String json) throws IOException {
+        assertEquals(mapper.readValue(json, TelemetryData.class).toString(), decode(json).toString(), json);
+    }
+
+    @Test
+    void decodesTheUsualShape_likeJackson() throws IOException {
+        TelemetryData t = decode("{\"vehicleId\":\"v-1\",\"latitude\":41.9028,\"longitude\":-12.4964,"
+                + "\"batteryPercent\":87,\"temperatureC\":24.5,\"helmetPresent\":true,"
+                + "\"movementDetected\":false,\"fault\":true}");
+        assertEquals("v-1", t.getVehicleId());
+        assertEquals(41.9028, t.getLatitude());
+        assertEquals(-12.4964, t.getLongitude());
+        assertEquals(87, t.getBatteryPercent());
+        assertEquals(24.5, t.getTemperatureC());
+        assertTrue(t.isHelmetPresent());
+        assertFalse(t.isMovementDetected());
+        assertTrue(t.isFault());
+
+        assertSameAsJackson(" { \"vehicleId\" : \"v-2\" ,\n\"latitude\":0.1, \"temperatureC\":-0.000001 } ");
+        assertSameAsJackson("{\"latitude\":45.464203142,\"longitude\":9.18998,\"batteryPercent\":3.9}");
+        assertSameAsJackson("{}");
+    }
+
+    @Test
+    void otherShapesFallBackToJackson() throws IOException {
+        assertSameAsJackson("{\"vehicleId\":\"v\\u002d3\",\"latitude\":4.19e1}");
+        assertSameAsJackson("{\"vehicleId\":\"café\",\"latitude\":41.90280000000000001}");
+        assertSameAsJackson("{\"vehicleId\":null,\"temperatureC\":null}");
+    }
+
+    @Test
+    void invalidBodiesAreRejected() {
+        assertThrows(IOException.class, () -> decode("{\"vehicleId\":\"v1\",\"speed\":3}"));
+        assertThrows(IOException.class, () -> decode("{\"vehicleId\":\"v1\""));
+        assertThrows(IOException.class, () -> decode("{\"latitude\":01}"));
+        assertThrows(IllegalArgumentException.class,
+                () -> decode("{\"vehicleId\":\"" + "x".repeat(TelemetryDecoder.MAX_BODY_BYTES) + "\"}"));
+    }
+
+    @Test
+    void repeatedIdsDecodeToTheSameString() throws IOException {
+        String first = decode("{\"vehicleId\":\"v-42\"}").getVehicleId();
+        decode("{\"vehicleId\":\"v-43\"}");
+        assertSame(first, decode("{\"vehicleId\":\"v-42\"}").getVehicleId());
+    }
+
+    @Test
+    void registeredIdsDecodeToTheirHandle_unknownOnesStayUnregistered() throws IOException {
+        String id = "handle-" + System.nanoTime();
+        int before = VehicleIds.global().size();
+        TelemetryData unknown = decode("{\"vehicleId\":\"" + id + "\"}");
+        assertEquals(-1, unknown.getVehicleHandle());
+        assertEquals(before, VehicleIds.global().size());
+
+        int handle = VehicleIds.global().handle(new String(id));
+        TelemetryData known = decode("{\"vehicleId\":\"" + id + "\"}");
+        assertEquals(handle, known.getVehicleHandle());
+        assertSame(VehicleIds.global().id(handle), known.getVehicleId());
+    }
+
+    @Test
+    void decodingOverwritesTheHolder() throws IOException {
+        TelemetryData t = new TelemetryData("old", 1, 2, 3, 4);
+        t.setFault(true);
+        byte[] body = "{\"vehicleId\":\"new\"}".getBytes(StandardCharsets.UTF_8);
+        decoder.decode(body, 0, body.length, t);
+        assertEquals("new", t.getVehicleId());
+        assertEquals(0, t.getLatitude());
+        assertEquals(0, t.getBatteryPercent());
+        assertFalse(t.isFault());
+    }
+}
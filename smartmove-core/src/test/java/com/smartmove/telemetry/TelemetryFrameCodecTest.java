@@ -0,0 +1,97 @@
+package com.smartmove.telemetry;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TelemetryFrameCodecTest {
+
+    private final TelemetryFrameCodec codec = new TelemetryFrameCodec();
+
+    private static TelemetryData sample(String id) {
+        TelemetryData t = new TelemetryData(id, 41.9028, -12.4964123, 87, -3.5);
+        t.setMovementDetected(true);
+        t.setFault(true);
+        return t;
+    }
+
+    @Test
+    void roundTripsAtTheFrameResolution() {
+        ByteBuffer buf = ByteBuffer.allocate(TelemetryFrameCodec.MAX_FRAME_BYTES);
+        TelemetryFrameCodec.encode(sample("v-42"), buf);
+        assertEquals(TelemetryFrameCodec.frameBytes(sample("v-42")), buf.position());
+        assertEquals(18, buf.position());
+
+        TelemetryData t = new TelemetryData();
+        assertTrue(codec.decode(buf.flip(), t));
+        assertFalse(buf.hasRemaining());
+        assertEquals("v-42", t.getVehicleId());
+        assertEquals(41.9028, t.getLatitude());
+        assertEquals(-12.4964123, t.getLongitude());
+        assertEquals(87, t.getBatteryPercent());
+        assertEquals(-3.5, t.getTemperatureC());
+        assertFalse(t.isHelmetPresent());
+        assertTrue(t.isMovementDetected());
+        assertTrue(t.isFault());
+    }
+
+    @Test
+    void decodesBackToBackFrames_andWaitsForAWholeOne() {
+        ByteBuffer buf = ByteBuffer.allocateDirect(256);
+        TelemetryFrameCodec.encode(sample("a"), buf);
+        TelemetryFrameCodec.encode(sample("b"), buf);
+        buf.flip();
+
+        ByteBuffer partial = buf.duplicate().limit(buf.limit() - 1);
+        TelemetryData t = new TelemetryData();
+        assertTrue(codec.decode(partial, t));
+        assertEquals("a", t.getVehicleId());
+        int before = partial.position();
+        assertFalse(codec.decode(partial, t));
+        assertEquals(before, partial.position());
+
+        assertTrue(codec.decode(buf.position(before), t));
+        assertEquals("b", t.getVehicleId());
+    }
+
+    @Test
+    void repeatedIdsDecodeToTheSameString() {
+        ByteBuffer buf = ByteBuffer.allocate(256);
+        TelemetryFrameCodec.encode(sample("v-7"), buf);
+        TelemetryFrameCodec.encode(sample("v-7"), buf);
+        buf.flip();
+        TelemetryData first = new TelemetryData();
+        TelemetryData second = new TelemetryData();
+        codec.decode(buf, first);
+        codec.decode(buf, second);
+        assertSame(first.getVehicleId(), second.getVehicleId());
+    }
+
+    @Test
+    void rejectsMalformedFrames() {
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        TelemetryFrameCodec.encode(sample("v1"), buf);
+        buf.flip();
+
+        ByteBuffer badVersion = ByteBuffer.allocate(64).put(buf.duplicate()).flip().put(0, (byte) 9);
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(badVersion, new TelemetryData()));
+        ByteBuffer noId = ByteBuffer.allocate(64).put(buf.duplicate()).flip().put(3, (byte) 0);
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(noId, new TelemetryData()));
+        ByteBuffer badId = ByteBuffer.allocate(64).put(buf.duplicate()).flip().put(14, (byte) ' ');
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(badId, new TelemetryData()));
+    }
+
+    @Test
+    void encodeRejectsValuesTheLayoutCannotHold() {
+        ByteBuffer buf = ByteBuffer.allocate(256);
+        assertThrows(IllegalArgumentException.class,
+                () -> TelemetryFrameCodec.encode(new TelemetryData("v1", 0, 0, 300, 20), buf));
+        assertThrows(IllegalArgumentException.class,
+                () -> TelemetryFrameCodec.encode(new TelemetryData("v1", 0, 0, 50, 5000), buf));
+        assertThrows(IllegalArgumentException.class,
+                () -> TelemetryFrameCodec.encode(new TelemetryData("café", 0, 0, 50, 20), buf));
+        assertEquals(0, buf.position());
+    }
+}
@@ -0,0 +1,76 @@
+package com.smartmove.trace;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TracerTest {
+
+    @AfterEach
+    void reset() {
+        Tracer.configure(-1);
+        Tracer.clearSlowRequests();
+    }
+
+    @Test
+    void nestedSpansAreRecordedInOpenOrder_withDepth() {
+        Tracer.configure(0);
+        Trace trace = Tracer.begin("POST /end");
+        try (Span outer = Tracer.span("controller.endRental")) {
+            try (Span inner = Tracer.span("audit.append")) {
+                assertNotSame(Span.NOOP, inner);
+            }
+            Tracer.span("paymentStorage.save").close();
+        }
+        Tracer.finish(trace, 200);
+
+        List<Trace> slow = Tracer.slowRequests();
+        assertEquals(1, slow.size());
+        Trace t = slow.get(0);
+        assertEquals(200, t.status);
+        assertEquals(List.of("controller.endRental", "audit.append", "paymentStorage.save"),
+                t.spans.stream().map(s -> s.name).toList());
+        assertEquals(0, t.spans.get(0).depth);
+        assertEquals(1, t.spans.get(1).depth);
+        assertEquals(1, t.spans.get(2).depth);
+        assertTrue(t.spans.stream().allMatch(s -> s.durationMicros >= 0));
+
+        // no trace left on the thread
+        assertSame(Span.NOOP, Tracer.span("after"));
+    }
+
+    @Test
+    void fastRequestsAreNotKept_andRingBufferKeepsNewestFirst() {
+        Tracer.configure(60_000);
+        Tracer.finish(Tracer.begin("GET /vehicle"), 200);
+        assertTrue(Tracer.slowRequests().isEmpty());
+
+        Tracer.configure(0);
+        for (int i = 0; i < 100; i++) Tracer.finish(Tracer.begin("req" + i), 200);
+        List<Trace> slow = Tracer.slowRequests();
+        assertEquals(64, slow.size());
+        assertEquals("req99", slow.get(0).name);
+        assertEquals("req36", slow.get(63).name);
+    }
+
+    @Test
+    void failedRequestKeepsError() {
+        Tracer.configure(0);
+        Tracer.finish(Tracer.begin("POST /start"), 500, new IllegalStateException("Invalid transition"));
+        Trace t = Tracer.slowRequests().get(0);
+        assertEquals(500, t.status);
+        assertTrue(t.error.contains("Invalid transition"));
+    }
+
+    @Test
+    void disabledTracingIsANoOp() {
+        Tracer.configure(-1);
+        assertNull(Tracer.begin("GET /vehicle"));
+        assertSame(Span.NOOP, Tracer.span("controller.startRental"));
+        Tracer.finish(null, 200);
+        assertTrue(Tracer.slowRequests().isEmpty());
+    }
+}
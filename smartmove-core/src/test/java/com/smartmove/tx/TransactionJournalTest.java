@@ -0,0 +1,134 @@
+package com.smartmove.tx;
+
+import com.smartmove.audit.AuditEvent;
+import com.smartmove.audit.AuditLogEntry;
+import com.smartmove.audit.AuditLogService;
+import com.smartmove.codec.StorageCodecs;
+import com.smartmove.domain.City;
+import com.smartmove.domain.Payment;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.domain.VehicleState;
+import com.smartmove.domain.VehicleType;
+import com.smartmove.storage.JsonPaymentStorage;
+import com.smartmove.storage.JsonVehicleStorage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class TransactionJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    private JsonVehicleStorage vehicles() {
+        return new JsonVehicleStorage(tempDir.resolve("vehicles.json"), StorageCodecs.JSON);
+    }
+
+    private JsonPaymentStorage payments() {
+        return new JsonPaymentStorage(tempDir.resolve("payments.json"), StorageCodecs.JSON);
+    }
+
+    private AuditLogService audit() {
+        return new AuditLogService(tempDir.resolve("audit.jsonl"), StorageCodecs.JSON);
+    }
+
+    private TransactionJournal journal(JsonVehicleStorage v, JsonPaymentStorage p, AuditLogService a) {
+        // thresholds high enough that only explicit checkpoints flush
+        return new TransactionJournal(tempDir.resolve("journal.jsonl"), v, p, a, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    @Test
+    void commitIsOneJournalRecord_andIsReplayedAfterACrash() throws Exception {
+        JsonVehicleStorage vehicles = vehicles();
+        JsonPaymentStorage payments = payments();
+        AuditLogService audit = audit();
+        TransactionJournal journal = journal(vehicles, payments, audit);
+
+        Vehicle v = new Vehicle("v1", VehicleType.MOPED, City.LONDON);
+        v.setState(VehicleState.AVAILABLE);
+        Payment p = new Payment("v1", City.LONDON, 1000, 500);
+        new UnitOfWork(journal, vehicles, payments, audit)
+                .save(v)
+                .pay(p)
+                .audit(AuditLogEntry.of(AuditEvent.PAYMENT, "v1").payment(p.getId(), 10, 5, 15))
+                .audit(AuditLogEntry.of(AuditEvent.RENTAL_ENDED, "v1"))
+                .commit();
+
+        assertEquals(1, Files.readAllLines(tempDir.resolve("journal.jsonl")).size());
+        assertTrue(vehicles.findById("v1").isPresent());
+        assertEquals(1, payments.findAll().size());
+        assertEquals(2, audit.lastId());
+        // the stores have not written their own files yet
+        assertTrue(vehicles().findById("v1").isEmpty());
+        assertTrue(payments().findAll().isEmpty());
+
+        // payments got flushed before the crash, vehicles did not
+        payments.flush();
+
+        // "restart" without close(): the journal is replayed into fresh stores
+        JsonVehicleStorage vehicles2 = vehicles();
+        JsonPaymentStorage payments2 = payments();
+        AuditLogService audit2 = audit();
+        TransactionJournal recovered = journal(vehicles2, payments2, audit2);
+
+        assertEquals(1, recovered.replayedCount());
+        assertEquals(VehicleState.AVAILABLE, vehicles2.findById("v1").orElseThrow().getState());
+        assertEquals(1, payments2.findAll().size());
+        assertEquals(2, audit2.lastId());
+        assertEquals(0, recovered.size());
+        assertTrue(vehicles().findById("v1").isPresent());
+        recovered.close();
+    }
+
+    @Test
+    void failedCommitLeavesTheStoresUntouched() {
+        JsonVehicleStorage vehicles = vehicles();
+        JsonPaymentStorage payments = payments();
+        AuditLogService audit = mock(AuditLogService.class);
+        doThrow(new RuntimeException("disk full")).when(audit).appendCommitted(any(), any());
+        TransactionJournal journal = journal(vehicles, payments, audit);
+
+        UnitOfWork work = new UnitOfWork(journal, vehicles, payments, audit)
+                .save(new Vehicle("v2", VehicleType.BICYCLE, City.MILAN))
+                .pay(new Payment("v2", City.MILAN, 1000, 0))
+                .audit(AuditLogEntry.of(AuditEvent.RENTAL_ENDED, "v2"));
+        assertThrows(RuntimeException.class, work::commit);
+
+        assertTrue(vehicles.findById("v2").isEmpty());
+        assertTrue(payments.findAll().isEmpty());
+        assertEquals(0, journal.size());
+
+        // and the journal keeps working
+        new UnitOfWork(journal, vehicles, payments, audit)
+                .save(new Vehicle("v3", VehicleType.BICYCLE, City.MILAN))
+                .commit();
+        assertTrue(vehicles.findById("v3").isPresent());
+        journal.close();
+    }
+
+    @Test
+    void checkpointFlushesTheStores_andTruncatesTheJournal() {
+        JsonVehicleStorage vehicles = vehicles();
+        JsonPaymentStorage payments = payments();
+        AuditLogService audit = audit();
+        TransactionJournal journal = journal(vehicles, payments, audit);
+
+        new UnitOfWork(journal, vehicles, payments, audit)
+                .save(new Vehicle("v4", VehicleType.E_SCOOTER, City.ROME))
+                .audit(AuditLogEntry.of(AuditEvent.VEHICLE_REGISTERED, "v4"))
+                .commit();
+        assertTrue(journal.size() > 0);
+
+        journal.checkpoint();
+
+        assertEquals(0, journal.size());
+        assertTrue(vehicles().findById("v4").isPresent());
+        assertEquals(0, journal(vehicles(), payments(), audit()).replayedCount());
+    }
+}
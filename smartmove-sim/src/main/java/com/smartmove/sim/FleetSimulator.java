@@ -0,0 +1,235 @@
+package com.smartmove.sim;
+
+import com.smartmove.cdc.ChangeRecord;
+import com.smartmove.domain.City;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.domain.VehicleState;
+import com.smartmove.domain.VehicleType;
+import com.smartmove.telemetry.TelemetryData;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator and soak test for a simulated city fleet.
+ *
+ * Registers {@code perGroup} vehicles for every City x VehicleType, then
+ * drives rental lifecycles (reserve, start, ride telemetry, end) and parked
+ * telemetry at a fixed target rate for the configured duration. Operations
+ * are scheduled on a fixed timetable, and latency is also measured from the
+ * scheduled start, so a target that falls behind shows up as latency
+ * rather than as a silently lower request rate.
+ *
+ * At the end the captured change stream is replayed through
+ * {@link InvariantChecker}; the process exits non-zero on violations.
+ */
+public class FleetSimulator {
+
+    private static final int MAX_PICK_ATTEMPTS = 8;
+    private static final int CHANGE_PAGE = 1000;
+
+    private final SimulationConfig config;
+    private final FleetTarget target;
+    private final SimulationReport report;
+    private final List<VirtualVehicle> fleet = new ArrayList<>();
+
+    public FleetSimulator(SimulationConfig config, FleetTarget target) {
+        this.config = config;
+        this.target = target;
+        this.report = new SimulationReport(config);
+    }
+
+    public static void main(String[] args) throws Exception {
+        SimulationConfig config = SimulationConfig.parse(args);
+        SimulationReport report;
+        try (FleetTarget target = open(config)) {
+            report = new FleetSimulator(config, target).run();
+        }
+        report.print(System.out);
+        System.exit(report.violations().isEmpty() ? 0 : 1);
+    }
+
+    private static FleetTarget open(SimulationConfig config) throws IOException {
+        if (config.mode == SimulationConfig.Mode.HTTP) return new HttpTarget(config.baseUrl);
+        if (config.dataDir == null) config.dataDir = Files.createTempDirectory("smartmove-sim");
+        System.out.println("Simulating in-process, data in " + config.dataDir);
+        return new InProcessTarget(config.dataDir);
+    }
+
+    public SimulationReport run() throws InterruptedException {
+        long firstChange = target.lastChangeOffset();
+        registerFleet();
+
+        long interval = (long) (1e9 / config.rate);
+        long begin = System.nanoTime();
+        long end = begin + TimeUnit.SECONDS.toNanos(config.durationSeconds);
+        AtomicLong nextSlot = new AtomicLong(begin);
+
+        ExecutorService workers = Executors.newFixedThreadPool(config.threads);
+        for (int w = 0; w < config.threads; w++) {
+            SplittableRandom rnd = new SplittableRandom(config.seed * 31 + w);
+            workers.submit(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    long slot = nextSlot.getAndAdd(interval);
+                    if (slot >= end) return;
+                    long wait = slot - System.nanoTime();
+                    if (wait > 0) LockSupport.parkNanos(wait);
+                    step(rnd);
+                    report.responseTime.recordSince(slot);
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(config.durationSeconds + 60L, TimeUnit.SECONDS);
+        report.elapsedNanos = System.nanoTime() - begin;
+
+        target.drain();
+        check(firstChange);
+        return report;
+    }
+
+    // ---- Fleet ----
+
+    private void registerFleet() {
+        SplittableRandom rnd = new SplittableRandom(config.seed);
+        for (City city : City.values()) {
+            for (VehicleType type : VehicleType.values()) {
+                for (int i = 0; i < config.vehiclesPerGroup; i++) {
+                    long start = System.nanoTime();
+                    String id = target.register(type, city);
+                    report.stats(SimulationReport.Op.REGISTER).latency.recordSince(start);
+                    report.stats(SimulationReport.Op.REGISTER).ok.increment();
+                    fleet.add(new VirtualVehicle(id, type, city, rnd));
+                }
+            }
+        }
+        report.fleetSize = fleet.size();
+    }
+
+    private void step(SplittableRandom rnd) {
+        for (int attempt = 0; attempt < MAX_PICK_ATTEMPTS; attempt++) {
+            VirtualVehicle v = fleet.get(rnd.nextInt(fleet.size()));
+            if (!v.tryAcquire()) continue;
+            try {
+                act(v, rnd);
+            } finally {
+                v.release();
+            }
+            return;
+        }
+        report.skipped.increment();
+    }
+
+    /** One lifecycle step for a vehicle, chosen from the state we expect it to be in. */
+    private void act(VirtualVehicle v, SplittableRandom rnd) {
+        switch (v.expected) {
+            case AVAILABLE -> {
+                if (rnd.nextDouble() < 0.35) {
+                    if (call(SimulationReport.Op.RESERVE, v, () -> target.reserve(v.id, v.city))) {
+                        v.expected = VehicleState.RESERVED;
+                        // the helmet sensor reports before the rider tries to unlock
+                        if (v.type == VehicleType.MOPED) telemetry(v, v.parked(rnd));
+                    }
+                } else {
+                    telemetry(v, v.parked(rnd));
+                }
+            }
+            case RESERVED -> {
+                if (call(SimulationReport.Op.START, v, () -> target.start(v.id, v.city))) {
+                    v.expected = VehicleState.IN_USE;
+                    v.rideTicksLeft = 3 + rnd.nextInt(18);
+                }
+            }
+            case IN_USE -> {
+                // most riders stop before the battery gets low; a few push on
+                boolean lowBattery = v.battery < 15 && rnd.nextDouble() < 0.9;
+                if (v.rideTicksLeft-- <= 0 || lowBattery) {
+                    if (call(SimulationReport.Op.END, v, () -> target.end(v.id))) {
+                        v.expected = VehicleState.AVAILABLE;
+                    }
+                    return;
+                }
+                TelemetryData t = v.ride(rnd, config.faultRate, config.overheatRate);
+                if (telemetry(v, t)) expectTelemetryOutcome(v, t);
+            }
+            // locked or in maintenance: nothing in the public API brings it back
+            default -> telemetry(v, v.parked(rnd));
+        }
+    }
+
+    private static void expectTelemetryOutcome(VirtualVehicle v, TelemetryData t) {
+        if (t.getTemperatureC() > 60) v.expected = VehicleState.EMERGENCY_LOCK;
+        else if (t.isFault() || t.getBatteryPercent() < 5) v.expected = VehicleState.MAINTENANCE;
+    }
+
+    private boolean telemetry(VirtualVehicle v, TelemetryData t) {
+        return call(SimulationReport.Op.TELEMETRY, v, () -> target.telemetry(t));
+    }
+
+    /**
+     * Runs one operation and records its outcome. On a rejection the model is
+     * resynchronised from the target, since asynchronous telemetry may have
+     * moved the vehicle on since we last looked.
+     */
+    private boolean call(SimulationReport.Op op, VirtualVehicle v, Runnable action) {
+        SimulationReport.OpStats stats = report.stats(op);
+        long start = System.nanoTime();
+        try {
+            action.run();
+            stats.latency.recordSince(start);
+            stats.ok.increment();
+            return true;
+        } catch (RejectedException e) {
+            stats.latency.recordSince(start);
+            stats.rejected.increment();
+            resync(v);
+            return false;
+        } catch (RuntimeException e) {
+            stats.latency.recordSince(start);
+            report.error(op, e);
+            resync(v);
+            return false;
+        }
+    }
+
+    private void resync(VirtualVehicle v) {
+        try {
+            target.vehicle(v.id).ifPresent(stored -> v.expected = stored.getState());
+        } catch (RuntimeException ignored) {
+            // keep the old expectation; the next rejection tries again
+        }
+    }
+
+    // ---- Verification ----
+
+    private void check(long firstChange) {
+        Set<String> ids = new HashSet<>();
+        for (VirtualVehicle v : fleet) ids.add(v.id);
+        InvariantChecker checker = new InvariantChecker(ids);
+
+        long since = firstChange;
+        while (true) {
+            List<ChangeRecord> page = target.changes(since, CHANGE_PAGE);
+            if (page.isEmpty()) break;
+            for (ChangeRecord r : page) checker.accept(r);
+            since = page.get(page.size() - 1).offset;
+        }
+
+        Map<String, Vehicle> stored = new HashMap<>();
+        for (VirtualVehicle v : fleet) {
+            target.vehicle(v.id).ifPresent(s -> {
+                stored.put(v.id, s);
+                report.finalStates.merge(s.getState(), 1, Integer::sum);
+            });
+        }
+        checker.finish(stored);
+        report.changesChecked = checker.changesSeen();
+        report.violations = checker.violations();
+    }
+}
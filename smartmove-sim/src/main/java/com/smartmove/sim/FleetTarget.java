@@ -0,0 +1,42 @@
+package com.smartmove.sim;
+
+import com.smartmove.cdc.ChangeRecord;
+import com.smartmove.domain.City;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.domain.VehicleType;
+import com.smartmove.telemetry.TelemetryData;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The system under test, either in-process or over HTTP.
+ * Operations refused by a business rule throw {@link RejectedException};
+ * anything else that goes wrong is an error.
+ */
+public interface FleetTarget extends AutoCloseable {
+
+    String register(VehicleType type, City city);
+
+    void reserve(String vehicleId, City city);
+
+    void start(String vehicleId, City city);
+
+    void end(String vehicleId);
+
+    void telemetry(TelemetryData t);
+
+    Optional<Vehicle> vehicle(String vehicleId);
+
+    /** Offset of the newest captured change; the invariant check reads from here. */
+    long lastChangeOffset();
+
+    /** Captured changes after {@code since}, oldest first. */
+    List<ChangeRecord> changes(long since, int limit);
+
+    /** Waits until queued telemetry has been applied. */
+    void drain() throws InterruptedException;
+
+    @Override
+    void close();
+}
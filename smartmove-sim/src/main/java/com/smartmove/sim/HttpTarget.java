@@ -0,0 +1,170 @@
+package com.smartmove.sim;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartmove.cdc.ChangeRecord;
+import com.smartmove.domain.City;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.domain.VehicleType;
+import com.smartmove.telemetry.TelemetryData;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Drives a running SmartMoveApiServer over its REST endpoints.
+ */
+public class HttpTarget implements FleetTarget {
+
+    private final String baseUrl;
+    private final HttpClient client;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    public HttpTarget(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+    }
+
+    @Override
+    public String register(VehicleType type, City city) {
+        return post("/vehicles", Map.of("type", type, "city", city)).get("id").asText();
+    }
+
+    @Override
+    public void reserve(String vehicleId, City city) {
+        post("/reserve", Map.of("vehicleId", vehicleId, "city", city));
+    }
+
+    @Override
+    public void start(String vehicleId, City city) {
+        post("/start", Map.of("vehicleId", vehicleId, "city", city));
+    }
+
+    @Override
+    public void end(String vehicleId) {
+        post("/end", Map.of("vehicleId", vehicleId));
+    }
+
+    @Override
+    public void telemetry(TelemetryData t) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("vehicleId", t.getVehicleId());
+        body.put("latitude", t.getLatitude());
+        body.put("longitude", t.getLongitude());
+        body.put("batteryPercent", t.getBatteryPercent());
+        body.put("temperatureC", t.getTemperatureC());
+        body.put("helmetPresent", t.isHelmetPresent());
+        body.put("movementDetected", t.isMovementDetected());
+        body.put("fault", t.isFault());
+        post("/telemetry", body);
+    }
+
+    @Override
+    public Optional<Vehicle> vehicle(String vehicleId) {
+        HttpResponse<byte[]> res = send(HttpRequest.newBuilder(uri("/vehicle?id=" + encode(vehicleId))).GET().build());
+        if (res.statusCode() == 404) return Optional.empty();
+        return Optional.of(read(check(res), new TypeReference<Vehicle>() {}));
+    }
+
+    @Override
+    public long lastChangeOffset() {
+        return get("/changes?since=" + Long.MAX_VALUE + "&limit=1").get("lastOffset").asLong();
+    }
+
+    @Override
+    public List<ChangeRecord> changes(long since, int limit) {
+        JsonNode page = get("/changes?since=" + since + "&limit=" + limit);
+        return mapper.convertValue(page.get("records"), new TypeReference<List<ChangeRecord>>() {});
+    }
+
+    @Override
+    public void drain() throws InterruptedException {
+        while (get("/health").path("telemetryQueueDepth").asInt() > 0) Thread.sleep(20);
+        Thread.sleep(100);
+    }
+
+    @Override
+    public void close() {
+        // HttpClient has no resources to release on Java 17
+    }
+
+    // ---- Plumbing ----
+
+    private JsonNode get(String path) {
+        return read(check(send(HttpRequest.newBuilder(uri(path)).GET().build())), new TypeReference<JsonNode>() {});
+    }
+
+    private JsonNode post(String path, Object body) {
+        try {
+            HttpRequest req = HttpRequest.newBuilder(uri(path))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)))
+                    .build();
+            return read(check(send(req)), new TypeReference<JsonNode>() {});
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode request for " + path, e);
+        }
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest req) {
+        try {
+            return client.send(req, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            throw new RuntimeException("HTTP " + req.method() + " " + req.uri() + " failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted", e);
+        }
+    }
+
+    private byte[] check(HttpResponse<byte[]> res) {
+        int status = res.statusCode();
+        if (status == 400 || status == 404 || status == 409) {
+            throw new RejectedException(errorMessage(res.body(), status));
+        }
+        if (status / 100 != 2) {
+            throw new RuntimeException("HTTP " + status + ": " + errorMessage(res.body(), status));
+        }
+        return res.body();
+    }
+
+    private String errorMessage(byte[] body, int status) {
+        try {
+            return mapper.readTree(body).path("error").asText("HTTP " + status);
+        } catch (IOException e) {
+            return "HTTP " + status;
+        }
+    }
+
+    private <T> T read(byte[] body, TypeReference<T> type) {
+        try {
+            return mapper.readValue(body, type);
+        } catch (IOException e) {
+            throw new RuntimeException("Unreadable response", e);
+        }
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+
+    private static String encode(String s) {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,110 @@
+package com.smartmove.sim;
+
+import com.smartmove.audit.AuditLogService;
+import com.smartmove.cdc.ChangeCapturingPaymentStorage;
+import com.smartmove.cdc.ChangeCapturingVehicleStorage;
+import com.smartmove.cdc.ChangeLog;
+import com.smartmove.cdc.ChangeRecord;
+import com.smartmove.controller.SmartMoveCentralController;
+import com.smartmove.domain.City;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.domain.VehicleType;
+import com.smartmove.payments.AggregatingPaymentStorage;
+import com.smartmove.payments.PaymentRollups;
+import com.smartmove.pricing.TariffPricingEngine;
+import com.smartmove.storage.JsonPaymentStorage;
+import com.smartmove.storage.VehicleStorage;
+import com.smartmove.storage.VehicleStorages;
+import com.smartmove.telemetry.TelemetryData;
+import com.smartmove.zones.JsonZoneRepository;
+import com.smartmove.zones.ZoneService;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Runs a full controller (same wiring as SmartMoveServer) on its own data directory.
+ */
+public class InProcessTarget implements FleetTarget {
+
+    private final ChangeLog changeLog;
+    private final VehicleStorage vehicleStorage;
+    private final SmartMoveCentralController controller;
+
+    public InProcessTarget(Path dataDir) {
+        this.changeLog = new ChangeLog(dataDir.resolve("changes.jsonl"));
+        this.vehicleStorage = new ChangeCapturingVehicleStorage(VehicleStorages.fromConfig(dataDir), changeLog);
+        this.controller = new SmartMoveCentralController(
+                vehicleStorage,
+                new AuditLogService(dataDir.resolve("audit-log.jsonl")),
+                new ZoneService(new JsonZoneRepository(dataDir.resolve("restricted-zones.json"))),
+                new AggregatingPaymentStorage(
+                        new ChangeCapturingPaymentStorage(new JsonPaymentStorage(dataDir.resolve("payments.json")), changeLog),
+                        new PaymentRollups(dataDir.resolve("payment-rollups.json"))),
+                TariffPricingEngine.load(dataDir.resolve("tariffs.json")));
+    }
+
+    @Override
+    public String register(VehicleType type, City city) {
+        Vehicle v = new Vehicle(type, city);
+        run(() -> controller.registerVehicle(v));
+        return v.getId();
+    }
+
+    @Override
+    public void reserve(String vehicleId, City city) {
+        run(() -> controller.reserveVehicle(vehicleId, city));
+    }
+
+    @Override
+    public void start(String vehicleId, City city) {
+        run(() -> controller.startRental(vehicleId, city));
+    }
+
+    @Override
+    public void end(String vehicleId) {
+        run(() -> controller.endRental(vehicleId));
+    }
+
+    @Override
+    public void telemetry(TelemetryData t) {
+        run(() -> controller.sendTelemetry(t));
+    }
+
+    @Override
+    public Optional<Vehicle> vehicle(String vehicleId) {
+        return controller.getVehicle(vehicleId).map(Vehicle::copy);
+    }
+
+    @Override
+    public long lastChangeOffset() {
+        return changeLog.lastOffset();
+    }
+
+    @Override
+    public List<ChangeRecord> changes(long since, int limit) {
+        return changeLog.read(since, limit);
+    }
+
+    @Override
+    public void drain() throws InterruptedException {
+        while (controller.telemetryQueueDepth() > 0) Thread.sleep(20);
+        // the worker may still be applying the sample it just took
+        Thread.sleep(100);
+    }
+
+    @Override
+    public void close() {
+        controller.shutdown();
+        changeLog.close();
+    }
+
+    private static void run(Runnable op) {
+        try {
+            op.run();
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            throw new RejectedException(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.smartmove.sim;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.smartmove.cdc.ChangeRecord;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.domain.VehicleState;
+
+import java.util.*;
+
+/**
+ * Replays the change stream of the simulated fleet and checks it against
+ * the vehicle state machine:
+ * - every stored state change is a legal transition (commands or telemetry rules)
+ * - rentalActive is set exactly while IN_USE
+ * - every ended rental produced exactly one payment
+ * - no theft alarm fired (the simulator never moves a parked vehicle)
+ * - the stored state at the end matches the last captured change
+ */
+public class InvariantChecker {
+
+    public enum Kind { ILLEGAL_TRANSITION, RENTAL_FLAG_MISMATCH, PAYMENT_MISMATCH, FALSE_THEFT_ALARM, FINAL_STATE_MISMATCH }
+
+    public static class Violation {
+        public final Kind kind;
+        public final String vehicleId;
+        public final String detail;
+
+        Violation(Kind kind, String vehicleId, String detail) {
+            this.kind = kind;
+            this.vehicleId = vehicleId;
+            this.detail = detail;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + vehicleId + ": " + detail;
+        }
+    }
+
+    private static final Map<VehicleState, Set<VehicleState>> COMMANDS = new EnumMap<>(Map.of(
+            VehicleState.AVAILABLE, EnumSet.of(VehicleState.RESERVED, VehicleState.RELOCATING),
+            VehicleState.RESERVED, EnumSet.of(VehicleState.IN_USE, VehicleState.AVAILABLE),
+            VehicleState.IN_USE, EnumSet.of(VehicleState.AVAILABLE, VehicleState.MAINTENANCE),
+            VehicleState.MAINTENANCE, EnumSet.of(VehicleState.AVAILABLE),
+            VehicleState.RELOCATING, EnumSet.of(VehicleState.AVAILABLE),
+            VehicleState.EMERGENCY_LOCK, EnumSet.of(VehicleState.MAINTENANCE)));
+
+    private final Set<String> fleet;
+    private final Map<String, VehicleState> lastState = new HashMap<>();
+    private final Map<String, Integer> rentalsEnded = new HashMap<>();
+    private final Map<String, Integer> payments = new HashMap<>();
+    private final List<Violation> violations = new ArrayList<>();
+    private long changesSeen;
+
+    public InvariantChecker(Set<String> fleet) {
+        this.fleet = fleet;
+    }
+
+    public void accept(ChangeRecord r) {
+        if (r.data == null) return;
+        if (r.entity == ChangeRecord.Entity.PAYMENT) {
+            String vehicleId = r.data.path("vehicleId").asText();
+            if (fleet.contains(vehicleId)) payments.merge(vehicleId, 1, Integer::sum);
+            return;
+        }
+        if (!fleet.contains(r.key)) return;
+        changesSeen++;
+
+        VehicleState to = VehicleState.valueOf(r.data.path("state").asText());
+        VehicleState from = lastState.put(r.key, to);
+
+        if (from == null) {
+            if (to != VehicleState.AVAILABLE) {
+                violations.add(new Violation(Kind.ILLEGAL_TRANSITION, r.key, "first stored state is " + to));
+            }
+        } else if (!isLegal(from, to)) {
+            violations.add(new Violation(Kind.ILLEGAL_TRANSITION, r.key, from + " -> " + to + " at offset " + r.offset));
+        }
+
+        boolean rentalActive = r.data.path("rentalActive").asBoolean();
+        if (rentalActive != (to == VehicleState.IN_USE)) {
+            violations.add(new Violation(Kind.RENTAL_FLAG_MISMATCH, r.key,
+                    "rentalActive=" + rentalActive + " in state " + to + " at offset " + r.offset));
+        }
+
+        if (from == VehicleState.IN_USE && to == VehicleState.AVAILABLE) {
+            rentalsEnded.merge(r.key, 1, Integer::sum);
+        }
+        if (to == VehicleState.EMERGENCY_LOCK && from != VehicleState.EMERGENCY_LOCK && isTheftAlarm(r.data)) {
+            violations.add(new Violation(Kind.FALSE_THEFT_ALARM, r.key,
+                    "locked for movement without rental at offset " + r.offset));
+        }
+    }
+
+    /** Compares the stored vehicles with the replayed stream and settles payments. */
+    public void finish(Map<String, Vehicle> stored) {
+        for (String id : fleet) {
+            int ended = rentalsEnded.getOrDefault(id, 0);
+            int paid = payments.getOrDefault(id, 0);
+            if (ended != paid) {
+                violations.add(new Violation(Kind.PAYMENT_MISMATCH, id, ended + " rentals ended, " + paid + " payments"));
+            }
+            Vehicle v = stored.get(id);
+            VehicleState replayed = lastState.get(id);
+            if (v != null && replayed != null && v.getState() != replayed) {
+                violations.add(new Violation(Kind.FINAL_STATE_MISMATCH, id,
+                        "stored " + v.getState() + ", change stream says " + replayed));
+            }
+        }
+    }
+
+    public List<Violation> violations() {
+        return violations;
+    }
+
+    public long changesSeen() {
+        return changesSeen;
+    }
+
+    static boolean isLegal(VehicleState from, VehicleState to) {
+        if (from == to) return true;                       // telemetry-only update
+        if (to == VehicleState.EMERGENCY_LOCK) return true; // theft, overheat, restricted zone
+        if (to == VehicleState.MAINTENANCE && from != VehicleState.EMERGENCY_LOCK) return true; // fault
+        return COMMANDS.getOrDefault(from, Set.of()).contains(to);
+    }
+
+    private static boolean isTheftAlarm(JsonNode vehicle) {
+        // a restricted-zone lock keeps the rental flag; an overheat lock has a hot sample
+        JsonNode t = vehicle.path("telemetry");
+        return !vehicle.path("rentalActive").asBoolean()
+                && t.path("movementDetected").asBoolean()
+                && t.path("temperatureC").asDouble() <= 60;
+    }
+}
@@ -0,0 +1,12 @@
+package com.smartmove.sim;
+
+/**
+ * The target refused an operation because of a business rule
+ * (invalid transition, unknown vehicle, missing helmet, ...).
+ */
+public class RejectedException extends RuntimeException {
+
+    public RejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,61 @@
+package com.smartmove.sim;
+
+import java.nio.file.Path;
+
+/**
+ * Simulation settings, parsed from {@code --key=value} arguments.
+ *
+ *   --mode=inprocess|http   drive the controller directly or the REST API (default inprocess)
+ *   --url=...               API base URL for http mode (default http://localhost:8080)
+ *   --perGroup=N            vehicles per City x VehicleType (default 5, i.e. 45 vehicles)
+ *   --rate=N                target operations per second (default 100)
+ *   --duration=N            seconds to run (default 30)
+ *   --threads=N             worker threads issuing operations (default 8)
+ *   --seed=N                random seed (default 42)
+ *   --faultRate=P           probability of a fault per riding telemetry sample (default 0.002)
+ *   --overheatRate=P        probability of overheating per riding telemetry sample (default 0.001)
+ *   --data=DIR              data directory for inprocess mode (default: a fresh temp dir)
+ */
+public class SimulationConfig {
+
+    public enum Mode { INPROCESS, HTTP }
+
+    public Mode mode = Mode.INPROCESS;
+    public String baseUrl = "http://localhost:8080";
+    public int vehiclesPerGroup = 5;
+    public double rate = 100;
+    public int durationSeconds = 30;
+    public int threads = 8;
+    public long seed = 42;
+    public double faultRate = 0.002;
+    public double overheatRate = 0.001;
+    public Path dataDir;
+
+    public static SimulationConfig parse(String[] args) {
+        SimulationConfig c = new SimulationConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --key=value, got: " + arg);
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            switch (key) {
+                case "mode" -> c.mode = Mode.valueOf(value.trim().toUpperCase());
+                case "url" -> c.baseUrl = value;
+                case "perGroup" -> c.vehiclesPerGroup = Integer.parseInt(value);
+                case "rate" -> c.rate = Double.parseDouble(value);
+                case "duration" -> c.durationSeconds = Integer.parseInt(value);
+                case "threads" -> c.threads = Integer.parseInt(value);
+                case "seed" -> c.seed = Long.parseLong(value);
+                case "faultRate" -> c.faultRate = Double.parseDouble(value);
+                case "overheatRate" -> c.overheatRate = Double.parseDouble(value);
+                case "data" -> c.dataDir = Path.of(value);
+                default -> throw new IllegalArgumentException("Unknown option: --" + key);
+            }
+        }
+        if (c.rate <= 0 || c.threads <= 0 || c.vehiclesPerGroup <= 0) {
+            throw new IllegalArgumentException("rate, threads and perGroup must be positive");
+        }
+        return c;
+    }
+}
@@ -0,0 +1,118 @@
+package com.smartmove.sim;
+
+import com.smartmove.domain.VehicleState;
+import com.smartmove.metrics.LatencyHistogram;
+
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms collected during a run, plus the
+ * invariant check results, printed as a plain-text summary.
+ */
+public class SimulationReport {
+
+    public enum Op { REGISTER, RESERVE, START, END, TELEMETRY }
+
+    public static class OpStats {
+        public final LatencyHistogram latency = new LatencyHistogram();
+        public final LongAdder ok = new LongAdder();
+        public final LongAdder rejected = new LongAdder();
+        public final LongAdder errors = new LongAdder();
+    }
+
+    private final SimulationConfig config;
+    private final Map<Op, OpStats> ops = new EnumMap<>(Op.class);
+
+    /** Time from the operation's scheduled start, so a backed-up target shows as latency. */
+    final LatencyHistogram responseTime = new LatencyHistogram();
+    final LongAdder skipped = new LongAdder();
+    final List<String> firstErrors = Collections.synchronizedList(new ArrayList<>());
+
+    int fleetSize;
+    long elapsedNanos;
+    long changesChecked;
+    Map<VehicleState, Integer> finalStates = new EnumMap<>(VehicleState.class);
+    List<InvariantChecker.Violation> violations = List.of();
+
+    SimulationReport(SimulationConfig config) {
+        this.config = config;
+        for (Op op : Op.values()) ops.put(op, new OpStats());
+    }
+
+    public OpStats stats(Op op) {
+        return ops.get(op);
+    }
+
+    public List<InvariantChecker.Violation> violations() {
+        return violations;
+    }
+
+    /** Operations issued during the timed phase (registration excluded). */
+    public long operations() {
+        long n = 0;
+        for (Op op : Op.values()) {
+            if (op == Op.REGISTER) continue;
+            OpStats s = ops.get(op);
+            n += s.ok.sum() + s.rejected.sum() + s.errors.sum();
+        }
+        return n;
+    }
+
+    public double throughput() {
+        return elapsedNanos == 0 ? 0 : operations() / (elapsedNanos / 1e9);
+    }
+
+    void error(Op op, Exception e) {
+        ops.get(op).errors.increment();
+        if (firstErrors.size() < 10) {
+            firstErrors.add(op.name().toLowerCase() + ": " + e.getMessage()
+                    + (e.getCause() == null ? "" : " (" + e.getCause() + ")"));
+        }
+    }
+
+    public void print(PrintStream out) {
+        out.println("=== SmartMove fleet simulation ===");
+        out.printf("mode=%s vehicles=%d target=%.0f ops/s duration=%ds threads=%d seed=%d%n",
+                config.mode.name().toLowerCase(), fleetSize, config.rate, config.durationSeconds,
+                config.threads, config.seed);
+        out.printf("completed %d ops in %.1f s -> %.1f ops/s (skipped %d: all picked vehicles busy)%n%n",
+                operations(), elapsedNanos / 1e9, throughput(), skipped.sum());
+
+        out.printf("%-10s %8s %8s %7s %9s %9s %9s %9s %9s%n",
+                "op", "ok", "rejected", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Op op : Op.values()) {
+            OpStats s = ops.get(op);
+            row(out, op.name().toLowerCase(), s.ok.sum(), s.rejected.sum(), s.errors.sum(), s.latency);
+        }
+        row(out, "(sched)", -1, -1, -1, responseTime);
+
+        out.println();
+        out.println("final fleet: " + finalStates);
+        out.println("changes checked: " + changesChecked);
+        if (!firstErrors.isEmpty()) {
+            out.println("first errors:");
+            firstErrors.forEach(e -> out.println("  " + e));
+        }
+        out.println("violations: " + violations.size());
+        Map<InvariantChecker.Kind, Integer> byKind = new EnumMap<>(InvariantChecker.Kind.class);
+        for (InvariantChecker.Violation v : violations) byKind.merge(v.kind, 1, Integer::sum);
+        byKind.forEach((k, n) -> out.println("  " + k + ": " + n));
+        violations.stream().limit(20).forEach(v -> out.println("  " + v));
+    }
+
+    private static void row(PrintStream out, String name, long ok, long rejected, long errors, LatencyHistogram h) {
+        out.printf("%-10s %8s %8s %7s %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                name,
+                ok < 0 ? "" : Long.toString(ok),
+                rejected < 0 ? "" : Long.toString(rejected),
+                errors < 0 ? "" : Long.toString(errors),
+                ms(h.percentile(0.5)), ms(h.percentile(0.9)), ms(h.percentile(0.99)),
+                ms(h.percentile(0.999)), ms(h.maxNanos()));
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,124 @@
+package com.smartmove.sim;
+
+import com.smartmove.domain.City;
+import com.smartmove.domain.VehicleState;
+import com.smartmove.domain.VehicleType;
+import com.smartmove.telemetry.TelemetryData;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Simulator-side model of one vehicle: position, battery, temperature and
+ * the state we expect the system to hold. Only one worker drives a vehicle
+ * at a time (see {@link #tryAcquire()}), so the fields need no locking.
+ */
+final class VirtualVehicle {
+
+    private static final double METERS_PER_DEGREE = 111_320;
+    private static final double CITY_RADIUS_M = 4_000;
+
+    final String id;
+    final VehicleType type;
+    final City city;
+
+    double latitude;
+    double longitude;
+    double heading;          // radians
+    double battery;          // percent
+    double temperature;      // °C
+    VehicleState expected = VehicleState.AVAILABLE;
+    int rideTicksLeft;
+
+    private final AtomicBoolean busy = new AtomicBoolean();
+
+    VirtualVehicle(String id, VehicleType type, City city, SplittableRandom rnd) {
+        this.id = id;
+        this.type = type;
+        this.city = city;
+        double[] c = center(city);
+        double r = CITY_RADIUS_M * Math.sqrt(rnd.nextDouble());
+        double a = rnd.nextDouble(2 * Math.PI);
+        this.latitude = c[0] + r * Math.cos(a) / METERS_PER_DEGREE;
+        this.longitude = c[1] + r * Math.sin(a) / (METERS_PER_DEGREE * Math.cos(Math.toRadians(c[0])));
+        this.heading = rnd.nextDouble(2 * Math.PI);
+        this.battery = type == VehicleType.BICYCLE ? 100 : 60 + rnd.nextDouble(40);
+        this.temperature = ambient(rnd);
+    }
+
+    boolean tryAcquire() {
+        return busy.compareAndSet(false, true);
+    }
+
+    void release() {
+        busy.set(false);
+    }
+
+    /** Parked: recharges (swappable batteries) and cools down towards ambient. */
+    TelemetryData parked(SplittableRandom rnd) {
+        if (type != VehicleType.BICYCLE) battery = Math.min(100, battery + 0.5);
+        temperature += (ambient(rnd) - temperature) * 0.5;
+        return sample(false, false);
+    }
+
+    /**
+     * One riding tick: moves along a wandering heading, drains the battery
+     * and occasionally faults or overheats.
+     */
+    TelemetryData ride(SplittableRandom rnd, double faultRate, double overheatRate) {
+        heading += rnd.nextDouble(-0.5, 0.5);
+        double[] c = center(city);
+        double dLat = (latitude - c[0]) * METERS_PER_DEGREE;
+        double dLon = (longitude - c[1]) * METERS_PER_DEGREE * Math.cos(Math.toRadians(c[0]));
+        if (Math.hypot(dLat, dLon) > CITY_RADIUS_M) {
+            heading = Math.atan2(-dLon, -dLat);   // turn back towards the centre
+        }
+        double meters = speedMetersPerTick();
+        latitude += meters * Math.cos(heading) / METERS_PER_DEGREE;
+        longitude += meters * Math.sin(heading) / (METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+
+        battery = Math.max(0, battery - drainPerTick());
+        temperature += (ambient(rnd) + 12 - temperature) * 0.3;
+        if (rnd.nextDouble() < overheatRate) temperature = 61 + rnd.nextDouble(10);
+
+        return sample(true, rnd.nextDouble() < faultRate);
+    }
+
+    private TelemetryData sample(boolean moving, boolean fault) {
+        TelemetryData t = new TelemetryData(id, latitude, longitude, (int) battery, temperature);
+        t.setMovementDetected(moving);
+        t.setFault(fault);
+        // riders put the helmet on as soon as they have reserved a moped
+        t.setHelmetPresent(type == VehicleType.MOPED
+                && (expected == VehicleState.RESERVED || expected == VehicleState.IN_USE));
+        return t;
+    }
+
+    private double speedMetersPerTick() {
+        return switch (type) {
+            case BICYCLE -> 40;
+            case E_SCOOTER -> 60;
+            case MOPED -> 110;
+        };
+    }
+
+    private double drainPerTick() {
+        return switch (type) {
+            case BICYCLE -> 0;
+            case E_SCOOTER -> 1.2;
+            case MOPED -> 0.7;
+        };
+    }
+
+    private static double ambient(SplittableRandom rnd) {
+        return 18 + rnd.nextDouble(8);
+    }
+
+    private static double[] center(City city) {
+        return switch (city) {
+            case LONDON -> new double[]{51.5074, -0.1278};
+            case MILAN -> new double[]{45.4642, 9.1900};
+            case ROME -> new double[]{41.9028, 12.4964};
+        };
+    }
+}
@@ -0,0 +1,79 @@
+package com.smartmove.sim;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartmove.cdc.ChangeRecord;
+import com.smartmove.domain.City;
+import com.smartmove.domain.Payment;
+import com.smartmove.domain.Vehicle;
+import com.smartmove.domain.VehicleState;
+import com.smartmove.domain.VehicleType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FleetSimulatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void shortInProcessRunCompletesRentalsWithoutStateMachineViolations() throws Exception {
+        SimulationConfig config = SimulationConfig.parse(new String[]{
+                "--perGroup=1", "--rate=200", "--duration=2", "--threads=4"});
+        config.dataDir = tempDir;
+
+        SimulationReport report;
+        try (FleetTarget target = new InProcessTarget(tempDir)) {
+            report = new FleetSimulator(config, target).run();
+        }
+
+        assertEquals(9, report.stats(SimulationReport.Op.REGISTER).ok.sum());
+        assertTrue(report.operations() > 200, "ops: " + report.operations());
+        assertTrue(report.stats(SimulationReport.Op.END).ok.sum() > 0);
+        assertEquals(0, report.stats(SimulationReport.Op.TELEMETRY).errors.sum());
+        // false theft alarms depend on telemetry queue timing; everything else must hold
+        assertTrue(report.violations().stream().allMatch(v -> v.kind == InvariantChecker.Kind.FALSE_THEFT_ALARM),
+                () -> report.violations().toString());
+    }
+
+    @Test
+    void checkerFlagsIllegalTransitionAndUnpaidRental() {
+        InvariantChecker checker = new InvariantChecker(Set.of("v1"));
+        checker.accept(vehicleChange(1, VehicleState.AVAILABLE, false));
+        checker.accept(vehicleChange(2, VehicleState.IN_USE, true));     // skipped RESERVED
+        checker.accept(vehicleChange(3, VehicleState.AVAILABLE, false)); // ended without payment
+
+        Vehicle stored = new Vehicle("v1", VehicleType.E_SCOOTER, City.ROME);
+        stored.setState(VehicleState.AVAILABLE);
+        checker.finish(Map.of("v1", stored));
+
+        List<InvariantChecker.Kind> kinds = checker.violations().stream().map(v -> v.kind).toList();
+        assertEquals(List.of(InvariantChecker.Kind.ILLEGAL_TRANSITION, InvariantChecker.Kind.PAYMENT_MISMATCH), kinds);
+
+        InvariantChecker paid = new InvariantChecker(Set.of("v1"));
+        paid.accept(vehicleChange(1, VehicleState.AVAILABLE, false));
+        paid.accept(vehicleChange(2, VehicleState.RESERVED, false));
+        paid.accept(vehicleChange(3, VehicleState.IN_USE, true));
+        paid.accept(new ChangeRecord(4, 0, ChangeRecord.Entity.PAYMENT, ChangeRecord.Op.UPSERT, "p1",
+                mapper.valueToTree(new Payment("v1", City.ROME, 1000, 0))));
+        paid.accept(vehicleChange(5, VehicleState.AVAILABLE, false));
+        paid.finish(Map.of("v1", stored));
+        assertTrue(paid.violations().isEmpty(), () -> paid.violations().toString());
+    }
+
+    private ChangeRecord vehicleChange(long offset, VehicleState state, boolean rentalActive) {
+        Vehicle v = new Vehicle("v1", VehicleType.E_SCOOTER, City.ROME);
+        v.setState(state);
+        v.setRentalActive(rentalActive);
+        return new ChangeRecord(offset, 0, ChangeRecord.Entity.VEHICLE, ChangeRecord.Op.UPSERT, "v1",
+                mapper.valueToTree(v));
+    }
+}
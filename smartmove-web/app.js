@@ -123,7 +123,8 @@ $("btnClear").addEventListener("click", ()=>{
 
 // === Live view state ===
 let currentVehicleId = null;
-let autoTimer = null;
+let liveEnabled = true;
+let liveSource = null;
 
 function setStateBadge(state){
   const badge = $("stateBadge");
@@ -164,6 +165,7 @@ async function fetchVehicle(id){
     const v = await getJSON(`/vehicle?id=${encodeURIComponent(id)}`);
     setKV(v);
     addRecent(id);
+    watchVehicle(id);
     toast("good","Vehicle Loaded", `State: ${v.state}`);
   }catch(e){
     setKV(null);
@@ -173,6 +175,37 @@ async function fetchVehicle(id){
   }
 }
 
+// === Live updates (server push) ===
+// The API streams every change of the watched vehicle, so the view never polls.
+function watchVehicle(id){
+  if(!liveEnabled) return;
+  if(liveSource && liveSource.vehicleId === id) return;
+  stopWatching();
+
+  const es = new EventSource(`${API}/events?ids=${encodeURIComponent(id)}`);
+  es.vehicleId = id;
+  es.addEventListener("vehicle", (e)=>{
+    if(id !== currentVehicleId) return;
+    try{ setKV(JSON.parse(e.data)); }catch{}
+  });
+  es.onopen = ()=> setApiStatus(true);
+  es.onerror = ()=> setApiStatus(false); // EventSource reconnects by itself
+  liveSource = es;
+  $("refreshHint").textContent = "Live updates: ON";
+}
+
+function stopWatching(){
+  if(liveSource){
+    liveSource.close();
+    liveSource = null;
+  }
+  $("refreshHint").textContent = liveEnabled ? "Live updates: idle" : "Live updates: OFF";
+}
+
+function isLive(id){
+  return !!liveSource && liveSource.vehicleId === id;
+}
+
 // === API health ===
 async function health(){
   try{
@@ -231,7 +264,7 @@ $("btnReserve").addEventListener("click", async ()=>{
   try{
     await postJSON("/reserve",{ vehicleId, city });
     toast("good","Reserved","Vehicle reserved.");
-    await fetchVehicle(vehicleId);
+    if(!isLive(vehicleId)) await fetchVehicle(vehicleId);
   }catch(e){
     toast("bad","Reserve Failed", e.message);
   }
@@ -244,7 +277,7 @@ $("btnStart").addEventListener("click", async ()=>{
   try{
     await postJSON("/start",{ vehicleId, city });
     toast("good","Rental Started","Vehicle moved to IN_USE.");
-    await fetchVehicle(vehicleId);
+    if(!isLive(vehicleId)) await fetchVehicle(vehicleId);
   }catch(e){
     toast("bad","Start Failed", e.message);
   }
@@ -256,7 +289,7 @@ $("btnEnd").addEventListener("click", async ()=>{
   try{
     await postJSON("/end",{ vehicleId });
     toast("good","Rental Ended","Vehicle ended and state updated.");
-    await fetchVehicle(vehicleId);
+    if(!isLive(vehicleId)) await fetchVehicle(vehicleId);
   }catch(e){
     toast("bad","End Failed", e.message);
   }
@@ -287,30 +320,25 @@ $("btnTelemetry").addEventListener("click", async ()=>{
       fault
     });
     toast("good","Telemetry Sent","Queued to backend telemetry worker.");
-    // give the worker a moment then refresh
-    setTimeout(()=> fetchVehicle(vehicleId).catch(()=>{}), 250);
+    // the live stream delivers the processed result; only fetch when not watching
+    if(!isLive(vehicleId)) setTimeout(()=> fetchVehicle(vehicleId).catch(()=>{}), 250);
   }catch(e){
     toast("bad","Telemetry Failed", e.message);
   }
 });
 
-// Auto-refresh
+// Live updates toggle
 $("btnAuto").addEventListener("click", ()=>{
-  const enabled = !!autoTimer;
-  if(enabled){
-    clearInterval(autoTimer);
-    autoTimer = null;
-    $("btnAuto").textContent = "Enable Auto-Refresh";
-    $("refreshHint").textContent = "Auto-refresh: OFF";
-    toast("","Auto-refresh","Disabled.");
+  liveEnabled = !liveEnabled;
+  if(liveEnabled){
+    $("btnAuto").textContent = "Pause Live Updates";
+    if(currentVehicleId) watchVehicle(currentVehicleId);
+    else stopWatching();
+    toast("","Live updates","Enabled (server push).");
   }else{
-    autoTimer = setInterval(async ()=>{
-      if(!currentVehicleId) return;
-      try{ await fetchVehicle(currentVehicleId); }catch{}
-    }, 1500);
-    $("btnAuto").textContent = "Disable Auto-Refresh";
-    $("refreshHint").textContent = "Auto-refresh: ON (1.5s)";
-    toast("","Auto-refresh","Enabled (1.5s).");
+    stopWatching();
+    $("btnAuto").textContent = "Resume Live Updates";
+    toast("","Live updates","Paused.");
   }
 });
 